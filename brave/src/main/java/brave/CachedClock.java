@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave;
+
+import brave.internal.Platform;
+import brave.internal.TraceClockFactory;
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static brave.internal.Throwables.propagateIfFatal;
+
+/**
+ * A {@link Clock} whose time is updated by a background thread, so that reading it is only a
+ * volatile read, as opposed to {@link System#nanoTime()} or a system clock call.
+ *
+ * <p>Normally, each local root reads the platform clock and child spans in the trace read
+ * {@link System#nanoTime()} relative to it. When this is passed to {@link
+ * Tracing.Builder#clock(Clock)}, all spans instead use this clock, so timestamps have the {@link
+ * Builder#resolution(long, TimeUnit) resolution} of the ticker. For example, at the default
+ * resolution of 100 microseconds, a span shorter than that may have zero duration.
+ *
+ * <p>In {@link Builder#hybrid(boolean) hybrid} mode, only the epoch of each local root is derived
+ * from the cached time, instead of a platform clock call. Spans in the trace are then timed with
+ * {@link System#nanoTime()} as usual, so durations are precise even when shorter than the
+ * resolution.
+ *
+ * <p>Here's an example:
+ * <pre>{@code
+ * clock = CachedClock.newBuilder().resolution(100, TimeUnit.MICROSECONDS).hybrid(true).build();
+ * tracing = Tracing.newBuilder().clock(clock).build();
+ * // when shutting down
+ * tracing.close();
+ * clock.close();
+ * }</pre>
+ *
+ * <h3>Accuracy</h3>
+ * Like the per-trace clock Brave normally uses, time advances according to {@link
+ * System#nanoTime()}. The ticker re-reads the platform clock each second, and adjusts when it has
+ * drifted by over a millisecond, for example due to NTP. After {@link #close()}, reads fall back to
+ * the platform clock.
+ *
+ * @since 5.14
+ */
+public final class CachedClock implements Clock, TraceClockFactory, Closeable {
+  static final long RESYNC_NANOS = TimeUnit.SECONDS.toNanos(1);
+  static final long MAX_DRIFT_MICROS = 1000L;
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    long resolutionNanos = TimeUnit.MICROSECONDS.toNanos(100);
+    boolean hybrid;
+
+    Builder() {
+    }
+
+    /** How often the cached time is updated. Defaults to 100 microseconds. */
+    public Builder resolution(long resolution, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (resolution < 1) throw new IllegalArgumentException("resolution < 1");
+      this.resolutionNanos = unit.toNanos(resolution);
+      if (resolutionNanos < 1000L) throw new IllegalArgumentException("resolution < 1 microsecond");
+      return this;
+    }
+
+    /**
+     * When true, the cached time is only used for the epoch of each local root, and timestamps in
+     * the trace are relative to {@link System#nanoTime()}. This gives precise durations for spans
+     * shorter than the {@link #resolution(long, TimeUnit) resolution}. Defaults to false.
+     */
+    public Builder hybrid(boolean hybrid) {
+      this.hybrid = hybrid;
+      return this;
+    }
+
+    /** Returns a clock with its ticker thread started. */
+    public CachedClock build() {
+      CachedClock result = new CachedClock(this, Platform.get().clock(), NanoTime.SYSTEM);
+      result.ticker.start();
+      return result;
+    }
+  }
+
+  /** Reads {@link System#nanoTime()}, except in tests. */
+  interface NanoTime {
+    NanoTime SYSTEM = new NanoTime() {
+      @Override public long read() {
+        return System.nanoTime();
+      }
+    };
+
+    long read();
+  }
+
+  /** Immutable, so that the epoch time and its tick are read together. */
+  static final class Tick {
+    final long epochMicros, nanoTime;
+
+    Tick(long epochMicros, long nanoTime) {
+      this.epochMicros = epochMicros;
+      this.nanoTime = nanoTime;
+    }
+  }
+
+  final Clock platformClock;
+  final NanoTime nanoTime;
+  final long resolutionNanos;
+  final boolean hybrid;
+  final Thread ticker;
+  volatile Tick tick; // null after close
+  volatile boolean closed;
+
+  // Only accessed by the ticker thread, except on construction
+  long baseEpochMicros, baseNanos;
+
+  CachedClock(Builder builder, Clock platformClock, NanoTime nanoTime) {
+    this.platformClock = platformClock;
+    this.nanoTime = nanoTime;
+    this.resolutionNanos = builder.resolutionNanos;
+    this.hybrid = builder.hybrid;
+    this.baseNanos = nanoTime.read();
+    this.baseEpochMicros = platformClock.currentTimeMicroseconds();
+    this.tick = new Tick(baseEpochMicros, baseNanos);
+    this.ticker = new Thread(new Runnable() {
+      @Override public void run() {
+        runTicker();
+      }
+    }, "CachedClock");
+    ticker.setDaemon(true);
+  }
+
+  @Override public long currentTimeMicroseconds() {
+    Tick tick = this.tick;
+    if (tick == null) return platformClock.currentTimeMicroseconds();
+    return tick.epochMicros;
+  }
+
+  /**
+   * Returns the clock to use for all spans in a new local root. This is the same instance unless
+   * in {@link Builder#hybrid(boolean) hybrid} mode, where state is kept per trace.
+   *
+   * @see Tracing#clock(brave.propagation.TraceContext)
+   */
+  @Override public Clock traceClock() {
+    if (!hybrid) return this;
+    long nanoTime = this.nanoTime.read();
+    Tick tick = this.tick;
+    // Anchor to now, not the start of the tick, so the first span isn't longer than it should be
+    long epochMicros = tick != null
+      ? tick.epochMicros + (nanoTime - tick.nanoTime) / 1000
+      : platformClock.currentTimeMicroseconds();
+    return new HybridClock(this, epochMicros, nanoTime);
+  }
+
+  /** Stops the ticker thread. Subsequent reads use the platform clock. */
+  @Override public void close() {
+    if (closed) return;
+    closed = true;
+    tick = null;
+    LockSupport.unpark(ticker);
+  }
+
+  void runTicker() {
+    long lastResync = baseNanos;
+    while (!closed) {
+      LockSupport.parkNanos(this, resolutionNanos);
+      if (closed) return;
+      try {
+        long nanoTime = this.nanoTime.read();
+        if (nanoTime - lastResync >= RESYNC_NANOS) {
+          lastResync = nanoTime;
+          resync(nanoTime);
+        }
+        tick(nanoTime);
+      } catch (Throwable t) {
+        propagateIfFatal(t);
+        Platform.get().log("error updating cached clock", t);
+      }
+    }
+  }
+
+  void tick(long nanoTime) {
+    if (closed) return;
+    tick = new Tick(baseEpochMicros + (nanoTime - baseNanos) / 1000, nanoTime);
+  }
+
+  /** Re-anchors to the platform clock when it drifted from {@link System#nanoTime()}. */
+  void resync(long nanoTime) {
+    long epochMicros = baseEpochMicros + (nanoTime - baseNanos) / 1000;
+    long platformMicros = platformClock.currentTimeMicroseconds();
+    if (Math.abs(platformMicros - epochMicros) <= MAX_DRIFT_MICROS) return;
+    baseEpochMicros = platformMicros;
+    baseNanos = nanoTime;
+  }
+
+  @Override public String toString() {
+    return "CachedClock{resolution=" + resolutionNanos / 1000 + "us, hybrid=" + hybrid + "}";
+  }
+
+  /**
+   * Like the per-trace clock Brave normally uses, except the epoch of the local root is derived
+   * from the cached tick instead of a platform clock call.
+   */
+  static final class HybridClock implements Clock {
+    final CachedClock delegate;
+    final long baseEpochMicros, baseNanos;
+
+    HybridClock(CachedClock delegate, long baseEpochMicros, long baseNanos) {
+      this.delegate = delegate;
+      this.baseEpochMicros = baseEpochMicros;
+      this.baseNanos = baseNanos;
+    }
+
+    @Override public long currentTimeMicroseconds() {
+      return baseEpochMicros + (delegate.nanoTime.read() - baseNanos) / 1000;
+    }
+
+    @Override public String toString() {
+      return "HybridClock{" + delegate + "}";
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave;
+
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+
+/**
+ * Generates identifiers for new spans and traces. Configure this with {@link
+ * Tracing.Builder#idGenerator(IdGenerator)}.
+ *
+ * <p>The default is {@link #timeOrdered()}, which places epoch seconds in the high bits of 128-bit
+ * trace IDs. Use {@link #random()} when no system in the path needs the timestamp, such as Amazon
+ * X-Ray, as it doesn't read the clock.
+ *
+ * <p>Implementations are invoked on every new span, so must be thread-safe and avoid contention.
+ * For example, {@link java.util.concurrent.ThreadLocalRandom} is a better source than a shared
+ * {@link java.util.Random}.
+ *
+ * @since 5.14
+ */
+public abstract class IdGenerator {
+  /**
+   * Returns random IDs, except the upper 4-bytes of the {@linkplain #nextTraceIdHigh() trace ID
+   * high bits} are epoch seconds. This is convertible to <a href="http://docs.aws.amazon.com/elasticloadbalancing/latest/application/load-balancer-request-tracing.html">Amazon
+   * X-Ray trace ID format v1</a>.
+   *
+   * @since 5.14
+   */
+  public static IdGenerator timeOrdered() {
+    return TimeOrdered.INSTANCE;
+  }
+
+  /**
+   * Like {@link #timeOrdered()}, except the epoch seconds are read from the given clock. For
+   * example, pass a {@link CachedClock} to avoid a system clock call on each new trace.
+   *
+   * @since 5.14
+   */
+  public static IdGenerator timeOrdered(Clock clock) {
+    if (clock == null) throw new NullPointerException("clock == null");
+    return new TimeOrderedWithClock(clock);
+  }
+
+  /**
+   * Returns random IDs, including all 64 {@linkplain #nextTraceIdHigh() trace ID high bits}.
+   *
+   * @since 5.14
+   */
+  public static IdGenerator random() {
+    return AllRandom.INSTANCE;
+  }
+
+  /**
+   * Returns a 64-bit ID for {@link TraceContext#spanId()}, also used as {@link
+   * TraceContext#traceId()} of a new trace. Zero is invalid and results in another call.
+   *
+   * @since 5.14
+   */
+  public abstract long nextId();
+
+  /**
+   * Returns the {@link TraceContext#traceIdHigh()} of a new trace, when {@linkplain
+   * Tracing.Builder#traceId128Bit(boolean) 128-bit trace IDs} are in use. Zero results in a 64-bit
+   * trace ID.
+   *
+   * @since 5.14
+   */
+  public abstract long nextTraceIdHigh();
+
+  static final class TimeOrdered extends IdGenerator {
+    static final IdGenerator INSTANCE = new TimeOrdered();
+
+    @Override public long nextId() {
+      return Platform.get().randomLong();
+    }
+
+    @Override public long nextTraceIdHigh() {
+      return Platform.get().nextTraceIdHigh();
+    }
+
+    @Override public String toString() {
+      return "TimeOrderedIdGenerator{}";
+    }
+  }
+
+  static final class TimeOrderedWithClock extends IdGenerator {
+    final Clock clock;
+
+    TimeOrderedWithClock(Clock clock) {
+      this.clock = clock;
+    }
+
+    @Override public long nextId() {
+      return Platform.get().randomLong();
+    }
+
+    @Override public long nextTraceIdHigh() {
+      long epochSeconds = clock.currentTimeMicroseconds() / 1000000L;
+      return (epochSeconds & 0xffffffffL) << 32
+        | (Platform.get().randomLong() & 0xffffffffL);
+    }
+
+    @Override public String toString() {
+      return "TimeOrderedIdGenerator{clock=" + clock + "}";
+    }
+  }
+
+  static final class AllRandom extends IdGenerator {
+    static final IdGenerator INSTANCE = new AllRandom();
+
+    @Override public long nextId() {
+      return Platform.get().randomLong();
+    }
+
+    @Override public long nextTraceIdHigh() {
+      return Platform.get().randomLong();
+    }
+
+    @Override public String toString() {
+      return "RandomIdGenerator{}";
+    }
+  }
+}
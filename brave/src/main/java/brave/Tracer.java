@@ -17,7 +17,6 @@ import brave.handler.MutableSpan;
 import brave.handler.SpanHandler;
 import brave.internal.InternalPropagation;
 import brave.internal.Nullable;
-import brave.internal.Platform;
 import brave.internal.recorder.PendingSpan;
 import brave.internal.recorder.PendingSpans;
 import brave.propagation.CurrentTraceContext;
@@ -87,6 +86,7 @@ import static brave.propagation.SamplingFlags.SAMPLED;
  */
 public class Tracer {
   final Clock clock;
+  final IdGenerator idGenerator;
   final Propagation.Factory propagationFactory;
   final SpanHandler spanHandler; // only for toString
   final PendingSpans pendingSpans;
@@ -97,6 +97,7 @@ public class Tracer {
 
   Tracer(
     Clock clock,
+    IdGenerator idGenerator,
     Propagation.Factory propagationFactory,
     SpanHandler spanHandler,
     PendingSpans pendingSpans,
@@ -108,6 +109,7 @@ public class Tracer {
     AtomicBoolean noop
   ) {
     this.clock = clock;
+    this.idGenerator = idGenerator;
     this.propagationFactory = propagationFactory;
     this.spanHandler = spanHandler;
     this.pendingSpans = pendingSpans;
@@ -128,6 +130,7 @@ public class Tracer {
     if (sampler == null) throw new NullPointerException("sampler == null");
     return new Tracer(
       clock,
+      idGenerator,
       propagationFactory,
       spanHandler,
       pendingSpans,
@@ -226,7 +229,7 @@ public class Tracer {
   TraceContext decorateContext(TraceContext parent, long parentId) {
     int flags = InternalPropagation.instance.flags(parent);
     flags &= ~FLAG_SHARED; // cannot be shared if we aren't reusing the span ID
-    return decorateContext(
+    TraceContext result = decorateContext(
       flags,
       parent.traceIdHigh(),
       parent.traceId(),
@@ -235,6 +238,9 @@ public class Tracer {
       0L,
       parent.extra()
     );
+    // Avoid re-encoding IDs in common with the parent, such as its trace ID, for logging and data.
+    InternalPropagation.instance.inheritIdStrings(result, parent);
+    return result;
   }
 
   /**
@@ -271,7 +277,7 @@ public class Tracer {
     if (spanId == 0L) spanId = nextId();
 
     if (traceId == 0L) { // make a new trace ID
-      traceIdHigh = traceId128Bit ? Platform.get().nextTraceIdHigh() : 0L;
+      traceIdHigh = traceId128Bit ? idGenerator.nextTraceIdHigh() : 0L;
       traceId = spanId;
     }
 
@@ -399,6 +405,7 @@ public class Tracer {
       context.spanId(),
       context.extra()
     );
+    InternalPropagation.instance.inheritIdStrings(decorated, context);
 
     return _toSpan(parent, decorated);
   }
@@ -643,9 +650,9 @@ public class Tracer {
 
   /** Generates a new 64-bit ID, taking care to dodge zero which can be confused with absent */
   long nextId() {
-    long nextId = Platform.get().randomLong();
+    long nextId = idGenerator.nextId();
     while (nextId == 0L) {
-      nextId = Platform.get().randomLong();
+      nextId = idGenerator.nextId();
     }
     return nextId;
   }
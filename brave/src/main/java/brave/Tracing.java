@@ -33,6 +33,7 @@ import java.io.Closeable;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
@@ -142,10 +143,13 @@ public abstract class Tracing implements Closeable {
     final MutableSpan defaultSpan = new MutableSpan();
     Object zipkinSpanReporter; // avoid Zipkin type
     Clock clock;
+    IdGenerator idGenerator = IdGenerator.timeOrdered();
     Sampler sampler = Sampler.ALWAYS_SAMPLE;
     CurrentTraceContext currentTraceContext = CurrentTraceContext.Default.inheritable();
     boolean traceId128Bit = false, supportsJoin = true;
     boolean alwaysSampleLocal = false, alwaysReportSpans = false, trackOrphans = false;
+    boolean recycleSpans = false;
+    long orphanTimeoutNanos = 0L;
     Propagation.Factory propagationFactory = B3Propagation.FACTORY;
     ErrorParser errorParser = new ErrorParser();
     Set<SpanHandler> spanHandlers = new LinkedHashSet<>(); // dupes not ok
@@ -284,6 +288,17 @@ public abstract class Tracing implements Closeable {
       return this;
     }
 
+    /**
+     * Generates span and trace IDs. Defaults to {@link IdGenerator#timeOrdered()}.
+     *
+     * @since 5.14
+     */
+    public Builder idGenerator(IdGenerator idGenerator) {
+      if (idGenerator == null) throw new NullPointerException("idGenerator == null");
+      this.idGenerator = idGenerator;
+      return this;
+    }
+
     /**
      * Sampler is responsible for deciding if a particular trace should be "sampled", i.e. whether
      * the overhead of tracing will occur and/or if a trace will be reported to Zipkin.
@@ -436,6 +451,51 @@ public abstract class Tracing implements Closeable {
       return this;
     }
 
+    /**
+     * When set, spans not finished, flushed or abandoned within this timeout are reported to {@link
+     * SpanHandler}s with {@link SpanHandler.Cause#ORPHANED}. Defaults to zero, which means orphans
+     * are detected via garbage collection.
+     *
+     * <p>Setting this changes how in-progress spans are stored. By default, they are weakly
+     * referenced, which allocates a reference per span and checks a reference queue on every span
+     * operation. With a timeout, they are strongly referenced in a striped table keyed by trace and
+     * span ID, and a daemon thread reports orphans until {@link Tracing#close()}. This reduces GC
+     * and contention at high span rates, but means a span that legitimately runs longer than the
+     * timeout will be reported early, and later data recorded to it will be lost.
+     *
+     * <p>Orphans are reported between one and one and a half timeouts after they started.
+     *
+     * @see #trackOrphans()
+     * @since 5.14
+     */
+    public Builder orphanTimeout(long timeout, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+      this.orphanTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * When set, and no {@link SpanHandler} {@linkplain SpanHandler#retainsSpans() retains spans},
+     * a {@link MutableSpan} is reused for a later span once it is finished, flushed or abandoned.
+     * This avoids allocating a span and its tags per trace context. Defaults to false.
+     *
+     * <p>This is only safe when instrumentation doesn't modify spans after they are finished. Such
+     * modifications would otherwise be lost silently, but with recycling they could corrupt an
+     * unrelated span. When assertions are enabled (ex {@code -ea}), reusing a span modified after
+     * it was recycled raises an {@link AssertionError} citing the code that recycled it.
+     *
+     * <p>Spans are pooled per-thread, so this is most effective when spans start and finish on the
+     * same thread, such as synchronous servers.
+     *
+     * @see SpanHandler#retainsSpans()
+     * @since 5.14
+     */
+    public Builder recycleSpans() {
+      this.recycleSpans = true;
+      return this;
+    }
+
     public Tracing build() {
       return new Default(this);
     }
@@ -450,6 +510,10 @@ public abstract class Tracing implements Closeable {
       return true;
     }
 
+    @Override public boolean retainsSpans() {
+      return false;
+    }
+
     @Override public String toString() {
       return "LogSpanHandler{name=" + logger.getName() + "}";
     }
@@ -508,9 +572,11 @@ public abstract class Tracing implements Closeable {
 
       this.tracer = new Tracer(
         builder.clock,
+        builder.idGenerator,
         builder.propagationFactory,
         spanHandler,
-        new PendingSpans(defaultSpan, clock, spanHandler, noop),
+        new PendingSpans(defaultSpan, clock, spanHandler, noop, builder.orphanTimeoutNanos,
+          builder.recycleSpans),
         builder.sampler,
         builder.currentTraceContext,
         builder.traceId128Bit || propagationFactory.requires128BitTraceId(),
@@ -561,6 +627,7 @@ public abstract class Tracing implements Closeable {
     @Override public void close() {
       // only set null if we are the outer-most instance
       CURRENT.compareAndSet(this, null);
+      tracer.pendingSpans.close();
     }
   }
 
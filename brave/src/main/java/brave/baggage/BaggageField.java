@@ -20,6 +20,7 @@ import brave.internal.baggage.ExtraBaggageContext;
 import brave.propagation.TraceContext;
 import brave.propagation.TraceContextOrSamplingFlags;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -331,6 +332,82 @@ public final class BaggageField {
     return updateValue(currentTraceContext(), value);
   }
 
+  /**
+   * Like {@link #updateValue(TraceContext, String)}, except updates multiple fields at once. This
+   * is more efficient than updating each field, as the baggage state is copied at most once.
+   *
+   * <p>Fields that are read-only, or not configured in {@link BaggagePropagation}, are ignored.
+   *
+   * <p>Ex.
+   * <pre>{@code
+   * Map<BaggageField, String> values = new LinkedHashMap<>();
+   * values.put(COUNTRY_CODE, "FO");
+   * values.put(USER_ID, userId);
+   * BaggageField.updateValues(span.context(), values);
+   * }</pre>
+   *
+   * @param values {@code null} values are attempts to remove the field's value
+   * @return {@code true} if any value changed
+   * @since 5.14
+   */
+  public static boolean updateValues(@Nullable TraceContext context,
+    Map<BaggageField, String> values) {
+    if (values == null) throw new NullPointerException("values == null");
+    if (context == null) return false;
+    if (!ExtraBaggageContext.updateValues(context, updatable(values))) return false;
+    if (!CorrelationFlushScope.updateScopeStack().isEmpty()) {
+      for (Map.Entry<BaggageField, String> entry : values.entrySet()) {
+        flushIfUpdated(entry.getKey(), entry.getValue(), entry.getKey().getValue(context));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Like {@link #updateValues(TraceContext, Map)} except for use cases that precede a span. For
+   * example, a {@linkplain TraceContextOrSamplingFlags#traceIdContext() trace ID context}.
+   *
+   * @since 5.14
+   */
+  public static boolean updateValues(TraceContextOrSamplingFlags extracted,
+    Map<BaggageField, String> values) {
+    if (extracted == null) throw new NullPointerException("extracted == null");
+    if (values == null) throw new NullPointerException("values == null");
+    if (!ExtraBaggageContext.updateValues(extracted, updatable(values))) return false;
+    if (!CorrelationFlushScope.updateScopeStack().isEmpty()) {
+      for (Map.Entry<BaggageField, String> entry : values.entrySet()) {
+        flushIfUpdated(entry.getKey(), entry.getValue(), entry.getKey().getValue(extracted));
+      }
+    }
+    return true;
+  }
+
+  /** Usually returns the input, as it is rare to batch read-only fields such as trace ID. */
+  static Map<BaggageField, String> updatable(Map<BaggageField, String> values) {
+    Map<BaggageField, String> result = null;
+    for (Map.Entry<BaggageField, String> entry : values.entrySet()) {
+      BaggageField field = entry.getKey();
+      if (field == null) throw new NullPointerException("values contains a null field");
+      if (field.context instanceof ExtraBaggageContext) {
+        if (result != null) result.put(field, entry.getValue());
+      } else if (result == null) { // copy the updatable fields seen so far
+        result = new LinkedHashMap<>();
+        for (Map.Entry<BaggageField, String> prior : values.entrySet()) {
+          if (prior.getKey() == field) break;
+          result.put(prior.getKey(), prior.getValue());
+        }
+      }
+    }
+    return result != null ? result : values;
+  }
+
+  /** Flushes like {@link #updateValue(TraceContext, String)}, unless the update was ignored. */
+  static void flushIfUpdated(BaggageField field, @Nullable String value, @Nullable String current) {
+    if (!(field.context instanceof ExtraBaggageContext)) return;
+    if (value == null ? current != null : !value.equals(current)) return; // update was ignored
+    CorrelationFlushScope.flush(field, value);
+  }
+
   @Override public String toString() {
     return "BaggageField{" + name + "}";
   }
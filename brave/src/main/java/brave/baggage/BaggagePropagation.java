@@ -15,8 +15,10 @@ package brave.baggage;
 
 import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
 import brave.internal.Nullable;
+import brave.internal.RecyclableBuffers;
 import brave.internal.baggage.BaggageCodec;
 import brave.internal.baggage.BaggageFields;
+import brave.internal.baggage.StreamingBaggageCodec;
 import brave.internal.collect.Lists;
 import brave.internal.propagation.StringPropagationAdapter;
 import brave.propagation.ExtraFieldPropagation;
@@ -185,16 +187,20 @@ public final class BaggagePropagation<K> implements Propagation<K> {
 
       List<BaggageField> fields = new ArrayList<>();
       Set<String> localFieldNames = new LinkedHashSet<>();
+      Set<BaggageField> localFields = new LinkedHashSet<>();
       int maxDynamicFields = 0;
       for (BaggagePropagationConfig config : factoryBuilder.configs) {
         maxDynamicFields += config.maxDynamicFields;
         if (config instanceof SingleBaggageField) {
           BaggageField field = ((SingleBaggageField) config).field;
           fields.add(field);
-          if (config.baggageCodec == BaggageCodec.NOOP) localFieldNames.add(field.name());
+          if (config.baggageCodec == BaggageCodec.NOOP) {
+            localFieldNames.add(field.name());
+            localFields.add(field);
+          }
         }
       }
-      this.baggageFactory = BaggageFields.newFactory(fields, maxDynamicFields);
+      this.baggageFactory = BaggageFields.newFactory(fields, localFields, maxDynamicFields);
       this.localFieldNames = localFieldNames.toArray(new String[0]);
     }
 
@@ -327,14 +333,21 @@ public final class BaggagePropagation<K> implements Propagation<K> {
       delegate.inject(context, request);
       BaggageFields extra = context.findExtra(BaggageFields.class);
       if (extra == null) return;
-      Map<String, String> values =
-          extra.toMapFilteringFieldNames(factory.localFieldNames);
-      if (values.isEmpty()) return;
+      Map<String, String> values = null; // only built for codecs that need it
 
       for (BaggagePropagationConfig config : factory.configs) {
-        if (config.baggageCodec == BaggageCodec.NOOP) continue; // local field
-
-        String value = config.baggageCodec.encode(values, context, request);
+        BaggageCodec codec = config.baggageCodec;
+        if (codec == BaggageCodec.NOOP) continue; // local field
+
+        String value;
+        if (codec instanceof StreamingBaggageCodec) {
+          value = ((StreamingBaggageCodec) codec)
+              .encode(extra, context, request, RecyclableBuffers.stringBuilder());
+        } else {
+          if (values == null) values = extra.toMapFilteringFieldNames(factory.localFieldNames);
+          if (values.isEmpty()) continue;
+          value = codec.encode(values, context, request);
+        }
         if (value == null) continue;
 
         List<String> keys = config.baggageCodec.injectKeyNames();
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Tracing;
+import brave.internal.Platform;
+import brave.internal.collect.RingBuffer;
+import brave.propagation.TraceContext;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static brave.internal.Throwables.propagateIfFatal;
+
+/**
+ * Moves encoding and I/O of finished spans off the application thread.
+ *
+ * <p>{@link #end(TraceContext, MutableSpan, Cause)} only offers the span to a bounded, lock-free
+ * queue. A dedicated thread drains that queue into batches bounded by {@link
+ * Builder#messageMaxSpans(int) count}, {@link Builder#messageMaxBytes(int) size} and {@link
+ * Builder#messageTimeout(long, TimeUnit) age}. Each batch is encoded with {@link
+ * MutableSpanBytesEncoder#encodeList(List, byte[], int)} into a buffer reused for the life of this
+ * handler, then passed to a {@link Sink}.
+ *
+ * <p>When the queue is full, the {@link Backpressure} policy decides what happens, so that a slow
+ * or unavailable collector never blocks callers longer than configured.
+ *
+ * <p>Here's an example:
+ * <pre>{@code
+ * asyncHandler = AsyncSpanHandler.newBuilder(MutableSpanBytesEncoder.zipkinJsonV2(Tags.ERROR),
+ *   (buffer, length, spanCount) -> channel.write(ByteBuffer.wrap(buffer, 0, length))
+ * ).backpressure(Backpressure.DROP_OLDEST).build();
+ *
+ * tracing = Tracing.newBuilder().addSpanHandler(asyncHandler).build();
+ * // when shutting down
+ * tracing.close();
+ * asyncHandler.close();
+ * }</pre>
+ *
+ * <h3>Ordering</h3>
+ * Spans are read on a different thread after this returns. Add this handler after any handlers
+ * which modify the span, as changes made afterwards may not be visible or may race with encoding.
+ *
+ * @since 5.14
+ */
+public final class AsyncSpanHandler extends SpanHandler implements Closeable, Flushable {
+  /** @since 5.14 */
+  public static Builder newBuilder(MutableSpanBytesEncoder encoder, Sink sink) {
+    return new Builder(encoder, sink);
+  }
+
+  /**
+   * Receives encoded batches of spans on the thread draining the queue.
+   *
+   * @since 5.14
+   */
+  public interface Sink {
+    /**
+     * Sends a batch of encoded spans. The buffer is reused once this returns, so copy it if the
+     * bytes are needed later.
+     *
+     * @param buffer holds the encoded list starting at index zero
+     * @param length count of bytes in the buffer that are valid
+     * @param spanCount count of spans encoded into the buffer
+     * @throws IOException when the batch could not be sent, which counts its spans as dropped.
+     */
+    void accept(byte[] buffer, int length, int spanCount) throws IOException;
+  }
+
+  /**
+   * What to do when a span is finished, but the queue is full.
+   *
+   * @since 5.14
+   */
+  public enum Backpressure {
+    /** Drops the span being finished. This never blocks the caller. */
+    DROP_NEWEST,
+    /**
+     * Drops the oldest queued span to make room for the one being finished. This never blocks the
+     * caller, but costs more than {@link #DROP_NEWEST} as the caller competes with the drain thread.
+     */
+    DROP_OLDEST,
+    /**
+     * Waits for room up to {@link Builder#blockTimeout(long, TimeUnit)}, then drops the span being
+     * finished.
+     */
+    BLOCK
+  }
+
+  /** @since 5.14 */
+  public static final class Builder {
+    final MutableSpanBytesEncoder encoder;
+    final Sink sink;
+    int queuedMaxSpans = 10000, messageMaxSpans = 1000, messageMaxBytes = 500000;
+    long messageTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+    long blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    Backpressure backpressure = Backpressure.DROP_NEWEST;
+    boolean alwaysReportSpans;
+
+    Builder(MutableSpanBytesEncoder encoder, Sink sink) {
+      if (encoder == null) throw new NullPointerException("encoder == null");
+      if (sink == null) throw new NullPointerException("sink == null");
+      this.encoder = encoder;
+      this.sink = sink;
+    }
+
+    /**
+     * Maximum count of spans waiting to be drained, rounded up to a power of two. Default 10000.
+     */
+    public Builder queuedMaxSpans(int queuedMaxSpans) {
+      if (queuedMaxSpans < 1) throw new IllegalArgumentException("queuedMaxSpans < 1");
+      this.queuedMaxSpans = queuedMaxSpans;
+      return this;
+    }
+
+    /** Maximum count of spans sent to the {@link Sink} at once. Default 1000. */
+    public Builder messageMaxSpans(int messageMaxSpans) {
+      if (messageMaxSpans < 1) throw new IllegalArgumentException("messageMaxSpans < 1");
+      this.messageMaxSpans = messageMaxSpans;
+      return this;
+    }
+
+    /**
+     * Maximum size of an encoded batch, which is also the size of the reused encoding buffer. Spans
+     * larger than this are dropped. Default 500KB.
+     */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      if (messageMaxBytes < 2) throw new IllegalArgumentException("messageMaxBytes < 2");
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    /**
+     * Maximum time a span waits in a partial batch before it is sent. Default 1 second.
+     *
+     * <p>This is also the longest the drain thread sleeps when there is nothing to do.
+     */
+    public Builder messageTimeout(long timeout, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (timeout < 1) throw new IllegalArgumentException("timeout < 1");
+      this.messageTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /** What to do when the queue is full. Default {@link Backpressure#DROP_NEWEST}. */
+    public Builder backpressure(Backpressure backpressure) {
+      if (backpressure == null) throw new NullPointerException("backpressure == null");
+      this.backpressure = backpressure;
+      return this;
+    }
+
+    /** Only used with {@link Backpressure#BLOCK}. Default 10 milliseconds. */
+    public Builder blockTimeout(long timeout, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+      this.blockTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * When true, spans that are only {@linkplain TraceContext#sampledLocal() sampled locally} are
+     * sent, too. Default false.
+     *
+     * @see Tracing.Builder#alwaysSampleLocal()
+     */
+    public Builder alwaysReportSpans(boolean alwaysReportSpans) {
+      this.alwaysReportSpans = alwaysReportSpans;
+      return this;
+    }
+
+    /** Starts a daemon thread which drains spans until {@link AsyncSpanHandler#close()}. */
+    public AsyncSpanHandler build() {
+      if (encoder.emptyListSizeInBytes() > messageMaxBytes) {
+        throw new IllegalArgumentException("messageMaxBytes < encoded size of an empty list");
+      }
+      AsyncSpanHandler result = new AsyncSpanHandler(this);
+      result.drainer.start();
+      return result;
+    }
+  }
+
+  final MutableSpanBytesEncoder encoder;
+  final Sink sink;
+  final RingBuffer<MutableSpan> queue;
+  final int messageMaxSpans, wakeThreshold;
+  final long messageTimeoutNanos, blockTimeoutNanos;
+  final Backpressure backpressure;
+  final boolean alwaysReportSpans;
+  final Thread drainer;
+  final AtomicLong droppedSpans = new AtomicLong(), sentSpans = new AtomicLong(),
+    sentMessages = new AtomicLong();
+  /** Set by the caller which unparks the drain thread, and cleared by it once awake. */
+  final AtomicBoolean wakePending = new AtomicBoolean();
+  volatile boolean closed;
+
+  // Guarded by batchLock. Written by the drain thread, or by a caller of flush()
+  final Object batchLock = new Object();
+  final List<MutableSpan> batch;
+  final byte[] buffer;
+  int batchSizeInBytes;
+
+  AsyncSpanHandler(Builder builder) {
+    encoder = builder.encoder;
+    sink = builder.sink;
+    queue = new RingBuffer<>(builder.queuedMaxSpans);
+    messageMaxSpans = builder.messageMaxSpans;
+    // Wake the drain thread when a batch could be full, or the queue is half full
+    wakeThreshold = Math.max(1, Math.min(messageMaxSpans, queue.capacity() / 2));
+    messageTimeoutNanos = builder.messageTimeoutNanos;
+    blockTimeoutNanos = builder.blockTimeoutNanos;
+    backpressure = builder.backpressure;
+    alwaysReportSpans = builder.alwaysReportSpans;
+    batch = new ArrayList<>(Math.min(messageMaxSpans, 1024));
+    buffer = new byte[builder.messageMaxBytes];
+    batchSizeInBytes = encoder.emptyListSizeInBytes();
+    drainer = new Thread(new Runnable() {
+      @Override public void run() {
+        drain();
+      }
+    }, "AsyncSpanHandler");
+    drainer.setDaemon(true);
+  }
+
+  @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+    if (cause == Cause.ABANDONED) return true;
+    if (!alwaysReportSpans && !Boolean.TRUE.equals(context.sampled())) return true;
+    if (closed) {
+      droppedSpans.incrementAndGet();
+      return true;
+    }
+
+    if (queue.offer(span)) {
+      // size() is an estimate under concurrency, so compare with >= and not ==
+      if (queue.size() >= wakeThreshold) wakeDrainer();
+      return true;
+    }
+
+    wakeDrainer(); // the queue is full, so it should be draining
+    switch (backpressure) {
+      case DROP_OLDEST:
+        offerDroppingOldest(span);
+        break;
+      case BLOCK:
+        offerBlocking(span);
+        break;
+      default:
+        droppedSpans.incrementAndGet();
+    }
+    return true;
+  }
+
+  void offerDroppingOldest(MutableSpan span) {
+    // Bounded as the drain thread competes for the same slots.
+    for (int i = 0; i < 8; i++) {
+      if (queue.poll() != null) droppedSpans.incrementAndGet();
+      if (queue.offer(span)) return;
+    }
+    droppedSpans.incrementAndGet();
+  }
+
+  /** Unparks the drain thread unless another caller already did since it last woke. */
+  void wakeDrainer() {
+    if (wakePending.compareAndSet(false, true)) LockSupport.unpark(drainer);
+  }
+
+  void offerBlocking(MutableSpan span) {
+    long deadline = System.nanoTime() + blockTimeoutNanos;
+    while (!queue.offer(span)) {
+      if (closed || System.nanoTime() - deadline >= 0) {
+        droppedSpans.incrementAndGet();
+        return;
+      }
+      LockSupport.parkNanos(this, 1000L);
+    }
+  }
+
+  /** Returns the count of spans dropped due to backpressure, size, or {@link Sink} failures. */
+  public long droppedSpans() {
+    return droppedSpans.get();
+  }
+
+  /** Returns an estimate of spans queued, but not yet drained into a batch. */
+  public int queuedSpans() {
+    return queue.size();
+  }
+
+  /** Returns the count of spans successfully passed to the {@link Sink}. */
+  public long sentSpans() {
+    return sentSpans.get();
+  }
+
+  /** Returns the count of batches successfully passed to the {@link Sink}. */
+  public long sentMessages() {
+    return sentMessages.get();
+  }
+
+  /** Synchronously drains the queue and sends any partial batch to the {@link Sink}. */
+  @Override public void flush() {
+    synchronized (batchLock) {
+      MutableSpan next;
+      while ((next = queue.poll()) != null) append(next);
+      if (!batch.isEmpty()) send();
+    }
+  }
+
+  /**
+   * Stops accepting spans, then waits up to the message timeout for queued spans to be sent.
+   * Spans finished after this are dropped.
+   */
+  @Override public void close() {
+    if (closed) return;
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(messageTimeoutNanos)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush(); // in case a span was queued concurrently with the drain thread exiting
+  }
+
+  void drain() {
+    long batchDeadline = 0L;
+    while (!closed) {
+      long remaining;
+      synchronized (batchLock) {
+        // Polled under the lock, so flush() never returns while a span is taken but not appended
+        MutableSpan next = queue.poll();
+        if (next != null) {
+          if (batch.isEmpty()) batchDeadline = System.nanoTime() + messageTimeoutNanos;
+          append(next);
+          continue;
+        }
+
+        if (batch.isEmpty()) {
+          remaining = messageTimeoutNanos;
+        } else {
+          remaining = batchDeadline - System.nanoTime();
+          if (remaining <= 0L) send();
+        }
+      }
+      if (remaining > 0L) {
+        LockSupport.parkNanos(this, remaining);
+        // Cleared before polling, so a span offered after this wakes the thread again
+        wakePending.set(false);
+      }
+    }
+    flush();
+  }
+
+  /** Adds a span to the batch, sending first when it wouldn't fit. Guarded by batchLock. */
+  void append(MutableSpan span) {
+    int sizeInBytes;
+    try {
+      sizeInBytes = encoder.sizeInBytes(span);
+    } catch (Throwable t) {
+      propagateIfFatal(t);
+      Platform.get().log("error sizing span {0}", span, t);
+      droppedSpans.incrementAndGet();
+      return;
+    }
+
+    int emptyListSizeInBytes = encoder.emptyListSizeInBytes();
+    if (emptyListSizeInBytes + encoder.listElementSizeInBytes(sizeInBytes, true) > buffer.length) {
+      droppedSpans.incrementAndGet(); // too large to ever send
+      return;
+    }
+
+    int nextSizeInBytes =
+      batchSizeInBytes + encoder.listElementSizeInBytes(sizeInBytes, batch.isEmpty());
+    if (nextSizeInBytes > buffer.length) {
+      send();
+      nextSizeInBytes = emptyListSizeInBytes + encoder.listElementSizeInBytes(sizeInBytes, true);
+    }
+    batch.add(span);
+    batchSizeInBytes = nextSizeInBytes;
+    if (batch.size() >= messageMaxSpans) send();
+  }
+
+  /** Encodes and sends the current batch, then clears it. Guarded by batchLock. */
+  void send() {
+    int spanCount = batch.size();
+    try {
+      int length = encoder.encodeList(batch, buffer, 0);
+      sink.accept(buffer, length, spanCount);
+      sentSpans.addAndGet(spanCount);
+      sentMessages.incrementAndGet();
+    } catch (Throwable t) {
+      propagateIfFatal(t);
+      Platform.get().log("error sending {0} spans", spanCount, t);
+      droppedSpans.addAndGet(spanCount);
+    } finally {
+      batch.clear();
+      batchSizeInBytes = encoder.emptyListSizeInBytes();
+    }
+  }
+
+  @Override public String toString() {
+    return "AsyncSpanHandler{" + sink + "}";
+  }
+}
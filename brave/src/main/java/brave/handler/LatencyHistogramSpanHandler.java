@@ -0,0 +1,342 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Span.Kind;
+import brave.Tracing;
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the duration of every finished span into a histogram per local service name, span kind
+ * and span name. This allows accurate latency percentiles in-process, even when only a small
+ * percentage of traces are sent to a collector.
+ *
+ * <p>To see spans which weren't sampled remotely, use {@link Tracing.Builder#alwaysSampleLocal()}.
+ * Spans missing a start or finish timestamp are skipped.
+ *
+ * <p>Histograms are log-linear: each power of two microseconds is split into 16 buckets, so values
+ * are within 6.25% of what was recorded. Recording is lock-free and allocates nothing, as each
+ * bucket is an atomic counter. Values of about 38 hours or more are counted in the last bucket.
+ *
+ * <p>Here's an example which logs p99 once a minute:
+ * <pre>{@code
+ * latencies = LatencyHistogramSpanHandler.newBuilder().maxKeys(500).build();
+ * tracing = Tracing.newBuilder().alwaysSampleLocal().addSpanHandler(latencies).build();
+ *
+ * scheduler.scheduleAtFixedRate(() -> {
+ *   for (LatencyHistogramSpanHandler.Snapshot s : latencies.snapshotAndReset()) {
+ *     logger.info(s.name() + " p99=" + s.valueAtPercentile(99.0) + "us");
+ *   }
+ * }, 1, 1, TimeUnit.MINUTES);
+ * }</pre>
+ *
+ * @since 5.14
+ */
+public final class LatencyHistogramSpanHandler extends SpanHandler {
+  /** @since 5.14 */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** @since 5.14 */
+  public static final class Builder {
+    int maxKeys = 256;
+
+    Builder() {
+    }
+
+    /**
+     * Maximum count of distinct local service name, kind and span name combinations. Spans which
+     * would add a histogram past this are counted in {@link #droppedSpans()}. Default 256.
+     *
+     * <p>Each histogram uses about 9KiB, so this bounds memory.
+     */
+    public Builder maxKeys(int maxKeys) {
+      if (maxKeys < 1) throw new IllegalArgumentException("maxKeys < 1");
+      this.maxKeys = maxKeys;
+      return this;
+    }
+
+    public LatencyHistogramSpanHandler build() {
+      return new LatencyHistogramSpanHandler(this);
+    }
+  }
+
+  static final int SUB_BUCKET_BITS = 4, SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  /** Values shifted more than this are counted in the last bucket. */
+  static final int MAX_SHIFT = 32;
+  static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKET_COUNT;
+
+  static final int KIND_COUNT = Kind.values().length + 1; // index zero is no kind
+
+  final int maxKeys;
+  /**
+   * Nested by local service name then span name, so that lookups don't allocate a composite key.
+   * {@code null} names are mapped to empty strings, as the map doesn't allow {@code null} keys.
+   */
+  final ConcurrentMap<String, ConcurrentMap<String, AtomicReferenceArray<Histogram>>> histograms =
+    new ConcurrentHashMap<>();
+  final AtomicInteger keyCount = new AtomicInteger();
+  final AtomicLong droppedSpans = new AtomicLong();
+
+  LatencyHistogramSpanHandler(Builder builder) {
+    maxKeys = builder.maxKeys;
+  }
+
+  @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+    if (cause == Cause.ABANDONED) return true;
+    long startTimestamp = span.startTimestamp(), finishTimestamp = span.finishTimestamp();
+    if (startTimestamp == 0L || finishTimestamp < startTimestamp) return true;
+
+    Histogram histogram = getOrCreate(span.localServiceName(), span.kind(), span.name());
+    if (histogram == null) {
+      droppedSpans.incrementAndGet();
+      return true;
+    }
+    histogram.record(finishTimestamp - startTimestamp);
+    return true;
+  }
+
+  /** Only the duration and key strings are read, so the span can be recycled after this. */
+  @Override public boolean retainsSpans() {
+    return false;
+  }
+
+  /** Returns {@code null} when adding a histogram would exceed {@link Builder#maxKeys(int)}. */
+  @Nullable Histogram getOrCreate(
+    @Nullable String localServiceName, @Nullable Kind kind, @Nullable String name) {
+    String serviceKey = localServiceName != null ? localServiceName : "";
+    String nameKey = name != null ? name : "";
+    int kindIndex = kind != null ? kind.ordinal() + 1 : 0;
+
+    ConcurrentMap<String, AtomicReferenceArray<Histogram>> byName = histograms.get(serviceKey);
+    AtomicReferenceArray<Histogram> byKind = byName != null ? byName.get(nameKey) : null;
+    Histogram result = byKind != null ? byKind.get(kindIndex) : null;
+    if (result != null) return result; // the common case: no allocation
+
+    // The limit is checked before and after adding, so it can only be exceeded by racing threads
+    if (keyCount.get() >= maxKeys) return null;
+    if (byName == null) {
+      byName = new ConcurrentHashMap<>();
+      ConcurrentMap<String, AtomicReferenceArray<Histogram>> existing =
+        histograms.putIfAbsent(serviceKey, byName);
+      if (existing != null) byName = existing;
+    }
+    if (byKind == null) {
+      byKind = new AtomicReferenceArray<>(KIND_COUNT);
+      AtomicReferenceArray<Histogram> existing = byName.putIfAbsent(nameKey, byKind);
+      if (existing != null) byKind = existing;
+    }
+    Histogram newHistogram = new Histogram(localServiceName, kind, name);
+    if (byKind.compareAndSet(kindIndex, null, newHistogram)) {
+      keyCount.incrementAndGet();
+      return newHistogram;
+    }
+    return byKind.get(kindIndex);
+  }
+
+  /** Returns the count of spans not recorded as {@link Builder#maxKeys(int)} was reached. */
+  public long droppedSpans() {
+    return droppedSpans.get();
+  }
+
+  /** Returns durations recorded since the last {@link #snapshotAndReset()}, without resetting. */
+  public List<Snapshot> snapshot() {
+    return snapshot(false);
+  }
+
+  /**
+   * Returns durations recorded since the last call to this, and starts a new interval.
+   *
+   * <p>Recording isn't blocked. Durations recorded concurrently with this call are in either this
+   * snapshot or the next, but never both.
+   */
+  public List<Snapshot> snapshotAndReset() {
+    return snapshot(true);
+  }
+
+  synchronized List<Snapshot> snapshot(boolean reset) {
+    List<Snapshot> result = new ArrayList<>();
+    for (ConcurrentMap<String, AtomicReferenceArray<Histogram>> byName : histograms.values()) {
+      for (AtomicReferenceArray<Histogram> byKind : byName.values()) {
+        for (int i = 0; i < KIND_COUNT; i++) {
+          Histogram histogram = byKind.get(i);
+          if (histogram == null) continue;
+          Snapshot snapshot = histogram.snapshot(reset);
+          if (snapshot.count > 0L) result.add(snapshot);
+        }
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    if (shift > MAX_SHIFT) return BUCKET_COUNT - 1;
+    return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+  }
+
+  /** Returns the largest value counted in the bucket at the given index. */
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) return index;
+    if (index == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  /**
+   * Counters only ever increase. Intervals are differences from the counts at the last reset, so
+   * that resetting doesn't race with recording.
+   */
+  static final class Histogram {
+    @Nullable final String localServiceName, name;
+    @Nullable final Kind kind;
+    final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    final AtomicLong sum = new AtomicLong();
+
+    // Guarded by the handler, as only written when snapshotting
+    final long[] countsAtReset = new long[BUCKET_COUNT];
+    long sumAtReset;
+
+    Histogram(@Nullable String localServiceName, @Nullable Kind kind, @Nullable String name) {
+      this.localServiceName = localServiceName;
+      this.kind = kind;
+      this.name = name;
+    }
+
+    void record(long durationMicros) {
+      counts.incrementAndGet(bucketIndex(durationMicros));
+      sum.addAndGet(durationMicros);
+    }
+
+    Snapshot snapshot(boolean reset) {
+      long[] intervalCounts = new long[BUCKET_COUNT];
+      long count = 0L;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        long current = counts.get(i);
+        intervalCounts[i] = current - countsAtReset[i];
+        count += intervalCounts[i];
+        if (reset) countsAtReset[i] = current;
+      }
+      long currentSum = sum.get();
+      long intervalSum = currentSum - sumAtReset;
+      if (reset) sumAtReset = currentSum;
+      return new Snapshot(this, intervalCounts, count, intervalSum);
+    }
+  }
+
+  /**
+   * Durations recorded in an interval for one local service name, kind and span name.
+   *
+   * @since 5.14
+   */
+  public static final class Snapshot {
+    @Nullable final String localServiceName, name;
+    @Nullable final Kind kind;
+    final long[] counts;
+    final long count, sumMicros;
+
+    Snapshot(Histogram histogram, long[] counts, long count, long sumMicros) {
+      this.localServiceName = histogram.localServiceName;
+      this.kind = histogram.kind;
+      this.name = histogram.name;
+      this.counts = counts;
+      this.count = count;
+      this.sumMicros = sumMicros;
+    }
+
+    /** @see MutableSpan#localServiceName() */
+    @Nullable public String localServiceName() {
+      return localServiceName;
+    }
+
+    /** @see MutableSpan#kind() */
+    @Nullable public Kind kind() {
+      return kind;
+    }
+
+    /** @see MutableSpan#name() */
+    @Nullable public String name() {
+      return name;
+    }
+
+    /** Count of spans recorded. */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * Sum of all durations in microseconds. This may be slightly inconsistent with {@link
+     * #count()} when spans were recorded concurrently with the snapshot.
+     */
+    public long sumMicros() {
+      return sumMicros;
+    }
+
+    /** Mean duration in microseconds, or zero if there were no spans. */
+    public double meanMicros() {
+      return count == 0L ? 0.0 : (double) sumMicros / count;
+    }
+
+    /**
+     * Returns the duration in microseconds which the given percentage of spans didn't exceed. The
+     * result is the upper bound of a bucket, so is up to 6.25% more than the exact value.
+     *
+     * @param percentile between 0 and 100, for example 99.9
+     */
+    public long valueAtPercentile(double percentile) {
+      if (percentile < 0.0 || percentile > 100.0) {
+        throw new IllegalArgumentException("percentile should be between 0 and 100");
+      }
+      if (count == 0L) return 0L;
+      long countAtPercentile = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+      long seen = 0L;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= countAtPercentile) return bucketUpperBound(i);
+      }
+      return maxMicros();
+    }
+
+    /** Upper bound of the largest duration in microseconds, or zero if there were no spans. */
+    public long maxMicros() {
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] != 0L) return bucketUpperBound(i);
+      }
+      return 0L;
+    }
+
+    @Override public String toString() {
+      return "Snapshot{localServiceName=" + localServiceName + ", kind=" + kind
+        + ", name=" + name + ", count=" + count + ", p50=" + valueAtPercentile(50.0)
+        + ", p99=" + valueAtPercentile(99.0) + ", max=" + maxMicros() + "}";
+    }
+  }
+
+  @Override public String toString() {
+    return "LatencyHistogramSpanHandler{maxKeys=" + maxKeys + "}";
+  }
+}
@@ -17,6 +17,7 @@ import brave.Span.Kind;
 import brave.SpanCustomizer;
 import brave.Tags;
 import brave.handler.MutableSpanBytesEncoder.ZipkinJsonV2;
+import brave.internal.InternalMutableSpan;
 import brave.internal.Nullable;
 import brave.internal.RecyclableBuffers;
 import brave.internal.codec.IpLiteral;
@@ -90,8 +91,18 @@ import static brave.internal.codec.JsonWriter.UTF_8;
  */
 public final class MutableSpan implements Cloneable {
   static final Object[] EMPTY_ARRAY = new Object[0];
+  static final long[] EMPTY_LONG_ARRAY = new long[0];
+  static final String[] EMPTY_STRING_ARRAY = new String[0];
   static final MutableSpan EMPTY = new MutableSpan();
 
+  static {
+    InternalMutableSpan.instance = new InternalMutableSpan() {
+      @Override public void reset(MutableSpan span, TraceContext context, MutableSpan defaults) {
+        span.reset(context, defaults);
+      }
+    };
+  }
+
   /** @since 5.4 */
   public interface TagConsumer<T> {
     /** @see brave.SpanCustomizer#tag(String, String) */
@@ -137,12 +148,15 @@ public final class MutableSpan implements Cloneable {
   Throwable error;
 
   //
-  // The below use object arrays instead of ArrayList. The intent is not for safe sharing
-  // (copy-on-write), as this type is externally synchronized. In other words, this isn't
-  // copy-on-write. We just grow arrays as we need to similar to how ArrayList does it.
+  // The below use arrays instead of ArrayList. The intent is not for safe sharing (copy-on-write),
+  // as this type is externally synchronized. In other words, this isn't copy-on-write. We just grow
+  // arrays as we need to similar to how ArrayList does it.
   //
-  // tags [(key, value)] annotations [(timestamp, value)]
-  Object[] tags = EMPTY_ARRAY, annotations = EMPTY_ARRAY;
+  // tags [(key, value)] are sized by TagCapacityHints, so that spans of the same name usually
+  // allocate their tags once. Annotations are parallel arrays, so that timestamps aren't boxed.
+  Object[] tags = EMPTY_ARRAY;
+  long[] annotationTimestamps = EMPTY_LONG_ARRAY;
+  String[] annotationValues = EMPTY_STRING_ARRAY;
   int tagCount, annotationCount;
 
   /** @since 5.4 */
@@ -192,7 +206,8 @@ public final class MutableSpan implements Cloneable {
     // In case this is a default span, don't hold a reference to the same array!
     tags = copy(toCopy.tags);
     tagCount = toCopy.tagCount;
-    annotations = copy(toCopy.annotations);
+    annotationTimestamps = copy(toCopy.annotationTimestamps);
+    annotationValues = copy(toCopy.annotationValues);
     annotationCount = toCopy.annotationCount;
     error = toCopy.error;
   }
@@ -609,7 +624,7 @@ public final class MutableSpan implements Cloneable {
     // IndexOutOfBoundsException(i) is Java 9+
     if (i < 0) throw new IndexOutOfBoundsException("i < 0");
     if (i >= annotationCount) throw new IndexOutOfBoundsException("i >= annotationCount");
-    return (long) annotations[i * 2];
+    return annotationTimestamps[i];
   }
 
   /**
@@ -624,7 +639,7 @@ public final class MutableSpan implements Cloneable {
     // IndexOutOfBoundsException(i) is Java 9+
     if (i < 0) throw new IndexOutOfBoundsException("i < 0");
     if (i >= annotationCount) throw new IndexOutOfBoundsException("i >= annotationCount");
-    return (String) annotations[i * 2 + 1];
+    return annotationValues[i];
   }
 
   /**
@@ -635,7 +650,12 @@ public final class MutableSpan implements Cloneable {
    * @since 5.12
    */
   public Collection<Map.Entry<Long, String>> annotations() {
-    return UnsafeArrayMap.<Long, String>newBuilder().build(annotations).entrySet();
+    Object[] entries = new Object[annotationCount * 2];
+    for (int i = 0; i < annotationCount; i++) {
+      entries[i * 2] = annotationTimestamps[i];
+      entries[i * 2 + 1] = annotationValues[i];
+    }
+    return UnsafeArrayMap.<Long, String>newBuilder().build(entries).entrySet();
   }
 
   /**
@@ -657,9 +677,8 @@ public final class MutableSpan implements Cloneable {
    * @since 5.4
    */
   public <T> void forEachAnnotation(AnnotationConsumer<T> annotationConsumer, T target) {
-    for (int i = 0, length = annotationCount * 2; i < length; i += 2) {
-      long timestamp = (long) annotations[i];
-      annotationConsumer.accept(target, timestamp, annotations[i + 1].toString());
+    for (int i = 0; i < annotationCount; i++) {
+      annotationConsumer.accept(target, annotationTimestamps[i], annotationValues[i]);
     }
   }
 
@@ -680,16 +699,13 @@ public final class MutableSpan implements Cloneable {
    * @since 5.4
    */
   public void forEachAnnotation(AnnotationUpdater annotationUpdater) {
-    for (int i = 0, length = annotationCount * 2; i < length; i += 2) {
-      String value = annotations[i + 1].toString();
-      String newValue = annotationUpdater.update((long) annotations[i], value);
+    for (int i = 0; i < annotationCount; i++) {
+      String newValue = annotationUpdater.update(annotationTimestamps[i], annotationValues[i]);
       if (newValue != null) {
-        update(annotations, i, newValue);
+        annotationValues[i] = newValue;
       } else {
-        remove(annotations, i);
-        length -= 2;
-        annotationCount--;
-        i -= 2;
+        removeAnnotation(i);
+        i--;
       }
     }
   }
@@ -703,8 +719,8 @@ public final class MutableSpan implements Cloneable {
    */
   public boolean containsAnnotation(String value) {
     if (value == null) throw new NullPointerException("value == null");
-    for (int i = 0, length = annotationCount * 2; i < length; i += 2) {
-      if (value.equals(annotations[i + 1])) return true;
+    for (int i = 0; i < annotationCount; i++) {
+      if (value.equals(annotationValues[i])) return true;
     }
     return false;
   }
@@ -719,8 +735,14 @@ public final class MutableSpan implements Cloneable {
   public void annotate(long timestamp, String value) {
     if (value == null) throw new NullPointerException("value == null");
     if (timestamp == 0L) return; // silently ignore data Zipkin would drop
-    annotations =
-      add(annotations, annotationCount * 2, timestamp, value); // Annotations are always add.
+    int i = annotationCount; // Annotations are always add.
+    if (i == annotationValues.length) {
+      int capacity = i == 0 ? 2 : i * 2;
+      annotationTimestamps = Arrays.copyOf(annotationTimestamps, capacity);
+      annotationValues = Arrays.copyOf(annotationValues, capacity);
+    }
+    annotationTimestamps[i] = timestamp;
+    annotationValues[i] = value;
     annotationCount++;
   }
 
@@ -885,7 +907,9 @@ public final class MutableSpan implements Cloneable {
         return;
       }
     }
-    tags = add(tags, i, key, value);
+    if (i == tags.length) growTags();
+    tags[i] = key;
+    tags[i + 1] = value;
     tagCount++;
   }
 
@@ -929,7 +953,7 @@ public final class MutableSpan implements Cloneable {
     h *= 1000003;
     h ^= entriesHashCode(tags, tagCount);
     h *= 1000003;
-    h ^= entriesHashCode(annotations, annotationCount);
+    h ^= annotationsHashCode();
     h *= 1000003;
     h ^= error == null ? 0 : error.hashCode();
     return h;
@@ -958,20 +982,80 @@ public final class MutableSpan implements Cloneable {
       && equal(remoteIp, that.remoteIp)
       && remotePort == that.remotePort
       && entriesEqual(tags, tagCount, that.tags, that.tagCount)
-      && entriesEqual(annotations, annotationCount, that.annotations, that.annotationCount)
+      && annotationsEqual(that)
       && equal(error, that.error);
   }
 
-  static Object[] add(Object[] input, int i, Object key, Object value) {
-    Object[] result;
-    if (i == input.length) {
-      result = Arrays.copyOf(input, i + 2); // grow for one more entry
+  boolean annotationsEqual(MutableSpan that) {
+    if (annotationCount != that.annotationCount) return false;
+    for (int i = 0; i < annotationCount; i++) {
+      if (annotationTimestamps[i] != that.annotationTimestamps[i]) return false;
+      if (!annotationValues[i].equals(that.annotationValues[i])) return false;
+    }
+    return true;
+  }
+
+  int annotationsHashCode() {
+    int h = 1000003;
+    for (int i = 0; i < annotationCount; i++) {
+      long timestamp = annotationTimestamps[i];
+      h ^= (int) ((timestamp >>> 32) ^ timestamp);
+      h *= 1000003;
+      h ^= annotationValues[i].hashCode();
+      h *= 1000003;
+    }
+    return h;
+  }
+
+  void reset(TraceContext context, MutableSpan defaults) {
+    kind = defaults.kind;
+    startTimestamp = defaults.startTimestamp;
+    finishTimestamp = defaults.finishTimestamp;
+    name = defaults.name;
+    localServiceName = defaults.localServiceName;
+    localIp = defaults.localIp;
+    localPort = defaults.localPort;
+    remoteServiceName = defaults.remoteServiceName;
+    remoteIp = defaults.remoteIp;
+    remotePort = defaults.remotePort;
+    error = defaults.error;
+    tagCount = defaults.tagCount;
+    tags = reuse(tags, defaults.tags, tagCount * 2);
+    annotationCount = defaults.annotationCount;
+    if (annotationValues.length < annotationCount) {
+      annotationTimestamps = copy(defaults.annotationTimestamps);
+      annotationValues = copy(defaults.annotationValues);
     } else {
-      result = input;
+      System.arraycopy(defaults.annotationTimestamps, 0, annotationTimestamps, 0, annotationCount);
+      reuse(annotationValues, defaults.annotationValues, annotationCount);
     }
-    result[i] = key;
-    result[i + 1] = value;
-    return result;
+    // Same as the constructor: context wins over defaults
+    traceId = context.traceIdString();
+    localRootId = context.localRootIdString();
+    parentId = context.parentIdString();
+    id = context.spanIdString();
+    flags = 0;
+    if (context.debug()) setDebug();
+    if (context.shared()) setShared();
+  }
+
+  /**
+   * Grows tags to the size last needed by spans of the same name, or doubles them when that isn't
+   * enough. This avoids copying the array on each new tag.
+   */
+  void growTags() {
+    int needed = tagCount + 1;
+    int capacity = Math.max(TagCapacityHints.get(name), tagCount * 2);
+    if (capacity < needed) capacity = needed;
+    if (tagCount > 0) TagCapacityHints.record(name, needed); // the last size was too small
+    tags = Arrays.copyOf(tags, capacity * 2);
+  }
+
+  void removeAnnotation(int i) {
+    int last = --annotationCount;
+    System.arraycopy(annotationTimestamps, i + 1, annotationTimestamps, i, last - i);
+    System.arraycopy(annotationValues, i + 1, annotationValues, i, last - i);
+    annotationValues[last] = null;
   }
 
   // this is externally synchronized, so we can edit it directly
@@ -996,6 +1080,22 @@ public final class MutableSpan implements Cloneable {
     return input.length > 0 ? Arrays.copyOf(input, input.length) : EMPTY_ARRAY;
   }
 
+  /** Copies the source into the target, clearing any trailing entries, unless it is too small. */
+  static <T> T[] reuse(T[] target, T[] source, int length) {
+    if (target.length < length) return Arrays.copyOf(source, source.length);
+    System.arraycopy(source, 0, target, 0, length);
+    Arrays.fill(target, length, target.length, null);
+    return target;
+  }
+
+  static long[] copy(long[] input) {
+    return input.length > 0 ? Arrays.copyOf(input, input.length) : EMPTY_LONG_ARRAY;
+  }
+
+  static String[] copy(String[] input) {
+    return input.length > 0 ? Arrays.copyOf(input, input.length) : EMPTY_STRING_ARRAY;
+  }
+
   static boolean entriesEqual(Object[] left, int leftCount, Object[] right, int rightCount) {
     if (leftCount != rightCount) return false;
     for (int i = 0; i < leftCount * 2; i++) {
@@ -16,7 +16,9 @@ package brave.handler;
 import brave.Tag;
 import brave.internal.codec.JsonWriter;
 import brave.internal.codec.ZipkinV2JsonWriter;
+import brave.internal.codec.ZipkinV2Proto3Writer;
 import brave.internal.codec.WriteBuffer;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /** Similar to {@code zipkin2.MutableSpan.SpanBytesEncoder} except no Zipkin dependency. */
@@ -27,6 +29,20 @@ public abstract class MutableSpanBytesEncoder {
     return new ZipkinJsonV2(errorTag);
   }
 
+  /**
+   * Corresponds to the Zipkin Protocol Buffers v3 format, which is more compact than JSON.
+   *
+   * <p>Like {@code zipkin2.codec.SpanBytesEncoder.PROTO3}, a single span is encoded as a {@code
+   * ListOfSpans} of one. This means {@link #encodeList(List)} is a concatenation of the spans,
+   * without any prefix or delimiter.
+   *
+   * @since 5.14
+   */
+  public static MutableSpanBytesEncoder zipkinProto3(Tag<Throwable> errorTag) {
+    if (errorTag == null) throw new NullPointerException("errorTag == null");
+    return new ZipkinProto3(errorTag);
+  }
+
   public abstract int sizeInBytes(MutableSpan input);
 
   /** Serializes an object into its binary form. */
@@ -38,6 +54,82 @@ public abstract class MutableSpanBytesEncoder {
   /** Allows you to encode a list of spans onto a specific offset. For example, when nesting */
   public abstract int encodeList(List<MutableSpan> spans, byte[] out, int pos);
 
+  /**
+   * Encodes the span at the buffer's position, advancing it. Returns false, leaving the position
+   * unchanged, if the span doesn't fit before the buffer's limit.
+   *
+   * <p>The buffer can be {@linkplain ByteBuffer#allocateDirect(int) direct}. Built-in encoders
+   * write into it in a single pass, without computing the size or allocating an intermediate array.
+   *
+   * @since 5.14
+   */
+  public boolean encode(MutableSpan span, ByteBuffer out) {
+    byte[] encoded = encode(span);
+    if (out.remaining() < encoded.length) return false;
+    out.put(encoded);
+    return true;
+  }
+
+  /**
+   * Encodes a list of as many spans as fit into the buffer, starting with the one at {@code
+   * fromIndex}. Like {@link #encode(MutableSpan, ByteBuffer)}, built-in encoders write in a single
+   * pass, and the buffer can be direct.
+   *
+   * <p>Ex. to fill a pre-allocated direct buffer and write it to a socket:
+   * <pre>{@code
+   * for (int i = 0, length = spans.size(); i < length; ) {
+   *   int count = encoder.encodeList(spans, i, buffer);
+   *   if (count == 0) break; // the next span is larger than the buffer!
+   *   i += count;
+   *   buffer.flip();
+   *   while (buffer.hasRemaining()) channel.write(buffer);
+   *   buffer.clear();
+   * }
+   * }</pre>
+   *
+   * @return the count of spans written. When zero, the buffer's position is unchanged.
+   * @since 5.14
+   */
+  public int encodeList(List<MutableSpan> spans, int fromIndex, ByteBuffer out) {
+    int length = spans.size(), remaining = out.remaining();
+    int count = 0, sizeInBytes = emptyListSizeInBytes();
+    for (int i = fromIndex; i < length; i++, count++) {
+      sizeInBytes += listElementSizeInBytes(sizeInBytes(spans.get(i)), count == 0);
+      if (sizeInBytes > remaining) break;
+    }
+    if (count == 0) return 0;
+    out.put(encodeList(spans.subList(fromIndex, fromIndex + count)));
+    return count;
+  }
+
+  /**
+   * Returns the size of {@link #encodeList(List)} when the input is empty. Callers which batch
+   * spans, such as {@link AsyncSpanHandler}, use this with {@link #listElementSizeInBytes(int,
+   * boolean)} to size a list without encoding it.
+   *
+   * <p>The default is JSON array framing. Override this when {@link #encodeList(List)} uses a
+   * different format.
+   *
+   * @since 5.14
+   */
+  protected int emptyListSizeInBytes() {
+    return 2; // []
+  }
+
+  /**
+   * Returns the bytes {@link #encodeList(List)} adds for a span of the given {@link
+   * #sizeInBytes(MutableSpan) size}, including any delimiter.
+   *
+   * <p>The default adds a comma between JSON array elements. Override this when {@link
+   * #encodeList(List)} uses a different format.
+   *
+   * @param first true when the span will be the first in the list
+   * @since 5.14
+   */
+  protected int listElementSizeInBytes(int sizeInBytes, boolean first) {
+    return first ? sizeInBytes : sizeInBytes + 1; // comma to join elements
+  }
+
   /** Corresponds to the Zipkin JSON v2 format */
   static final class ZipkinJsonV2 extends MutableSpanBytesEncoder {
     final WriteBuffer.Writer<MutableSpan> writer;
@@ -61,5 +153,77 @@ public abstract class MutableSpanBytesEncoder {
     @Override public int encodeList(List<MutableSpan> spans, byte[] out, int pos) {
       return JsonWriter.writeList(writer, spans, out, pos);
     }
+
+    @Override public boolean encode(MutableSpan span, ByteBuffer out) {
+      return JsonWriter.write(writer, span, out);
+    }
+
+    @Override public int encodeList(List<MutableSpan> spans, int fromIndex, ByteBuffer out) {
+      return JsonWriter.writeList(writer, spans, fromIndex, out);
+    }
+  }
+
+  /** Corresponds to the Zipkin Protocol Buffers v3 format */
+  static final class ZipkinProto3 extends MutableSpanBytesEncoder {
+    final WriteBuffer.Writer<MutableSpan> writer;
+
+    ZipkinProto3(Tag<Throwable> errorTag) {
+      writer = new ZipkinV2Proto3Writer(errorTag);
+    }
+
+    @Override public int sizeInBytes(MutableSpan input) {
+      return writer.sizeInBytes(input);
+    }
+
+    @Override public byte[] encode(MutableSpan span) {
+      byte[] result = new byte[writer.sizeInBytes(span)];
+      writer.write(span, WriteBuffer.wrap(result));
+      return result;
+    }
+
+    @Override public byte[] encodeList(List<MutableSpan> spans) {
+      int sizeInBytes = 0;
+      for (int i = 0, length = spans.size(); i < length; i++) {
+        sizeInBytes += writer.sizeInBytes(spans.get(i));
+      }
+      byte[] result = new byte[sizeInBytes];
+      encodeList(spans, result, 0);
+      return result;
+    }
+
+    @Override public int encodeList(List<MutableSpan> spans, byte[] out, int pos) {
+      WriteBuffer b = WriteBuffer.wrap(out, pos);
+      for (int i = 0, length = spans.size(); i < length; i++) {
+        writer.write(spans.get(i), b);
+      }
+      return b.pos() - pos;
+    }
+
+    /** Nested messages are length-prefixed, so we check the size instead of overflowing. */
+    @Override public boolean encode(MutableSpan span, ByteBuffer out) {
+      if (out.remaining() < writer.sizeInBytes(span)) return false;
+      writer.write(span, WriteBuffer.wrap(out));
+      return true;
+    }
+
+    @Override public int encodeList(List<MutableSpan> spans, int fromIndex, ByteBuffer out) {
+      WriteBuffer b = null;
+      int i = fromIndex;
+      for (int length = spans.size(); i < length; i++) {
+        MutableSpan span = spans.get(i);
+        if (out.remaining() < writer.sizeInBytes(span)) break;
+        if (b == null) b = WriteBuffer.wrap(out);
+        writer.write(span, b);
+      }
+      return i - fromIndex;
+    }
+
+    @Override protected int emptyListSizeInBytes() {
+      return 0;
+    }
+
+    @Override protected int listElementSizeInBytes(int sizeInBytes, boolean first) {
+      return sizeInBytes; // no delimiter
+    }
   }
 }
@@ -129,6 +129,10 @@ public abstract class SpanHandler {
    * @since 5.12
    */
   public static final SpanHandler NOOP = new SpanHandler() {
+    @Override public boolean retainsSpans() {
+      return false;
+    }
+
     @Override public String toString() {
       return "NoopSpanHandler{}";
     }
@@ -185,4 +189,19 @@ public abstract class SpanHandler {
   public boolean handlesAbandoned() {
     return false;
   }
+
+  /**
+   * Returns {@code false} if this handler is done with the {@link MutableSpan} once {@link
+   * #end(TraceContext, MutableSpan, Cause)} returns. For example, a handler that synchronously
+   * encodes the span into bytes doesn't retain it, but a handler that queues the span does.
+   *
+   * <p>When all handlers return {@code false}, {@link Tracing.Builder#recycleSpans()} can reuse
+   * the span for a later one on the same thread. Do not return {@code false} if any reference to
+   * the span, or its tag and annotation collections, outlives the end callback.
+   *
+   * @since 5.14
+   */
+  public boolean retainsSpans() {
+    return true;
+  }
 }
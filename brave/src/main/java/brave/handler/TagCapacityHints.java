@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.internal.Nullable;
+
+/**
+ * Remembers the most tags needed by spans of a given name, so that {@link MutableSpan} can size
+ * its tag array once, instead of growing it as tags are added.
+ *
+ * <p>Span names are hashed into a small fixed table, so this never grows. Collisions only result
+ * in over-sizing. Reads and writes race benignly: the worst case is a span grows its tags again.
+ */
+final class TagCapacityHints {
+  static final int SIZE = 256, MAX_HINT = 64; // in tag count, not array length
+  static final byte[] HINTS = new byte[SIZE];
+
+  /** Returns the most tags needed by a span with this name, or zero if unknown. */
+  static int get(@Nullable String name) {
+    if (name == null) return 0;
+    return HINTS[index(name)];
+  }
+
+  static void record(@Nullable String name, int tagCount) {
+    if (name == null) return;
+    int i = index(name);
+    if (tagCount > HINTS[i]) HINTS[i] = (byte) Math.min(tagCount, MAX_HINT);
+  }
+
+  static int index(String name) {
+    int h = name.hashCode(); // cached by String
+    return (h ^ (h >>> 16)) & (SIZE - 1);
+  }
+
+  TagCapacityHints() {
+  }
+}
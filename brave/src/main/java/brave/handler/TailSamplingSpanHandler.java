@@ -0,0 +1,389 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Tags;
+import brave.Tracing;
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides whether to keep spans when their local root finishes, as opposed to when the trace
+ * starts. This allows keeping slow or failed requests even when only a small percentage of traces
+ * are sampled at the start.
+ *
+ * <p>Spans which are {@linkplain TraceContext#sampled() sampled remotely} are passed to the
+ * delegate immediately. Other spans are buffered by {@linkplain TraceContext#localRootId() local
+ * root}. When the local root finishes, all of its spans are passed to the delegate if any of these
+ * are true:
+ * <ul>
+ *   <li>The duration of the local root is at least {@link Builder#slowerThan(long, TimeUnit)}</li>
+ *   <li>{@link Builder#sampleErrors(boolean)} is set and any span has an error</li>
+ *   <li>Any span has a tag added with {@link Builder#addTagKey(String)}</li>
+ * </ul>
+ * Otherwise, the buffered spans are dropped. Kept spans are passed with a context marked {@link
+ * TraceContext#sampled() sampled}, so that the delegate needn't handle local sampling.
+ *
+ * <p>Only spans {@linkplain TraceContext#sampledLocal() sampled locally} are seen, so configure
+ * {@link Tracing.Builder#alwaysSampleLocal()}. Here's an example:
+ * <pre>{@code
+ * tailSampler = TailSamplingSpanHandler.newBuilder(zipkinSpanHandler)
+ *   .slowerThan(1, TimeUnit.SECONDS)
+ *   .maxBufferedBytes(16 * 1024 * 1024)
+ *   .build();
+ *
+ * tracing = Tracing.newBuilder()
+ *   .sampler(Sampler.create(0.01f))
+ *   .alwaysSampleLocal()
+ *   .addSpanHandler(tailSampler)
+ *   .build();
+ * }</pre>
+ *
+ * <h3>Memory</h3>
+ * The size of buffered spans is estimated from their data. When the estimate exceeds {@link
+ * Builder#maxBufferedBytes(long)}, or a local root is older than {@link
+ * Builder#maxBufferAge(long, TimeUnit)}, the oldest local roots are evicted. Their spans are
+ * dropped and counted in {@link #evictedSpans()}.
+ *
+ * <p>Spans which finish after their local root, such as asynchronous children, use the decision
+ * already made for it. Decisions are kept for the most recent local roots only, so a span which
+ * finishes long after its local root may be buffered until evicted instead.
+ *
+ * @since 5.14
+ */
+public final class TailSamplingSpanHandler extends SpanHandler {
+  /** @since 5.14 */
+  public static Builder newBuilder(SpanHandler delegate) {
+    return new Builder(delegate);
+  }
+
+  /** @since 5.14 */
+  public static final class Builder {
+    final SpanHandler delegate;
+    long slowerThanMicros = Long.MAX_VALUE;
+    boolean sampleErrors = true;
+    final Set<String> tagKeys = new LinkedHashSet<>();
+    long maxBufferedBytes = 8 * 1024 * 1024;
+    long maxBufferAgeNanos = TimeUnit.MINUTES.toNanos(1);
+
+    Builder(SpanHandler delegate) {
+      if (delegate == null) throw new NullPointerException("delegate == null");
+      this.delegate = delegate;
+    }
+
+    /** Keeps local roots whose duration is at least this. Default is to not consider duration. */
+    public Builder slowerThan(long duration, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (duration < 0) throw new IllegalArgumentException("duration < 0");
+      this.slowerThanMicros = unit.toMicros(duration);
+      return this;
+    }
+
+    /**
+     * Keeps local roots when any of their spans have an {@link MutableSpan#error() error} or
+     * {@linkplain Tags#ERROR "error" tag}. Default true.
+     */
+    public Builder sampleErrors(boolean sampleErrors) {
+      this.sampleErrors = sampleErrors;
+      return this;
+    }
+
+    /** Keeps local roots when any of their spans have a tag with this key, regardless of value. */
+    public Builder addTagKey(String tagKey) {
+      if (tagKey == null) throw new NullPointerException("tagKey == null");
+      this.tagKeys.add(tagKey);
+      return this;
+    }
+
+    /** Upper bound of the estimated size of buffered spans. Default 8MiB. */
+    public Builder maxBufferedBytes(long maxBufferedBytes) {
+      if (maxBufferedBytes < 1) throw new IllegalArgumentException("maxBufferedBytes < 1");
+      this.maxBufferedBytes = maxBufferedBytes;
+      return this;
+    }
+
+    /** Local roots which haven't finished after this long are evicted. Default 1 minute. */
+    public Builder maxBufferAge(long maxBufferAge, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (maxBufferAge < 1) throw new IllegalArgumentException("maxBufferAge < 1");
+      this.maxBufferAgeNanos = unit.toNanos(maxBufferAge);
+      return this;
+    }
+
+    public TailSamplingSpanHandler build() {
+      return new TailSamplingSpanHandler(this);
+    }
+  }
+
+  /** Estimated size of a buffered local root, excluding its spans. */
+  static final int LOCAL_ROOT_OVERHEAD = 96;
+  /** Count of recent decisions kept for spans which finish after their local root. */
+  static final int DECISION_CACHE_SIZE = 1024; // power of two
+
+  final SpanHandler delegate;
+  final long slowerThanMicros;
+  final boolean sampleErrors;
+  final String[] tagKeys;
+  final long maxBufferedBytes, maxBufferAgeNanos;
+
+  final ConcurrentMap<Long, LocalRoot> localRoots = new ConcurrentHashMap<>();
+  /** Local roots in the order they were added. Finished ones are removed once at the head. */
+  final ConcurrentLinkedQueue<LocalRoot> queue = new ConcurrentLinkedQueue<>();
+  final AtomicLong bufferedBytes = new AtomicLong(), evictedSpans = new AtomicLong(),
+    sampledLocalRoots = new AtomicLong(), notSampledLocalRoots = new AtomicLong();
+  /**
+   * Direct-mapped caches of recently decided local root IDs, one per decision. A slot holds a
+   * whole ID, so readers never see a torn entry, and a collision only forgets an older decision.
+   */
+  final AtomicLongArray sampledIds = new AtomicLongArray(DECISION_CACHE_SIZE),
+    notSampledIds = new AtomicLongArray(DECISION_CACHE_SIZE);
+
+  TailSamplingSpanHandler(Builder builder) {
+    delegate = builder.delegate;
+    slowerThanMicros = builder.slowerThanMicros;
+    sampleErrors = builder.sampleErrors;
+    tagKeys = builder.tagKeys.toArray(new String[0]);
+    maxBufferedBytes = builder.maxBufferedBytes;
+    maxBufferAgeNanos = builder.maxBufferAgeNanos;
+  }
+
+  @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+    if (cause == Cause.ABANDONED) return true;
+    if (Boolean.TRUE.equals(context.sampled())) return delegate.end(context, span, cause);
+
+    // When not created by a tracer, there's no local root ID, so treat the span as its own root.
+    long localRootId = context.localRootId() != 0L ? context.localRootId() : context.spanId();
+    long nanoTime = System.nanoTime();
+    if (context.spanId() == localRootId) {
+      finishLocalRoot(localRootId, context, span, cause);
+    } else {
+      buffer(localRootId, context, span, cause, nanoTime);
+    }
+    evict(nanoTime);
+    return true;
+  }
+
+  void buffer(long localRootId, TraceContext context, MutableSpan span, Cause cause,
+    long nanoTime) {
+    Long key = localRootId;
+    LocalRoot localRoot = localRoots.get(key);
+    if (localRoot == null) {
+      // The local root may have finished already, so use its decision instead of buffering.
+      int slot = decisionSlot(localRootId);
+      if (sampledIds.get(slot) == localRootId) {
+        delegate.end(sampledContext(context), span, cause);
+        return;
+      } else if (notSampledIds.get(slot) == localRootId) {
+        return;
+      }
+      LocalRoot newLocalRoot = new LocalRoot(localRootId, nanoTime);
+      localRoot = localRoots.putIfAbsent(key, newLocalRoot);
+      if (localRoot == null) {
+        localRoot = newLocalRoot;
+        bufferedBytes.addAndGet(LOCAL_ROOT_OVERHEAD);
+        queue.add(newLocalRoot);
+      }
+    }
+
+    long sizeInBytes = estimateSizeInBytes(span);
+    boolean sampled, evicted;
+    synchronized (localRoot) {
+      if (!localRoot.done) {
+        localRoot.add(context, span, cause, sizeInBytes);
+        bufferedBytes.addAndGet(sizeInBytes);
+        return;
+      }
+      sampled = localRoot.sampled;
+      evicted = localRoot.evicted;
+    }
+    // We lost a race with the local root finishing or being evicted. Rather than re-buffer a span
+    // we'd never decide on, use the decision already made.
+    if (sampled) {
+      delegate.end(sampledContext(context), span, cause);
+    } else if (evicted) {
+      evictedSpans.incrementAndGet();
+    }
+  }
+
+  void finishLocalRoot(long localRootId, TraceContext context, MutableSpan span, Cause cause) {
+    Long key = localRootId;
+    LocalRoot localRoot = localRoots.get(key);
+    List<Object> buffered = Collections.emptyList();
+    boolean sampled;
+    if (localRoot != null) {
+      synchronized (localRoot) {
+        if (!localRoot.done) {
+          buffered = localRoot.spans;
+          bufferedBytes.addAndGet(-localRoot.sizeInBytes);
+        }
+        sampled = localRoot.sampled = isSampled(span, buffered);
+        localRoot.done = true;
+        localRoot.spans = Collections.emptyList();
+      }
+    } else {
+      sampled = isSampled(span, buffered);
+    }
+    // Record the decision before removing the buffer, so a late child sees one or the other.
+    (sampled ? sampledIds : notSampledIds).set(decisionSlot(localRootId), localRootId);
+    if (localRoot != null) localRoots.remove(key, localRoot);
+
+    if (!sampled) {
+      notSampledLocalRoots.incrementAndGet();
+      return;
+    }
+    sampledLocalRoots.incrementAndGet();
+    for (int i = 0, length = buffered.size(); i < length; i += 3) {
+      delegate.end(sampledContext((TraceContext) buffered.get(i)),
+        (MutableSpan) buffered.get(i + 1), (Cause) buffered.get(i + 2));
+    }
+    delegate.end(sampledContext(context), span, cause);
+  }
+
+  /**
+   * Removes local roots from the head of the queue while they are finished, or while over the
+   * size or age limits.
+   */
+  void evict(long nanoTime) {
+    LocalRoot oldest;
+    while ((oldest = queue.peek()) != null) {
+      boolean overLimit = bufferedBytes.get() > maxBufferedBytes
+        || nanoTime - oldest.addedNanoTime > maxBufferAgeNanos;
+      if (!oldest.done && !overLimit) return;
+
+      oldest = queue.poll(); // possibly a different instance, if we raced with another thread
+      if (oldest == null) return;
+      bufferedBytes.addAndGet(-LOCAL_ROOT_OVERHEAD);
+      localRoots.remove(oldest.localRootId, oldest);
+      synchronized (oldest) {
+        if (oldest.done) continue;
+        oldest.done = oldest.evicted = true;
+        bufferedBytes.addAndGet(-oldest.sizeInBytes);
+        evictedSpans.addAndGet(oldest.spans.size() / 3);
+        oldest.spans = Collections.emptyList();
+      }
+    }
+  }
+
+  static int decisionSlot(long localRootId) {
+    return (int) (localRootId ^ (localRootId >>> 32)) & (DECISION_CACHE_SIZE - 1);
+  }
+
+  boolean isSampled(MutableSpan localRoot, List<Object> buffered) {
+    long startTimestamp = localRoot.startTimestamp();
+    if (startTimestamp != 0L && localRoot.finishTimestamp() - startTimestamp >= slowerThanMicros) {
+      return true;
+    }
+    if (isSampled(localRoot)) return true;
+    for (int i = 1, length = buffered.size(); i < length; i += 3) {
+      if (isSampled((MutableSpan) buffered.get(i))) return true;
+    }
+    return false;
+  }
+
+  boolean isSampled(MutableSpan span) {
+    if (sampleErrors && (span.error() != null || span.tag(Tags.ERROR.key()) != null)) return true;
+    for (String tagKey : tagKeys) {
+      if (span.tag(tagKey) != null) return true;
+    }
+    return false;
+  }
+
+  static TraceContext sampledContext(TraceContext context) {
+    if (Boolean.TRUE.equals(context.sampled())) return context;
+    return context.toBuilder().sampled(true).build();
+  }
+
+  /** Approximates retained heap, assuming strings aren't shared with other spans. */
+  static long estimateSizeInBytes(MutableSpan span) {
+    long result = 160; // MutableSpan, its identifiers and buffer entries
+    result += sizeInBytes(span.name());
+    result += sizeInBytes(span.localServiceName());
+    result += sizeInBytes(span.localIp());
+    result += sizeInBytes(span.remoteServiceName());
+    result += sizeInBytes(span.remoteIp());
+    for (int i = 0, length = span.tagCount(); i < length; i++) {
+      result += 16 + sizeInBytes(span.tagKeyAt(i)) + sizeInBytes(span.tagValueAt(i));
+    }
+    for (int i = 0, length = span.annotationCount(); i < length; i++) {
+      result += 24 + sizeInBytes(span.annotationValueAt(i));
+    }
+    return result;
+  }
+
+  static long sizeInBytes(@Nullable String string) {
+    return string == null ? 0L : 40L + 2L * string.length();
+  }
+
+  /** Returns the current estimated size of buffered spans, including bookkeeping. */
+  public long bufferedBytes() {
+    return bufferedBytes.get();
+  }
+
+  /** Returns an estimate of local roots with spans waiting for a decision. */
+  public int bufferedLocalRoots() {
+    return localRoots.size();
+  }
+
+  /** Returns the count of spans dropped as they were buffered too long or used too much memory. */
+  public long evictedSpans() {
+    return evictedSpans.get();
+  }
+
+  /** Returns the count of local roots whose spans were passed to the delegate. */
+  public long sampledLocalRoots() {
+    return sampledLocalRoots.get();
+  }
+
+  /** Returns the count of local roots whose spans were dropped, as they didn't match. */
+  public long notSampledLocalRoots() {
+    return notSampledLocalRoots.get();
+  }
+
+  @Override public String toString() {
+    return "TailSamplingSpanHandler{delegate=" + delegate + "}";
+  }
+
+  static final class LocalRoot {
+    final long localRootId, addedNanoTime;
+
+    // Guarded by this
+    /** Flattened triples of context, span and cause, to avoid allocating an entry per span. */
+    List<Object> spans = new ArrayList<>();
+    long sizeInBytes;
+    boolean done, evicted, sampled;
+
+    LocalRoot(long localRootId, long addedNanoTime) {
+      this.localRootId = localRootId;
+      this.addedNanoTime = addedNanoTime;
+    }
+
+    void add(TraceContext context, MutableSpan span, Cause cause, long sizeInBytes) {
+      spans.add(context);
+      spans.add(span);
+      spans.add(cause);
+      this.sizeInBytes += sizeInBytes;
+    }
+  }
+}
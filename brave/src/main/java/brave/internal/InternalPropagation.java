@@ -75,4 +75,10 @@ public abstract class InternalPropagation {
 
   /** {@link brave.propagation.TraceContext} is immutable so you need to read the result */
   public abstract TraceContext withFlags(TraceContext context, int flags);
+
+  /**
+   * Copies any ID strings the source already computed into a new context, when the IDs match. Call
+   * this before the context is shared with other threads.
+   */
+  public abstract void inheritIdStrings(TraceContext context, TraceContext source);
 }
@@ -16,6 +16,9 @@ package brave.internal;
 public final class RecyclableBuffers {
 
   private static final ThreadLocal<char[]> PARSE_BUFFER = new ThreadLocal<>();
+  private static final ThreadLocal<StringBuilder> STRING_BUILDER = new ThreadLocal<>();
+  // Don't retain buffers grown by unusually large values
+  static final int MAX_RETAINED_STRING_BUILDER_CAPACITY = 8192;
 
   /**
    * Returns a {@link ThreadLocal} reused {@code char[]} for use when decoding bytes into an ID hex
@@ -31,6 +34,20 @@ public final class RecyclableBuffers {
     return idBuffer;
   }
 
+  /**
+   * Returns a {@link ThreadLocal} reused and empty {@link StringBuilder}, such as for encoding
+   * header values. The result should be copied into a {@link String} within the same method.
+   */
+  public static StringBuilder stringBuilder() {
+    StringBuilder result = STRING_BUILDER.get();
+    if (result == null || result.capacity() > MAX_RETAINED_STRING_BUILDER_CAPACITY) {
+      result = new StringBuilder(128);
+      STRING_BUILDER.set(result);
+    }
+    result.setLength(0);
+    return result;
+  }
+
   private RecyclableBuffers() {
   }
 }
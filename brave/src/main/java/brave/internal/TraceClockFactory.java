@@ -0,0 +1,25 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal;
+
+import brave.Clock;
+
+/**
+ * Implemented by a {@link Clock} which decides the clock used by all spans in a new local root.
+ * Otherwise, the clock is read once per local root, and spans tick from {@link System#nanoTime()}.
+ */
+public interface TraceClockFactory {
+  /** Returns the clock to use for all spans in a new local root. */
+  Clock traceClock();
+}
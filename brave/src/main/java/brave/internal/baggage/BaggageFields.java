@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Holds one or more baggage fields in {@link TraceContext#extra()} or {@link
@@ -43,14 +44,40 @@ public final class BaggageFields
       UnsafeArrayMap.<String, String>newBuilder().mapKeys(FIELD_TO_NAME);
 
   public static Factory newFactory(List<BaggageField> fields, int maxDynamicEntries) {
+    return newFactory(fields, Collections.<BaggageField>emptySet(), maxDynamicEntries);
+  }
+
+  /**
+   * @param localFields subset of {@code fields} which are never propagated remotely, so are skipped
+   * by {@link #forEachRemoteValue(ValueConsumer, Object)}.
+   */
+  public static Factory newFactory(List<BaggageField> fields, Set<BaggageField> localFields,
+      int maxDynamicEntries) {
     if (fields == null) throw new NullPointerException("fields == null");
+    if (localFields == null) throw new NullPointerException("localFields == null");
     FactoryBuilder builder = new FactoryBuilder();
-    for (BaggageField field : fields) builder.addInitialKey(field);
+    builder.isLocal = new boolean[fields.size()];
+    for (int i = 0, length = fields.size(); i < length; i++) {
+      BaggageField field = fields.get(i);
+      builder.addInitialKey(field);
+      builder.isLocal[i] = localFields.contains(field);
+    }
     return builder.maxDynamicEntries(maxDynamicEntries).build();
   }
 
+  /**
+   * Receives each remote field and its non-{@code null} value, in order.
+   *
+   * @see #forEachRemoteValue(ValueConsumer, Object)
+   */
+  public interface ValueConsumer<T> {
+    void accept(T target, BaggageField field, String value);
+  }
+
   static final class FactoryBuilder extends
       MapExtraFactory.Builder<BaggageField, String, BaggageFields, Factory, FactoryBuilder> {
+    boolean[] isLocal;
+
     @Override protected Factory build() {
       return new Factory(this);
     }
@@ -58,8 +85,12 @@ public final class BaggageFields
 
   public static final class Factory
       extends MapExtraFactory<BaggageField, String, BaggageFields, Factory> {
+    /** Indexed by the initial state position of a field divided by two. */
+    final boolean[] isLocal;
+
     Factory(FactoryBuilder builder) {
       super(builder);
+      isLocal = builder.isLocal;
     }
 
     @Override public BaggageFields create() {
@@ -79,6 +110,27 @@ public final class BaggageFields
     return put(field, value);
   }
 
+  /** Like {@link #updateValue(BaggageField, String)}, except copies the state at most once. */
+  public boolean updateValues(Map<BaggageField, String> values) {
+    return putAll(values);
+  }
+
+  /**
+   * Passes each remote field with a non-{@code null} value to the {@code consumer}. Unlike {@link
+   * #toMapFilteringFieldNames(String...)}, this allocates nothing.
+   */
+  public <T> void forEachRemoteValue(ValueConsumer<T> consumer, T target) {
+    Object[] state = state();
+    boolean[] isLocal = factory.isLocal;
+    for (int i = 0; i < state.length; i += 2) {
+      if (state[i] == null) break; // end of keys
+      String value = (String) state[i + 1];
+      if (value == null) continue;
+      if (i / 2 < isLocal.length && isLocal[i / 2]) continue;
+      consumer.accept(target, (BaggageField) state[i], value);
+    }
+  }
+
   @Nullable public String getValue(BaggageField key) {
     return super.get(key);
   }
@@ -80,6 +80,18 @@ public final class ExtraBaggageContext extends BaggageContext {
     return updateValue(field, context.extra(), value);
   }
 
+  /** Returns false if all updates were ignored. */
+  public static boolean updateValues(TraceContextOrSamplingFlags extracted,
+    Map<BaggageField, String> values) {
+    if (extracted.context() != null) return updateValues(extracted.context(), values);
+    return updateValues(extracted.extra(), values);
+  }
+
+  /** Returns false if all updates were ignored. */
+  public static boolean updateValues(TraceContext context, Map<BaggageField, String> values) {
+    return updateValues(context.extra(), values);
+  }
+
   static List<BaggageField> getAllFields(List<Object> extraList) {
     BaggageFields extra = findExtra(BaggageFields.class, extraList);
     if (extra == null) return Collections.emptyList();
@@ -115,6 +127,11 @@ public final class ExtraBaggageContext extends BaggageContext {
     return extra != null && extra.updateValue(field, value);
   }
 
+  static boolean updateValues(List<Object> extraList, Map<BaggageField, String> values) {
+    BaggageFields extra = findExtra(BaggageFields.class, extraList);
+    return extra != null && extra.updateValues(values);
+  }
+
   public static <T> T findExtra(Class<T> type, List<Object> extra) {
     if (type == null) throw new NullPointerException("type == null");
     for (int i = 0, length = extra.size(); i < length; i++) {
@@ -21,7 +21,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-public final class SingleFieldBaggageCodec implements BaggageCodec {
+public final class SingleFieldBaggageCodec implements StreamingBaggageCodec {
   /** Only handles a single remote field. */
   public static SingleFieldBaggageCodec single(BaggageField field, Collection<String> keyNames) {
     if (field == null) throw new NullPointerException("field == null");
@@ -52,4 +52,9 @@ public final class SingleFieldBaggageCodec implements BaggageCodec {
   @Override public String encode(Map<String, String> values, TraceContext context, Object request) {
     return field.getValue(context);
   }
+
+  @Override public String encode(BaggageFields fields, TraceContext context, Object request,
+      StringBuilder buffer) {
+    return fields.getValue(field);
+  }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.baggage;
+
+import brave.internal.Nullable;
+import brave.propagation.Propagation.Setter;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContext.Injector;
+import java.util.Map;
+
+/**
+ * A {@link BaggageCodec} which encodes from {@link BaggageFields} directly, instead of via an
+ * intermediate {@link Map}.
+ *
+ * <p>When a codec implements this type, {@link BaggageCodec#encode(Map, TraceContext, Object)} is
+ * not called by {@link brave.baggage.BaggagePropagation}. Decoding is unchanged, as updating the
+ * fields directly was not faster than {@link
+ * BaggageCodec#decode(brave.baggage.BaggageField.ValueUpdater, Object, String)}.
+ *
+ * @since 5.14
+ */
+public interface StreamingBaggageCodec extends BaggageCodec {
+  /**
+   * Like {@link BaggageCodec#encode(Map, TraceContext, Object)}, except reads the {@code fields}
+   * directly, for example via {@link BaggageFields#forEachRemoteValue}.
+   *
+   * <p>The {@code buffer} is empty and reused across calls on the same thread. Only use it inside
+   * the encode method, and return a {@link String} copy of any result.
+   *
+   * @param context the parameter of {@link Injector#inject(TraceContext, Object)}
+   * @param request the parameter of {@link Injector#inject(TraceContext, Object)}
+   * @return an input to {@link Setter#put(Object, Object, String)}
+   */
+  @Nullable String encode(BaggageFields fields, TraceContext context, Object request,
+      StringBuilder buffer);
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A mutable {@link CharSequence} view over ASCII bytes, such as a binary header value. This allows
+ * parsers that accept {@link CharSequence} to read {@code byte[]} or {@link ByteBuffer} input
+ * without first decoding it into a {@link String}.
+ *
+ * <p>Use {@link #current()} to get a thread-local instance, and {@link #clear()} it in a finally
+ * block so that the input isn't retained. As the input is not copied, call {@link #toString()} on
+ * any value that outlives the view, such as a log parameter.
+ */
+public final class AsciiCharSequence implements CharSequence {
+  static final ThreadLocal<AsciiCharSequence> CURRENT = new ThreadLocal<AsciiCharSequence>() {
+    @Override protected AsciiCharSequence initialValue() {
+      return new AsciiCharSequence();
+    }
+  };
+
+  /** Returns a thread-local instance, which must be cleared after use. */
+  public static AsciiCharSequence current() {
+    return CURRENT.get();
+  }
+
+  byte[] array;
+  ByteBuffer buffer;
+  int offset, length;
+
+  /** Views the bytes between {@code beginIndex}, inclusive, and {@code endIndex}, exclusive. */
+  public AsciiCharSequence wrap(byte[] array, int beginIndex, int endIndex) {
+    if (array == null) throw new NullPointerException("array == null");
+    CharSequences.regionLength(array.length, beginIndex, endIndex);
+    this.array = array;
+    this.buffer = null;
+    this.offset = beginIndex;
+    this.length = endIndex - beginIndex;
+    return this;
+  }
+
+  /** Views the remaining bytes in the buffer, without changing its position. */
+  public AsciiCharSequence wrap(ByteBuffer buffer) {
+    if (buffer == null) throw new NullPointerException("buffer == null");
+    if (buffer.hasArray()) {
+      int beginIndex = buffer.arrayOffset() + buffer.position();
+      return wrap(buffer.array(), beginIndex, beginIndex + buffer.remaining());
+    }
+    this.array = null;
+    this.buffer = buffer;
+    this.offset = buffer.position();
+    this.length = buffer.remaining();
+    return this;
+  }
+
+  /** Releases any reference to the input. */
+  public void clear() {
+    array = null;
+    buffer = null;
+    offset = length = 0;
+  }
+
+  @Override public int length() {
+    return length;
+  }
+
+  @Override public char charAt(int index) {
+    if (index < 0) throw new IndexOutOfBoundsException("index < 0");
+    if (index >= length) throw new IndexOutOfBoundsException("index >= length");
+    byte b = array != null ? array[offset + index] : buffer.get(offset + index);
+    return (char) (b & 0xff);
+  }
+
+  @Override public CharSequence subSequence(int beginIndex, int endIndex) {
+    return toString().subSequence(beginIndex, endIndex);
+  }
+
+  @Override public String toString() {
+    char[] result = new char[length];
+    for (int i = 0; i < length; i++) result[i] = charAt(i);
+    return new String(result);
+  }
+}
@@ -15,7 +15,11 @@ package brave.internal.codec;
 
 import brave.internal.Platform;
 import brave.internal.codec.WriteBuffer.Writer;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.String.format;
@@ -24,15 +28,9 @@ import static java.lang.String.format;
 public final class JsonWriter {
   public static final Charset UTF_8 = Charset.forName("UTF-8");
 
-  static <T> int sizeInBytes(Writer<T> writer, List<T> value) {
-    int length = value.size();
-    int sizeInBytes = 2; // []
-    if (length > 1) sizeInBytes += length - 1; // comma to join elements
-    for (int i = 0; i < length; i++) {
-      sizeInBytes += writer.sizeInBytes(value.get(i));
-    }
-    return sizeInBytes;
-  }
+  /** Sized to hold a few typical spans, and capped so a huge batch isn't retained forever. */
+  static final int SCRATCH_INITIAL_CAPACITY = 8 * 1024, SCRATCH_MAX_RETAINED = 1024 * 1024;
+  static final ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<>();
 
   /** Inability to encode is a programming bug. */
   public static <T> byte[] write(Writer<T> writer, T value) {
@@ -64,10 +62,47 @@ public final class JsonWriter {
     return result;
   }
 
+  /**
+   * Writes the list in a single pass, without {@linkplain Writer#sizeInBytes(Object) sizing} each
+   * value first. Values are written into a per-thread scratch buffer, which doubles when a value
+   * overflows it, and the result is copied out. This means strings are only walked once, as they
+   * are escaped.
+   */
   public static <T> byte[] writeList(Writer<T> writer, List<T> value) {
     if (value.isEmpty()) return new byte[] {'[', ']'};
-    byte[] result = new byte[sizeInBytes(writer, value)];
-    writeList(writer, value, WriteBuffer.wrap(result));
+    ByteBuffer scratch = SCRATCH.get();
+    if (scratch != null) {
+      SCRATCH.set(null); // in case a writer encodes another list, ex via toString()
+      scratch.clear();
+    } else {
+      scratch = ByteBuffer.allocate(SCRATCH_INITIAL_CAPACITY);
+    }
+    scratch.put((byte) '[');
+    WriteBuffer b = WriteBuffer.wrap(scratch);
+    for (int i = 0, length = value.size(); i < length; i++) {
+      int elementPos = scratch.position();
+      while (true) {
+        try {
+          if (i > 0) b.writeByte(',');
+          writer.write(value.get(i), b);
+          break;
+        } catch (BufferOverflowException e) {
+          scratch = grow(scratch, elementPos); // then retry the value
+          b = WriteBuffer.wrap(scratch);
+        }
+      }
+    }
+    if (!scratch.hasRemaining()) scratch = grow(scratch, scratch.position());
+    scratch.put((byte) ']');
+    byte[] result = Arrays.copyOf(scratch.array(), scratch.position());
+    if (scratch.capacity() <= SCRATCH_MAX_RETAINED) SCRATCH.set(scratch);
+    return result;
+  }
+
+  /** Returns a buffer of double the capacity, positioned after the first length bytes copied. */
+  static ByteBuffer grow(ByteBuffer buffer, int length) {
+    ByteBuffer result = ByteBuffer.allocate(buffer.capacity() * 2);
+    result.put(buffer.array(), 0, length);
     return result;
   }
 
@@ -84,6 +119,60 @@ public final class JsonWriter {
     return result.pos() - initialPos;
   }
 
+  /**
+   * Writes the value at the buffer's position in a single pass, or returns false, leaving the
+   * position unchanged, if it doesn't fit.
+   */
+  public static <T> boolean write(Writer<T> writer, T value, ByteBuffer out) {
+    int initialPos = out.position();
+    try {
+      writer.write(value, WriteBuffer.wrap(out));
+      return true;
+    } catch (BufferOverflowException e) {
+      ((Buffer) out).position(initialPos); // cast as ByteBuffer.position(int) is Java 9+
+      return false;
+    }
+  }
+
+  /**
+   * Writes a list of as many values as fit into the buffer, starting with the one at {@code
+   * fromIndex}. Each value is written in a single pass: the last one that didn't fit is rolled
+   * back.
+   *
+   * @return the count of values written. When zero, the buffer's position is unchanged.
+   */
+  public static <T> int writeList(Writer<T> writer, List<T> values, int fromIndex,
+      ByteBuffer out) {
+    int length = values.size();
+    if (fromIndex >= length) return 0;
+    int initialPos = out.position();
+    if (out.remaining() < 3) return 0; // [] and at least one byte
+    WriteBuffer b = WriteBuffer.wrap(out);
+    b.writeByte('[');
+    int i = fromIndex;
+    for (; i < length; i++) {
+      int elementPos = out.position();
+      boolean fits;
+      try {
+        if (i > fromIndex) b.writeByte(',');
+        writer.write(values.get(i), b);
+        fits = out.hasRemaining(); // room for ]
+      } catch (BufferOverflowException e) {
+        fits = false;
+      }
+      if (!fits) {
+        ((Buffer) out).position(elementPos);
+        break;
+      }
+    }
+    if (i == fromIndex) {
+      ((Buffer) out).position(initialPos);
+      return 0;
+    }
+    b.writeByte(']');
+    return i - fromIndex;
+  }
+
   public static <T> void writeList(Writer<T> writer, List<T> value, WriteBuffer b) {
     b.writeByte('[');
     for (int i = 0, length = value.size(); i < length; ) {
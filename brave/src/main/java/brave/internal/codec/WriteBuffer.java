@@ -13,6 +13,11 @@
  */
 package brave.internal.codec;
 
+import brave.internal.Nullable;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import static brave.internal.codec.HexCodec.HEX_DIGITS;
 import static brave.internal.codec.JsonWriter.UTF_8;
 
@@ -20,6 +25,10 @@ import static brave.internal.codec.JsonWriter.UTF_8;
  * Writes are unsafe as they do no bounds checks. This means you should take care to allocate or
  * wrap an array at least as big as you need prior to writing. As it is possible to calculate size
  * prior to writing, overrunning a buffer is a programming error.
+ *
+ * <p>The exception is when {@linkplain #wrap(ByteBuffer) wrapping a ByteBuffer}, which may be
+ * direct. This writes at its position, and overrunning its limit raises {@link
+ * BufferOverflowException}. This allows encoding in a single pass, without knowing the size.
  */
 // Initially, a partial copy of zipkin2.internal.WriteBuffer
 public final class WriteBuffer {
@@ -37,25 +46,56 @@ public final class WriteBuffer {
     return new WriteBuffer(bytes, pos);
   }
 
+  /** Writes start at the buffer's position, which advances as bytes are written. */
+  public static WriteBuffer wrap(ByteBuffer buffer) {
+    if (buffer == null) throw new NullPointerException("buffer == null");
+    return new WriteBuffer(null, 0, buffer);
+  }
+
   final byte[] buf;
+  @Nullable final ByteBuffer nioBuf; // when set, buf and pos are unused
   int pos;
 
   WriteBuffer(byte[] buf, int pos) {
+    this(buf, pos, null);
+  }
+
+  WriteBuffer(byte[] buf, int pos, @Nullable ByteBuffer nioBuf) {
     this.buf = buf;
     this.pos = pos;
+    this.nioBuf = nioBuf;
   }
 
   public void writeByte(int v) {
+    if (nioBuf != null) {
+      nioBuf.put((byte) (v & 0xff));
+      return;
+    }
     buf[pos++] = (byte) (v & 0xff);
   }
 
   public void write(byte[] v) {
+    if (nioBuf != null) {
+      nioBuf.put(v);
+      return;
+    }
     System.arraycopy(v, 0, buf, pos, v.length);
     pos += v.length;
   }
 
   void writeBackwards(long v) {
-    int lastPos = pos + asciiSizeInBytes(v); // We write backwards from right to left.
+    int width = asciiSizeInBytes(v);
+    if (nioBuf != null) {
+      if (nioBuf.remaining() < width) throw new BufferOverflowException();
+      int lastPos = nioBuf.position() + width; // We write backwards from right to left.
+      ((Buffer) nioBuf).position(lastPos); // cast as ByteBuffer.position(int) is Java 9+
+      while (v != 0) {
+        nioBuf.put(--lastPos, (byte) HEX_DIGITS[(int) (v % 10)]);
+        v /= 10;
+      }
+      return;
+    }
+    int lastPos = pos + width; // We write backwards from right to left.
     pos = lastPos;
     while (v != 0) {
       int digit = (int) (v % 10);
@@ -64,8 +104,8 @@ public final class WriteBuffer {
     }
   }
 
-  final int pos() {
-    return pos;
+  public int pos() {
+    return nioBuf != null ? nioBuf.position() : pos;
   }
 
   public void writeAscii(CharSequence v) {
@@ -149,7 +189,32 @@ public final class WriteBuffer {
     writeBackwards(v);
   }
 
+  // Adapted from zipkin2.internal.WriteBuffer
+  public void writeVarint(int v) {
+    while ((v & ~0x7f) != 0) {
+      writeByte((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    writeByte(v);
+  }
+
+  public void writeVarint(long v) {
+    while ((v & ~0x7fL) != 0) {
+      writeByte((int) ((v & 0x7f) | 0x80));
+      v >>>= 7;
+    }
+    writeByte((int) v);
+  }
+
+  public void writeLongLe(long v) {
+    for (int i = 0; i < 8; i++) {
+      writeByte((int) (v & 0xff));
+      v >>= 8;
+    }
+  }
+
   @Override public String toString() {
+    if (nioBuf != null) return "WriteBuffer{" + nioBuf + "}";
     return new String(buf, 0, pos, UTF_8);
   }
 
@@ -194,6 +259,27 @@ public final class WriteBuffer {
     return sizeInBytes;
   }
 
+  public static int varintSizeInBytes(int v) {
+    if ((v & (0xffffffff << 7)) == 0) return 1;
+    if ((v & (0xffffffff << 14)) == 0) return 2;
+    if ((v & (0xffffffff << 21)) == 0) return 3;
+    if ((v & (0xffffffff << 28)) == 0) return 4;
+    return 5;
+  }
+
+  public static int varintSizeInBytes(long v) {
+    if ((v & (0xffffffffffffffffL << 7)) == 0) return 1;
+    if ((v & (0xffffffffffffffffL << 14)) == 0) return 2;
+    if ((v & (0xffffffffffffffffL << 21)) == 0) return 3;
+    if ((v & (0xffffffffffffffffL << 28)) == 0) return 4;
+    if ((v & (0xffffffffffffffffL << 35)) == 0) return 5;
+    if ((v & (0xffffffffffffffffL << 42)) == 0) return 6;
+    if ((v & (0xffffffffffffffffL << 49)) == 0) return 7;
+    if ((v & (0xffffffffffffffffL << 56)) == 0) return 8;
+    if ((v & (0xffffffffffffffffL << 63)) == 0) return 9;
+    return 10;
+  }
+
   /**
    * Binary search for character width which favors matching lower numbers.
    *
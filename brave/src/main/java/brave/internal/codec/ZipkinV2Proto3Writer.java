@@ -0,0 +1,370 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.codec;
+
+import brave.Span.Kind;
+import brave.Tag;
+import brave.handler.MutableSpan;
+import brave.internal.Nullable;
+
+import static brave.internal.codec.WriteBuffer.utf8SizeInBytes;
+import static brave.internal.codec.WriteBuffer.varintSizeInBytes;
+
+/**
+ * Writes a span in the <a href="https://github.com/openzipkin/zipkin-api/blob/master/zipkin.proto">
+ * zipkin.proto</a> format, without a dependency on a protobuf runtime.
+ *
+ * <p>Like {@code zipkin2.codec.SpanBytesEncoder.PROTO3}, each span is written as a {@code
+ * ListOfSpans.spans} field. This means a span is a valid list of one, and a list is the
+ * concatenation of its spans.
+ *
+ * <p>Unlike JSON, nested messages are length-prefixed, so sizes are always computed first.
+ */
+// Initially, a partial copy of zipkin2.internal.Proto3SpanWriter and Proto3ZipkinFields
+// @Immutable
+public final class ZipkinV2Proto3Writer implements WriteBuffer.Writer<MutableSpan> {
+  // Keys are (field number << 3 | wire type), where 0 is varint, 1 is fixed64 and 2 is length
+  static final int LIST_OF_SPANS_SPANS = 1 << 3 | 2;
+
+  static final int SPAN_TRACE_ID = 1 << 3 | 2;
+  static final int SPAN_PARENT_ID = 2 << 3 | 2;
+  static final int SPAN_ID = 3 << 3 | 2;
+  static final int SPAN_KIND = 4 << 3;
+  static final int SPAN_NAME = 5 << 3 | 2;
+  static final int SPAN_TIMESTAMP = 6 << 3 | 1;
+  static final int SPAN_DURATION = 7 << 3;
+  static final int SPAN_LOCAL_ENDPOINT = 8 << 3 | 2;
+  static final int SPAN_REMOTE_ENDPOINT = 9 << 3 | 2;
+  static final int SPAN_ANNOTATION = 10 << 3 | 2;
+  static final int SPAN_TAG = 11 << 3 | 2;
+  static final int SPAN_DEBUG = 12 << 3;
+  static final int SPAN_SHARED = 13 << 3;
+
+  static final int ENDPOINT_SERVICE_NAME = 1 << 3 | 2;
+  static final int ENDPOINT_IPV4 = 2 << 3 | 2;
+  static final int ENDPOINT_IPV6 = 3 << 3 | 2;
+  static final int ENDPOINT_PORT = 4 << 3;
+
+  static final int ANNOTATION_TIMESTAMP = 1 << 3 | 1;
+  static final int ANNOTATION_VALUE = 2 << 3 | 2;
+
+  static final int TAG_KEY = 1 << 3 | 2;
+  static final int TAG_VALUE = 2 << 3 | 2;
+
+  final Tag<Throwable> errorTag;
+
+  public ZipkinV2Proto3Writer(Tag<Throwable> errorTag) {
+    if (errorTag == null) throw new NullPointerException("errorTag == null");
+    this.errorTag = errorTag;
+  }
+
+  @Override public int sizeInBytes(MutableSpan span) {
+    return sizeOfLengthDelimitedField(spanSizeInBytes(span));
+  }
+
+  @Override public void write(MutableSpan span, WriteBuffer b) {
+    b.writeByte(LIST_OF_SPANS_SPANS);
+    b.writeVarint(spanSizeInBytes(span));
+    if (span.traceId() != null) writeHexField(b, SPAN_TRACE_ID, span.traceId());
+    if (span.parentId() != null) writeHexField(b, SPAN_PARENT_ID, span.parentId());
+    if (span.id() != null) writeHexField(b, SPAN_ID, span.id());
+    int kind = kind(span.kind());
+    if (kind != 0) {
+      b.writeByte(SPAN_KIND);
+      b.writeByte(kind);
+    }
+    if (span.name() != null) writeStringField(b, SPAN_NAME, span.name());
+    long startTimestamp = span.startTimestamp(), finishTimestamp = span.finishTimestamp();
+    if (startTimestamp != 0L) {
+      b.writeByte(SPAN_TIMESTAMP);
+      b.writeLongLe(startTimestamp);
+      if (finishTimestamp != 0L) {
+        b.writeByte(SPAN_DURATION);
+        b.writeVarint(finishTimestamp - startTimestamp);
+      }
+    }
+    writeEndpoint(b, SPAN_LOCAL_ENDPOINT,
+      span.localServiceName(), span.localIp(), span.localPort());
+    writeEndpoint(b, SPAN_REMOTE_ENDPOINT,
+      span.remoteServiceName(), span.remoteIp(), span.remotePort());
+    for (int i = 0, length = span.annotationCount(); i < length; i++) {
+      String value = span.annotationValueAt(i);
+      b.writeByte(SPAN_ANNOTATION);
+      b.writeVarint(annotationSizeInBytes(value));
+      b.writeByte(ANNOTATION_TIMESTAMP);
+      b.writeLongLe(span.annotationTimestampAt(i));
+      writeStringField(b, ANNOTATION_VALUE, value);
+    }
+    boolean foundError = false;
+    for (int i = 0, length = span.tagCount(); i < length; i++) {
+      String key = span.tagKeyAt(i);
+      if (!foundError && key.equals("error")) foundError = true;
+      writeTag(b, key, span.tagValueAt(i));
+    }
+    if (!foundError) {
+      String errorValue = errorTag.value(span.error(), null);
+      if (errorValue != null) writeTag(b, errorTag.key(), errorValue);
+    }
+    if (Boolean.TRUE.equals(span.debug())) {
+      b.writeByte(SPAN_DEBUG);
+      b.writeByte(1);
+    }
+    if (Boolean.TRUE.equals(span.shared())) {
+      b.writeByte(SPAN_SHARED);
+      b.writeByte(1);
+    }
+  }
+
+  int spanSizeInBytes(MutableSpan span) {
+    int sizeInBytes = 0;
+    if (span.traceId() != null) sizeInBytes += 2 + span.traceId().length() / 2;
+    if (span.parentId() != null) sizeInBytes += 2 + span.parentId().length() / 2;
+    if (span.id() != null) sizeInBytes += 2 + span.id().length() / 2;
+    if (kind(span.kind()) != 0) sizeInBytes += 2;
+    if (span.name() != null) sizeInBytes += sizeOfStringField(span.name());
+    long startTimestamp = span.startTimestamp(), finishTimestamp = span.finishTimestamp();
+    if (startTimestamp != 0L) {
+      sizeInBytes += 9;
+      if (finishTimestamp != 0L) {
+        sizeInBytes += 1 + varintSizeInBytes(finishTimestamp - startTimestamp);
+      }
+    }
+    int localEndpointSizeInBytes =
+      endpointSizeInBytes(span.localServiceName(), span.localIp(), span.localPort());
+    if (localEndpointSizeInBytes > 0) {
+      sizeInBytes += sizeOfLengthDelimitedField(localEndpointSizeInBytes);
+    }
+    int remoteEndpointSizeInBytes =
+      endpointSizeInBytes(span.remoteServiceName(), span.remoteIp(), span.remotePort());
+    if (remoteEndpointSizeInBytes > 0) {
+      sizeInBytes += sizeOfLengthDelimitedField(remoteEndpointSizeInBytes);
+    }
+    for (int i = 0, length = span.annotationCount(); i < length; i++) {
+      sizeInBytes += sizeOfLengthDelimitedField(annotationSizeInBytes(span.annotationValueAt(i)));
+    }
+    boolean foundError = false;
+    for (int i = 0, length = span.tagCount(); i < length; i++) {
+      String key = span.tagKeyAt(i);
+      if (!foundError && key.equals("error")) foundError = true;
+      sizeInBytes += sizeOfLengthDelimitedField(tagSizeInBytes(key, span.tagValueAt(i)));
+    }
+    if (!foundError) {
+      String errorValue = errorTag.value(span.error(), null);
+      if (errorValue != null) {
+        sizeInBytes += sizeOfLengthDelimitedField(tagSizeInBytes(errorTag.key(), errorValue));
+      }
+    }
+    if (Boolean.TRUE.equals(span.debug())) sizeInBytes += 2;
+    if (Boolean.TRUE.equals(span.shared())) sizeInBytes += 2;
+    return sizeInBytes;
+  }
+
+  static int kind(@Nullable Kind kind) {
+    if (kind == null) return 0;
+    switch (kind) {
+      case CLIENT:
+        return 1;
+      case SERVER:
+        return 2;
+      case PRODUCER:
+        return 3;
+      case CONSUMER:
+        return 4;
+      default:
+        return 0;
+    }
+  }
+
+  /** Returns zero when no fields would be written. */
+  static int endpointSizeInBytes(@Nullable String serviceName, @Nullable String ip, int port) {
+    return endpointSizeInBytes(serviceName, ipSizeInBytes(ip), port);
+  }
+
+  static int endpointSizeInBytes(@Nullable String serviceName, int ipSizeInBytes, int port) {
+    if (serviceName == null && ipSizeInBytes == 0) return 0;
+    int sizeInBytes = ipSizeInBytes;
+    if (serviceName != null) sizeInBytes += sizeOfStringField(serviceName);
+    if (port != 0) sizeInBytes += 1 + varintSizeInBytes(port);
+    return sizeInBytes;
+  }
+
+  /**
+   * Returns the size of the IP field, or zero when it is absent or not an IPv6 literal that
+   * expands to exactly 8 groups. Writing uses the same result, so sizes always match.
+   */
+  static int ipSizeInBytes(@Nullable String ip) {
+    if (ip == null) return 0;
+    if (isIpv4(ip)) return 6;
+    return isIpv6(ip) ? 18 : 0;
+  }
+
+  static void writeEndpoint(WriteBuffer b, int key,
+    @Nullable String serviceName, @Nullable String ip, int port) {
+    int ipSizeInBytes = ipSizeInBytes(ip);
+    int sizeInBytes = endpointSizeInBytes(serviceName, ipSizeInBytes, port);
+    if (sizeInBytes == 0) return;
+    b.writeByte(key);
+    b.writeVarint(sizeInBytes);
+    if (serviceName != null) writeStringField(b, ENDPOINT_SERVICE_NAME, serviceName);
+    if (ipSizeInBytes == 6) {
+      b.writeByte(ENDPOINT_IPV4);
+      b.writeByte(4);
+      writeIpv4(b, ip);
+    } else if (ipSizeInBytes == 18) {
+      b.writeByte(ENDPOINT_IPV6);
+      b.writeByte(16);
+      writeIpv6(b, ip);
+    }
+    if (port != 0) {
+      b.writeByte(ENDPOINT_PORT);
+      b.writeVarint(port);
+    }
+  }
+
+  static int annotationSizeInBytes(String value) {
+    return 9 + sizeOfStringField(value);
+  }
+
+  static int tagSizeInBytes(String key, String value) {
+    return sizeOfStringField(key) + sizeOfStringField(value);
+  }
+
+  static void writeTag(WriteBuffer b, String key, String value) {
+    b.writeByte(SPAN_TAG);
+    b.writeVarint(tagSizeInBytes(key, value));
+    writeStringField(b, TAG_KEY, key);
+    writeStringField(b, TAG_VALUE, value);
+  }
+
+  static int sizeOfLengthDelimitedField(int sizeInBytes) {
+    return 1 + varintSizeInBytes(sizeInBytes) + sizeInBytes;
+  }
+
+  static int sizeOfStringField(String value) {
+    return sizeOfLengthDelimitedField(utf8SizeInBytes(value));
+  }
+
+  static void writeStringField(WriteBuffer b, int key, String value) {
+    b.writeByte(key);
+    b.writeVarint(utf8SizeInBytes(value));
+    b.writeUtf8(value);
+  }
+
+  /** IDs are lower-hex, so they are written as their raw bytes: half the length. */
+  static void writeHexField(WriteBuffer b, int key, String lowerHex) {
+    int length = lowerHex.length();
+    b.writeByte(key);
+    b.writeByte(length / 2);
+    for (int i = 0; i < length; i += 2) {
+      b.writeByte(hexDigit(lowerHex.charAt(i)) << 4 | hexDigit(lowerHex.charAt(i + 1)));
+    }
+  }
+
+  static int hexDigit(char c) {
+    return c <= '9' ? c - '0' : (c | 0x20) - 'a' + 10;
+  }
+
+  /** {@link MutableSpan} IPs are valid literals, and IPv4-embedded IPv6 are already unwrapped. */
+  static boolean isIpv4(String ip) {
+    return ip.indexOf(':') == -1;
+  }
+
+  static void writeIpv4(WriteBuffer b, String ip) {
+    int octet = 0;
+    for (int i = 0, length = ip.length(); i < length; i++) {
+      char c = ip.charAt(i);
+      if (c == '.') {
+        b.writeByte(octet);
+        octet = 0;
+      } else {
+        octet = octet * 10 + (c - '0');
+      }
+    }
+    b.writeByte(octet);
+  }
+
+  /**
+   * {@link IpLiteral} only checks characters, so this checks the groups expand to exactly 8.
+   * Embedded IPv4 addresses are not expected, as {@link MutableSpan} already unwraps them.
+   */
+  static boolean isIpv6(String ip) {
+    int length = ip.length(), compressed = ip.indexOf("::");
+    if (compressed == -1) return ipv6GroupCount(ip, 0, length) == 8;
+    if (ip.indexOf("::", compressed + 1) != -1) return false; // only one "::" is allowed
+    int left = ipv6GroupCount(ip, 0, compressed);
+    int right = ipv6GroupCount(ip, compressed + 2, length);
+    return left != -1 && right != -1 && left + right < 8; // "::" is at least one zero group
+  }
+
+  /** Returns the count of 16-bit groups in the range, or -1 if any group is malformed. */
+  static int ipv6GroupCount(String ip, int beginIndex, int endIndex) {
+    if (beginIndex == endIndex) return 0;
+    int groups = 1, digits = 0;
+    for (int i = beginIndex; i < endIndex; i++) {
+      char c = ip.charAt(i);
+      if (c == ':') {
+        if (digits == 0) return -1;
+        groups++;
+        digits = 0;
+      } else if (++digits > 4 || !isHex(c)) {
+        return -1;
+      }
+    }
+    return digits == 0 ? -1 : groups;
+  }
+
+  static boolean isHex(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  /** Only call when {@link #isIpv6(String)} */
+  static void writeIpv6(WriteBuffer b, String ip) {
+    int length = ip.length(), compressed = ip.indexOf("::");
+    if (compressed == -1) {
+      writeIpv6Groups(b, ip, 0, length);
+      return;
+    }
+    int groups = writeIpv6Groups(b, ip, 0, compressed);
+    int rightStart = compressed + 2;
+    int rightGroups = 0;
+    if (rightStart < length) {
+      rightGroups = 1;
+      for (int i = rightStart; i < length; i++) {
+        if (ip.charAt(i) == ':') rightGroups++;
+      }
+    }
+    for (int i = groups + rightGroups; i < 8; i++) {
+      b.writeByte(0);
+      b.writeByte(0);
+    }
+    writeIpv6Groups(b, ip, rightStart, length);
+  }
+
+  /** Returns the count of 16-bit groups written */
+  static int writeIpv6Groups(WriteBuffer b, String ip, int beginIndex, int endIndex) {
+    if (beginIndex >= endIndex) return 0;
+    int groups = 0, group = 0;
+    for (int i = beginIndex; i <= endIndex; i++) {
+      if (i == endIndex || ip.charAt(i) == ':') {
+        b.writeByte(group >>> 8);
+        b.writeByte(group);
+        group = 0;
+        groups++;
+      } else {
+        group = group << 4 | hexDigit(ip.charAt(i));
+      }
+    }
+    return groups;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.collect;
+
+import brave.internal.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue backed by a power-of-two array.
+ *
+ * <p>This is Dmitry Vyukov's bounded MPMC queue: each slot has a sequence number which tells a
+ * producer or consumer if the slot is ready for them. There are no locks and no allocation after
+ * construction. While normally used by many producers and one consumer, it is safe for producers to
+ * {@link #poll()}, which is how "drop oldest" overflow is implemented.
+ *
+ * <p>See http://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue
+ */
+public final class RingBuffer<E> {
+  final AtomicReferenceArray<E> elements;
+  final AtomicLongArray sequences;
+  final AtomicLong enqueuePosition = new AtomicLong(), dequeuePosition = new AtomicLong();
+  final int mask;
+
+  /** @param capacity rounded up to the next power of two */
+  public RingBuffer(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+    if (capacity > 1 << 30) throw new IllegalArgumentException("capacity > 2^30");
+    int powerOfTwo = 1;
+    while (powerOfTwo < capacity) powerOfTwo <<= 1;
+    elements = new AtomicReferenceArray<>(powerOfTwo);
+    sequences = new AtomicLongArray(powerOfTwo);
+    for (int i = 0; i < powerOfTwo; i++) sequences.set(i, i);
+    mask = powerOfTwo - 1;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /** Returns {@code false} when the queue is full. */
+  public boolean offer(E element) {
+    if (element == null) throw new NullPointerException("element == null");
+    long position = enqueuePosition.get();
+    int index;
+    while (true) {
+      index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (enqueuePosition.compareAndSet(position, position + 1)) break;
+        position = enqueuePosition.get();
+      } else if (difference < 0) {
+        return false; // the slot hasn't been consumed yet: full
+      } else {
+        position = enqueuePosition.get(); // another producer won
+      }
+    }
+    elements.lazySet(index, element);
+    sequences.lazySet(index, position + 1); // publishes the element to consumers
+    return true;
+  }
+
+  /** Returns {@code null} when the queue is empty. */
+  @Nullable public E poll() {
+    long position = dequeuePosition.get();
+    int index;
+    while (true) {
+      index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (dequeuePosition.compareAndSet(position, position + 1)) break;
+        position = dequeuePosition.get();
+      } else if (difference < 0) {
+        return null; // the slot hasn't been produced yet: empty
+      } else {
+        position = dequeuePosition.get(); // another consumer won
+      }
+    }
+    E result = elements.get(index);
+    elements.lazySet(index, null);
+    sequences.lazySet(index, position + mask + 1); // releases the slot to producers
+    return result;
+  }
+
+  /** Returns an estimate of the elements in the queue, as it is constantly changing. */
+  public int size() {
+    // read the consumer position first, so that the difference is never negative
+    long dequeued = dequeuePosition.get();
+    long size = enqueuePosition.get() - dequeued;
+    return (int) Math.min(Math.max(size, 0L), mask + 1);
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override public String toString() {
+    return "RingBuffer{capacity=" + capacity() + ", size=" + size() + "}";
+  }
+}
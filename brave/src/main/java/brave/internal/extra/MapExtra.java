@@ -107,14 +107,63 @@ public class MapExtra<K, V, A extends MapExtra<K, V, A, F>,
     }
   }
 
+  /**
+   * Like {@link #put(Object, Object)}, except all entries are applied with at most one copy of the
+   * state, under one lock. Entries with a {@code null} key are skipped.
+   *
+   * @return {@code true} if the underlying state changed
+   * @since 5.14
+   */
+  protected boolean putAll(Map<K, V> entries) {
+    if (entries == null) throw new NullPointerException("entries == null");
+    if (entries.isEmpty()) return false;
+
+    synchronized (lock) {
+      Object[] prior = state(), newState = null;
+      for (Map.Entry<K, V> entry : entries.entrySet()) {
+        K key = entry.getKey();
+        if (key == null) continue;
+        V value = entry.getValue();
+        Object[] current = newState != null ? newState : prior;
+
+        int i = indexOfExistingKey(current, key);
+        if (i == -1) {
+          if (factory.maxDynamicEntries == 0) {
+            Platform.get().log("Ignoring request to add a dynamic key", null);
+            continue;
+          }
+          int newIndex = current.length;
+          if ((newIndex + 2) / 2 > MAX_DYNAMIC_ENTRIES) {
+            Platform.get()
+                .log("Ignoring request to add > %s dynamic entries", MAX_DYNAMIC_ENTRIES, null);
+            continue;
+          }
+          newState = Arrays.copyOf(current, newIndex + 2); // growth always copies
+          newState[newIndex] = key;
+          newState[newIndex + 1] = value;
+          continue;
+        }
+
+        if (equal(value, current[i + 1])) continue;
+        if (newState == null) newState = Arrays.copyOf(prior, prior.length); // copy-on-write
+        newState[i + 1] = value;
+      }
+      if (newState == null) return false;
+      this.state = newState;
+      return true;
+    }
+  }
+
   @Override protected void mergeStateKeepingOursOnConflict(A theirFields) {
     Object[] ourstate = state(), theirstate = theirFields.state();
+    int initialArrayLength = factory.initialArrayLength;
 
-    // scan first to see if we need to grow our state.
+    // scan first to see if we need to grow our state. Only dynamic keys can be new, as both
+    // states share a factory, and so have the same initial keys at the same indexes.
     long newToOurs = 0;
-    for (int i = 0; i < theirstate.length; i += 2) {
+    for (int i = initialArrayLength; i < theirstate.length; i += 2) {
       if (theirstate[i] == null) break; // end of keys
-      int ourIndex = indexOfExistingKey(ourstate, (K) theirstate[i]);
+      int ourIndex = indexOfDynamicKey(ourstate, (K) theirstate[i]);
       if (ourIndex == -1) newToOurs = setBit(newToOurs, i / 2);
     }
 
@@ -130,9 +179,18 @@ public class MapExtra<K, V, A extends MapExtra<K, V, A, F>,
     // To implement copy-on-write, we provision a new state large enough for all changes.
     Object[] newState = null;
 
-    // Now, we iterate through all changes and apply them
+    // Initial keys are positional, so apply their values without looking up the key
+    for (int i = 0; i < initialArrayLength; i += 2) {
+      Object theirValue = theirstate[i + 1];
+      if (ourstate[i + 1] != null || theirValue == null) continue; // ours wins
+
+      if (newState == null) newState = Arrays.copyOf(ourstate, newstateLength);
+      newState[i + 1] = theirValue;
+    }
+
+    // Now, we iterate through all dynamic changes and apply them
     int endOfOurs = ourstate.length;
-    for (int i = 0; i < theirstate.length; i += 2) {
+    for (int i = initialArrayLength; i < theirstate.length; i += 2) {
       if (theirstate[i] == null) break; // end of keys
       Object theirValue = theirstate[i + 1];
 
@@ -148,7 +206,7 @@ public class MapExtra<K, V, A extends MapExtra<K, V, A, F>,
       }
 
       // Now, check if this key exists in our state, potentially with the same value.
-      int ourIndex = indexOfExistingKey(ourstate, (K) theirstate[i]);
+      int ourIndex = indexOfDynamicKey(ourstate, (K) theirstate[i]);
       assert ourIndex != -1;
 
       // Ensure we don't mutate the state when our value should win
@@ -175,8 +233,16 @@ public class MapExtra<K, V, A extends MapExtra<K, V, A, F>,
    * stable for instances of this type.
    */
   int indexOfInitialKey(K key) {
-    Integer index = factory.initialFieldIndices.get(key);
-    return index != null ? index : -1;
+    int[] table = factory.initialKeyTable;
+    if (table.length == 0) return -1;
+    Object[] initialState = (Object[]) factory.initialState;
+    int mask = table.length - 1;
+    for (int i = MapExtraFactory.spread(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+      int index = table[i];
+      if (index == -1) return -1;
+      Object initialKey = initialState[index];
+      if (initialKey == key || initialKey.equals(key)) return index;
+    }
   }
 
   int indexOfDynamicKey(Object[] state, K key) {
@@ -14,6 +14,7 @@
 package brave.internal.extra;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -52,6 +53,11 @@ public abstract class MapExtraFactory<K, V, A extends MapExtra<K, V, A, F>,
   }
 
   final Map<K, Integer> initialFieldIndices;
+  /**
+   * Open-addressed by {@link Object#hashCode()}, this holds the {@link #initialState} index of each
+   * initial key, or -1 for an empty slot. This avoids boxing and map traversal in lookups.
+   */
+  final int[] initialKeyTable;
   final int initialArrayLength, maxDynamicEntries;
 
   protected MapExtraFactory(Builder<K, V, A, F, ?> builder) {
@@ -63,8 +69,31 @@ public abstract class MapExtraFactory<K, V, A extends MapExtra<K, V, A, F>,
       initialFieldIndices.put((K) initialStateArray[i], i);
     }
     this.initialFieldIndices = Collections.unmodifiableMap(initialFieldIndices);
+    this.initialKeyTable = newKeyTable(initialStateArray);
     this.maxDynamicEntries = builder.maxDynamicEntries;
   }
 
   @Override protected abstract A create();
+
+  /** Returns a table with a load factor no more than 0.5, so that probe sequences are short. */
+  static int[] newKeyTable(Object[] initialState) {
+    int keyCount = initialState.length / 2;
+    if (keyCount == 0) return new int[0];
+    int capacity = 2;
+    while (capacity < keyCount * 2) capacity <<= 1;
+    int[] result = new int[capacity];
+    Arrays.fill(result, -1);
+    int mask = capacity - 1;
+    for (int index = 0; index < initialState.length; index += 2) {
+      int i = spread(initialState[index].hashCode()) & mask;
+      while (result[i] != -1) i = (i + 1) & mask;
+      result[i] = index;
+    }
+    return result;
+  }
+
+  /** Mixes high bits into low ones, as keys such as strings often differ only in the former. */
+  static int spread(int hashCode) {
+    return hashCode ^ (hashCode >>> 16);
+  }
 }
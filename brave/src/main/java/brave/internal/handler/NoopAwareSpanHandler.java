@@ -66,6 +66,10 @@ public final class NoopAwareSpanHandler extends SpanHandler {
     return delegate.handlesAbandoned();
   }
 
+  @Override public boolean retainsSpans() {
+    return delegate.retainsSpans();
+  }
+
   @Override public int hashCode() {
     return delegate.hashCode();
   }
@@ -79,7 +83,7 @@ public final class NoopAwareSpanHandler extends SpanHandler {
   }
 
   static final class CompositeSpanHandler extends SpanHandler {
-    final boolean handlesAbandoned;
+    final boolean handlesAbandoned, retainsSpans;
     final SpanHandler[] handlers;
 
     CompositeSpanHandler(SpanHandler[] handlers) {
@@ -92,6 +96,14 @@ public final class NoopAwareSpanHandler extends SpanHandler {
         }
       }
       this.handlesAbandoned = handlesAbandoned;
+      boolean retainsSpans = false;
+      for (SpanHandler handler : handlers) {
+        if (handler.retainsSpans()) {
+          retainsSpans = true;
+          break;
+        }
+      }
+      this.retainsSpans = retainsSpans;
     }
 
     @Override public boolean begin(TraceContext context, MutableSpan span, TraceContext parent) {
@@ -114,6 +126,10 @@ public final class NoopAwareSpanHandler extends SpanHandler {
       return handlesAbandoned;
     }
 
+    @Override public boolean retainsSpans() {
+      return retainsSpans;
+    }
+
     @Override public int hashCode() {
       return Arrays.hashCode(handlers);
     }
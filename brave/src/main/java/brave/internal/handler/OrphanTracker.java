@@ -121,6 +121,11 @@ public class OrphanTracker extends SpanHandler {
     return true;
   }
 
+  /** The span is only weakly referenced, and removed on end. */
+  @Override public boolean retainsSpans() {
+    return false;
+  }
+
   void log(TraceContext context, boolean allocatedButNotUsed, Throwable caller) {
     Logger logger = logger();
     if (!logger.isLoggable(logLevel)) return;
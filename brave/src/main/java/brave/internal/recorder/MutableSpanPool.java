@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.recorder;
+
+import brave.handler.MutableSpan;
+import brave.internal.InternalMutableSpan;
+import brave.propagation.TraceContext;
+
+/**
+ * Recycles spans once handlers are done with them. Pools are per-thread, so there's no
+ * coordination. Spans finished on a different thread than they started on are returned to the
+ * finishing thread's pool, until it is full.
+ *
+ * <h3>Debugging</h3>
+ * When assertions are enabled, a copy of each released span is kept, along with the caller that
+ * released it. On reuse, the span must still equal that copy. Otherwise, something modified it
+ * after release, such as a handler which retained it, or instrumentation that tagged a span after
+ * it finished. The resulting {@link AssertionError} has the release site as its cause.
+ */
+final class MutableSpanPool {
+  static final int MAX_SIZE = 16;
+
+  final MutableSpan defaultSpan;
+  final ThreadLocal<Pool> pools = new ThreadLocal<Pool>() {
+    @Override protected Pool initialValue() {
+      return new Pool();
+    }
+  };
+
+  MutableSpanPool(MutableSpan defaultSpan) {
+    this.defaultSpan = defaultSpan;
+  }
+
+  MutableSpan acquire(TraceContext context) {
+    Pool pool = pools.get();
+    if (pool.size == 0) return new MutableSpan(context, defaultSpan);
+    int i = --pool.size;
+    MutableSpan result = pool.spans[i];
+    pool.spans[i] = null;
+    assert pool.checkUnmodified(i, result);
+    InternalMutableSpan.instance.reset(result, context, defaultSpan);
+    return result;
+  }
+
+  void release(MutableSpan span) {
+    Pool pool = pools.get();
+    if (pool.size == MAX_SIZE) return; // let the span be garbage collected
+    int i = pool.size++;
+    pool.spans[i] = span;
+    assert pool.recordRelease(i, span);
+  }
+
+  static final class Pool {
+    final MutableSpan[] spans = new MutableSpan[MAX_SIZE];
+    int size;
+
+    // Only used when assertions are enabled
+    MutableSpan[] releasedCopies;
+    Throwable[] releasedBy;
+
+    boolean recordRelease(int i, MutableSpan span) {
+      if (releasedCopies == null) {
+        releasedCopies = new MutableSpan[MAX_SIZE];
+        releasedBy = new Throwable[MAX_SIZE];
+      }
+      releasedCopies[i] = new MutableSpan(span);
+      releasedBy[i] = new Throwable(
+        "Thread " + Thread.currentThread().getName() + " released span here");
+      return true;
+    }
+
+    boolean checkUnmodified(int i, MutableSpan span) {
+      MutableSpan releasedCopy = releasedCopies[i];
+      Throwable caller = releasedBy[i];
+      releasedCopies[i] = null;
+      releasedBy[i] = null;
+      if (span.equals(releasedCopy)) return true;
+      AssertionError error = new AssertionError("Bug: span " + span.traceId() + "/" + span.id()
+        + " was modified after it was recycled. Was it retained by a handler, or modified after"
+        + " finish?");
+      error.initCause(caller); // AssertionError(String, Throwable) is Java 7+
+      throw error;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.recorder;
+
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.List;
+
+/**
+ * Strongly references pending spans in an open-addressing table keyed by trace ID and span ID.
+ *
+ * <p>Unlike {@link brave.internal.collect.WeakConcurrentMap}, this does not allocate a key per
+ * entry or depend on a reference queue. Instead, the table is split into stripes, each guarded by
+ * its own lock and using linear probing over primitive arrays. As entries are not weak, callers are
+ * responsible for removing them, and orphans are found by {@link #expire(long, List) age}.
+ *
+ * <p>{@link TraceContext#traceIdHigh()} and {@link TraceContext#shared()} are not part of the hash,
+ * as they rarely differ between spans with the same IDs. They are compared on lookup, so equality
+ * is the same as {@link TraceContext#equals(Object)}.
+ */
+final class PendingSpanTable {
+  final Stripe[] stripes;
+  final int stripeMask;
+
+  /** @param stripeCount rounded up to the next power of two */
+  PendingSpanTable(int stripeCount) {
+    int powerOfTwo = 1;
+    while (powerOfTwo < stripeCount) powerOfTwo <<= 1;
+    stripes = new Stripe[powerOfTwo];
+    for (int i = 0; i < powerOfTwo; i++) stripes[i] = new Stripe();
+    stripeMask = powerOfTwo - 1;
+  }
+
+  @Nullable PendingSpan get(TraceContext context) {
+    long hash = hash(context.traceId(), context.spanId());
+    Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+    synchronized (stripe) {
+      int i = stripe.indexOf(context, (int) hash);
+      return i != -1 ? stripe.values[i] : null;
+    }
+  }
+
+  /** Returns the existing value if the race to add one was lost, or {@code null}. */
+  @Nullable PendingSpan putIfAbsent(TraceContext context, PendingSpan value, long nanoTime) {
+    long hash = hash(context.traceId(), context.spanId());
+    Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+    synchronized (stripe) {
+      int i = stripe.indexOf(context, (int) hash);
+      if (i != -1) return stripe.values[i];
+      stripe.add(context.traceId(), context.spanId(), (int) hash, value, nanoTime);
+      return null;
+    }
+  }
+
+  @Nullable PendingSpan remove(TraceContext context) {
+    long hash = hash(context.traceId(), context.spanId());
+    Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+    synchronized (stripe) {
+      int i = stripe.indexOf(context, (int) hash);
+      if (i == -1) return null;
+      PendingSpan result = stripe.values[i];
+      stripe.removeAt(i);
+      return result;
+    }
+  }
+
+  /** Returns an estimate of the count of pending spans, as it is constantly changing. */
+  int size() {
+    int result = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        result += stripe.size;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Removes entries added before the given {@link System#nanoTime()}, adding them to the output.
+   * Each stripe is locked separately, so callers are only blocked while one stripe is swept.
+   */
+  void expire(long addedBeforeNanoTime, List<PendingSpan> output) {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        // Restart after each removal as backward-shift deletion moves entries we may have passed.
+        for (int i = 0; i < stripe.values.length; ) {
+          if (stripe.values[i] != null && stripe.addedNanoTimes[i] - addedBeforeNanoTime < 0) {
+            output.add(stripe.values[i]);
+            stripe.removeAt(i);
+          } else {
+            i++;
+          }
+        }
+      }
+    }
+  }
+
+  /** Mixes the IDs, using the high bits for the stripe and low bits for the slot. */
+  static long hash(long traceId, long spanId) {
+    long h = traceId * 0x9E3779B97F4A7C15L ^ spanId;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  static final class Stripe {
+    static final int INITIAL_CAPACITY = 16;
+
+    long[] traceIds = new long[INITIAL_CAPACITY], spanIds = new long[INITIAL_CAPACITY];
+    long[] addedNanoTimes = new long[INITIAL_CAPACITY];
+    int[] hashes = new int[INITIAL_CAPACITY];
+    PendingSpan[] values = new PendingSpan[INITIAL_CAPACITY];
+    int size;
+
+    int indexOf(TraceContext context, int hash) {
+      long traceId = context.traceId(), spanId = context.spanId();
+      int mask = values.length - 1;
+      for (int i = hash & mask; values[i] != null; i = (i + 1) & mask) {
+        if (traceIds[i] == traceId && spanIds[i] == spanId) {
+          TraceContext existing = values[i].handlerContext;
+          if (existing.traceIdHigh() == context.traceIdHigh()
+            && existing.shared() == context.shared()) {
+            return i;
+          }
+        }
+      }
+      return -1;
+    }
+
+    void add(long traceId, long spanId, int hash, PendingSpan value, long nanoTime) {
+      if ((size + 1) * 2 > values.length) resize(values.length * 2); // max load factor of 0.5
+      int mask = values.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) i = (i + 1) & mask;
+      set(i, traceId, spanId, hash, value, nanoTime);
+      size++;
+    }
+
+    void set(int i, long traceId, long spanId, int hash, PendingSpan value, long nanoTime) {
+      traceIds[i] = traceId;
+      spanIds[i] = spanId;
+      hashes[i] = hash;
+      values[i] = value;
+      addedNanoTimes[i] = nanoTime;
+    }
+
+    /** Backward-shift deletion keeps probe sequences intact without tombstones. */
+    void removeAt(int i) {
+      int mask = values.length - 1;
+      values[i] = null;
+      size--;
+      for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+        int ideal = hashes[j] & mask;
+        // Move the entry at j into the hole at i unless its ideal slot is cyclically in (i, j]
+        boolean inRange = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+        if (inRange) continue;
+        set(i, traceIds[j], spanIds[j], hashes[j], values[j], addedNanoTimes[j]);
+        values[j] = null;
+        i = j;
+      }
+    }
+
+    void resize(int capacity) {
+      long[] oldTraceIds = traceIds, oldSpanIds = spanIds, oldAddedNanoTimes = addedNanoTimes;
+      int[] oldHashes = hashes;
+      PendingSpan[] oldValues = values;
+      traceIds = new long[capacity];
+      spanIds = new long[capacity];
+      addedNanoTimes = new long[capacity];
+      hashes = new int[capacity];
+      values = new PendingSpan[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < oldValues.length; j++) {
+        if (oldValues[j] == null) continue;
+        int i = oldHashes[j] & mask;
+        while (values[i] != null) i = (i + 1) & mask;
+        set(i, oldTraceIds[j], oldSpanIds[j], oldHashes[j], oldValues[j], oldAddedNanoTimes[j]);
+      }
+    }
+  }
+}
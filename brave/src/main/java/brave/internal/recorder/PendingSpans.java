@@ -19,10 +19,19 @@ import brave.handler.MutableSpan;
 import brave.handler.SpanHandler;
 import brave.handler.SpanHandler.Cause;
 import brave.internal.Nullable;
+import brave.internal.Platform;
+import brave.internal.TraceClockFactory;
 import brave.internal.collect.WeakConcurrentMap;
 import brave.propagation.TraceContext;
+import java.io.Closeable;
 import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static brave.internal.Throwables.propagateIfFatal;
 
 /**
  * Similar to Finagle's deadline span map, except this is GC pressure as opposed to timeout driven.
@@ -33,19 +42,62 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <p>Spans are weakly referenced by their owning context. When the keys are collected, they are
  * transferred to a queue, waiting to be reported. A call to modify any span will implicitly flush
  * orphans to Zipkin. Spans in this state will have a "brave.flush" annotation added to them.
+ *
+ * <h3>Timeout mode</h3>
+ * When constructed with an orphan timeout, spans are instead strongly referenced in a striped
+ * {@link PendingSpanTable}, and the weak map inherited here is unused. This avoids allocating a
+ * weak key per span and the reference queue checks on each access. As the GC no longer signals
+ * orphans, a daemon thread reports spans that neither finished nor flushed within the timeout.
+ *
+ * <h3>Recycling spans</h3>
+ * When constructed to recycle spans, and the {@link SpanHandler#retainsSpans() handler doesn't
+ * retain them}, spans are returned to a per-thread {@link MutableSpanPool} after they are
+ * finished, flushed or abandoned. Orphans aren't recycled, as the application could still modify
+ * them.
  */
-public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingSpan> {
+public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingSpan>
+  implements Closeable {
   final MutableSpan defaultSpan;
   final Clock clock;
   final SpanHandler spanHandler;
   final AtomicBoolean noop;
+  @Nullable final PendingSpanTable table;
+  @Nullable final OrphanSweeper sweeper;
+  @Nullable final MutableSpanPool pool;
 
   public PendingSpans(MutableSpan defaultSpan, Clock clock, SpanHandler spanHandler,
     AtomicBoolean noop) {
+    this(defaultSpan, clock, spanHandler, noop, 0L);
+  }
+
+  /**
+   * @param orphanTimeoutNanos zero uses weak references to find orphans. Otherwise, spans are
+   * strongly referenced and reported as orphans after this duration.
+   */
+  public PendingSpans(MutableSpan defaultSpan, Clock clock, SpanHandler spanHandler,
+    AtomicBoolean noop, long orphanTimeoutNanos) {
+    this(defaultSpan, clock, spanHandler, noop, orphanTimeoutNanos, false);
+  }
+
+  /**
+   * @param recycleSpans when true and the handler doesn't {@linkplain SpanHandler#retainsSpans()
+   * retain spans}, they are reused after the handler ends them.
+   */
+  public PendingSpans(MutableSpan defaultSpan, Clock clock, SpanHandler spanHandler,
+    AtomicBoolean noop, long orphanTimeoutNanos, boolean recycleSpans) {
     this.defaultSpan = defaultSpan;
     this.clock = clock;
     this.spanHandler = spanHandler;
     this.noop = noop;
+    if (orphanTimeoutNanos > 0L) {
+      table = new PendingSpanTable(Runtime.getRuntime().availableProcessors() * 4);
+      sweeper = new OrphanSweeper(this, orphanTimeoutNanos);
+      sweeper.start();
+    } else {
+      table = null;
+      sweeper = null;
+    }
+    pool = recycleSpans && !spanHandler.retainsSpans() ? new MutableSpanPool(defaultSpan) : null;
   }
 
   /**
@@ -56,6 +108,10 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
    * a new local root.
    */
   @Nullable public PendingSpan get(TraceContext context) {
+    if (table != null) {
+      if (context == null) throw new NullPointerException("context == null");
+      return table.get(context);
+    }
     return getIfPresent(context);
   }
 
@@ -64,16 +120,19 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
     PendingSpan result = get(context);
     if (result != null) return result;
 
-    MutableSpan span = new MutableSpan(context, defaultSpan);
+    MutableSpan span = pool != null ? pool.acquire(context) : new MutableSpan(context, defaultSpan);
     PendingSpan parentSpan = parent != null ? get(parent) : null;
 
     // save overhead calculating time if the parent is in-progress (usually is)
-    TickClock clock;
+    Clock clock;
     if (parentSpan != null) {
       TraceContext parentContext = parentSpan.context();
       if (parentContext != null) parent = parentContext;
       clock = parentSpan.clock;
       if (start) span.startTimestamp(clock.currentTimeMicroseconds());
+    } else if (this.clock instanceof TraceClockFactory) {
+      clock = ((TraceClockFactory) this.clock).traceClock();
+      if (start) span.startTimestamp(clock.currentTimeMicroseconds());
     } else {
       long currentTimeMicroseconds = this.clock.currentTimeMicroseconds();
       clock = new TickClock(currentTimeMicroseconds, System.nanoTime());
@@ -82,7 +141,9 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
 
     PendingSpan newSpan = new PendingSpan(context, span, clock);
     // Probably absent because we already checked with get() at the entrance of this method
-    PendingSpan previousSpan = putIfProbablyAbsent(context, newSpan);
+    PendingSpan previousSpan = table != null
+      ? table.putIfAbsent(context, newSpan, System.nanoTime())
+      : putIfProbablyAbsent(context, newSpan);
     if (previousSpan != null) return previousSpan; // lost race
 
     // We've now allocated a new trace context.
@@ -96,16 +157,20 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
 
   /** @see brave.Span#abandon() */
   public void abandon(TraceContext context) {
-    PendingSpan last = remove(context);
-    if (last != null && spanHandler.handlesAbandoned()) {
+    PendingSpan last = removePending(context);
+    if (last == null) return;
+    if (spanHandler.handlesAbandoned()) {
       spanHandler.end(last.handlerContext, last.span, Cause.ABANDONED);
     }
+    if (pool != null) pool.release(last.span);
   }
 
   /** @see brave.Span#flush() */
   public void flush(TraceContext context) {
-    PendingSpan last = remove(context);
-    if (last != null) spanHandler.end(last.handlerContext, last.span, Cause.FLUSHED);
+    PendingSpan last = removePending(context);
+    if (last == null) return;
+    spanHandler.end(last.handlerContext, last.span, Cause.FLUSHED);
+    if (pool != null) pool.release(last.span);
   }
 
   /**
@@ -116,10 +181,36 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
    */
   // zero here allows us to skip overhead of using the clock when the span already finished!
   public void finish(TraceContext context, long timestamp) {
-    PendingSpan last = remove(context);
+    PendingSpan last = removePending(context);
     if (last == null) return;
     last.span.finishTimestamp(timestamp != 0L ? timestamp : last.clock.currentTimeMicroseconds());
     spanHandler.end(last.handlerContext, last.span, Cause.FINISHED);
+    if (pool != null) pool.release(last.span);
+  }
+
+  @Nullable PendingSpan removePending(TraceContext context) {
+    if (table != null) {
+      if (context == null) throw new NullPointerException("context == null");
+      return table.remove(context);
+    }
+    return remove(context);
+  }
+
+  /** Reports spans that were neither finished nor flushed before the deadline. */
+  void expireOrphans(long addedBeforeNanoTime) {
+    List<PendingSpan> orphans = new ArrayList<>();
+    table.expire(addedBeforeNanoTime, orphans);
+    if (noop.get()) return;
+    // Report outside the table's locks, as handlers can take arbitrary time
+    for (int i = 0, length = orphans.size(); i < length; i++) {
+      PendingSpan value = orphans.get(i);
+      spanHandler.end(value.handlerContext, value.span, Cause.ORPHANED);
+    }
+  }
+
+  /** Stops the thread that reports orphans in timeout mode. Otherwise, this has no effect. */
+  @Override public void close() {
+    if (sweeper != null) sweeper.close();
   }
 
   /** Reports spans orphaned by garbage collection. */
@@ -133,4 +224,37 @@ public final class PendingSpans extends WeakConcurrentMap<TraceContext, PendingS
       spanHandler.end(value.handlerContext, value.span, Cause.ORPHANED);
     }
   }
+
+  static final class OrphanSweeper extends Thread {
+    final PendingSpans pendingSpans;
+    final long timeoutNanos, intervalNanos;
+    volatile boolean closed;
+
+    OrphanSweeper(PendingSpans pendingSpans, long timeoutNanos) {
+      super("PendingSpans-OrphanSweeper");
+      setDaemon(true);
+      this.pendingSpans = pendingSpans;
+      this.timeoutNanos = timeoutNanos;
+      // Orphans are reported between one and one and a half timeouts after they were started.
+      this.intervalNanos = Math.max(timeoutNanos / 2, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override public void run() {
+      while (!closed) {
+        LockSupport.parkNanos(this, intervalNanos);
+        if (closed) return;
+        try {
+          pendingSpans.expireOrphans(System.nanoTime() - timeoutNanos);
+        } catch (Throwable t) {
+          propagateIfFatal(t);
+          Platform.get().log("error reporting orphaned spans", t);
+        }
+      }
+    }
+
+    void close() {
+      closed = true;
+      LockSupport.unpark(this);
+    }
+  }
 }
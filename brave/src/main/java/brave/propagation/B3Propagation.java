@@ -15,7 +15,9 @@ package brave.propagation;
 
 import brave.Request;
 import brave.Span.Kind;
+import brave.internal.Nullable;
 import brave.internal.Platform;
+import brave.internal.codec.AsciiCharSequence;
 import brave.internal.propagation.InjectorFactory;
 import brave.internal.propagation.InjectorFactory.InjectorFunction;
 import brave.internal.propagation.StringPropagationAdapter;
@@ -24,9 +26,12 @@ import brave.propagation.TraceContext.Injector;
 import java.util.Collections;
 import java.util.List;
 
+import static brave.internal.codec.HexCodec.writeHexLong;
 import static brave.propagation.B3SingleFormat.parseB3SingleFormat;
 import static brave.propagation.B3SingleFormat.writeB3SingleFormat;
+import static brave.propagation.B3SingleFormat.writeB3SingleFormatAsBytes;
 import static brave.propagation.B3SingleFormat.writeB3SingleFormatWithoutParentId;
+import static brave.propagation.B3SingleFormat.writeB3SingleFormatWithoutParentIdAsBytes;
 import static java.util.Arrays.asList;
 
 /**
@@ -42,7 +47,12 @@ public abstract class B3Propagation<K> implements Propagation<K> {
         return MULTI_KEY_NAMES;
       }
 
+      @SuppressWarnings("unchecked") // checked by instanceof
       @Override public <R> void inject(Setter<R, String> setter, TraceContext context, R request) {
+        if (setter instanceof BytesSetter) {
+          injectMultiBytes((BytesSetter<R>) setter, context, request);
+          return;
+        }
         setter.put(request, TRACE_ID, context.traceIdString());
         setter.put(request, SPAN_ID, context.spanIdString());
         String parentId = context.parentIdString();
@@ -60,7 +70,12 @@ public abstract class B3Propagation<K> implements Propagation<K> {
         return SINGLE_KEY_NAMES;
       }
 
+      @SuppressWarnings("unchecked") // checked by instanceof
       @Override public <R> void inject(Setter<R, String> setter, TraceContext context, R request) {
+        if (setter instanceof BytesSetter) {
+          ((BytesSetter<R>) setter).putBytes(request, B3, writeB3SingleFormatAsBytes(context));
+          return;
+        }
         setter.put(request, B3, writeB3SingleFormat(context));
       }
     },
@@ -70,11 +85,38 @@ public abstract class B3Propagation<K> implements Propagation<K> {
         return SINGLE_KEY_NAMES;
       }
 
+      @SuppressWarnings("unchecked") // checked by instanceof
       @Override public <R> void inject(Setter<R, String> setter, TraceContext context, R request) {
+        if (setter instanceof BytesSetter) {
+          ((BytesSetter<R>) setter).putBytes(request, B3,
+              writeB3SingleFormatWithoutParentIdAsBytes(context));
+          return;
+        }
         setter.put(request, B3, writeB3SingleFormatWithoutParentId(context));
       }
     };
 
+    /** Like {@link #MULTI}, except writes hex IDs into bytes without encoding a {@link String}. */
+    static <R> void injectMultiBytes(BytesSetter<R> setter, TraceContext context, R request) {
+      byte[] traceId = new byte[context.traceIdHigh() != 0L ? 32 : 16];
+      context.writeTraceIdString(traceId, 0);
+      setter.putBytes(request, TRACE_ID, traceId);
+      byte[] spanId = new byte[16];
+      context.writeSpanIdString(spanId, 0);
+      setter.putBytes(request, SPAN_ID, spanId);
+      long parentId = context.parentIdAsLong();
+      if (parentId != 0L) {
+        byte[] parentIdBytes = new byte[16];
+        writeHexLong(parentIdBytes, 0, parentId);
+        setter.putBytes(request, PARENT_SPAN_ID, parentIdBytes);
+      }
+      if (context.debug()) {
+        setter.putBytes(request, FLAGS, new byte[] {'1'});
+      } else if (context.sampled() != null) {
+        setter.putBytes(request, SAMPLED, new byte[] {(byte) (context.sampled() ? '1' : '0')});
+      }
+    }
+
     static final List<String> SINGLE_KEY_NAMES = Collections.singletonList(B3);
     static final List<String> MULTI_KEY_NAMES = Collections.unmodifiableList(
         asList(TRACE_ID, SPAN_ID, PARENT_SPAN_ID, SAMPLED, FLAGS)
@@ -107,6 +149,8 @@ public abstract class B3Propagation<K> implements Propagation<K> {
         .clientInjectorFunctions(Format.MULTI)
         .producerInjectorFunctions(Format.SINGLE_NO_PARENT)
         .consumerInjectorFunctions(Format.SINGLE_NO_PARENT);
+    @Nullable ExtractionCache extractionCache;
+    boolean skipSpanIdsWhenNotSampled;
 
     /**
      * Overrides the injection format for non-remote requests, such as message processors. Defaults
@@ -170,6 +214,35 @@ public abstract class B3Propagation<K> implements Propagation<K> {
       return this;
     }
 
+    /**
+     * Caches the result of parsing the "b3" header, for when the same value is received on many
+     * requests. Multiple "X-B3-" headers are not cached. Defaults to no cache.
+     *
+     * @since 5.14
+     */
+    public FactoryBuilder extractionCache(ExtractionCache extractionCache) {
+      if (extractionCache == null) throw new NullPointerException("extractionCache == null");
+      this.extractionCache = extractionCache;
+      return this;
+    }
+
+    /**
+     * When true, multiple "X-B3-" headers that explicitly say not to sample are extracted as a
+     * {@link TraceIdContext}. This skips reading and parsing the span and parent IDs, and creating
+     * a {@link TraceContext}, for requests that won't be recorded. Defaults to false.
+     *
+     * <p>The trace ID is kept, so unsampled requests still correlate in logs and propagate the
+     * same trace ID downstream. However, the local span is a new root instead of a child of the
+     * caller. Don't enable this if you record unsampled spans, for example via {@link
+     * brave.Tracing.Builder#alwaysSampleLocal()}.
+     *
+     * @since 5.14
+     */
+    public FactoryBuilder skipSpanIdsWhenNotSampled(boolean skipSpanIdsWhenNotSampled) {
+      this.skipSpanIdsWhenNotSampled = skipSpanIdsWhenNotSampled;
+      return this;
+    }
+
     public Propagation.Factory build() {
       Factory result = new Factory(this);
       if (result.equals(FACTORY)) return FACTORY;
@@ -209,9 +282,13 @@ public abstract class B3Propagation<K> implements Propagation<K> {
 
   static final class Factory extends Propagation.Factory implements Propagation<String> {
     final InjectorFactory injectorFactory;
+    @Nullable final ExtractionCache extractionCache;
+    final boolean skipSpanIdsWhenNotSampled;
 
     Factory(FactoryBuilder builder) {
       injectorFactory = builder.injectorFactoryBuilder.build();
+      extractionCache = builder.extractionCache;
+      skipSpanIdsWhenNotSampled = builder.skipSpanIdsWhenNotSampled;
     }
 
     @Override public List<String> keys() {
@@ -240,7 +317,12 @@ public abstract class B3Propagation<K> implements Propagation<K> {
     }
 
     @Override public int hashCode() {
-      return injectorFactory.hashCode();
+      int h = injectorFactory.hashCode();
+      h *= 1000003;
+      h ^= extractionCache != null ? extractionCache.hashCode() : 0;
+      h *= 1000003;
+      h ^= skipSpanIdsWhenNotSampled ? 1231 : 1237;
+      return h;
     }
 
     @Override public boolean equals(Object o) {
@@ -248,7 +330,9 @@ public abstract class B3Propagation<K> implements Propagation<K> {
       if (!(o instanceof B3Propagation.Factory)) return false;
 
       B3Propagation.Factory that = (B3Propagation.Factory) o;
-      return injectorFactory.equals(that.injectorFactory);
+      return injectorFactory.equals(that.injectorFactory)
+          && extractionCache == that.extractionCache // identity as caches are stateful
+          && skipSpanIdsWhenNotSampled == that.skipSpanIdsWhenNotSampled;
     }
 
     @Override public String toString() {
@@ -256,26 +340,51 @@ public abstract class B3Propagation<K> implements Propagation<K> {
     }
   }
 
+  /**
+   * When the getter is also a {@link BytesGetter}, values are read through a recycled {@link
+   * AsciiCharSequence} instead of decoded into strings. Each value is fully parsed before the next
+   * is read, so one view is enough.
+   */
   static final class B3Extractor<R> implements Extractor<R> {
     final Factory factory;
     final Getter<R, String> getter;
+    @Nullable final BytesGetter<R> bytesGetter;
 
+    @SuppressWarnings("unchecked") // checked by instanceof
     B3Extractor(Factory factory, Getter<R, String> getter) {
       this.factory = factory;
       this.getter = getter;
+      this.bytesGetter = getter instanceof BytesGetter ? (BytesGetter<R>) getter : null;
     }
 
     @Override public TraceContextOrSamplingFlags extract(R request) {
       if (request == null) throw new NullPointerException("request == null");
+      if (bytesGetter == null) return extract(request, null);
+
+      AsciiCharSequence view = AsciiCharSequence.current();
+      try {
+        return extract(request, view);
+      } finally {
+        view.clear();
+      }
+    }
 
+    /** Returns the value of the field, re-using the view when not null. */
+    @Nullable CharSequence get(R request, String key, @Nullable AsciiCharSequence view) {
+      if (view == null) return getter.get(request, key);
+      byte[] value = bytesGetter.getBytes(request, key);
+      return value != null ? view.wrap(value, 0, value.length) : null;
+    }
+
+    TraceContextOrSamplingFlags extract(R request, @Nullable AsciiCharSequence view) {
       // try to extract single-header format
-      String b3 = getter.get(request, B3);
-      TraceContextOrSamplingFlags extracted = b3 != null ? parseB3SingleFormat(b3) : null;
+      CharSequence b3 = get(request, B3, view);
+      TraceContextOrSamplingFlags extracted = b3 != null ? parseB3(b3) : null;
       if (extracted != null) return extracted;
 
       // Start by looking at the sampled state as this is used regardless
       // Official sampled value is 1, though some old instrumentation send true
-      String sampled = getter.get(request, SAMPLED);
+      CharSequence sampled = get(request, SAMPLED, view);
       Boolean sampledV;
       if (sampled == null) {
         sampledV = null; // defer decision
@@ -287,23 +396,24 @@ public abstract class B3Propagation<K> implements Propagation<K> {
         } else if (sampledC == '0') {
           sampledV = false;
         } else {
-          Platform.get().log(SAMPLED_MALFORMED, sampled, null);
+          Platform.get().log(SAMPLED_MALFORMED, sampled.toString(), null);
           return TraceContextOrSamplingFlags.EMPTY; // trace context is malformed so return empty
         }
-      } else if (sampled.equalsIgnoreCase("true")) { // old clients
+      } else if (equalsIgnoreCase("true", sampled)) { // old clients
         sampledV = true;
-      } else if (sampled.equalsIgnoreCase("false")) { // old clients
+      } else if (equalsIgnoreCase("false", sampled)) { // old clients
         sampledV = false;
       } else {
-        Platform.get().log(SAMPLED_MALFORMED, sampled, null);
+        Platform.get().log(SAMPLED_MALFORMED, sampled.toString(), null);
         return TraceContextOrSamplingFlags.EMPTY; // Restart trace instead of propagating false
       }
 
       // The only flag we action is 1, but it could be that any integer is present.
       // Here, we leniently parse as debug is not a primary consideration of the trace context.
-      boolean debug = "1".equals(getter.get(request, FLAGS));
+      CharSequence flags = get(request, FLAGS, view);
+      boolean debug = flags != null && flags.length() == 1 && flags.charAt(0) == '1';
 
-      String traceIdString = getter.get(request, TRACE_ID);
+      CharSequence traceIdString = get(request, TRACE_ID, view);
 
       // It is ok to go without a trace ID, if sampling or debug is set
       if (traceIdString == null) {
@@ -317,15 +427,49 @@ public abstract class B3Propagation<K> implements Propagation<K> {
 
       // Try to parse the trace IDs into the context
       TraceContext.Builder result = TraceContext.newBuilder();
-      if (result.parseTraceId(traceIdString, TRACE_ID)
-          && result.parseSpanId(getter, request, SPAN_ID)
-          && result.parseParentId(getter, request, PARENT_SPAN_ID)) {
+      if (!result.parseTraceId(traceIdString, TRACE_ID)) {
+        return TraceContextOrSamplingFlags.EMPTY; // trace context is malformed so return empty
+      }
+
+      // Span IDs are only needed when this request could be recorded
+      if (factory.skipSpanIdsWhenNotSampled && Boolean.FALSE.equals(sampledV) && !debug
+          && result.traceId != 0L) {
+        return TraceContextOrSamplingFlags.create(TraceIdContext.newBuilder()
+            .traceIdHigh(result.traceIdHigh)
+            .traceId(result.traceId)
+            .sampled(false).build());
+      }
+
+      if (result.parseSpanId(get(request, SPAN_ID, view), SPAN_ID)
+          && result.parseParentId(get(request, PARENT_SPAN_ID, view), PARENT_SPAN_ID)) {
         if (sampledV != null) result.sampled(sampledV.booleanValue());
         if (debug) result.debug(true);
         return TraceContextOrSamplingFlags.create(result.build());
       }
       return TraceContextOrSamplingFlags.EMPTY; // trace context is malformed so return empty
     }
+
+    @Nullable TraceContextOrSamplingFlags parseB3(CharSequence b3) {
+      ExtractionCache cache = factory.extractionCache;
+      if (cache == null) return parseB3SingleFormat(b3);
+
+      TraceContextOrSamplingFlags result = cache.get(b3);
+      if (result != null) return result;
+
+      result = parseB3SingleFormat(b3);
+      if (result != null) cache.put(b3, result); // don't cache malformed, so that it is logged
+      return result;
+    }
+  }
+
+  /** Like {@link String#equalsIgnoreCase(String)}, except the input needn't be a string. */
+  static boolean equalsIgnoreCase(String lowerCase, CharSequence input) {
+    int length = lowerCase.length();
+    if (input.length() != length) return false;
+    for (int i = 0; i < length; i++) {
+      if (Character.toLowerCase(input.charAt(i)) != lowerCase.charAt(i)) return false;
+    }
+    return true;
   }
 
   B3Propagation() { // no instances
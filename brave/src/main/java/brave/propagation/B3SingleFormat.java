@@ -16,6 +16,7 @@ package brave.propagation;
 import brave.internal.Nullable;
 import brave.internal.Platform;
 import brave.internal.RecyclableBuffers;
+import brave.internal.codec.AsciiCharSequence;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 
@@ -112,17 +113,10 @@ public final class B3SingleFormat {
   }
 
   static int writeB3SingleFormat(TraceContext context, long parentId, char[] result) {
-    int pos = 0;
-    long traceIdHigh = context.traceIdHigh();
-    if (traceIdHigh != 0L) {
-      writeHexLong(result, pos, traceIdHigh);
-      pos += 16;
-    }
-    writeHexLong(result, pos, context.traceId());
-    pos += 16;
+    // copies the ID strings when already computed, for example by a log correlation decorator
+    int pos = context.writeTraceIdString(result, 0);
     result[pos++] = '-';
-    writeHexLong(result, pos, context.spanId());
-    pos += 16;
+    pos = context.writeSpanIdString(result, pos);
 
     Boolean sampled = context.sampled();
     if (sampled != null) {
@@ -285,6 +279,42 @@ public final class B3SingleFormat {
     ));
   }
 
+  /**
+   * Like {@link #parseB3SingleFormat(CharSequence, int, int)}, except reads ASCII bytes directly,
+   * such as a binary message header. This avoids allocating a {@link String} for the value.
+   *
+   * @param value the bytes that contain a B3 single formatted trace context
+   * @param beginIndex the inclusive begin index of the first byte in B3 single format.
+   * @param endIndex the exclusive end index <em>after</em> the last byte in B3 single format.
+   * @since 5.14
+   */
+  @Nullable
+  public static TraceContextOrSamplingFlags parseB3SingleFormat(byte[] value, int beginIndex,
+    int endIndex) {
+    AsciiCharSequence view = AsciiCharSequence.current().wrap(value, beginIndex, endIndex);
+    try {
+      return parseB3SingleFormat(view, 0, view.length());
+    } finally {
+      view.clear();
+    }
+  }
+
+  /**
+   * Like {@link #parseB3SingleFormat(byte[], int, int)}, except reads the {@linkplain
+   * ByteBuffer#remaining() remaining} bytes. The position of the buffer is not changed.
+   *
+   * @since 5.14
+   */
+  @Nullable
+  public static TraceContextOrSamplingFlags parseB3SingleFormat(ByteBuffer value) {
+    AsciiCharSequence view = AsciiCharSequence.current().wrap(value);
+    try {
+      return parseB3SingleFormat(view, 0, view.length());
+    } finally {
+      view.clear();
+    }
+  }
+
   @Nullable static SamplingFlags tryParseSamplingFlags(char sampledChar) {
     switch (sampledChar) {
       case '1':
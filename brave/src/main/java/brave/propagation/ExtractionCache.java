@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.internal.Nullable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of extraction results, keyed by the contents of a propagation header. This is
+ * for tiers that receive the same header value on many requests, such as fan-in aggregators, where
+ * it avoids parsing and allocating the same {@link TraceContextOrSamplingFlags} repeatedly.
+ *
+ * <p>For example, to cache the "b3" header:
+ * <pre>{@code
+ * extractionCache = ExtractionCache.create(256);
+ * tracingBuilder.propagationFactory(B3Propagation.newFactoryBuilder()
+ *   .extractionCache(extractionCache)
+ *   .build());
+ *
+ * // later, see if it is effective
+ * hitRatio = (double) extractionCache.hitCount() / (hitCount + extractionCache.missCount());
+ * }</pre>
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>This is a direct-mapped table: each header hashes to one slot, and a new header replaces
+ * whatever was in its slot. There are no locks, and nothing is allocated on a hit. Results are
+ * shared between requests, which is safe because they are immutable until {@link
+ * TraceContextOrSamplingFlags#toBuilder() copied}. Counters are striped by thread to avoid
+ * contention.
+ *
+ * @since 5.14
+ */
+public final class ExtractionCache {
+  /** Longs between the start of each counter cell: 128 bytes covers adjacent line prefetch. */
+  static final int PADDING = 16;
+
+  /**
+   * @param capacity the maximum count of header values cached, rounded up to a power of two.
+   * @since 5.14
+   */
+  public static ExtractionCache create(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+    if (capacity > 1 << 16) throw new IllegalArgumentException("capacity > 65536");
+    return new ExtractionCache(capacity, Runtime.getRuntime().availableProcessors());
+  }
+
+  final AtomicReferenceArray<Entry> entries;
+  final int mask;
+  final AtomicLongArray counters; // hits then misses, per cell
+  final int cellMask;
+
+  ExtractionCache(int capacity, int processors) {
+    int powerOfTwo = 1;
+    while (powerOfTwo < capacity) powerOfTwo <<= 1;
+    entries = new AtomicReferenceArray<>(powerOfTwo);
+    mask = powerOfTwo - 1;
+
+    int cellCount = 1;
+    while (cellCount < processors) cellCount <<= 1;
+    counters = new AtomicLongArray(cellCount * PADDING);
+    cellMask = cellCount - 1;
+  }
+
+  /** Returns the count of values returned from the cache. */
+  public long hitCount() {
+    return sum(0);
+  }
+
+  /** Returns the count of values that were not in the cache. */
+  public long missCount() {
+    return sum(1);
+  }
+
+  /** Returns a cached result or {@code null}, counting either as a hit or miss. */
+  @Nullable TraceContextOrSamplingFlags get(CharSequence header) {
+    int hash = hash(header);
+    Entry entry = entries.get(hash & mask);
+    if (entry != null && entry.hash == hash && contentEquals(entry.header, header)) {
+      increment(0);
+      return entry.value;
+    }
+    increment(1);
+    return null;
+  }
+
+  /** Caches the result of extracting the header, replacing any value in the same slot. */
+  void put(CharSequence header, TraceContextOrSamplingFlags value) {
+    int hash = hash(header);
+    // toString() is free on String, and copies other types which could be mutated later.
+    entries.lazySet(hash & mask, new Entry(header.toString(), hash, value));
+  }
+
+  void increment(int counter) {
+    long threadId = Thread.currentThread().getId();
+    int cell = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & cellMask;
+    counters.getAndIncrement(cell * PADDING + counter);
+  }
+
+  long sum(int counter) {
+    long result = 0L;
+    for (int cell = 0; cell <= cellMask; cell++) {
+      result += counters.get(cell * PADDING + counter);
+    }
+    return result;
+  }
+
+  /** Same as {@link String#hashCode()}, but mixed as the low bits select the slot. */
+  static int hash(CharSequence header) {
+    int h = 0;
+    for (int i = 0, length = header.length(); i < length; i++) {
+      h = 31 * h + header.charAt(i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  static boolean contentEquals(String cached, CharSequence header) {
+    int length = cached.length();
+    if (length != header.length()) return false;
+    for (int i = 0; i < length; i++) {
+      if (cached.charAt(i) != header.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  static final class Entry {
+    final String header;
+    final int hash;
+    final TraceContextOrSamplingFlags value;
+
+    Entry(String header, int hash, TraceContextOrSamplingFlags value) {
+      this.header = header;
+      this.hash = hash;
+      this.value = value;
+    }
+  }
+
+  @Override public String toString() {
+    return "ExtractionCache{capacity=" + (mask + 1) + ", hits=" + hitCount()
+      + ", misses=" + missCount() + "}";
+  }
+}
@@ -300,4 +300,62 @@ public interface Propagation<K> {
      */
     @Nullable @Override String get(R request, String fieldName);
   }
+
+  /**
+   * Optionally implemented by a {@link Getter} when the transport stores field values as bytes,
+   * such as Kafka or AMQP message headers. When supported, a {@link Propagation} like {@link
+   * B3Propagation} parses the bytes directly instead of calling {@link Getter#get(Object, Object)},
+   * which would otherwise decode a {@link String} per field. Other formats fall back to the
+   * {@link Getter}, so both methods must be implemented.
+   *
+   * <p>For example, a Kafka getter can implement both methods:
+   * <pre>{@code
+   * @Override public String get(Headers request, String key) {
+   *   byte[] value = getBytes(request, key);
+   *   return value != null ? new String(value, UTF_8) : null;
+   * }
+   *
+   * @Override public byte[] getBytes(Headers request, String key) {
+   *   Header header = request.lastHeader(key);
+   *   return header != null ? header.value() : null;
+   * }
+   * }</pre>
+   *
+   * @param <R> usually {@link Request}, such as a message
+   * @see BytesSetter
+   * @since 5.14
+   */
+  interface BytesGetter<R> {
+    /**
+     * Gets the propagation field as US-ASCII bytes. The result is read, not retained or modified.
+     *
+     * @param request see {@link #<R>}
+     * @param fieldName typically a header name
+     * @return the value of the field or {@code null}
+     * @since 5.14
+     */
+    @Nullable byte[] getBytes(R request, String fieldName);
+  }
+
+  /**
+   * Optionally implemented by a {@link Setter} when the transport stores field values as bytes.
+   * When supported, a {@link Propagation} like {@link B3Propagation} writes bytes directly instead
+   * of calling {@link Setter#put(Object, Object, String)}, which would otherwise encode a
+   * {@link String} per field.
+   *
+   * @param <R> usually {@link Request}, such as a message
+   * @see BytesGetter
+   * @since 5.14
+   */
+  interface BytesSetter<R> {
+    /**
+     * Replaces a propagation field with the given US-ASCII bytes.
+     *
+     * @param request see {@link #<R>}
+     * @param fieldName typically a header name
+     * @param value non-{@code null} value which the caller will not modify after this call
+     * @since 5.14
+     */
+    void putBytes(R request, String fieldName, byte[] value);
+  }
 }
@@ -52,6 +52,10 @@ public class SamplingFlags {
       @Override public TraceContext withFlags(TraceContext context, int flags) {
         return context.withFlags(flags);
       }
+
+      @Override public void inheritIdStrings(TraceContext context, TraceContext source) {
+        context.inheritIdStrings(source);
+      }
     };
   }
 
@@ -212,20 +212,20 @@ public final class TraceContext extends SamplingFlags {
     return new Builder(this);
   }
 
-  volatile String traceIdString; // Lazily initialized and cached.
+  // The hex strings below are lazily initialized and cached. Like String.hashCode, they are not
+  // volatile: a racing thread at worst computes an equal string, and strings are safely published
+  // via their final fields. Derived contexts inherit any already computed. See inheritIdStrings.
+  String traceIdString, parentIdString, localRootIdString, spanIdString;
 
   /** Returns the hex representation of the span's trace ID */
   public String traceIdString() {
     String r = traceIdString;
     if (r == null) {
-      r = toTraceIdString(traceIdHigh, traceId);
-      traceIdString = r;
+      r = traceIdString = toTraceIdString(traceIdHigh, traceId);
     }
     return r;
   }
 
-  volatile String parentIdString; // Lazily initialized and cached.
-
   /** Returns the hex representation of the span's parent ID */
   @Nullable public String parentIdString() {
     String r = parentIdString;
@@ -235,8 +235,6 @@ public final class TraceContext extends SamplingFlags {
     return r;
   }
 
-  volatile String localRootIdString; // Lazily initialized and cached.
-
   /** Returns the hex representation of the span's local root ID */
   @Nullable public String localRootIdString() {
     String r = localRootIdString;
@@ -246,8 +244,6 @@ public final class TraceContext extends SamplingFlags {
     return r;
   }
 
-  volatile String spanIdString; // Lazily initialized and cached.
-
   /** Returns the hex representation of the span's ID */
   public String spanIdString() {
     String r = spanIdString;
@@ -257,19 +253,125 @@ public final class TraceContext extends SamplingFlags {
     return r;
   }
 
+  /**
+   * Writes the {@linkplain #traceIdString() trace ID} as 16 or 32 lower-hex characters, returning
+   * the position after the last character written. This allows encoders to write into a reusable
+   * buffer without allocating a string, or copies the string if it was already computed.
+   *
+   * @throws IndexOutOfBoundsException if there isn't room in the destination
+   * @since 5.14
+   */
+  public int writeTraceIdString(char[] destination, int offset) {
+    int length = traceIdHigh != 0L ? 32 : 16;
+    checkRoom(destination.length, offset, length);
+    String cached = traceIdString;
+    if (cached != null) {
+      cached.getChars(0, length, destination, offset);
+      return offset + length;
+    }
+    if (length == 32) {
+      writeHexLong(destination, offset, traceIdHigh);
+      offset += 16;
+    }
+    writeHexLong(destination, offset, traceId);
+    return offset + 16;
+  }
+
+  /**
+   * Like {@link #writeTraceIdString(char[], int)}, except writes US-ASCII bytes.
+   *
+   * @since 5.14
+   */
+  public int writeTraceIdString(byte[] destination, int offset) {
+    int length = traceIdHigh != 0L ? 32 : 16;
+    checkRoom(destination.length, offset, length);
+    String cached = traceIdString;
+    if (cached != null) return writeAscii(cached, destination, offset);
+    if (length == 32) {
+      writeHexLong(destination, offset, traceIdHigh);
+      offset += 16;
+    }
+    writeHexLong(destination, offset, traceId);
+    return offset + 16;
+  }
+
+  /**
+   * Writes the {@linkplain #spanIdString() span ID} as 16 lower-hex characters, returning the
+   * position after the last character written.
+   *
+   * @throws IndexOutOfBoundsException if there isn't room in the destination
+   * @see #writeTraceIdString(char[], int)
+   * @since 5.14
+   */
+  public int writeSpanIdString(char[] destination, int offset) {
+    checkRoom(destination.length, offset, 16);
+    String cached = spanIdString;
+    if (cached != null) {
+      cached.getChars(0, 16, destination, offset);
+    } else {
+      writeHexLong(destination, offset, spanId);
+    }
+    return offset + 16;
+  }
+
+  /**
+   * Like {@link #writeSpanIdString(char[], int)}, except writes US-ASCII bytes.
+   *
+   * @since 5.14
+   */
+  public int writeSpanIdString(byte[] destination, int offset) {
+    checkRoom(destination.length, offset, 16);
+    String cached = spanIdString;
+    if (cached != null) return writeAscii(cached, destination, offset);
+    writeHexLong(destination, offset, spanId);
+    return offset + 16;
+  }
+
+  static void checkRoom(int destinationLength, int offset, int length) {
+    if (offset < 0) throw new IndexOutOfBoundsException("offset < 0");
+    if (destinationLength - offset < length) {
+      throw new IndexOutOfBoundsException("destination has less than " + length + " remaining");
+    }
+  }
+
+  static int writeAscii(String ascii, byte[] destination, int offset) {
+    for (int i = 0, length = ascii.length(); i < length; i++) {
+      destination[offset++] = (byte) ascii.charAt(i);
+    }
+    return offset;
+  }
+
+  /**
+   * Copies hex strings already computed by the source for IDs this context has in common. For
+   * example, a child's parent ID string is the same as its parent's span ID string.
+   */
+  void inheritIdStrings(TraceContext source) {
+    if (source == this) return;
+    if (traceIdString == null && traceId == source.traceId && traceIdHigh == source.traceIdHigh) {
+      traceIdString = source.traceIdString;
+    }
+    if (spanIdString == null && spanId == source.spanId) {
+      spanIdString = source.spanIdString;
+    }
+    if (parentIdString == null && parentId != 0L) {
+      if (parentId == source.parentId) parentIdString = source.parentIdString;
+      if (parentIdString == null && parentId == source.spanId) parentIdString = source.spanIdString;
+    }
+    if (localRootIdString == null && localRootId != 0L) {
+      if (localRootId == source.localRootId) localRootIdString = source.localRootIdString;
+      if (localRootIdString == null && localRootId == source.spanId) {
+        localRootIdString = source.spanIdString;
+      }
+    }
+  }
+
   /** Returns {@code $traceId/$spanId} */
   @Override public String toString() {
     boolean traceHi = traceIdHigh != 0;
     char[] result = new char[((traceHi ? 3 : 2) * 16) + 1]; // 2 ids and the delimiter
-    int pos = 0;
-    if (traceHi) {
-      writeHexLong(result, pos, traceIdHigh);
-      pos += 16;
-    }
-    writeHexLong(result, pos, traceId);
-    pos += 16;
+    int pos = writeTraceIdString(result, 0);
     result[pos++] = '/';
-    writeHexLong(result, pos, spanId);
+    writeSpanIdString(result, pos);
     return new String(result);
   }
 
@@ -278,8 +380,10 @@ public final class TraceContext extends SamplingFlags {
     long localRootId; // intentionally only mutable by the copy constructor to control usage.
     int flags;
     List<Object> extraList = Collections.emptyList();
+    @Nullable TraceContext source; // to inherit ID strings
 
     Builder(TraceContext context) { // no external implementations
+      source = context;
       traceIdHigh = context.traceIdHigh;
       traceId = context.traceId;
       localRootId = context.localRootId;
@@ -414,7 +518,7 @@ public final class TraceContext extends SamplingFlags {
      * @return false if the input is null or malformed
      */
     // temporarily package protected until we figure out if this is reusable enough to expose
-    boolean parseTraceId(String traceIdString, Object key) {
+    boolean parseTraceId(@Nullable CharSequence traceIdString, Object key) {
       if (isNull(key, traceIdString)) return false;
       int length = traceIdString.length();
       if (invalidIdLength(key, length, 32)) return false;
@@ -454,7 +558,11 @@ public final class TraceContext extends SamplingFlags {
 
     /** Parses the parent id from the input string. Returns true if the ID was missing or valid. */
     <R, K> boolean parseParentId(Propagation.Getter<R, K> getter, R request, K key) {
-      String parentIdString = getter.get(request, key);
+      return parseParentId(getter.get(request, key), key);
+    }
+
+    /** Like {@link #parseParentId(Propagation.Getter, Object, Object)}, except from the value. */
+    boolean parseParentId(@Nullable CharSequence parentIdString, Object key) {
       if (parentIdString == null) return true; // absent parent is ok
       int length = parentIdString.length();
       if (invalidIdLength(key, length, 16)) return false;
@@ -467,7 +575,11 @@ public final class TraceContext extends SamplingFlags {
 
     /** Parses the span id from the input string. Returns true if the ID is valid. */
     <R, K> boolean parseSpanId(Propagation.Getter<R, K> getter, R request, K key) {
-      String spanIdString = getter.get(request, key);
+      return parseSpanId(getter.get(request, key), key);
+    }
+
+    /** Like {@link #parseSpanId(Propagation.Getter, Object, Object)}, except from the value. */
+    boolean parseSpanId(@Nullable CharSequence spanIdString, Object key) {
       if (isNull(key, spanIdString)) return false;
       int length = spanIdString.length();
       if (invalidIdLength(key, length, 16)) return false;
@@ -495,22 +607,23 @@ public final class TraceContext extends SamplingFlags {
       return true;
     }
 
-    static boolean isNull(Object key, String maybeNull) {
+    static boolean isNull(Object key, @Nullable CharSequence maybeNull) {
       if (maybeNull != null) return false;
       Platform.get().log("{0} was null", key, null);
       return true;
     }
 
     /** Helps differentiate a parse failure from a successful parse of all zeros. */
-    static boolean isAllZeros(String value, int beginIndex, int endIndex) {
+    static boolean isAllZeros(CharSequence value, int beginIndex, int endIndex) {
       for (int i = beginIndex; i < endIndex; i++) {
         if (value.charAt(i) != '0') return false;
       }
       return true;
     }
 
-    static void maybeLogNotLowerHex(String notLowerHex) {
-      Platform.get().log("{0} is not a lower-hex string", notLowerHex, null);
+    static void maybeLogNotLowerHex(CharSequence notLowerHex) {
+      // toString as the input could be a view over a recycled buffer
+      Platform.get().log("{0} is not a lower-hex string", notLowerHex.toString(), null);
     }
 
     /** @throws IllegalArgumentException if missing trace ID or span ID */
@@ -519,9 +632,11 @@ public final class TraceContext extends SamplingFlags {
       if (traceIdHigh == 0L && traceId == 0L) missing += " traceId";
       if (spanId == 0L) missing += " spanId";
       if (!"".equals(missing)) throw new IllegalArgumentException("Missing:" + missing);
-      return new TraceContext(
+      TraceContext result = new TraceContext(
         flags, traceIdHigh, traceId, localRootId, parentId, spanId, ensureImmutable(extraList)
       );
+      if (source != null) result.inheritIdStrings(source);
+      return result;
     }
 
     Builder() { // no external implementations
@@ -529,15 +644,24 @@ public final class TraceContext extends SamplingFlags {
   }
 
   TraceContext shallowCopy() {
-    return new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extraList);
+    TraceContext result =
+      new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extraList);
+    result.inheritIdStrings(this);
+    return result;
   }
 
   TraceContext withExtra(List<Object> extra) {
-    return new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extra);
+    TraceContext result =
+      new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extra);
+    result.inheritIdStrings(this);
+    return result;
   }
 
   TraceContext withFlags(int flags) {
-    return new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extraList);
+    TraceContext result =
+      new TraceContext(flags, traceIdHigh, traceId, localRootId, parentId, spanId, extraList);
+    result.inheritIdStrings(this);
+    return result;
   }
 
   final long traceIdHigh, traceId, localRootId, parentId, spanId;
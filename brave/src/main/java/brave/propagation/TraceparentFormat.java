@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.internal.Nullable;
+import brave.internal.Platform;
+import brave.internal.RecyclableBuffers;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static brave.internal.InternalPropagation.FLAG_SAMPLED;
+import static brave.internal.InternalPropagation.FLAG_SAMPLED_SET;
+import static brave.internal.codec.HexCodec.writeHexLong;
+import static brave.propagation.B3SingleFormat.asciiToNewByteArray;
+
+/**
+ * This format corresponds to the propagation key "traceparent" defined by <a
+ * href="https://www.w3.org/TR/trace-context/">W3C Trace Context</a>, which delimits fields in the
+ * following manner.
+ *
+ * <pre>{@code
+ * traceparent: {version}-{trace-id}-{parent-id}-{trace-flags}
+ * }</pre>
+ *
+ * <p>For example, a sampled span would look like:
+ * {@code 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01}
+ *
+ * <h3>Mapping to Brave</h3>
+ *
+ * <p>The "parent-id" is the span ID of the caller, so it is extracted as {@link
+ * TraceContext#spanId()}. As the receiver always starts a child span, there is no parent ID.
+ *
+ * <p>The only trace flag defined is "sampled". When set, the context is {@linkplain
+ * TraceContext#sampled() sampled}. When unset, the caller didn't record, but the receiver may, so
+ * the sampling decision is deferred. There is no debug flag: debug contexts are written as sampled.
+ *
+ * <p>Later versions may append fields. These are ignored as long as the version 00 fields parse.
+ */
+public final class TraceparentFormat {
+  static final int FORMAT_LENGTH = 2 + 1 + 32 + 1 + 16 + 1 + 2; // version-traceid128-spanid-flags
+  static final int FLAGS_SAMPLED = 1;
+
+  static final int // instead of enum for smaller bytecode
+    FIELD_VERSION = 1,
+    FIELD_TRACE_ID = 2,
+    FIELD_PARENT_ID = 3,
+    FIELD_TRACE_FLAGS = 4;
+
+  /** Writes the trace context in version 00 format. */
+  public static String writeTraceparentFormat(TraceContext context) {
+    char[] buffer = RecyclableBuffers.parseBuffer();
+    int length = writeTraceparentFormat(context, buffer);
+    return new String(buffer, 0, length);
+  }
+
+  /**
+   * Like {@link #writeTraceparentFormat(TraceContext)}, but for requests with byte array or byte
+   * buffer values. For example, {@link ByteBuffer#wrap(byte[])} can wrap the result.
+   */
+  public static byte[] writeTraceparentFormatAsBytes(TraceContext context) {
+    char[] buffer = RecyclableBuffers.parseBuffer();
+    int length = writeTraceparentFormat(context, buffer);
+    return asciiToNewByteArray(buffer, length);
+  }
+
+  static int writeTraceparentFormat(TraceContext context, char[] result) {
+    result[0] = '0'; // version
+    result[1] = '0';
+    result[2] = '-';
+    writeHexLong(result, 3, context.traceIdHigh()); // zeros when 64-bit
+    writeHexLong(result, 19, context.traceId());
+    result[35] = '-';
+    writeHexLong(result, 36, context.spanId());
+    result[52] = '-';
+    result[53] = '0';
+    result[54] = Boolean.TRUE.equals(context.sampled()) ? '1' : '0';
+    return FORMAT_LENGTH;
+  }
+
+  @Nullable public static TraceContext parseTraceparentFormat(CharSequence traceparent) {
+    return parseTraceparentFormat(traceparent, 0, traceparent.length());
+  }
+
+  /**
+   * This reads a trace context a sequence potentially larger than the format. The use-case is
+   * reducing garbage, by re-using the input {@code value} across multiple parse operations.
+   *
+   * @param value the sequence that contains a traceparent formatted trace context
+   * @param beginIndex the inclusive begin index: {@linkplain CharSequence#charAt(int) index} of the
+   * first character in traceparent format.
+   * @param endIndex the exclusive end index: {@linkplain CharSequence#charAt(int) index}
+   * <em>after</em> the last character in traceparent format.
+   */
+  @Nullable public static TraceContext parseTraceparentFormat(CharSequence value, int beginIndex,
+    int endIndex) {
+    int length = endIndex - beginIndex;
+
+    if (length == 0) {
+      Platform.get().log("Invalid input: empty", null);
+      return null;
+    } else if (length < FORMAT_LENGTH) {
+      Platform.get().log("Invalid input: too short", null);
+      return null;
+    }
+
+    int version = 0, traceFlags = 0;
+    long traceIdHigh = 0L, traceId = 0L, spanId = 0L;
+    // Used for hex-decoding, performed by bitwise addition
+    long buffer = 0L;
+
+    // Fields are fixed length, so we know which one we are in by the position alone.
+    for (int i = 0; i < FORMAT_LENGTH; i++) {
+      char c = value.charAt(beginIndex + i);
+
+      if (i == 2 || i == 35 || i == 52) {
+        if (c != '-') {
+          log(fieldAt(i - 1), "Invalid input: expected a hyphen after {0}");
+          return null;
+        }
+        continue;
+      }
+
+      buffer <<= 4;
+      if (c >= '0' && c <= '9') {
+        buffer |= c - '0';
+      } else if (c >= 'a' && c <= 'f') {
+        buffer |= c - 'a' + 10;
+      } else {
+        log(fieldAt(i), "Invalid input: only valid characters are lower-hex for {0}");
+        return null;
+      }
+
+      switch (i) { // the last character of each field
+        case 1:
+          version = (int) buffer;
+          buffer = 0L;
+          break;
+        case 18:
+          traceIdHigh = buffer;
+          buffer = 0L;
+          break;
+        case 34:
+          traceId = buffer;
+          buffer = 0L;
+          break;
+        case 51:
+          spanId = buffer;
+          buffer = 0L;
+          break;
+        case 54:
+          traceFlags = (int) buffer;
+          break;
+        default:
+      }
+    }
+
+    if (version == 0xff) {
+      log(FIELD_VERSION, "Invalid input: {0} ff is forbidden");
+      return null;
+    } else if (length > FORMAT_LENGTH) {
+      // Only later versions can have more fields, and they must be delimited.
+      if (version == 0 || value.charAt(beginIndex + FORMAT_LENGTH) != '-') {
+        Platform.get().log("Invalid input: too long", null);
+        return null;
+      }
+    }
+
+    // Since we are using a hidden constructor, we need to validate here.
+    if ((traceIdHigh == 0L && traceId == 0L) || spanId == 0L) {
+      int field = spanId == 0L ? FIELD_PARENT_ID : FIELD_TRACE_ID;
+      log(field, "Invalid input: read all zeros {0}");
+      return null;
+    }
+
+    int flags = 0; // when the sampled flag is unset, the receiver may still decide to sample
+    if ((traceFlags & FLAGS_SAMPLED) == FLAGS_SAMPLED) flags = FLAG_SAMPLED_SET | FLAG_SAMPLED;
+
+    return new TraceContext(
+      flags,
+      traceIdHigh,
+      traceId,
+      0L, // localRootId is the first ID used in process, not necessarily the one extracted
+      0L, // the parent of the caller's span isn't propagated
+      spanId,
+      Collections.emptyList()
+    );
+  }
+
+  static int fieldAt(int i) {
+    if (i < 2) return FIELD_VERSION;
+    if (i < 35) return FIELD_TRACE_ID;
+    if (i < 52) return FIELD_PARENT_ID;
+    return FIELD_TRACE_FLAGS;
+  }
+
+  static void log(int fieldCode, String s) {
+    String field;
+    switch (fieldCode) {
+      case FIELD_VERSION:
+        field = "version";
+        break;
+      case FIELD_TRACE_ID:
+        field = "trace ID";
+        break;
+      case FIELD_PARENT_ID:
+        field = "parent ID";
+        break;
+      case FIELD_TRACE_FLAGS:
+        field = "trace flags";
+        break;
+      default:
+        throw new AssertionError("field code unmatched: " + fieldCode);
+    }
+    Platform.get().log(s, field, null);
+  }
+
+  TraceparentFormat() {
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.internal.propagation.InjectorFactory;
+import brave.internal.propagation.InjectorFactory.InjectorFunction;
+import brave.internal.propagation.StringPropagationAdapter;
+import brave.propagation.Propagation.Getter;
+import brave.propagation.Propagation.Setter;
+import brave.propagation.TraceContext.Extractor;
+import brave.propagation.TraceContext.Injector;
+import java.util.Collections;
+import java.util.List;
+
+import static brave.propagation.TraceparentFormat.parseTraceparentFormat;
+import static brave.propagation.TraceparentFormat.writeTraceparentFormat;
+import static java.util.Arrays.asList;
+
+/**
+ * Implements <a href="https://www.w3.org/TR/trace-context/">W3C Trace Context</a>.
+ *
+ * <p>The "traceparent" header is read and written with {@link TraceparentFormat}. The
+ * "tracestate" header is opaque to Brave: when a valid "traceparent" is extracted, any
+ * "tracestate" is carried in {@link TraceContext#extra()} and injected unchanged into downstream
+ * requests.
+ *
+ * <p>Like other formats, this can be wrapped with baggage:
+ * <pre>{@code
+ * tracingBuilder.propagationFactory(BaggagePropagation.newFactoryBuilder(W3CPropagation.FACTORY)
+ *   .add(SingleBaggageField.remote(REQUEST_ID))
+ *   .build());
+ * }</pre>
+ *
+ * @since 5.14
+ */
+public final class W3CPropagation {
+  /** Header that encodes the trace ID, caller's span ID and sampled flag in one value. */
+  static final String TRACEPARENT = "traceparent";
+  /** Header that encodes vendor-specific state, which is propagated unchanged. */
+  static final String TRACESTATE = "tracestate";
+
+  static final InjectorFunction TRACE_CONTEXT = new InjectorFunction() {
+    final List<String> keyNames = Collections.unmodifiableList(asList(TRACEPARENT, TRACESTATE));
+
+    @Override public List<String> keyNames() {
+      return keyNames;
+    }
+
+    @Override public <R> void inject(Setter<R, String> setter, TraceContext context, R request) {
+      setter.put(request, TRACEPARENT, writeTraceparentFormat(context));
+      Tracestate tracestate = context.findExtra(Tracestate.class);
+      if (tracestate != null) setter.put(request, TRACESTATE, tracestate.value);
+    }
+
+    @Override public String toString() {
+      return "TraceContext";
+    }
+  };
+
+  /** @since 5.14 */
+  public static final Propagation.Factory FACTORY = new Factory();
+
+  static final Propagation<String> INSTANCE = FACTORY.get();
+
+  /**
+   * Returns a singleton default instance.
+   *
+   * @since 5.14
+   */
+  public static Propagation<String> get() {
+    return INSTANCE;
+  }
+
+  static final class Factory extends Propagation.Factory implements Propagation<String> {
+    final InjectorFactory injectorFactory = InjectorFactory.newBuilder(TRACE_CONTEXT).build();
+
+    @Override public List<String> keys() {
+      return injectorFactory.keyNames();
+    }
+
+    @Override public Propagation<String> get() {
+      return this;
+    }
+
+    @Override public <K1> Propagation<K1> create(KeyFactory<K1> keyFactory) {
+      return StringPropagationAdapter.create(this, keyFactory);
+    }
+
+    /** The format has a 128-bit trace ID, so new traces shouldn't pad 64 bits with zeros. */
+    @Override public boolean requires128BitTraceId() {
+      return true;
+    }
+
+    @Override public <R> Injector<R> injector(Setter<R, String> setter) {
+      return injectorFactory.newInjector(setter);
+    }
+
+    @Override public <R> Extractor<R> extractor(Getter<R, String> getter) {
+      if (getter == null) throw new NullPointerException("getter == null");
+      return new W3CExtractor<>(getter);
+    }
+
+    @Override public String toString() {
+      return "W3CPropagation";
+    }
+  }
+
+  static final class W3CExtractor<R> implements Extractor<R> {
+    final Getter<R, String> getter;
+
+    W3CExtractor(Getter<R, String> getter) {
+      this.getter = getter;
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(R request) {
+      if (request == null) throw new NullPointerException("request == null");
+
+      String traceparent = getter.get(request, TRACEPARENT);
+      if (traceparent == null) return TraceContextOrSamplingFlags.EMPTY;
+
+      TraceContext context = parseTraceparentFormat(traceparent);
+      if (context == null) return TraceContextOrSamplingFlags.EMPTY; // malformed, so return empty
+
+      // Vendors must not propagate tracestate without a valid traceparent
+      String tracestate = getter.get(request, TRACESTATE);
+      if (tracestate == null || tracestate.isEmpty()) {
+        return TraceContextOrSamplingFlags.create(context);
+      }
+      return TraceContextOrSamplingFlags.newBuilder(context)
+        .addExtra(new Tracestate(tracestate))
+        .build();
+    }
+  }
+
+  /**
+   * The unparsed "tracestate" header. This doesn't change within the process, so it is immutable
+   * and copied to child contexts by the tracer.
+   */
+  static final class Tracestate {
+    final String value;
+
+    Tracestate(String value) {
+      this.value = value;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Tracestate)) return false;
+      return value.equals(((Tracestate) o).value);
+    }
+
+    @Override public int hashCode() {
+      return value.hashCode();
+    }
+
+    @Override public String toString() {
+      return "Tracestate{" + value + "}";
+    }
+  }
+
+  W3CPropagation() { // no instances
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The adaptive sampler targets an amount of traces per second by adjusting its probability to the
+ * observed request rate. Unlike {@link RateLimitingSampler}, decisions are not bunched at the start
+ * of each interval, and unlike {@link CountingSampler}, the probability isn't fixed.
+ *
+ * <p>For example, to target 10 traces per second, you'd initialize the following:
+ * <pre>{@code
+ * tracingBuilder.sampler(AdaptiveSampler.create(10));
+ * }</pre>
+ *
+ * <h3>Appropriate Usage</h3>
+ *
+ * <p>This is most useful as a rule in a {@link ParameterizedSampler} or {@code HttpRuleSampler}, as
+ * each rule has its own sampler and therefore its own request rate. This allows low-volume
+ * endpoints to be traced at all times, while hot endpoints don't swamp the collector.
+ * <pre>{@code
+ * httpTracingBuilder.serverSampler(HttpRuleSampler.newBuilder()
+ *   .putRule(pathStartsWith("/api"), AdaptiveSampler.create(10))
+ *   .putRule(pathStartsWith("/health"), AdaptiveSampler.create(1))
+ *   .build());
+ * }</pre>
+ *
+ * <p>This is a target, not a limit. As the probability is only recomputed each interval, a sudden
+ * increase in requests can exceed the target until the estimate catches up. When a hard limit is
+ * needed, use {@link RateLimitingSampler} instead.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Requests are counted, and each decisecond the count is folded into an exponentially-weighted
+ * moving average of requests per second. The weight of the latest interval depends on its length,
+ * so that a long idle period isn't treated the same as a decisecond. Until the request rate exceeds
+ * the target, all requests are sampled. After that, the probability is the target divided by the
+ * request rate. Decisions use a random number per thread, as samplers in rules are not passed a
+ * trace ID.
+ *
+ * @since 5.14
+ */
+public final class AdaptiveSampler extends Sampler {
+  /**
+   * @param tracesPerSecond the target amount of traces per second. 0 means never sample.
+   * @since 5.14
+   */
+  public static Sampler create(int tracesPerSecond) {
+    if (tracesPerSecond < 0) throw new IllegalArgumentException("tracesPerSecond < 0");
+    if (tracesPerSecond == 0) return Sampler.NEVER_SAMPLE;
+    return new AdaptiveSampler(tracesPerSecond, new Random());
+  }
+
+  static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  /** The time constant of the moving average: older rates lose most of their weight in a second */
+  static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  final int tracesPerSecond;
+  final AtomicLong nextUpdate;
+  final AtomicInteger requests = new AtomicInteger();
+  final ThreadLocal<long[]> randomState; // long[] as a mutable long, to avoid boxing
+  double requestsPerSecond = -1; // guarded by this, negative until the first estimate
+  volatile double probability = 1.0;
+
+  AdaptiveSampler(int tracesPerSecond, final Random random) {
+    this.tracesPerSecond = tracesPerSecond;
+    this.nextUpdate = new AtomicLong(System.nanoTime() + INTERVAL_NANOS);
+    this.randomState = new ThreadLocal<long[]>() {
+      @Override protected long[] initialValue() {
+        long seed;
+        synchronized (random) { // only shared once per thread
+          seed = random.nextLong();
+        }
+        return new long[] {seed != 0L ? seed : 1L}; // xorshift is stuck at zero
+      }
+    };
+  }
+
+  @Override public boolean isSampled(long ignoredTraceId) {
+    long now = System.nanoTime(), updateAt = nextUpdate.get();
+    // Only one thread per interval wins the race to update the probability
+    if (now - updateAt >= 0 && nextUpdate.compareAndSet(updateAt, now + INTERVAL_NANOS)) {
+      // the last update was scheduled at its start plus the interval
+      updateProbability(now - updateAt + INTERVAL_NANOS);
+    }
+    requests.incrementAndGet();
+
+    double probability = this.probability;
+    return probability >= 1.0 || nextDouble() < probability;
+  }
+
+  synchronized void updateProbability(long elapsedNanos) {
+    double rate = requests.getAndSet(0) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    if (requestsPerSecond < 0) {
+      requestsPerSecond = rate;
+    } else {
+      double weight = 1.0 - Math.exp(-elapsedNanos / DECAY_NANOS);
+      requestsPerSecond += weight * (rate - requestsPerSecond);
+    }
+    probability = requestsPerSecond <= tracesPerSecond ? 1.0 : tracesPerSecond / requestsPerSecond;
+  }
+
+  /** Returns a value in [0, 1) from a per-thread xorshift generator. */
+  double nextDouble() {
+    long[] state = randomState.get();
+    long x = state[0];
+    x ^= x << 13;
+    x ^= x >>> 7;
+    x ^= x << 17;
+    state[0] = x;
+    return (x >>> 11) * 0x1.0p-53;
+  }
+
+  @Override public String toString() {
+    return "AdaptiveSampler{tracesPerSecond=" + tracesPerSecond + "}";
+  }
+}
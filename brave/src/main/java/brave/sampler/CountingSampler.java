@@ -27,6 +27,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p>This initializes a random bitset of size 100 (corresponding to 1% granularity). This means
  * that it is accurate in units of 100 traces. At runtime, this loops through the bitset, returning
  * the value according to a counter.
+ *
+ * <p>The counter is shared by all threads. When many cores make decisions concurrently, consider
+ * {@link #createPerThread(float)}, or {@link BoundarySampler} if trace IDs are random.
  */
 public final class CountingSampler extends Sampler {
 
@@ -44,6 +47,25 @@ public final class CountingSampler extends Sampler {
     return new CountingSampler(probability);
   }
 
+  /**
+   * Like {@link #create(float)}, except each thread loops over the decisions with its own cursor.
+   * This avoids threads contending on a shared counter, at the cost of accuracy across threads:
+   * each thread is accurate in units of 100 of its own decisions.
+   *
+   * @param probability probability a request will result in a new trace. 0 means never sample, 1
+   * means always sample. Minimum probability is 0.01, or 1% of traces
+   * @since 5.14
+   */
+  public static Sampler createPerThread(final float probability) {
+    if (probability == 0) return NEVER_SAMPLE;
+    if (probability == 1.0) return ALWAYS_SAMPLE;
+    if (probability < 0.01f || probability > 1) {
+      throw new IllegalArgumentException(
+        "probability should be between 0.01 and 1: was " + probability);
+    }
+    return new PerThreadCountingSampler(probability);
+  }
+
   private final AtomicInteger counter;
   private final BitSet sampleDecisions;
 
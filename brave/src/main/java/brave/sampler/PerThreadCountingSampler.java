@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static brave.sampler.CountingSampler.randomBitSet;
+
+/**
+ * A variant of {@link CountingSampler} which gives each thread its own cursor into the decisions,
+ * so that the hot path reads and writes only thread-local state.
+ *
+ * <p>Like {@link CountingSampler}, the decisions are a random bitset of size 100. Each thread
+ * starts at a random offset, so that threads started together don't make the same decisions in
+ * lockstep. Every 100 consecutive decisions made by the same thread are exact. Across threads,
+ * the error is at most the partially completed window of each thread.
+ */
+final class PerThreadCountingSampler extends Sampler {
+  final BitSet sampleDecisions;
+  final ThreadLocal<int[]> cursor; // int[] as a mutable int, to avoid boxing
+
+  PerThreadCountingSampler(float probability) {
+    this(probability, new Random());
+  }
+
+  PerThreadCountingSampler(float probability, final Random random) {
+    int outOf100 = (int) (probability * 100.0f);
+    this.sampleDecisions = randomBitSet(100, outOf100, random);
+    this.cursor = new ThreadLocal<int[]>() {
+      @Override protected int[] initialValue() {
+        synchronized (random) { // only shared once per thread
+          return new int[] {random.nextInt(100)};
+        }
+      }
+    };
+  }
+
+  /** loops over the pre-canned decisions, resetting to zero when it gets to the end. */
+  @Override public boolean isSampled(long traceIdIgnored) {
+    int[] position = cursor.get();
+    int i = position[0];
+    position[0] = i == 99 ? 0 : i + 1;
+    return sampleDecisions.get(i);
+  }
+
+  @Override public String toString() {
+    return "PerThreadCountingSampler()";
+  }
+}
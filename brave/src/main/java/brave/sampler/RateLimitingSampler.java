@@ -41,6 +41,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>The implementation uses {@link System#nanoTime} and tracks how many yes decisions occur
  * across a second window. When the rate is at least 10/s, the yes decisions are equally split over
  * 10 deciseconds, allowing a roll-over of unused yes decisions up until the end of the second.
+ *
+ * <p>All threads update the same counter. When many cores make decisions concurrently, consider
+ * {@link #createStriped(int)}, which trades a little smoothing for less contention.
  */
 public class RateLimitingSampler extends Sampler {
   public static Sampler create(int tracesPerSecond) {
@@ -49,6 +52,30 @@ public class RateLimitingSampler extends Sampler {
     return new RateLimitingSampler(tracesPerSecond);
   }
 
+  /**
+   * Like {@link #create(int)}, except the reservoir is split across cells, one per available
+   * processor, so that concurrent decisions rarely update the same memory.
+   *
+   * <p>At the end of each second, no more than {@code tracesPerSecond} will have been sampled.
+   * However, within the second, up to 9 decisions per cell may pass earlier than {@link
+   * #create(int)} would allow. To keep decisions spread across the second, each cell is given at
+   * least 10 traces per second. Hence, rates under 20 behave the same as {@link #create(int)}.
+   *
+   * @since 5.14
+   */
+  public static Sampler createStriped(int tracesPerSecond) {
+    return createStriped(tracesPerSecond, Runtime.getRuntime().availableProcessors());
+  }
+
+  static Sampler createStriped(int tracesPerSecond, int processors) {
+    if (tracesPerSecond < 0) throw new IllegalArgumentException("tracesPerSecond < 0");
+    if (tracesPerSecond == 0) return Sampler.NEVER_SAMPLE;
+    int cellCount = 1;
+    while (cellCount < processors && cellCount * 2 <= tracesPerSecond / 10) cellCount <<= 1;
+    if (cellCount == 1) return new RateLimitingSampler(tracesPerSecond);
+    return new StripedRateLimitingSampler(tracesPerSecond, cellCount);
+  }
+
   static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
   static final long NANOS_PER_DECISECOND = NANOS_PER_SECOND / 10;
 
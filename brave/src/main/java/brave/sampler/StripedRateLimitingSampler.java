@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import brave.sampler.RateLimitingSampler.AtLeast10;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static brave.sampler.RateLimitingSampler.NANOS_PER_SECOND;
+
+/**
+ * A variant of {@link RateLimitingSampler} which splits the per-second reservoir into cells, so
+ * that threads deciding at the same time usually update different memory.
+ *
+ * <p>Each cell holds its share of the reservoir and the second it applies to, packed into one
+ * {@code long} so that a reset and a take are the same compare-and-set. A thread starts at a cell
+ * chosen by its ID, and only visits other cells when its own is exhausted or belongs to a newer
+ * second. Cells are padded apart to avoid false sharing.
+ *
+ * <h3>Tolerance</h3>
+ *
+ * <p>Seconds are aligned to when the sampler was created, and are the same for all cells. At the
+ * end of each second, no more than {@code tracesPerSecond} decisions will have passed. Within the
+ * second, each cell distributes its share across deciseconds like {@link RateLimitingSampler}, but
+ * allows its own remainder in the first decisecond. This means up to 9 decisions per cell can pass
+ * earlier than the unstriped sampler would allow.
+ */
+final class StripedRateLimitingSampler extends Sampler {
+  /** Longs between the start of each cell: 128 bytes covers adjacent cache line prefetch. */
+  static final int PADDING = 16;
+
+  final long startTick;
+  final AtomicLongArray cells; // (second << 32) | usage
+  final AtLeast10[] maxFunctions;
+  final int mask;
+
+  /** @param cellCount a power of two no more than {@code tracesPerSecond / 10} */
+  StripedRateLimitingSampler(int tracesPerSecond, int cellCount) {
+    int share = tracesPerSecond / cellCount, remainder = tracesPerSecond % cellCount;
+    maxFunctions = new AtLeast10[cellCount];
+    for (int i = 0; i < cellCount; i++) {
+      maxFunctions[i] = new AtLeast10(share + (i < remainder ? 1 : 0));
+    }
+    cells = new AtomicLongArray(cellCount * PADDING);
+    mask = cellCount - 1;
+    startTick = System.nanoTime();
+  }
+
+  @Override public boolean isSampled(long ignoredTraceId) {
+    long elapsed = System.nanoTime() - startTick;
+    long second = elapsed / NANOS_PER_SECOND;
+    long nanosUntilReset = NANOS_PER_SECOND - (elapsed - second * NANOS_PER_SECOND);
+
+    int home = homeCell(Thread.currentThread().getId());
+    for (int i = 0; i <= mask; i++) {
+      int cell = (home + i) & mask;
+      if (tryAcquire(cell, (int) second, nanosUntilReset)) return true;
+    }
+    return false;
+  }
+
+  boolean tryAcquire(int cell, int second, long nanosUntilReset) {
+    int index = cell * PADDING, max = maxFunctions[cell].max(nanosUntilReset);
+    while (true) {
+      long prev = cells.get(index);
+      int prevSecond = (int) (prev >>> 32), usage = (int) prev;
+      if (prevSecond != second) {
+        // Another thread read the clock after us and already moved this cell to the next second.
+        if (second - prevSecond < 0) return false;
+        usage = 0; // we are the first to use this cell in the current second
+      }
+      if (usage + 1 > max) return false;
+      long next = ((long) second << 32) | (usage + 1);
+      if (cells.compareAndSet(index, prev, next)) return true;
+    }
+  }
+
+  /** Spreads sequential thread IDs across cells. */
+  int homeCell(long threadId) {
+    return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave;
+
+import brave.propagation.TraceContext;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachedClockTest {
+  long platformMicros = 1000L, nanoTime = 5_000_000L;
+  // ticks are controlled manually unless the thread is started
+  CachedClock clock = newClock(CachedClock.newBuilder());
+
+  CachedClock newClock(CachedClock.Builder builder) {
+    return new CachedClock(builder, () -> platformMicros, () -> nanoTime);
+  }
+
+  @After public void close() {
+    clock.close();
+  }
+
+  @Test public void resolution_mustBeAtLeastAMicrosecond() {
+    assertThatThrownBy(() -> CachedClock.newBuilder().resolution(0, TimeUnit.MILLISECONDS))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("resolution < 1");
+    assertThatThrownBy(() -> CachedClock.newBuilder().resolution(999, TimeUnit.NANOSECONDS))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("resolution < 1 microsecond");
+  }
+
+  @Test public void currentTimeMicroseconds_onlyChangesOnTick() {
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(1000L);
+
+    clock.tick(clock.baseNanos + 1500L);
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(1001L);
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(1001L);
+
+    clock.tick(clock.baseNanos + 100_000L);
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(1100L);
+  }
+
+  @Test public void resync_ignoresSmallDrift() {
+    platformMicros = 1000L + CachedClock.MAX_DRIFT_MICROS;
+    clock.resync(clock.baseNanos);
+    clock.tick(clock.baseNanos);
+
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(1000L);
+  }
+
+  @Test public void resync_adjustsToPlatformClock() {
+    long nanoTime = clock.baseNanos + TimeUnit.SECONDS.toNanos(1);
+    platformMicros = 1000L + 1_000_000L + 5000L; // NTP moved the clock 5ms forward
+    clock.resync(nanoTime);
+    clock.tick(nanoTime);
+
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(platformMicros);
+  }
+
+  @Test public void close_fallsBackToPlatformClock() {
+    clock.close();
+    platformMicros = 2000L;
+
+    assertThat(clock.currentTimeMicroseconds()).isEqualTo(2000L);
+    assertThat(clock.traceClock().currentTimeMicroseconds()).isEqualTo(2000L);
+  }
+
+  @Test public void traceClock_sameInstanceWhenNotHybrid() {
+    assertThat(clock.traceClock()).isSameAs(clock);
+  }
+
+  @Test public void traceClock_hybrid_anchorsEpochToCurrentTick() {
+    clock = newClock(CachedClock.newBuilder().hybrid(true));
+    nanoTime += 2_000_000L; // the tick is now stale by 2ms
+
+    Clock traceClock = clock.traceClock();
+    assertThat(traceClock).isNotSameAs(clock.traceClock()); // state is per trace
+
+    CachedClock.HybridClock hybrid = (CachedClock.HybridClock) traceClock;
+    assertThat(hybrid.baseNanos).isEqualTo(nanoTime);
+    assertThat(hybrid.baseEpochMicros).isEqualTo(3000L);
+  }
+
+  /** A span shorter than the tick must not include time elapsed in the tick before it started. */
+  @Test public void traceClock_hybrid_shortSpanHasExactDuration() {
+    clock = newClock(CachedClock.newBuilder().hybrid(true));
+    nanoTime += 90_000L; // 90us into the tick
+    Clock traceClock = clock.traceClock();
+
+    long start = traceClock.currentTimeMicroseconds();
+    nanoTime += 5_000L; // 5us span
+    long finish = traceClock.currentTimeMicroseconds();
+
+    assertThat(start).isEqualTo(1090L);
+    assertThat(finish).isEqualTo(1095L);
+  }
+
+  @Test public void traceClock_hybrid_longSpanIsRelativeToNanoTime() {
+    clock = newClock(CachedClock.newBuilder().hybrid(true));
+    Clock traceClock = clock.traceClock();
+
+    long start = traceClock.currentTimeMicroseconds();
+    clock.tick(clock.baseNanos + 10_000_000L); // ticks don't affect a trace in progress
+    nanoTime += 2_000_000L;
+    long finish = traceClock.currentTimeMicroseconds();
+
+    assertThat(finish - start).isEqualTo(2000L);
+  }
+
+  @Test public void ticker_updatesTime() throws InterruptedException {
+    clock = CachedClock.newBuilder().resolution(1, TimeUnit.MILLISECONDS).build();
+    long first = clock.currentTimeMicroseconds();
+
+    Thread.sleep(20);
+
+    assertThat(clock.currentTimeMicroseconds()).isGreaterThan(first);
+  }
+
+  @Test public void tracing_usesCachedClockForAllSpansInTrace() {
+    clock = newClock(CachedClock.newBuilder());
+    try (Tracing tracing = Tracing.newBuilder().clock(clock).build()) {
+      TraceContext context = tracing.tracer().newTrace().context();
+
+      assertThat(tracing.clock(context)).isSameAs(clock);
+    }
+  }
+
+  @Test public void toStringIncludesSettings() {
+    assertThat(clock)
+      .hasToString("CachedClock{resolution=100us, hybrid=false}");
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave;
+
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdGeneratorTest {
+  @Test public void timeOrdered_highBitsAreEpochSeconds() {
+    long epochSeconds = System.currentTimeMillis() / 1000;
+
+    long traceIdHigh = IdGenerator.timeOrdered().nextTraceIdHigh();
+
+    assertThat(traceIdHigh >>> 32).isBetween(epochSeconds, epochSeconds + 1);
+  }
+
+  @Test public void timeOrdered_clock_highBitsAreClockSeconds() {
+    Clock clock = () -> 1472470996199000L; // 2016-08-29T11:43:16.199Z
+
+    long traceIdHigh = IdGenerator.timeOrdered(clock).nextTraceIdHigh();
+
+    assertThat(traceIdHigh >>> 32).isEqualTo(1472470996L);
+  }
+
+  @Test public void timeOrdered_clock_cachedClock() {
+    long epochSeconds = System.currentTimeMillis() / 1000;
+    try (CachedClock clock = CachedClock.newBuilder().build()) {
+      long traceIdHigh = IdGenerator.timeOrdered(clock).nextTraceIdHigh();
+
+      assertThat(traceIdHigh >>> 32).isBetween(epochSeconds, epochSeconds + 1);
+    }
+  }
+
+  @Test public void random_highBitsAreNotEpochSeconds() {
+    long epochSeconds = System.currentTimeMillis() / 1000;
+
+    // the chance of 10 random values in a 2 second window is effectively zero
+    for (int i = 0; i < 10; i++) {
+      long traceIdHigh = IdGenerator.random().nextTraceIdHigh();
+      if ((traceIdHigh >>> 32) - epochSeconds > 1) return;
+    }
+    throw new AssertionError("expected random high bits");
+  }
+
+  @Test public void nextId_varies() {
+    for (IdGenerator idGenerator : asList(IdGenerator.timeOrdered(),
+      IdGenerator.timeOrdered(() -> 1472470996199000L), IdGenerator.random())) {
+      assertThat(idGenerator.nextId()).isNotEqualTo(idGenerator.nextId());
+    }
+  }
+
+  @Test public void toStringsAreHelpful() {
+    assertThat(IdGenerator.timeOrdered()).hasToString("TimeOrderedIdGenerator{}");
+    assertThat(IdGenerator.random()).hasToString("RandomIdGenerator{}");
+  }
+}
@@ -322,6 +322,26 @@ public class TracerTest {
     assertThat(tracer.toSpan(notSampled).isNoop()).isTrue();
   }
 
+  @Test public void idGenerator() {
+    tracer = Tracing.newBuilder().traceId128Bit(true).idGenerator(new IdGenerator() {
+      long nextId = -1L; // next is zero, which should be skipped
+
+      @Override public long nextId() {
+        return nextId++;
+      }
+
+      @Override public long nextTraceIdHigh() {
+        return 10L;
+      }
+    }).build().tracer();
+
+    TraceContext root = tracer.newTrace().context();
+    assertThat(root.traceIdHigh()).isEqualTo(10L);
+    assertThat(root.traceId()).isEqualTo(-1L);
+    assertThat(root.spanId()).isEqualTo(-1L);
+    assertThat(tracer.newChild(root).context().spanId()).isEqualTo(1L);
+  }
+
   @Test public void newChild() {
     TraceContext parent = tracer.newTrace().context();
 
@@ -333,6 +353,16 @@ public class TracerTest {
       .isInstanceOf(RealSpan.class);
   }
 
+  @Test public void newChild_inheritsIdStrings() {
+    TraceContext parent = tracer.newTrace().context();
+    String traceIdString = parent.traceIdString(), spanIdString = parent.spanIdString();
+
+    TraceContext child = tracer.newChild(parent).context();
+    assertThat(child.traceIdString()).isSameAs(traceIdString);
+    assertThat(child.parentIdString()).isSameAs(spanIdString);
+    assertThat(child.localRootIdString()).isSameAs(parent.localRootIdString());
+  }
+
   /** A child span is not sharing a span ID with its parent by definition */
   @Test public void newChild_isntShared() {
     TraceContext parent = tracer.newTrace().context();
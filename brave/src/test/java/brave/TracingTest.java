@@ -26,6 +26,7 @@ import brave.test.TestSpanHandler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.Test;
@@ -110,6 +111,20 @@ public class TracingTest {
     assertThat(zipkinSpans).isNotEmpty(); // ensures the assertions passed.
   }
 
+  @Test public void orphanTimeout_finishesSpansAndStopsOnClose() {
+    Tracing tracing = Tracing.newBuilder()
+      .orphanTimeout(1, TimeUnit.HOURS)
+      .addSpanHandler(spans).build();
+    try {
+      tracing.tracer().startScopedSpan("foo").finish();
+      assertThat(spans.spans()).hasSize(1);
+    } finally {
+      tracing.close();
+    }
+
+    assertThat(tracing).extracting("tracer.pendingSpans.sweeper.closed").isEqualTo(true);
+  }
+
   @Test public void spanHandler_loggingByDefault() {
     try (Tracing tracing = Tracing.newBuilder().build()) {
       assertThat((Object) tracing.tracer().pendingSpans).extracting("spanHandler.delegate")
@@ -25,6 +25,7 @@ import brave.propagation.TraceContext;
 import brave.propagation.TraceContext.Extractor;
 import brave.propagation.TraceContextOrSamplingFlags;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import org.junit.Test;
 
@@ -276,6 +277,60 @@ public class BaggageFieldTest {
       .isInstanceOf(NullPointerException.class);
   }
 
+  @Test public void updateValues_context() {
+    Map<BaggageField, String> values = new LinkedHashMap<>();
+    values.put(REQUEST_ID, "12345");
+    values.put(AMZN_TRACE_ID, "67890");
+
+    assertThat(BaggageField.updateValues(requestIdContext, values)).isTrue();
+    assertThat(REQUEST_ID.getValue(requestIdContext)).isEqualTo("12345");
+    assertThat(AMZN_TRACE_ID.getValue(requestIdContext)).isEqualTo("67890");
+
+    // no change
+    assertThat(BaggageField.updateValues(requestIdContext, values)).isFalse();
+  }
+
+  @Test public void updateValues_context_ignoresReadOnly() {
+    Map<BaggageField, String> values = new LinkedHashMap<>();
+    values.put(brave.baggage.BaggageFields.TRACE_ID, "abcd");
+    values.put(REQUEST_ID, "12345");
+    values.put(brave.baggage.BaggageFields.constant("region", "us-east-1"), "eu-west-1");
+
+    assertThat(BaggageField.updateValues(requestIdContext, values)).isTrue();
+    assertThat(REQUEST_ID.getValue(requestIdContext)).isEqualTo("12345");
+    assertThat(brave.baggage.BaggageFields.TRACE_ID.getValue(requestIdContext))
+      .isEqualTo(requestIdContext.traceIdString());
+  }
+
+  @Test public void updateValues_context_null() {
+    // permits unguarded use of CurrentTraceContext.get()
+    assertThat(BaggageField.updateValues((TraceContext) null,
+      Collections.singletonMap(REQUEST_ID, "12345"))).isFalse();
+  }
+
+  @Test public void updateValues_context_noBaggage() {
+    assertThat(BaggageField.updateValues(context,
+      Collections.singletonMap(REQUEST_ID, "12345"))).isFalse();
+  }
+
+  @Test public void updateValues_extracted() {
+    Map<BaggageField, String> values = new LinkedHashMap<>();
+    values.put(REQUEST_ID, "12345");
+    values.put(AMZN_TRACE_ID, "67890");
+
+    assertThat(BaggageField.updateValues(emptyExtraction, values)).isTrue();
+    assertThat(REQUEST_ID.getValue(emptyExtraction)).isEqualTo("12345");
+    assertThat(AMZN_TRACE_ID.getValue(emptyExtraction)).isEqualTo("67890");
+  }
+
+  @Test public void updateValues_invalid() {
+    assertThatThrownBy(() -> BaggageField.updateValues(context, null))
+      .isInstanceOf(NullPointerException.class);
+    assertThatThrownBy(() -> BaggageField.updateValues((TraceContextOrSamplingFlags) null,
+      Collections.emptyMap()))
+      .isInstanceOf(NullPointerException.class);
+  }
+
   @Test public void toString_onlyHasName() {
     assertThat(BaggageField.create("Foo"))
       .hasToString("BaggageField{Foo}"); // case preserved as that's the field name
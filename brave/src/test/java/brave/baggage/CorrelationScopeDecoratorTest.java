@@ -585,6 +585,20 @@ public class CorrelationScopeDecoratorTest {
     assertThat(map).isEmpty();
   }
 
+  @Test public void flushOnUpdate_updateValues() {
+    try (Scope s = withFlushOnUpdateScopeDecorator.decorateScope(contextWithBaggage,
+      mock(Scope.class))) {
+      Map<BaggageField, String> values = new LinkedHashMap<>();
+      values.put(FIELD.baggageField(), "romeo");
+      values.put(FLUSH_FIELD.baggageField(), "excel");
+      BaggageField.updateValues(contextWithBaggage, values);
+
+      // same as updating each field
+      assertThat(map).containsEntry("flushed", "excel").containsEntry(FIELD.name(), "romeo");
+    }
+    assertThat(map).isEmpty();
+  }
+
   void assertNestedUpdatesCoherent(ScopeDecorator decorator) {
     try (Scope s = decorator.decorateScope(contextWithBaggage, mock(Scope.class))) {
       FLUSH_FIELD.baggageField().updateValue(contextWithBaggage, "word");
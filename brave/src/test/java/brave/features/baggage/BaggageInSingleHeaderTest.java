@@ -20,6 +20,7 @@ import brave.propagation.B3Propagation;
 import brave.propagation.Propagation;
 import brave.propagation.TraceContext;
 import brave.propagation.TraceContext.Injector;
+import brave.propagation.TraceContextOrSamplingFlags;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import org.junit.Test;
@@ -58,4 +59,37 @@ public class BaggageInSingleHeaderTest {
         entry("baggage", "one=1,three=3") // excluding the blacklist field including the dynamic one
     );
   }
+
+  /** This shows that decoding reuses configured fields, and creates fields for unknown names. */
+  @Test public void decodes_arbitrary_fields() {
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("b3", "0000000000000001-0000000000000002");
+    headers.put("baggage", "ONE=1,three=3");
+
+    TraceContextOrSamplingFlags extracted = factory.get().<Map<String, String>>extractor(Map::get).extract(headers);
+    TraceContext context = factory.decorate(extracted.context());
+
+    assertThat(field1.getValue(context)).isEqualTo("1");
+    assertThat(field3.getValue(context)).isEqualTo("3");
+    assertThat(BaggageField.getAllValues(context)).containsOnly(
+        entry("one", "1"),
+        entry("three", "3")
+    );
+  }
+
+  @Test public void roundTrip() {
+    TraceContext context = factory.decorate(TraceContext.newBuilder().traceId(1).spanId(2).build());
+    field1.updateValue(context, "1");
+    field3.updateValue(context, "3");
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    factory.get().<Map<String, String>>injector(Map::put).inject(context, headers);
+    headers.remove("one"); // only decode the single header
+
+    TraceContextOrSamplingFlags extracted = factory.get().<Map<String, String>>extractor(Map::get).extract(headers);
+    TraceContext extractedContext = factory.decorate(extracted.context());
+
+    assertThat(BaggageField.getAllValues(extractedContext))
+        .containsExactlyEntriesOf(BaggageField.getAllValues(context));
+  }
 }
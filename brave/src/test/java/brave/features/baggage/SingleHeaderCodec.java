@@ -16,6 +16,8 @@ package brave.features.baggage;
 import brave.baggage.BaggageField;
 import brave.baggage.BaggageField.ValueUpdater;
 import brave.internal.baggage.BaggageCodec;
+import brave.internal.baggage.BaggageFields;
+import brave.internal.baggage.StreamingBaggageCodec;
 import brave.internal.codec.EntrySplitter;
 import brave.propagation.TraceContext;
 import java.util.Collections;
@@ -27,7 +29,8 @@ import java.util.Map;
  *
  * <p>See https://github.com/w3c/correlation-context/blob/master/correlation_context/HTTP_HEADER_FORMAT.md
  */
-final class SingleHeaderCodec implements BaggageCodec, EntrySplitter.Handler<ValueUpdater> {
+final class SingleHeaderCodec implements StreamingBaggageCodec,
+  EntrySplitter.Handler<ValueUpdater>, BaggageFields.ValueConsumer<StringBuilder> {
   static final EntrySplitter ENTRY_SPLITTER = EntrySplitter.newBuilder().build();
   static final SingleHeaderCodec INSTANCE = new SingleHeaderCodec();
 
@@ -65,4 +68,15 @@ final class SingleHeaderCodec implements BaggageCodec, EntrySplitter.Handler<Val
     }
     return result.length() == 0 ? null : result.toString();
   }
+
+  @Override public String encode(BaggageFields fields, TraceContext context, Object request,
+    StringBuilder buffer) {
+    fields.forEachRemoteValue(this, buffer);
+    return buffer.length() == 0 ? null : buffer.toString();
+  }
+
+  @Override public void accept(StringBuilder target, BaggageField field, String value) {
+    if (target.length() > 0) target.append(',');
+    target.append(field.name()).append('=').append(value);
+  }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Tags;
+import brave.handler.AsyncSpanHandler.Backpressure;
+import brave.handler.SpanHandler.Cause;
+import brave.propagation.TraceContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AsyncSpanHandlerTest {
+  MutableSpanBytesEncoder encoder = MutableSpanBytesEncoder.zipkinJsonV2(Tags.ERROR);
+  TraceContext sampled = TraceContext.newBuilder().traceId(1L).spanId(2L).sampled(true).build();
+  TraceContext notSampled = sampled.toBuilder().sampled(false).sampledLocal(true).build();
+  List<String> messages = new CopyOnWriteArrayList<>();
+  AsyncSpanHandler.Sink recordingSink = (buffer, length, spanCount) ->
+    messages.add(new String(buffer, 0, length, UTF_8));
+  AsyncSpanHandler handler;
+
+  @After public void close() {
+    if (handler != null) handler.close();
+  }
+
+  AsyncSpanHandler.Builder newBuilder(AsyncSpanHandler.Sink sink) {
+    // long timeout so that tests control when batches are sent
+    return AsyncSpanHandler.newBuilder(encoder, sink).messageTimeout(1, TimeUnit.HOURS);
+  }
+
+  static MutableSpan span(String name) {
+    MutableSpan span = new MutableSpan();
+    span.traceId("0000000000000001");
+    span.id("0000000000000002");
+    span.name(name);
+    span.localServiceName("frontend");
+    return span;
+  }
+
+  @Test public void flush_encodesBatch() {
+    handler = newBuilder(recordingSink).build();
+    List<MutableSpan> spans = asList(span("a"), span("b"), span("c"));
+    for (MutableSpan span : spans) handler.end(sampled, span, Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(messages).containsExactly(new String(encoder.encodeList(spans), UTF_8));
+    assertThat(handler.sentSpans()).isEqualTo(3);
+    assertThat(handler.sentMessages()).isEqualTo(1);
+    assertThat(handler.queuedSpans()).isZero();
+  }
+
+  @Test public void close_sendsQueuedSpans() {
+    handler = newBuilder(recordingSink).build();
+    handler.end(sampled, span("a"), Cause.FINISHED);
+
+    handler.close();
+
+    assertThat(messages).hasSize(1);
+    assertThat(handler.sentSpans()).isEqualTo(1);
+  }
+
+  @Test public void close_dropsLaterSpans() {
+    handler = newBuilder(recordingSink).build();
+    handler.close();
+
+    handler.end(sampled, span("a"), Cause.FINISHED);
+
+    assertThat(handler.droppedSpans()).isEqualTo(1);
+    assertThat(handler.queuedSpans()).isZero();
+  }
+
+  @Test public void messageTimeout_sendsPartialBatch() throws InterruptedException {
+    CountDownLatch sent = new CountDownLatch(1);
+    handler = AsyncSpanHandler.newBuilder(encoder, (buffer, length, spanCount) -> sent.countDown())
+      .messageTimeout(10, TimeUnit.MILLISECONDS)
+      .build();
+
+    handler.end(sampled, span("a"), Cause.FINISHED);
+
+    assertThat(sent.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  /** The queue size can skip past the threshold when producers race, so it mustn't need to match */
+  @Test public void wakesDrainer_whenConcurrentProducersPassThreshold() throws Exception {
+    CountDownLatch sent = new CountDownLatch(1);
+    handler = newBuilder((buffer, length, spanCount) -> sent.countDown())
+      .messageMaxSpans(10)
+      .build();
+
+    Thread[] producers = new Thread[4];
+    for (int i = 0; i < producers.length; i++) {
+      producers[i] = new Thread(() -> {
+        for (int j = 0; j < 100; j++) handler.end(sampled, span("a"), Cause.FINISHED);
+      });
+      producers[i].start();
+    }
+    for (Thread producer : producers) producer.join();
+
+    // The message timeout is an hour, so only a wake-up could have sent anything
+    assertThat(sent.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  /** flush() must not miss a span the drain thread is about to add to the batch. */
+  @Test public void flush_includesSpanBeingDrained() throws InterruptedException {
+    handler = newBuilder(recordingSink).messageMaxSpans(1).build();
+    awaitState(handler.drainer, Thread.State.TIMED_WAITING); // parked with nothing to do
+
+    synchronized (handler.batchLock) {
+      handler.end(sampled, span("a"), Cause.FINISHED); // wakes the drain thread
+      awaitState(handler.drainer, Thread.State.BLOCKED); // on the lock we hold
+
+      handler.flush();
+
+      assertThat(handler.sentSpans()).isEqualTo(1);
+    }
+  }
+
+  static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (thread.getState() != state) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(1);
+    }
+  }
+
+  @Test public void messageMaxSpans_splitsBatches() {
+    handler = newBuilder(recordingSink).messageMaxSpans(2).build();
+    for (String name : asList("a", "b", "c")) handler.end(sampled, span(name), Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(messages).containsExactly(
+      new String(encoder.encodeList(asList(span("a"), span("b"))), UTF_8),
+      new String(encoder.encodeList(asList(span("c"))), UTF_8)
+    );
+  }
+
+  @Test public void messageMaxBytes_splitsBatches() {
+    int twoSpans = encoder.encodeList(asList(span("a"), span("b"))).length;
+    handler = newBuilder(recordingSink).messageMaxBytes(twoSpans).build();
+    for (String name : asList("a", "b", "c")) handler.end(sampled, span(name), Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(messages).hasSize(2);
+    assertThat(messages.get(0).getBytes(UTF_8)).hasSize(twoSpans);
+  }
+
+  @Test public void messageMaxBytes_dropsSpansTooLarge() {
+    handler = newBuilder(recordingSink).messageMaxBytes(10).build();
+    handler.end(sampled, span("a"), Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(messages).isEmpty();
+    assertThat(handler.droppedSpans()).isEqualTo(1);
+  }
+
+  @Test public void skipsAbandoned() {
+    handler = newBuilder(recordingSink).build();
+    handler.end(sampled, span("a"), Cause.ABANDONED);
+
+    assertThat(handler.queuedSpans()).isZero();
+  }
+
+  @Test public void skipsNotSampled() {
+    handler = newBuilder(recordingSink).build();
+    handler.end(notSampled, span("a"), Cause.FINISHED);
+
+    assertThat(handler.queuedSpans()).isZero();
+  }
+
+  @Test public void alwaysReportSpans() {
+    handler = newBuilder(recordingSink).alwaysReportSpans(true).build();
+    handler.end(notSampled, span("a"), Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(handler.sentSpans()).isEqualTo(1);
+  }
+
+  @Test public void sinkFailure_countsDroppedSpans() {
+    handler = newBuilder((buffer, length, spanCount) -> {
+      throw new IOException("collector down");
+    }).build();
+    handler.end(sampled, span("a"), Cause.FINISHED);
+    handler.end(sampled, span("b"), Cause.FINISHED);
+
+    handler.flush();
+
+    assertThat(handler.droppedSpans()).isEqualTo(2);
+    assertThat(handler.sentSpans()).isZero();
+  }
+
+  @Test public void backpressure_dropNewest() throws InterruptedException {
+    BlockingSink sink = new BlockingSink();
+    handler = fillQueue(sink, Backpressure.DROP_NEWEST);
+    MutableSpan newest = span("newest");
+
+    handler.end(sampled, newest, Cause.FINISHED);
+
+    assertThat(handler.droppedSpans()).isEqualTo(1);
+    sink.release.countDown();
+    handler.close();
+    assertThat(sink.names()).doesNotContain("newest");
+  }
+
+  @Test public void backpressure_dropOldest() throws InterruptedException {
+    BlockingSink sink = new BlockingSink();
+    handler = fillQueue(sink, Backpressure.DROP_OLDEST);
+
+    handler.end(sampled, span("newest"), Cause.FINISHED);
+
+    assertThat(handler.droppedSpans()).isEqualTo(1);
+    sink.release.countDown();
+    handler.close();
+    assertThat(sink.names()).containsExactly("blocker", "queued1", "newest");
+  }
+
+  @Test public void backpressure_blockTimesOut() throws InterruptedException {
+    BlockingSink sink = new BlockingSink();
+    handler = fillQueue(sink, Backpressure.BLOCK);
+
+    long start = System.nanoTime();
+    handler.end(sampled, span("newest"), Cause.FINISHED);
+
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    assertThat(handler.droppedSpans()).isEqualTo(1);
+    sink.release.countDown();
+  }
+
+  @Test public void backpressure_blockSucceedsWhenDrained() throws InterruptedException {
+    BlockingSink sink = new BlockingSink();
+    handler = fillQueue(sink, Backpressure.BLOCK);
+    sink.release.countDown();
+
+    handler.end(sampled, span("newest"), Cause.FINISHED);
+    handler.close();
+
+    assertThat(handler.droppedSpans()).isZero();
+    assertThat(sink.names()).containsExactly("blocker", "queued0", "queued1", "newest");
+  }
+
+  @Test public void invalidConfig() {
+    assertThatThrownBy(() -> AsyncSpanHandler.newBuilder(encoder, recordingSink).queuedMaxSpans(0))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> AsyncSpanHandler.newBuilder(encoder, recordingSink).messageMaxSpans(0))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> AsyncSpanHandler.newBuilder(null, recordingSink))
+      .isInstanceOf(NullPointerException.class);
+  }
+
+  /** Blocks the drain thread on the first span, then fills a queue of two spans. */
+  AsyncSpanHandler fillQueue(BlockingSink sink, Backpressure backpressure)
+    throws InterruptedException {
+    AsyncSpanHandler handler = newBuilder(sink)
+      .queuedMaxSpans(2)
+      .messageMaxSpans(1)
+      .backpressure(backpressure)
+      .blockTimeout(5, TimeUnit.MILLISECONDS)
+      .build();
+    handler.end(sampled, span("blocker"), Cause.FINISHED);
+    assertThat(sink.blocked.await(10, TimeUnit.SECONDS)).isTrue();
+
+    handler.end(sampled, span("queued0"), Cause.FINISHED);
+    handler.end(sampled, span("queued1"), Cause.FINISHED);
+    assertThat(handler.queuedSpans()).isEqualTo(2);
+    return handler;
+  }
+
+  static final class BlockingSink implements AsyncSpanHandler.Sink {
+    final CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+    final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override public void accept(byte[] buffer, int length, int spanCount) {
+      messages.add(new String(buffer, 0, length, UTF_8));
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    List<String> names() {
+      List<String> result = new ArrayList<>();
+      for (String message : messages) {
+        int i = message.indexOf("\"name\":\"") + 8;
+        result.add(message.substring(i, message.indexOf('"', i)));
+      }
+      return result;
+    }
+  }
+}
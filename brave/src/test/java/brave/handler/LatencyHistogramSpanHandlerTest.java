@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Span.Kind;
+import brave.handler.LatencyHistogramSpanHandler.Snapshot;
+import brave.handler.SpanHandler.Cause;
+import brave.propagation.TraceContext;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static brave.handler.LatencyHistogramSpanHandler.BUCKET_COUNT;
+import static brave.handler.LatencyHistogramSpanHandler.bucketIndex;
+import static brave.handler.LatencyHistogramSpanHandler.bucketUpperBound;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramSpanHandlerTest {
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+  LatencyHistogramSpanHandler handler = LatencyHistogramSpanHandler.newBuilder().build();
+
+  static MutableSpan span(String name, Kind kind, long durationMicros) {
+    MutableSpan span = new MutableSpan();
+    span.localServiceName("frontend");
+    span.name(name);
+    span.kind(kind);
+    span.startTimestamp(1000L);
+    span.finishTimestamp(1000L + durationMicros);
+    return span;
+  }
+
+  @Test public void bucketIndex_exactBelowSubBucketCount() {
+    for (int i = 0; i < 16; i++) {
+      assertThat(bucketIndex(i)).isEqualTo(i);
+      assertThat(bucketUpperBound(i)).isEqualTo(i);
+    }
+  }
+
+  @Test public void bucketIndex_valueWithinBounds() {
+    for (long value = 1L; value < 1L << 36; value = value * 3 / 2 + 1) {
+      int index = bucketIndex(value);
+      assertThat(bucketUpperBound(index)).isGreaterThanOrEqualTo(value);
+      if (index > 0) assertThat(bucketUpperBound(index - 1)).isLessThan(value);
+      // relative error is bounded by the sub-bucket count
+      assertThat((double) bucketUpperBound(index)).isCloseTo(value, within(value / 16.0 + 1));
+    }
+  }
+
+  @Test public void bucketIndex_clampsHugeValues() {
+    assertThat(bucketIndex(Long.MAX_VALUE)).isEqualTo(BUCKET_COUNT - 1);
+    assertThat(bucketUpperBound(BUCKET_COUNT - 1)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test public void recordsByServiceKindAndName() {
+    handler.end(context, span("get /users", Kind.SERVER, 100L), Cause.FINISHED);
+    handler.end(context, span("get /users", Kind.SERVER, 200L), Cause.FINISHED);
+    handler.end(context, span("get /users", Kind.CLIENT, 300L), Cause.FINISHED);
+    handler.end(context, span("get /orders", Kind.SERVER, 400L), Cause.FINISHED);
+
+    List<Snapshot> snapshots = handler.snapshot();
+    assertThat(snapshots).extracting(Snapshot::name, Snapshot::kind, Snapshot::count)
+      .containsOnly(
+        tuple("get /users", Kind.SERVER, 2L),
+        tuple("get /users", Kind.CLIENT, 1L),
+        tuple("get /orders", Kind.SERVER, 1L)
+      );
+    assertThat(snapshots).extracting(Snapshot::localServiceName).containsOnly("frontend");
+  }
+
+  @Test public void nullKeys() {
+    MutableSpan span = new MutableSpan();
+    span.startTimestamp(1L);
+    span.finishTimestamp(11L);
+    handler.end(context, span, Cause.FINISHED);
+
+    assertThat(handler.snapshot()).singleElement().satisfies(s -> {
+      assertThat(s.localServiceName()).isNull();
+      assertThat(s.kind()).isNull();
+      assertThat(s.name()).isNull();
+      assertThat(s.maxMicros()).isEqualTo(10L);
+    });
+  }
+
+  @Test public void skipsSpansWithoutDuration() {
+    MutableSpan noStart = span("a", Kind.SERVER, 10L);
+    noStart.startTimestamp(0L);
+    MutableSpan backwards = span("a", Kind.SERVER, -10L);
+
+    handler.end(context, noStart, Cause.FINISHED);
+    handler.end(context, backwards, Cause.FINISHED);
+    handler.end(context, span("a", Kind.SERVER, 10L), Cause.ABANDONED);
+
+    assertThat(handler.snapshot()).isEmpty();
+  }
+
+  /** Otherwise, installing this would disable {@link brave.Tracing.Builder#recycleSpans()} */
+  @Test public void doesntRetainSpans() {
+    assertThat(handler.retainsSpans()).isFalse();
+  }
+
+  @Test public void percentiles() {
+    for (int i = 1; i <= 1000; i++) {
+      handler.end(context, span("a", Kind.SERVER, i * 1000L), Cause.FINISHED);
+    }
+
+    Snapshot snapshot = handler.snapshot().get(0);
+    assertThat(snapshot.count()).isEqualTo(1000L);
+    assertThat(snapshot.meanMicros()).isEqualTo(500_500.0);
+    assertThat((double) snapshot.valueAtPercentile(50.0)).isCloseTo(500_000, within(500_000 / 16.0));
+    assertThat((double) snapshot.valueAtPercentile(99.0)).isCloseTo(990_000, within(990_000 / 16.0));
+    assertThat((double) snapshot.valueAtPercentile(99.9)).isCloseTo(999_000, within(999_000 / 16.0));
+    assertThat(snapshot.valueAtPercentile(100.0)).isEqualTo(snapshot.maxMicros());
+    assertThat((double) snapshot.maxMicros()).isCloseTo(1_000_000, within(1_000_000 / 16.0));
+
+    assertThatThrownBy(() -> snapshot.valueAtPercentile(101.0))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test public void snapshotAndReset_startsNewInterval() {
+    handler.end(context, span("a", Kind.SERVER, 100L), Cause.FINISHED);
+    assertThat(handler.snapshot()).singleElement().extracting(Snapshot::count).isEqualTo(1L);
+    assertThat(handler.snapshotAndReset()).singleElement()
+      .extracting(Snapshot::count).isEqualTo(1L);
+
+    assertThat(handler.snapshot()).isEmpty();
+
+    handler.end(context, span("a", Kind.SERVER, 300L), Cause.FINISHED);
+    assertThat(handler.snapshotAndReset()).singleElement().satisfies(s -> {
+      assertThat(s.count()).isEqualTo(1L);
+      assertThat(s.sumMicros()).isEqualTo(300L);
+    });
+  }
+
+  @Test public void maxKeys() {
+    handler = LatencyHistogramSpanHandler.newBuilder().maxKeys(2).build();
+
+    handler.end(context, span("a", Kind.SERVER, 1L), Cause.FINISHED);
+    handler.end(context, span("b", Kind.SERVER, 1L), Cause.FINISHED);
+    handler.end(context, span("c", Kind.SERVER, 1L), Cause.FINISHED);
+    handler.end(context, span("a", Kind.SERVER, 1L), Cause.FINISHED); // existing is ok
+
+    assertThat(handler.snapshot()).extracting(Snapshot::name).containsOnly("a", "b");
+    assertThat(handler.droppedSpans()).isEqualTo(1L);
+  }
+
+  @Test public void maxKeys_invalid() {
+    assertThatThrownBy(() -> LatencyHistogramSpanHandler.newBuilder().maxKeys(0))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("maxKeys < 1");
+  }
+
+  @Test public void concurrentRecordingAndReset_losesNothing() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    int spansPerThread = 10_000;
+    for (int t = 0; t < 4; t++) {
+      executor.execute(() -> {
+        for (int i = 0; i < spansPerThread; i++) {
+          handler.end(context, span("a", Kind.SERVER, i), Cause.FINISHED);
+        }
+      });
+    }
+
+    long count = 0L;
+    executor.shutdown();
+    while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+      for (Snapshot snapshot : handler.snapshotAndReset()) count += snapshot.count();
+    }
+    for (Snapshot snapshot : handler.snapshotAndReset()) count += snapshot.count();
+
+    assertThat(count).isEqualTo(4L * spansPerThread);
+  }
+}
@@ -15,10 +15,16 @@ package brave.handler;
 
 import brave.Span.Kind;
 import brave.Tags;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -34,6 +40,7 @@ public class MutableSpanBytesEncoderTest {
       utf8Span = new MutableSpan();
 
   MutableSpanBytesEncoder encoder = MutableSpanBytesEncoder.zipkinJsonV2(Tags.ERROR);
+  MutableSpanBytesEncoder proto3 = MutableSpanBytesEncoder.zipkinProto3(Tags.ERROR);
 
   @Before public void testData() {
     clientSpan.traceId("7180c278b62e8f6a216a2aea45d08fc9");
@@ -182,4 +189,163 @@ public class MutableSpanBytesEncoderTest {
         .isEqualTo(
             "{\"traceId\":\"dc955a1d4768875d\",\"id\":\"dc955a1d4768875d\",\"kind\":\"SERVER\",\"name\":\"get\",\"timestamp\":1510256710021866,\"duration\":1117,\"localEndpoint\":{\"serviceName\":\"isao01\",\"ipv4\":\"10.23.14.72\"},\"tags\":{\"http.path\":\"/rs/A\",\"location\":\"T67792\",\"other\":\"A\"},\"shared\":true}");
   }
+
+  @Test public void encode_byteBuffer() {
+    for (ByteBuffer buffer : asList(ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024))) {
+      buffer.put((byte) '!');
+      assertThat(encoder.encode(clientSpan, buffer)).isTrue();
+
+      assertThat(toString(buffer))
+          .isEqualTo("!" + new String(encoder.encode(clientSpan), UTF_8));
+    }
+  }
+
+  @Test public void encode_byteBuffer_doesntFit() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(encoder.sizeInBytes(clientSpan) - 1);
+
+    assertThat(encoder.encode(clientSpan, buffer)).isFalse();
+    assertThat(buffer.position()).isZero();
+  }
+
+  @Test public void encodeList_byteBuffer_fillsBuffer() {
+    List<MutableSpan> spans = asList(clientSpan, rootServerSpan, localSpan);
+    // room for the first two spans, but not the third
+    int sizeInBytes = 3 + encoder.sizeInBytes(clientSpan) + encoder.sizeInBytes(rootServerSpan);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(sizeInBytes + 10);
+
+    assertThat(encoder.encodeList(spans, 0, buffer)).isEqualTo(2);
+    assertThat(toString(buffer))
+        .isEqualTo(new String(encoder.encodeList(spans.subList(0, 2)), UTF_8));
+
+    buffer.clear();
+    assertThat(encoder.encodeList(spans, 2, buffer)).isEqualTo(1);
+    assertThat(toString(buffer))
+        .isEqualTo(new String(encoder.encodeList(spans.subList(2, 3)), UTF_8));
+  }
+
+  @Test public void encodeList_byteBuffer_exactFit() {
+    List<MutableSpan> spans = asList(clientSpan, rootServerSpan);
+    ByteBuffer buffer = ByteBuffer.allocate(encoder.encodeList(spans).length);
+
+    assertThat(encoder.encodeList(spans, 0, buffer)).isEqualTo(2);
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test public void encodeList_byteBuffer_nothingFits() {
+    ByteBuffer buffer = ByteBuffer.allocate(encoder.sizeInBytes(clientSpan) + 1);
+    buffer.put((byte) '!');
+
+    assertThat(encoder.encodeList(asList(clientSpan), 0, buffer)).isZero();
+    assertThat(buffer.position()).isEqualTo(1);
+    assertThat(encoder.encodeList(asList(clientSpan), 1, buffer)).isZero();
+  }
+
+  /** Custom encoders inherit a default implementation, which encodes to an array first. */
+  @Test public void encodeList_byteBuffer_default() {
+    MutableSpanBytesEncoder delegating = new MutableSpanBytesEncoder() {
+      @Override public int sizeInBytes(MutableSpan input) {
+        return encoder.sizeInBytes(input);
+      }
+
+      @Override public byte[] encode(MutableSpan input) {
+        return encoder.encode(input);
+      }
+
+      @Override public byte[] encodeList(List<MutableSpan> input) {
+        return encoder.encodeList(input);
+      }
+
+      @Override public int encodeList(List<MutableSpan> spans, byte[] out, int pos) {
+        return encoder.encodeList(spans, out, pos);
+      }
+    };
+    List<MutableSpan> spans = asList(clientSpan, rootServerSpan, localSpan);
+    int sizeInBytes = 3 + encoder.sizeInBytes(clientSpan) + encoder.sizeInBytes(rootServerSpan);
+    ByteBuffer buffer = ByteBuffer.allocate(sizeInBytes + 10);
+
+    assertThat(delegating.encodeList(spans, 0, buffer)).isEqualTo(2);
+    assertThat(toString(buffer))
+        .isEqualTo(new String(encoder.encodeList(spans.subList(0, 2)), UTF_8));
+  }
+
+  static String toString(ByteBuffer buffer) {
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /** Decoding proto3 and JSON with Zipkin's codec should result in the same span. */
+  @Test public void proto3_decodesSameAsJson() {
+    MutableSpan ipv6Span = new MutableSpan(clientSpan);
+    ipv6Span.localIp("2001:db8::c001");
+    ipv6Span.remoteIpAndPort("::1", 63596);
+    MutableSpan debugSpan = new MutableSpan(rootServerSpan);
+    debugSpan.setDebug();
+    debugSpan.setShared();
+    MutableSpan throwableSpan = new MutableSpan(localSpan);
+    throwableSpan.error(new RuntimeException("this cake is a lie"));
+
+    for (MutableSpan span : asList(clientSpan, rootServerSpan, localSpan, errorSpan, utf8Span,
+        ipv6Span, debugSpan, throwableSpan)) {
+      byte[] encoded = proto3.encode(span);
+      assertThat(encoded).hasSize(proto3.sizeInBytes(span));
+      assertThat(SpanBytesDecoder.PROTO3.decodeOne(encoded))
+          .isEqualTo(SpanBytesDecoder.JSON_V2.decodeOne(encoder.encode(span)));
+    }
+  }
+
+  /** IpLiteral only checks characters, so group counts must be checked before sizing. */
+  @Test public void proto3_skipsMalformedIpv6() {
+    for (String ip : asList("1:2:3", "1:2:3:4:5:6:7:8:9", "1::2:3:4:5:6:7:8", "1:::2",
+        "12345::1")) {
+      MutableSpan span = new MutableSpan(clientSpan);
+      span.localIp(ip);
+
+      byte[] encoded = proto3.encode(span);
+      assertThat(encoded).hasSize(proto3.sizeInBytes(span));
+      assertThat(SpanBytesDecoder.PROTO3.decodeOne(encoded).localEndpoint().ipv6())
+          .isNull();
+    }
+  }
+
+  @Test public void proto3_idsAreRawBytes() {
+    byte[] encoded = proto3.encode(localSpan);
+
+    // ListOfSpans.spans, length, Span.trace_id, 8 bytes
+    assertThat(encoded).startsWith(0x0a, encoded.length - 2, 0x0a, 8, 0xdc, 0x95, 0x5a, 0x1d);
+    assertThat(encoded.length).isLessThan(encoder.sizeInBytes(localSpan) / 2);
+  }
+
+  @Test public void proto3_encodeList_isConcatenation() {
+    List<MutableSpan> spans = asList(clientSpan, rootServerSpan, localSpan);
+    byte[] encoded = proto3.encodeList(spans);
+
+    assertThat(encoded).hasSize(proto3.sizeInBytes(clientSpan) + proto3.sizeInBytes(rootServerSpan)
+        + proto3.sizeInBytes(localSpan));
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(encoded))
+        .isEqualTo(SpanBytesDecoder.JSON_V2.decodeList(encoder.encodeList(spans)));
+    assertThat(proto3.encodeList(asList())).isEmpty();
+
+    byte[] out = new byte[encoded.length + 1];
+    assertThat(proto3.encodeList(spans, out, 1)).isEqualTo(encoded.length);
+    assertThat(Arrays.copyOfRange(out, 1, out.length)).isEqualTo(encoded);
+  }
+
+  @Test public void proto3_encodeList_byteBuffer_fillsBuffer() {
+    List<MutableSpan> spans = asList(clientSpan, rootServerSpan, localSpan);
+    int sizeInBytes = proto3.sizeInBytes(clientSpan) + proto3.sizeInBytes(rootServerSpan);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(sizeInBytes + 10);
+
+    assertThat(proto3.encodeList(spans, 0, buffer)).isEqualTo(2);
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(bytes)).extracting(Span::name)
+        .containsExactly("get", "get");
+
+    buffer.clear().limit(proto3.sizeInBytes(localSpan) - 1);
+    assertThat(proto3.encode(localSpan, buffer)).isFalse();
+    assertThat(buffer.position()).isZero();
+  }
 }
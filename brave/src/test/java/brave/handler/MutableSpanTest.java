@@ -167,15 +167,51 @@ public class MutableSpanTest {
     );
   }
 
+  @Test public void annotate_growsWithoutCopyingEachTime() {
+    MutableSpan span = new MutableSpan();
+    span.annotate(1L, "1");
+    span.annotate(2L, "2");
+    long[] timestamps = span.annotationTimestamps;
+
+    span.annotate(3L, "3");
+    assertThat(span.annotationTimestamps).isNotSameAs(timestamps).hasSize(4);
+
+    timestamps = span.annotationTimestamps;
+    span.annotate(4L, "4");
+    assertThat(span.annotationTimestamps).isSameAs(timestamps);
+    assertThat(span.annotations()).containsExactly(
+      entry(1L, "1"), entry(2L, "2"), entry(3L, "3"), entry(4L, "4")
+    );
+  }
+
+  @Test public void tag_sizesArrayFromPreviousSpansOfSameName() {
+    String name = "tag_sizesArrayFromPreviousSpansOfSameName";
+    MutableSpan span = new MutableSpan();
+    span.name(name);
+    for (int i = 0; i < 5; i++) span.tag("k" + i, "v");
+
+    MutableSpan next = new MutableSpan();
+    next.name(name);
+    next.tag("k0", "v");
+    Object[] tags = next.tags;
+    for (int i = 1; i < 5; i++) next.tag("k" + i, "v");
+
+    assertThat(next.tags).isSameAs(tags).hasSize(10);
+    assertThat(next).isEqualTo(span);
+  }
+
   @Test public void annotations_copyOnWrite() {
     MutableSpan span = new MutableSpan();
     span.annotate(1L, "ws");
 
     // this shows the copy-constructor copies internal arrays.
     MutableSpan span2 = new MutableSpan(span);
-    assertThat(span2.annotations)
-        .isNotSameAs(span.annotations)
-        .isEqualTo(span.annotations);
+    assertThat(span2.annotationTimestamps)
+        .isNotSameAs(span.annotationTimestamps)
+        .isEqualTo(span.annotationTimestamps);
+    assertThat(span2.annotationValues)
+        .isNotSameAs(span.annotationValues)
+        .isEqualTo(span.annotationValues);
 
     span.annotate(2L, "wr");
     assertThat(span.annotations()).containsExactly(
@@ -598,7 +634,8 @@ public class MutableSpanTest {
 
     // this shows the copy-constructor copies internal arrays.
     MutableSpan span2 = new MutableSpan(span);
-    assertThat(span2.annotations).isNotSameAs(span.annotations);
+    assertThat(span2.annotationTimestamps).isNotSameAs(span.annotationTimestamps);
+    assertThat(span2.annotationValues).isNotSameAs(span.annotationValues);
     assertThat(span2.tags).isNotSameAs(span.tags);
     assertEqualWithSameHashCode(span, span2);
 
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TailSamplingSpanHandlerTest {
+  List<TraceContext> contexts = new ArrayList<>();
+  List<MutableSpan> spans = new ArrayList<>();
+  SpanHandler recording = new SpanHandler() {
+    @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+      contexts.add(context);
+      spans.add(span);
+      return true;
+    }
+  };
+  TailSamplingSpanHandler handler;
+  Tracing tracing;
+  Tracer tracer;
+
+  @After public void close() {
+    if (tracing != null) tracing.close();
+  }
+
+  void init(TailSamplingSpanHandler.Builder builder) {
+    handler = builder.build();
+    tracing = Tracing.newBuilder()
+      .sampler(Sampler.NEVER_SAMPLE)
+      .alwaysSampleLocal()
+      .addSpanHandler(handler)
+      .build();
+    tracer = tracing.tracer();
+  }
+
+  List<String> names() {
+    List<String> result = new ArrayList<>();
+    for (MutableSpan span : spans) result.add(span.name());
+    return result;
+  }
+
+  /** Finishes a local root with one child, with the given root duration. */
+  Span trace(long durationMicros) {
+    Span root = tracer.newTrace().name("root").start(1L);
+    tracer.newChild(root.context()).name("child").start(2L).finish(3L);
+    root.finish(1L + durationMicros);
+    return root;
+  }
+
+  @Test public void headSampled_passedImmediately() {
+    init(TailSamplingSpanHandler.newBuilder(recording));
+    tracing.close();
+    tracing = Tracing.newBuilder().addSpanHandler(handler).build();
+
+    Span root = tracing.tracer().newTrace().name("root").start();
+    tracing.tracer().newChild(root.context()).name("child").start().finish();
+
+    assertThat(names()).containsExactly("child");
+    assertThat(handler.bufferedLocalRoots()).isZero();
+  }
+
+  @Test public void notSampled_dropsLocalRoot() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    trace(10L);
+
+    assertThat(spans).isEmpty();
+    assertThat(handler.notSampledLocalRoots()).isEqualTo(1);
+    assertThat(handler.bufferedLocalRoots()).isZero();
+    assertThat(handler.bufferedBytes()).isZero();
+  }
+
+  @Test public void slowerThan_keepsLocalRootWithChildren() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    trace(1_000_000L);
+
+    assertThat(names()).containsExactly("child", "root");
+    assertThat(contexts).allSatisfy(c -> assertThat(c.sampled()).isTrue());
+    assertThat(handler.sampledLocalRoots()).isEqualTo(1);
+    assertThat(handler.bufferedBytes()).isZero();
+  }
+
+  @Test public void sampleErrors_childError() {
+    init(TailSamplingSpanHandler.newBuilder(recording));
+
+    Span root = tracer.newTrace().name("root").start();
+    tracer.newChild(root.context()).name("child").start().error(new RuntimeException()).finish();
+    root.finish();
+
+    assertThat(names()).containsExactly("child", "root");
+  }
+
+  @Test public void sampleErrors_errorTag() {
+    init(TailSamplingSpanHandler.newBuilder(recording));
+
+    tracer.newTrace().name("root").start().tag("error", "500").finish();
+
+    assertThat(names()).containsExactly("root");
+  }
+
+  @Test public void sampleErrors_disabled() {
+    init(TailSamplingSpanHandler.newBuilder(recording).sampleErrors(false));
+
+    tracer.newTrace().name("root").start().error(new RuntimeException()).finish();
+
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void addTagKey() {
+    init(TailSamplingSpanHandler.newBuilder(recording).addTagKey("user.vip"));
+
+    Span root = tracer.newTrace().name("root").start();
+    tracer.newChild(root.context()).name("child").start().tag("user.vip", "").finish();
+    root.finish();
+    tracer.newTrace().name("other").start().tag("user.id", "1").finish();
+
+    assertThat(names()).containsExactly("child", "root");
+  }
+
+  @Test public void separatesLocalRoots() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    Span slow = tracer.newTrace().name("slow").start(1L);
+    Span fast = tracer.newTrace().name("fast").start(1L);
+    tracer.newChild(slow.context()).name("slow-child").start(2L).finish(3L);
+    tracer.newChild(fast.context()).name("fast-child").start(2L).finish(3L);
+    assertThat(handler.bufferedLocalRoots()).isEqualTo(2);
+
+    fast.finish(2L);
+    slow.finish(2_000_000L);
+
+    assertThat(names()).containsExactly("slow-child", "slow");
+  }
+
+  @Test public void childAfterLocalRoot_usesDecision() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    Span root = tracer.newTrace().name("root").start(1L);
+    Span lateChild = tracer.newChild(root.context()).name("late").start(2L);
+    tracer.newChild(root.context()).name("child").start(2L).finish(3L);
+    root.finish(2_000_000L);
+    lateChild.finish(3_000_000L);
+
+    assertThat(names()).containsExactly("child", "root", "late");
+    assertThat(contexts).allSatisfy(c -> assertThat(c.sampled()).isTrue());
+    assertThat(handler.bufferedLocalRoots()).isZero();
+    assertThat(handler.bufferedBytes()).isZero();
+  }
+
+  @Test public void childAfterLocalRoot_usesDecision_notSampled() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    Span root = tracer.newTrace().name("root").start(1L);
+    Span lateChild = tracer.newChild(root.context()).name("late").start(2L);
+    root.finish(3L);
+    lateChild.finish(3_000_000L);
+
+    assertThat(spans).isEmpty();
+    assertThat(handler.bufferedLocalRoots()).isZero();
+    assertThat(handler.evictedSpans()).isZero();
+  }
+
+  /** Only recent decisions are kept, so a child of a forgotten local root is buffered again. */
+  @Test public void childAfterLocalRoot_decisionForgotten() {
+    init(TailSamplingSpanHandler.newBuilder(recording).slowerThan(1, TimeUnit.SECONDS));
+
+    Span root = tracer.newTrace().name("root").start(1L);
+    Span lateChild = tracer.newChild(root.context()).name("late").start(2L);
+    root.finish(2_000_000L);
+    // overwrite the decision with another local root that maps to the same slot
+    long localRootId = root.context().localRootId();
+    int slot = TailSamplingSpanHandler.decisionSlot(localRootId);
+    handler.sampledIds.set(slot, localRootId + TailSamplingSpanHandler.DECISION_CACHE_SIZE);
+    lateChild.finish(3_000_000L);
+
+    assertThat(names()).containsExactly("root");
+    assertThat(handler.bufferedLocalRoots()).isEqualTo(1);
+  }
+
+  @Test public void maxBufferedBytes_evictsOldest() {
+    // Measure a buffered child, as the tracer adds data such as the local endpoint
+    init(TailSamplingSpanHandler.newBuilder(recording));
+    tracer.newChild(tracer.newTrace().context()).name("child").start(2L).finish(3L);
+    long maxBytes = handler.bufferedBytes() * 2 - TailSamplingSpanHandler.LOCAL_ROOT_OVERHEAD;
+    tracing.close();
+
+    init(TailSamplingSpanHandler.newBuilder(recording)
+      .slowerThan(1, TimeUnit.SECONDS)
+      .maxBufferedBytes(maxBytes));
+
+    Span first = tracer.newTrace().name("first").start(1L);
+    tracer.newChild(first.context()).name("child").start(2L).finish(3L);
+    tracer.newChild(first.context()).name("child").start(2L).finish(3L);
+    assertThat(handler.bufferedBytes()).isEqualTo(maxBytes);
+    assertThat(handler.evictedSpans()).isZero();
+
+    Span second = tracer.newTrace().name("second").start(1L);
+    tracer.newChild(second.context()).name("child").start(2L).finish(3L);
+
+    assertThat(handler.evictedSpans()).isEqualTo(2);
+    assertThat(handler.bufferedLocalRoots()).isEqualTo(1);
+    assertThat(handler.bufferedBytes()).isLessThanOrEqualTo(maxBytes);
+
+    // The evicted local root is decided alone
+    first.finish(2_000_000L);
+    second.finish(2_000_000L);
+    assertThat(names()).containsExactly("first", "child", "second");
+    assertThat(handler.bufferedBytes()).isZero();
+  }
+
+  @Test public void maxBufferAge_evictsOldest() throws InterruptedException {
+    init(TailSamplingSpanHandler.newBuilder(recording).maxBufferAge(1, TimeUnit.NANOSECONDS));
+
+    Span first = tracer.newTrace().name("first").start();
+    tracer.newChild(first.context()).name("child").start().finish();
+    Thread.sleep(1L);
+    tracer.newTrace().name("second").start().finish();
+
+    assertThat(handler.evictedSpans()).isEqualTo(1);
+    assertThat(handler.bufferedLocalRoots()).isZero();
+    assertThat(handler.bufferedBytes()).isZero();
+  }
+
+  @Test public void abandoned_ignored() {
+    init(TailSamplingSpanHandler.newBuilder(recording).addTagKey("foo"));
+
+    Span root = tracer.newTrace().name("root").start();
+    tracer.newChild(root.context()).name("child").start().tag("foo", "bar").abandon();
+    root.finish();
+
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void estimateSizeInBytes_growsWithData() {
+    MutableSpan span = new MutableSpan();
+    long empty = TailSamplingSpanHandler.estimateSizeInBytes(span);
+    span.name("get");
+    span.tag("http.path", "/api");
+    span.annotate(1L, "foo");
+
+    assertThat(TailSamplingSpanHandler.estimateSizeInBytes(span))
+      .isEqualTo(empty + (40 + 6) + (16 + 40 + 18 + 40 + 8) + (24 + 40 + 6));
+  }
+
+  @Test public void builder_validates() {
+    TailSamplingSpanHandler.Builder builder = TailSamplingSpanHandler.newBuilder(recording);
+
+    assertThatThrownBy(() -> TailSamplingSpanHandler.newBuilder(null))
+      .isInstanceOf(NullPointerException.class);
+    assertThatThrownBy(() -> builder.maxBufferedBytes(0))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> builder.maxBufferAge(0, TimeUnit.SECONDS))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> builder.slowerThan(-1, TimeUnit.SECONDS))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
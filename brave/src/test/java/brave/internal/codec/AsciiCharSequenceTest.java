@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.codec;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AsciiCharSequenceTest {
+  byte[] bytes = "b3=1,b4=2".getBytes(UTF_8);
+  AsciiCharSequence view = new AsciiCharSequence();
+
+  @Test public void current_isThreadLocal() {
+    assertThat(AsciiCharSequence.current()).isSameAs(AsciiCharSequence.current());
+  }
+
+  @Test public void wrap_array() {
+    view.wrap(bytes, 3, 4);
+
+    assertThat(view.length()).isEqualTo(1);
+    assertThat(view.charAt(0)).isEqualTo('1');
+    assertThat(view).hasToString("1");
+  }
+
+  @Test public void wrap_array_badIndex() {
+    assertThatThrownBy(() -> view.wrap(bytes, 4, 3))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> view.wrap(bytes, 0, bytes.length + 1))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+  @Test public void wrap_heapBuffer_usesArray() {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    ((Buffer) buffer).position(5);
+
+    view.wrap(buffer.slice());
+
+    assertThat(view.array).isSameAs(bytes);
+    assertThat(view).hasToString("b4=2");
+  }
+
+  @Test public void wrap_directBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    ((Buffer) buffer).position(5);
+
+    view.wrap(buffer);
+
+    assertThat(view).hasToString("b4=2");
+    assertThat(view.subSequence(1, 3)).hasToString("4=");
+    assertThat(buffer.position()).isEqualTo(5); // unchanged
+  }
+
+  @Test public void charAt_outOfBounds() {
+    view.wrap(bytes, 3, 4);
+
+    assertThatThrownBy(() -> view.charAt(1))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> view.charAt(-1))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+  @Test public void clear() {
+    view.wrap(bytes, 3, 4).clear();
+
+    assertThat(view.array).isNull();
+    assertThat(view.length()).isZero();
+  }
+}
@@ -18,6 +18,7 @@ import org.junit.Test;
 import static brave.internal.codec.HexCodec.lenientLowerHexToUnsignedLong;
 import static brave.internal.codec.HexCodec.lowerHexToUnsignedLong;
 import static brave.internal.codec.HexCodec.toLowerHex;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 
@@ -117,4 +118,11 @@ public class HexCodecTest {
   public void toLowerHex_fixedLength() {
     assertThat(toLowerHex(0L)).isEqualTo("0000000000000000");
   }
+
+  @Test
+  public void writeHexLong_bytes() {
+    byte[] bytes = new byte[17];
+    HexCodec.writeHexLong(bytes, 1, 3405691582L);
+    assertThat(new String(bytes, 1, 16, UTF_8)).isEqualTo("00000000cafebabe");
+  }
 }
@@ -13,12 +13,76 @@
  */
 package brave.internal.codec;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
 import org.junit.Test;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class JsonWriterTest {
+  /** Writes the value as a JSON string, without implementing size */
+  static final WriteBuffer.Writer<String> STRING_WRITER = new WriteBuffer.Writer<String>() {
+    @Override public int sizeInBytes(String value) {
+      throw new AssertionError("writeList shouldn't size values");
+    }
+
+    @Override public void write(String value, WriteBuffer buffer) {
+      buffer.writeByte('"');
+      JsonEscaper.jsonEscape(value, buffer);
+      buffer.writeByte('"');
+    }
+  };
+
+  @After public void clearScratch() {
+    JsonWriter.SCRATCH.remove();
+  }
+
+  @Test public void writeList_singlePass() {
+    assertThat(new String(JsonWriter.writeList(STRING_WRITER, asList("a", "\u2028\"b")), UTF_8))
+        .isEqualTo("[\"a\",\"\\u2028\\\"b\"]");
+  }
+
+  @Test public void writeList_growsScratchBuffer() {
+    List<String> values = new ArrayList<>();
+    StringBuilder expected = new StringBuilder("[");
+    for (int i = 0; i < 2000; i++) {
+      String value = "\u0101" + i; // unicode so the UTF-8 length is different
+      values.add(value);
+      if (i > 0) expected.append(',');
+      expected.append('"').append(value).append('"');
+    }
+    expected.append(']');
+
+    assertThat(new String(JsonWriter.writeList(STRING_WRITER, values), UTF_8))
+        .isEqualTo(expected.toString());
+    assertThat(JsonWriter.SCRATCH.get().capacity())
+        .isGreaterThan(JsonWriter.SCRATCH_INITIAL_CAPACITY);
+  }
+
+  /** The closing bracket needs room, too. */
+  @Test public void writeList_growsScratchBufferForClosingBracket() {
+    char[] chars = new char[JsonWriter.SCRATCH_INITIAL_CAPACITY - 3]; // [""
+    Arrays.fill(chars, 'a');
+    String value = new String(chars);
+
+    assertThat(JsonWriter.writeList(STRING_WRITER, asList(value)))
+        .hasSize(JsonWriter.SCRATCH_INITIAL_CAPACITY + 1);
+  }
+
+  @Test public void writeList_doesntRetainHugeScratchBuffer() {
+    char[] chars = new char[JsonWriter.SCRATCH_MAX_RETAINED];
+    Arrays.fill(chars, 'a');
+
+    JsonWriter.writeList(STRING_WRITER, asList(new String(chars)));
+
+    assertThat(JsonWriter.SCRATCH.get()).isNull();
+  }
+
   @Test public void doesntStackOverflowOnToBufferWriterBug_lessThanBytes() {
     class FooWriter implements WriteBuffer.Writer<Object> {
       @Override public int sizeInBytes(Object value) {
@@ -13,11 +13,14 @@
  */
 package brave.internal.codec;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.junit.Test;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 // Originally a subset of zipkin2.internal.WriteBuffer
 public class WriteBufferTest {
@@ -141,6 +144,30 @@ public class WriteBufferTest {
     return new String(bytes, UTF_8);
   }
 
+  @Test public void writeAscii_long_byteBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+    buffer.put((byte) '[');
+    WriteBuffer.wrap(buffer).writeAscii(-1005656679588439279L);
+    buffer.put((byte) ']');
+
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertThat(new String(bytes, UTF_8)).isEqualTo("[-1005656679588439279]");
+  }
+
+  @Test public void byteBuffer_overflow() {
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    WriteBuffer writeBuffer = WriteBuffer.wrap(buffer);
+
+    assertThatThrownBy(() -> writeBuffer.writeAscii(123456789L))
+        .isInstanceOf(BufferOverflowException.class);
+    assertThat(buffer.position()).isZero(); // digits are checked before writing
+
+    assertThatThrownBy(() -> writeBuffer.writeUtf8("hello"))
+        .isInstanceOf(BufferOverflowException.class);
+  }
+
   // Test creating Buffer for a long string
   @Test public void writeString() {
     StringBuilder builder = new StringBuilder();
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.collect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RingBufferTest {
+  RingBuffer<Integer> queue = new RingBuffer<>(4);
+
+  @Test public void capacity_roundsUpToPowerOfTwo() {
+    assertThat(new RingBuffer<>(1).capacity()).isEqualTo(1);
+    assertThat(new RingBuffer<>(3).capacity()).isEqualTo(4);
+    assertThat(new RingBuffer<>(1000).capacity()).isEqualTo(1024);
+  }
+
+  @Test public void capacity_invalid() {
+    assertThatThrownBy(() -> new RingBuffer<>(0))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test public void offer_null() {
+    assertThatThrownBy(() -> queue.offer(null))
+      .isInstanceOf(NullPointerException.class);
+  }
+
+  @Test public void poll_empty() {
+    assertThat(queue.poll()).isNull();
+    assertThat(queue.isEmpty()).isTrue();
+  }
+
+  @Test public void offer_fullReturnsFalse() {
+    for (int i = 0; i < 4; i++) assertThat(queue.offer(i)).isTrue();
+
+    assertThat(queue.offer(4)).isFalse();
+    assertThat(queue.size()).isEqualTo(4);
+  }
+
+  @Test public void fifo_wrapsAround() {
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) queue.offer(round * 10 + i);
+      for (int i = 0; i < 4; i++) assertThat(queue.poll()).isEqualTo(round * 10 + i);
+    }
+    assertThat(queue.poll()).isNull();
+  }
+
+  @Test public void pollThenOffer_dropsOldest() {
+    for (int i = 0; i < 4; i++) queue.offer(i);
+
+    assertThat(queue.poll()).isZero();
+    assertThat(queue.offer(4)).isTrue();
+
+    List<Integer> drained = new ArrayList<>();
+    Integer next;
+    while ((next = queue.poll()) != null) drained.add(next);
+    assertThat(drained).containsExactly(1, 2, 3, 4);
+  }
+
+  @Test(timeout = 10000L) public void concurrentProducers_noLossOrDuplicates() throws Exception {
+    RingBuffer<Integer> queue = new RingBuffer<>(64);
+    int producers = 4, perProducer = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < perProducer; i++) {
+          while (!queue.offer(base + i)) Thread.yield();
+        }
+      });
+    }
+    start.countDown();
+
+    boolean[] seen = new boolean[producers * perProducer];
+    for (int received = 0; received < seen.length; ) {
+      Integer next = queue.poll();
+      if (next == null) {
+        Thread.yield();
+        continue;
+      }
+      assertThat(seen[next]).isFalse();
+      seen[next] = true;
+      received++;
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(queue.isEmpty()).isTrue();
+  }
+}
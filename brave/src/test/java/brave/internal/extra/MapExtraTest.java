@@ -13,6 +13,9 @@
  */
 package brave.internal.extra;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import org.junit.Test;
 
@@ -74,6 +77,86 @@ public class MapExtraTest {
     assertThat(extra.state()).isSameAs(before);
   }
 
+  @Test public void putAll() {
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("1", "one");
+    values.put("2", "two");
+
+    assertThat(extra.putAll(values)).isTrue();
+    assertThat(extra.get("1")).isEqualTo("one");
+    assertThat(extra.get("2")).isEqualTo("two");
+
+    values.put("1", null);
+    assertThat(extra.putAll(values)).isTrue();
+    assertThat(extra.get("1")).isNull();
+    assertThat(extra.get("2")).isEqualTo("two");
+  }
+
+  @Test public void putAll_noop() {
+    extra.put("1", "one");
+    Object before = extra.state();
+
+    assertThat(extra.putAll(Collections.singletonMap("1", "one"))).isFalse();
+    assertThat(extra.putAll(Collections.emptyMap())).isFalse();
+    assertThat(extra.state()).isSameAs(before);
+  }
+
+  @Test public void putAll_doesntAffectOtherInstances() {
+    extra.put("1", "one");
+    extra2.mergeStateKeepingOursOnConflict(extra); // shares the state array
+
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("1", "uno");
+    values.put("2", "dos");
+    extra.putAll(values);
+
+    assertThat(extra2.get("1")).isEqualTo("one");
+    assertThat(extra2.get("2")).isNull();
+  }
+
+  @Test public void putAll_ignoresUnconfigured() {
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("1", "one");
+    values.put("3", "three");
+
+    assertThat(extra.putAll(values)).isTrue();
+    assertThat(extra.get("1")).isEqualTo("one");
+    assertThat(extra.get("3")).isNull();
+    assertThat(extra.state()).hasSize(4);
+  }
+
+  @Test public void putAll_dynamic() {
+    factory = new BasicMapExtra.FactoryBuilder()
+        .addInitialKey("1")
+        .maxDynamicEntries(32).build();
+    extra = factory.create();
+
+    Map<String, String> values = new LinkedHashMap<>();
+    values.put("1", "one");
+    values.put("2", "two");
+    values.put("3", "three");
+
+    assertThat(extra.putAll(values)).isTrue();
+    assertThat(extra.keySet()).containsExactly("1", "2", "3");
+    assertThat(extra.get("3")).isEqualTo("three");
+  }
+
+  /** Ensures collisions in the open-addressed key table don't hide keys. */
+  @Test public void get_manyInitialKeys() {
+    BasicMapExtra.FactoryBuilder builder = new BasicMapExtra.FactoryBuilder();
+    for (int i = 0; i < 40; i++) builder.addInitialKey("key" + i);
+    factory = builder.build();
+    extra = factory.create();
+
+    for (int i = 0; i < 40; i++) extra.put("key" + i, "value" + i);
+
+    for (int i = 0; i < 40; i++) {
+      assertThat(extra.get("key" + i)).isEqualTo("value" + i);
+      assertThat(extra.indexOfInitialKey("key" + i)).isEqualTo(i * 2);
+    }
+    assertThat(extra.indexOfInitialKey("key40")).isEqualTo(-1);
+  }
+
   @Test public void get_ignored_if_unconfigured() {
     assertThat(extra.get("three")).isNull();
   }
@@ -122,6 +122,19 @@ public class NoopAwareSpanHandlerTest {
     verify(three, never()).end(context, span, Cause.FINISHED);
   }
 
+  @Test public void multiple_retainsSpans() {
+    SpanHandler[] handlers = new SpanHandler[3];
+    handlers[0] = one;
+    handlers[1] = two;
+    handlers[2] = three;
+
+    assertThat(NoopAwareSpanHandler.create(handlers, noop).retainsSpans()).isFalse();
+
+    when(two.retainsSpans()).thenReturn(true);
+
+    assertThat(NoopAwareSpanHandler.create(handlers, noop).retainsSpans()).isTrue();
+  }
+
   @Test public void doesntCrashOnNonFatalThrowable() {
     Throwable[] toThrow = new Throwable[1];
     SpanHandler handler =
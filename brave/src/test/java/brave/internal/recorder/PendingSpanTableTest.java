@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.recorder;
+
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PendingSpanTableTest {
+  PendingSpanTable table = new PendingSpanTable(2);
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+
+  static PendingSpan pendingSpan(TraceContext context) {
+    return new PendingSpan(context, new MutableSpan(), new TickClock(0L, 0L));
+  }
+
+  @Test public void stripeCount_roundsUpToPowerOfTwo() {
+    assertThat(new PendingSpanTable(3).stripes).hasSize(4);
+  }
+
+  @Test public void putIfAbsent_get_remove() {
+    PendingSpan value = pendingSpan(context);
+
+    assertThat(table.putIfAbsent(context, value, 0L)).isNull();
+    assertThat(table.get(context)).isSameAs(value);
+    assertThat(table.get(context.toBuilder().build())).isSameAs(value); // equal, not same
+    assertThat(table.size()).isEqualTo(1);
+
+    assertThat(table.remove(context)).isSameAs(value);
+    assertThat(table.get(context)).isNull();
+    assertThat(table.size()).isZero();
+  }
+
+  @Test public void putIfAbsent_returnsExistingWhenRaceLost() {
+    PendingSpan value = pendingSpan(context);
+    table.putIfAbsent(context, value, 0L);
+
+    assertThat(table.putIfAbsent(context, pendingSpan(context), 0L)).isSameAs(value);
+  }
+
+  @Test public void equality_sameAsTraceContext() {
+    TraceContext shared = context.toBuilder().shared(true).build();
+    TraceContext traceIdHigh = context.toBuilder().traceIdHigh(3L).build();
+    table.putIfAbsent(context, pendingSpan(context), 0L);
+
+    assertThat(table.get(shared)).isNull();
+    assertThat(table.get(traceIdHigh)).isNull();
+
+    table.putIfAbsent(shared, pendingSpan(shared), 0L);
+    assertThat(table.get(shared).handlerContext).isEqualTo(shared);
+    assertThat(table.get(context).handlerContext).isEqualTo(context);
+  }
+
+  /** Compares random operations against a HashMap, which exercises resize and shift deletion. */
+  @Test public void randomOperations_matchHashMap() {
+    Map<TraceContext, PendingSpan> expected = new HashMap<>();
+    Random random = new Random(1L);
+    for (int i = 0; i < 100000; i++) {
+      // small ID range so that we have a lot of collisions and re-use
+      TraceContext next = TraceContext.newBuilder()
+        .traceId(1L + random.nextInt(8)).spanId(1L + random.nextInt(256)).build();
+      if (random.nextBoolean()) {
+        PendingSpan value = pendingSpan(next);
+        PendingSpan existing = expected.get(next);
+        if (existing == null) expected.put(next, value);
+        assertThat(table.putIfAbsent(next, value, 0L)).isSameAs(existing);
+      } else {
+        assertThat(table.remove(next)).isSameAs(expected.remove(next));
+      }
+    }
+    assertThat(table.size()).isEqualTo(expected.size());
+    for (Map.Entry<TraceContext, PendingSpan> entry : expected.entrySet()) {
+      assertThat(table.get(entry.getKey())).isSameAs(entry.getValue());
+    }
+  }
+
+  @Test public void expire_removesOnlyOlderEntries() {
+    List<TraceContext> contexts = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      TraceContext next = context.toBuilder().spanId(i).build();
+      contexts.add(next);
+      table.putIfAbsent(next, pendingSpan(next), i);
+    }
+
+    List<PendingSpan> expired = new ArrayList<>();
+    table.expire(51L, expired);
+
+    assertThat(expired).hasSize(50)
+      .extracting(p -> p.handlerContext.spanId())
+      .allMatch(spanId -> spanId <= 50L);
+    assertThat(table.size()).isEqualTo(50);
+    for (TraceContext next : contexts.subList(50, 100)) {
+      assertThat(table.get(next)).isNotNull();
+    }
+  }
+}
@@ -26,6 +26,7 @@ import brave.test.TestSpanHandler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
@@ -36,6 +37,7 @@ import static brave.internal.InternalPropagation.FLAG_SAMPLED;
 import static brave.internal.InternalPropagation.FLAG_SAMPLED_SET;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PendingSpansTest {
   static {
@@ -233,4 +235,156 @@ public class PendingSpansTest {
     assertThat(InternalPropagation.instance.flags(contexts.get(0)))
       .isEqualTo(InternalPropagation.instance.flags(context1)); // no flags lost
   }
+
+  @Test
+  public void orphanTimeout_reportsOrphansByAge() {
+    pendingSpans = newTimeoutPendingSpans();
+    TraceContext context1 = context.toBuilder().spanId(1).build();
+    pendingSpans.getOrCreate(null, context1, false).state().tag("foo", "bar");
+    long afterFirst = System.nanoTime() + 1L;
+    TraceContext context2 = context.toBuilder().spanId(2).build();
+    pendingSpans.getOrCreate(null, context2, false);
+
+    pendingSpans.expireOrphans(afterFirst);
+
+    assertThat(spans).hasSize(1);
+    assertThat(spans.get(0).id()).isEqualTo("0000000000000001");
+    assertThat(spans.get(0).containsAnnotation("brave.flush")).isTrue();
+    assertThat(pendingSpans.get(context1)).isNull();
+    assertThat(pendingSpans.get(context2)).isNotNull();
+  }
+
+  @Test
+  public void orphanTimeout_strongReferences() {
+    pendingSpans = newTimeoutPendingSpans();
+    TraceContext context = this.context.toBuilder().build();
+    pendingSpans.getOrCreate(null, context, false).state().tag("foo", "bar");
+    context = null;
+
+    GarbageCollectors.blockOnGC();
+    pendingSpans.expungeStaleEntries();
+
+    assertThat(spans).isEmpty();
+    assertThat(pendingSpans.table.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void orphanTimeout_finishRemoves() {
+    pendingSpans = newTimeoutPendingSpans();
+    pendingSpans.getOrCreate(null, context, true);
+
+    pendingSpans.finish(context, 0L);
+    pendingSpans.expireOrphans(System.nanoTime() + 1L);
+
+    assertThat(spans).hasSize(1);
+    assertThat(spans.get(0).containsAnnotation("brave.flush")).isFalse();
+    assertThat(pendingSpans.table.size()).isZero();
+  }
+
+  @Test
+  public void orphanTimeout_noop() {
+    pendingSpans = newTimeoutPendingSpans();
+    pendingSpans.getOrCreate(null, context, false);
+    pendingSpans.noop.set(true);
+
+    pendingSpans.expireOrphans(System.nanoTime() + 1L);
+
+    assertThat(spans).isEmpty();
+    assertThat(pendingSpans.table.size()).isZero();
+  }
+
+  @Test(timeout = 10000L)
+  public void orphanTimeout_sweeperReportsOrphans() throws InterruptedException {
+    pendingSpans = new PendingSpans(pendingSpans.defaultSpan, pendingSpans.clock,
+      pendingSpans.spanHandler, pendingSpans.noop, TimeUnit.MILLISECONDS.toNanos(1));
+    try {
+      pendingSpans.getOrCreate(null, context, false).state().tag("foo", "bar");
+      while (pendingSpans.table.size() > 0) Thread.sleep(1L);
+    } finally {
+      pendingSpans.close();
+    }
+    pendingSpans.sweeper.join();
+
+    assertThat(spans).hasSize(1);
+  }
+
+  @Test public void recycleSpans_reusesFinishedSpan() {
+    pendingSpans = newRecyclingPendingSpans(false);
+
+    MutableSpan span = pendingSpans.getOrCreate(null, context, true).state();
+    span.tag("foo", "bar");
+    span.annotate(1L, "baz");
+    pendingSpans.finish(context, 0L);
+
+    TraceContext context2 = newChildContext();
+    MutableSpan span2 = pendingSpans.getOrCreate(context, context2, false).state();
+    assertThat(span2).isSameAs(span);
+
+    MutableSpan expected = new MutableSpan(context2, pendingSpans.defaultSpan);
+    assertThat(span2).isEqualTo(expected);
+    assertThat(span2.tags()).isEmpty();
+    assertThat(span2.annotations()).isEmpty();
+  }
+
+  @Test public void recycleSpans_notWhenHandlerRetainsSpans() {
+    pendingSpans = newRecyclingPendingSpans(true);
+    assertThat(pendingSpans.pool).isNull();
+
+    MutableSpan span = pendingSpans.getOrCreate(null, context, true).state();
+    pendingSpans.finish(context, 0L);
+
+    assertThat(pendingSpans.getOrCreate(context, newChildContext(), false).state())
+      .isNotSameAs(span);
+  }
+
+  @Test public void recycleSpans_notOrphans() {
+    pendingSpans = new PendingSpans(pendingSpans.defaultSpan, pendingSpans.clock,
+      newHandler(false), pendingSpans.noop, TimeUnit.HOURS.toNanos(1), true);
+    pendingSpans.close();
+
+    MutableSpan span = pendingSpans.getOrCreate(null, context, true).state();
+    pendingSpans.expireOrphans(System.nanoTime() + 1L);
+
+    assertThat(pendingSpans.getOrCreate(context, newChildContext(), false).state())
+      .isNotSameAs(span);
+  }
+
+  /** Assertions are enabled in tests, so modifying a span after finish is caught on reuse. */
+  @Test public void recycleSpans_assertsModifiedAfterRecycle() {
+    pendingSpans = newRecyclingPendingSpans(false);
+
+    MutableSpan span = pendingSpans.getOrCreate(null, context, true).state();
+    pendingSpans.finish(context, 0L);
+    span.tag("foo", "bar"); // ex. tagging a span after finish
+
+    assertThatThrownBy(() -> pendingSpans.getOrCreate(context, newChildContext(), false))
+      .isInstanceOf(AssertionError.class)
+      .hasMessageContaining("was modified after it was recycled")
+      .hasCauseInstanceOf(Throwable.class);
+  }
+
+  PendingSpans newRecyclingPendingSpans(boolean retainsSpans) {
+    return new PendingSpans(pendingSpans.defaultSpan, pendingSpans.clock,
+      newHandler(retainsSpans), pendingSpans.noop, 0L, true);
+  }
+
+  SpanHandler newHandler(boolean retainsSpans) {
+    return new SpanHandler() {
+      @Override public boolean retainsSpans() {
+        return retainsSpans;
+      }
+    };
+  }
+
+  TraceContext newChildContext() {
+    return InternalPropagation.instance.newTraceContext(
+      FLAG_SAMPLED_SET | FLAG_SAMPLED, 0L, 1L, 2L, 1L, 3L, Collections.emptyList());
+  }
+
+  PendingSpans newTimeoutPendingSpans() {
+    PendingSpans result = new PendingSpans(pendingSpans.defaultSpan, pendingSpans.clock,
+      pendingSpans.spanHandler, pendingSpans.noop, TimeUnit.HOURS.toNanos(1));
+    result.close(); // tests invoke expireOrphans directly
+    return result;
+  }
 }
@@ -31,8 +31,10 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -391,6 +393,228 @@ public class B3PropagationTest {
     assertThat(factory.hashCode()).isNotEqualTo(B3Propagation.FACTORY.hashCode());
   }
 
+  @Test public void extractionCache_b3SingleFormat() {
+    ExtractionCache cache = ExtractionCache.create(16);
+    propagation = B3Propagation.newFactoryBuilder().extractionCache(cache).build().get();
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("b3", traceIdHigh + traceId + "-" + spanId + "-1");
+
+    TraceContextOrSamplingFlags first = extract(headers);
+    assertThat(first.context().spanIdString()).isEqualTo(spanId);
+    assertThat(extract(new LinkedHashMap<>(headers))).isSameAs(first);
+
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.hitCount()).isEqualTo(1);
+  }
+
+  @Test public void extractionCache_notUsedForMultipleHeaders() {
+    ExtractionCache cache = ExtractionCache.create(16);
+    propagation = B3Propagation.newFactoryBuilder().extractionCache(cache).build().get();
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("X-B3-TraceId", traceId);
+    headers.put("X-B3-SpanId", spanId);
+
+    assertThat(extract(headers)).isNotSameAs(extract(headers));
+    assertThat(cache.missCount()).isZero();
+  }
+
+  @Test public void extractionCache_doesntCacheMalformed() {
+    ExtractionCache cache = ExtractionCache.create(16);
+    propagation = B3Propagation.newFactoryBuilder().extractionCache(cache).build().get();
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("b3", traceId + "-" + spanId + "-x");
+
+    extract(headers);
+    extract(headers);
+    assertThat(cache.missCount()).isEqualTo(2);
+
+    verify(platform, times(2))
+        .log("Invalid input: only valid characters are lower-hex for {0}", "sampled", null);
+    verify(platform, times(2)).log("{0} was null", "X-B3-TraceId", null);
+  }
+
+  @Test public void extractionCache_partOfEquals() {
+    ExtractionCache cache = ExtractionCache.create(16);
+    Propagation.Factory factory = B3Propagation.newFactoryBuilder().extractionCache(cache).build();
+
+    assertThat(factory).isNotEqualTo(B3Propagation.FACTORY);
+    assertThat(factory)
+        .isEqualTo(B3Propagation.newFactoryBuilder().extractionCache(cache).build())
+        .isNotEqualTo(B3Propagation.newFactoryBuilder()
+            .extractionCache(ExtractionCache.create(16)).build());
+  }
+
+  @Test public void skipSpanIdsWhenNotSampled_extractsTraceIdContext() {
+    propagation = B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build().get();
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("X-B3-TraceId", traceIdHigh + traceId);
+    headers.put("X-B3-SpanId", "not read");
+    headers.put("X-B3-Sampled", "0");
+
+    assertThat(extract(headers).traceIdContext()).isEqualTo(TraceIdContext.newBuilder()
+        .traceIdHigh(9L).traceId(1L).sampled(false).build());
+    assertThat(extract(headers).sampled()).isFalse();
+  }
+
+  @Test public void skipSpanIdsWhenNotSampled_stillParsesSpanIdsWhenSampled() {
+    propagation = B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build().get();
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("X-B3-TraceId", traceId);
+    headers.put("X-B3-ParentSpanId", parentId);
+    headers.put("X-B3-SpanId", spanId);
+
+    assertThat(extract(headers).context()).isEqualTo(context);
+
+    headers.put("X-B3-Sampled", "1");
+    assertThat(extract(headers).context()).isEqualTo(context.toBuilder().sampled(true).build());
+
+    headers.put("X-B3-Sampled", "0");
+    headers.put("X-B3-Flags", "1"); // debug wins over not sampled
+    assertThat(extract(headers).context()).isEqualTo(context.toBuilder().debug(true).build());
+  }
+
+  @Test public void skipSpanIdsWhenNotSampled_malformedTraceId() {
+    propagation = B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build().get();
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("X-B3-TraceId", "463ac35c9f6413ad48485a3953bb612X");
+    headers.put("X-B3-Sampled", "0");
+
+    assertThat(extract(headers)).isSameAs(TraceContextOrSamplingFlags.EMPTY);
+    verify(platform).log("{0} is not a lower-hex string", "463ac35c9f6413ad48485a3953bb612X", null);
+  }
+
+  @Test public void skipSpanIdsWhenNotSampled_partOfEquals() {
+    Propagation.Factory factory =
+        B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build();
+
+    assertThat(factory).isNotEqualTo(B3Propagation.FACTORY);
+    assertThat(factory)
+        .isEqualTo(B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build());
+    assertThat(B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(false).build())
+        .isSameAs(B3Propagation.FACTORY);
+  }
+
+  /** Fails on the string methods, so we know the byte methods are used. */
+  static final class BytesHeaders
+    implements Propagation.Getter<Map<String, byte[]>, String>,
+    Propagation.BytesGetter<Map<String, byte[]>>,
+    Propagation.Setter<Map<String, byte[]>, String>,
+    Propagation.BytesSetter<Map<String, byte[]>> {
+    @Override public String get(Map<String, byte[]> request, String key) {
+      throw new AssertionError();
+    }
+
+    @Override public byte[] getBytes(Map<String, byte[]> request, String key) {
+      return request.get(key);
+    }
+
+    @Override public void put(Map<String, byte[]> request, String key, String value) {
+      throw new AssertionError();
+    }
+
+    @Override public void putBytes(Map<String, byte[]> request, String key, byte[] value) {
+      request.put(key, value);
+    }
+  }
+
+  @Test public void inject_bytes_multi() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    propagation.injector(new BytesHeaders()).inject(context.toBuilder()
+      .traceIdHigh(9).sampled(false).build(), headers);
+
+    assertThat(headers).containsOnlyKeys(
+      "X-B3-TraceId", "X-B3-SpanId", "X-B3-ParentSpanId", "X-B3-Sampled"
+    );
+    assertThat(new String(headers.get("X-B3-TraceId"), UTF_8)).isEqualTo(traceIdHigh + traceId);
+    assertThat(new String(headers.get("X-B3-SpanId"), UTF_8)).isEqualTo(spanId);
+    assertThat(new String(headers.get("X-B3-ParentSpanId"), UTF_8)).isEqualTo(parentId);
+    assertThat(new String(headers.get("X-B3-Sampled"), UTF_8)).isEqualTo("0");
+  }
+
+  @Test public void inject_bytes_multi_debug() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    propagation.injector(new BytesHeaders())
+      .inject(context.toBuilder().debug(true).build(), headers);
+
+    assertThat(new String(headers.get("X-B3-Flags"), UTF_8)).isEqualTo("1");
+    assertThat(headers).doesNotContainKey("X-B3-Sampled");
+  }
+
+  @Test public void inject_bytes_single() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    propagation = B3Propagation.newFactoryBuilder().injectFormat(Format.SINGLE).build().get();
+    propagation.injector(new BytesHeaders()).inject(context, headers);
+
+    assertThat(headers).containsOnlyKeys("b3");
+    assertThat(new String(headers.get("b3"), UTF_8))
+      .isEqualTo(B3SingleFormat.writeB3SingleFormat(context));
+  }
+
+  @Test public void inject_bytes_singleNoParent() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    propagation =
+      B3Propagation.newFactoryBuilder().injectFormat(Format.SINGLE_NO_PARENT).build().get();
+    propagation.injector(new BytesHeaders()).inject(context, headers);
+
+    assertThat(new String(headers.get("b3"), UTF_8))
+      .isEqualTo(B3SingleFormat.writeB3SingleFormatWithoutParentId(context));
+  }
+
+  @Test public void extract_bytes_single() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    headers.put("b3", B3SingleFormat.writeB3SingleFormatAsBytes(context));
+
+    assertThat(extractBytes(headers).context()).isEqualTo(context);
+  }
+
+  @Test public void extract_bytes_multi() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    headers.put("X-B3-TraceId", (traceIdHigh + traceId).getBytes(UTF_8));
+    headers.put("X-B3-SpanId", spanId.getBytes(UTF_8));
+    headers.put("X-B3-ParentSpanId", parentId.getBytes(UTF_8));
+    headers.put("X-B3-Sampled", "true".getBytes(UTF_8));
+
+    assertThat(extractBytes(headers).context()).isEqualTo(context.toBuilder()
+      .traceIdHigh(9).sampled(true).build());
+  }
+
+  @Test public void extract_bytes_roundTrip() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    propagation.injector(new BytesHeaders())
+      .inject(context.toBuilder().debug(true).build(), headers);
+
+    assertThat(extractBytes(headers).context())
+      .isEqualTo(context.toBuilder().debug(true).build());
+  }
+
+  @Test public void extract_bytes_sampledMalformed() {
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    headers.put("X-B3-Sampled", "yes".getBytes(UTF_8));
+
+    assertThat(extractBytes(headers)).isSameAs(TraceContextOrSamplingFlags.EMPTY);
+
+    verify(platform).log("Invalid input: expected 0 or 1 for X-B3-Sampled, but found '{0}'",
+      "yes", null);
+  }
+
+  @Test public void extract_bytes_cached() {
+    ExtractionCache cache = ExtractionCache.create(16);
+    propagation = B3Propagation.newFactoryBuilder().extractionCache(cache).build().get();
+
+    Map<String, byte[]> headers = new LinkedHashMap<>();
+    headers.put("b3", B3SingleFormat.writeB3SingleFormatAsBytes(context));
+
+    assertThat(extractBytes(headers)).isSameAs(extractBytes(headers));
+    assertThat(cache.hitCount()).isEqualTo(1);
+  }
+
+  TraceContextOrSamplingFlags extractBytes(Map<String, byte[]> headers) {
+    return propagation.extractor(new BytesHeaders()).extract(headers);
+  }
+
   TraceContextOrSamplingFlags extract(Map<String, String> headers) {
     return propagation.<Map<String, String>>extractor(Map::get).extract(headers);
   }
@@ -14,6 +14,8 @@
 package brave.propagation;
 
 import brave.internal.Platform;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -227,6 +229,42 @@ public class B3SingleFormatTest {
       );
   }
 
+  @Test public void parseB3SingleFormat_bytes() {
+    byte[] input = ("b3=" + traceIdHigh + traceId + "-" + spanId + "-1,").getBytes(UTF_8);
+    assertThat(parseB3SingleFormat(input, 3, input.length - 1).context())
+      .isEqualToComparingFieldByField(TraceContext.newBuilder()
+        .traceIdHigh(Long.parseUnsignedLong(traceIdHigh, 16))
+        .traceId(Long.parseUnsignedLong(traceId, 16))
+        .spanId(Long.parseUnsignedLong(spanId, 16))
+        .sampled(true).build()
+      );
+  }
+
+  @Test public void parseB3SingleFormat_byteBuffer() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .parentId(Long.parseUnsignedLong(parentId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16)).build();
+    byte[] b3 = writeB3SingleFormatAsBytes(context);
+
+    ByteBuffer heap = ByteBuffer.wrap(b3);
+    ByteBuffer direct = ByteBuffer.allocateDirect(b3.length + 2);
+    direct.put((byte) ' ').put(b3).put((byte) ' ').flip();
+    ((Buffer) direct).position(1);
+    ((Buffer) direct).limit(b3.length + 1);
+
+    assertThat(parseB3SingleFormat(heap).context()).isEqualTo(context);
+    assertThat(parseB3SingleFormat(direct).context()).isEqualTo(context);
+    assertThat(parseB3SingleFormat(direct.slice()).context()).isEqualTo(context);
+    assertThat(direct.position()).isEqualTo(1); // unchanged
+  }
+
+  @Test public void parseB3SingleFormat_bytes_malformed() {
+    assertThat(parseB3SingleFormat(new byte[] {'x'}, 0, 1)).isNull();
+
+    verify(platform).log("Invalid input: expected 0, 1 or d for {0}", "sampled", null);
+  }
+
   /** for example, parsing a w3c context */
   @Test public void parseB3SingleFormat_middleOfString_debugOnly() {
     String input = "b2=foo,b3=d,b4=bar";
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ExtractionCacheTest {
+  static final String B3 = "67891233abcdef012345678912345678-463ac35c9f6413ad-1";
+
+  ExtractionCache cache = new ExtractionCache(16, 4);
+  TraceContextOrSamplingFlags value = B3SingleFormat.parseB3SingleFormat(B3);
+
+  @Test public void create_capacityRoundedUpToPowerOfTwo() {
+    assertThat(ExtractionCache.create(100).entries.length()).isEqualTo(128);
+  }
+
+  @Test public void create_badCapacity() {
+    assertThatThrownBy(() -> ExtractionCache.create(0))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ExtractionCache.create((1 << 16) + 1))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test public void get_miss() {
+    assertThat(cache.get(B3)).isNull();
+
+    assertThat(cache.hitCount()).isZero();
+    assertThat(cache.missCount()).isEqualTo(1);
+  }
+
+  @Test public void get_hit() {
+    cache.put(B3, value);
+
+    assertThat(cache.get(new String(B3.toCharArray()))).isSameAs(value);
+
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isZero();
+  }
+
+  @Test public void get_compareContentsNotHash() {
+    // These have the same String.hashCode()
+    cache.put("Aa", value);
+
+    assertThat(cache.get("BB")).isNull();
+  }
+
+  @Test public void put_copiesMutableKey() {
+    StringBuilder header = new StringBuilder(B3);
+    cache.put(header, value);
+    header.setCharAt(0, '0');
+
+    assertThat(cache.get(header)).isNull();
+    assertThat(cache.get(B3)).isSameAs(value);
+  }
+
+  @Test public void put_isBounded() {
+    for (int i = 0; i < 1000; i++) {
+      cache.put(Integer.toString(i), value);
+    }
+
+    int size = 0;
+    for (int i = 0; i < cache.entries.length(); i++) {
+      if (cache.entries.get(i) != null) size++;
+    }
+    assertThat(size).isLessThanOrEqualTo(16);
+  }
+
+  @Test public void countsAcrossThreads() throws Exception {
+    cache.put(B3, value);
+
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(service.submit(() -> {
+          for (int j = 0; j < 1000; j++) {
+            cache.get(B3);
+            cache.get("1");
+          }
+        }));
+      }
+      for (Future<?> future : futures) future.get();
+    } finally {
+      service.shutdownNow();
+    }
+
+    assertThat(cache.hitCount()).isEqualTo(4000);
+    assertThat(cache.missCount()).isEqualTo(4000);
+  }
+}
@@ -19,6 +19,7 @@ import org.junit.Test;
 
 import static brave.internal.InternalPropagation.FLAG_SAMPLED_SET;
 import static brave.internal.InternalPropagation.FLAG_SHARED;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -449,4 +450,79 @@ public class TraceContextTest {
     assertThat(context.spanIdString)
       .isEqualTo("0000000000000002");
   }
+
+  @Test public void toBuilder_inheritsIdStrings() {
+    TraceContext context =
+      TraceContext.newBuilder().traceIdHigh(1L).traceId(2L).parentId(3L).spanId(4L).build();
+    String traceIdString = context.traceIdString(), spanIdString = context.spanIdString();
+    String parentIdString = context.parentIdString();
+
+    TraceContext sameIds = context.toBuilder().sampled(true).build();
+    assertThat(sameIds.traceIdString).isSameAs(traceIdString);
+    assertThat(sameIds.spanIdString).isSameAs(spanIdString);
+    assertThat(sameIds.parentIdString).isSameAs(parentIdString);
+
+    TraceContext child = context.toBuilder().parentId(4L).spanId(5L).build();
+    assertThat(child.traceIdString).isSameAs(traceIdString);
+    assertThat(child.parentIdString).isSameAs(spanIdString);
+    assertThat(child.spanIdString).isNull();
+
+    TraceContext otherTrace = context.toBuilder().traceId(6L).build();
+    assertThat(otherTrace.traceIdString).isNull();
+    assertThat(otherTrace.traceIdString()).isEqualTo("00000000000000010000000000000006");
+  }
+
+  @Test public void shallowCopy_inheritsIdStrings() {
+    TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+    String traceIdString = context.traceIdString();
+
+    assertThat(context.shallowCopy().traceIdString).isSameAs(traceIdString);
+    assertThat(context.withExtra(Arrays.asList(1L)).traceIdString).isSameAs(traceIdString);
+    assertThat(context.withFlags(FLAG_SAMPLED_SET).traceIdString).isSameAs(traceIdString);
+  }
+
+  @Test public void writeTraceIdString() {
+    TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+    char[] chars = new char[18];
+    byte[] bytes = new byte[18];
+
+    assertThat(context.writeTraceIdString(chars, 1)).isEqualTo(17);
+    assertThat(context.writeTraceIdString(bytes, 1)).isEqualTo(17);
+    assertThat(new String(chars, 1, 16)).isEqualTo("0000000000000001");
+    assertThat(new String(bytes, 1, 16, UTF_8)).isEqualTo("0000000000000001");
+    assertThat(context.traceIdString).isNull(); // didn't allocate a string
+  }
+
+  @Test public void writeTraceIdString_128bit_cached() {
+    TraceContext context = TraceContext.newBuilder().traceIdHigh(1L).traceId(2L).spanId(3L).build();
+    String traceIdString = context.traceIdString();
+    char[] chars = new char[32];
+    byte[] bytes = new byte[32];
+
+    assertThat(context.writeTraceIdString(chars, 0)).isEqualTo(32);
+    assertThat(context.writeTraceIdString(bytes, 0)).isEqualTo(32);
+    assertThat(new String(chars)).isEqualTo(traceIdString);
+    assertThat(new String(bytes, UTF_8)).isEqualTo(traceIdString);
+  }
+
+  @Test public void writeSpanIdString() {
+    TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(0xcafebabeL).build();
+    char[] chars = new char[16];
+    byte[] bytes = new byte[16];
+
+    context.writeSpanIdString(chars, 0);
+    assertThat(new String(chars)).isEqualTo("00000000cafebabe");
+    context.spanIdString(); // now writes are copies
+    context.writeSpanIdString(bytes, 0);
+    assertThat(new String(bytes, UTF_8)).isEqualTo("00000000cafebabe");
+  }
+
+  @Test public void writeIdString_noRoom() {
+    assertThatThrownBy(() -> base.writeTraceIdString(new char[16], 1))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> base.writeSpanIdString(new byte[15], 0))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> base.writeSpanIdString(new byte[16], -1))
+      .isInstanceOf(IndexOutOfBoundsException.class);
+  }
 }
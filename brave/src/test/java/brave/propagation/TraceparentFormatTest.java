@@ -0,0 +1,250 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.internal.Platform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static brave.propagation.TraceparentFormat.parseTraceparentFormat;
+import static brave.propagation.TraceparentFormat.writeTraceparentFormat;
+import static brave.propagation.TraceparentFormat.writeTraceparentFormatAsBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+// Added to declutter console: tells power mock not to mess with implicit classes we aren't testing
+@PowerMockIgnore({"org.apache.logging.*", "javax.script.*"})
+@PrepareForTest({Platform.class, TraceparentFormat.class})
+public class TraceparentFormatTest {
+  String traceIdHigh = "1234567890123459";
+  String traceId = "1234567890123451";
+  String parentId = "1234567890123452";
+  String spanId = "1234567890123453";
+
+  Platform platform = mock(Platform.class);
+
+  @Before public void setupLogger() {
+    mockStatic(Platform.class);
+    when(Platform.get()).thenReturn(platform);
+  }
+
+  /** Either we asserted on the log messages or there weren't any */
+  @After public void ensureNothingLogged() {
+    verifyNoMoreInteractions(platform);
+  }
+
+  @Test public void writeTraceparentFormat_notYetSampled_128() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(Long.parseUnsignedLong(traceIdHigh, 16))
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16)).build();
+
+    assertThat(writeTraceparentFormat(context))
+      .isEqualTo("00-" + traceIdHigh + traceId + "-" + spanId + "-00")
+      .isEqualTo(new String(writeTraceparentFormatAsBytes(context), UTF_8));
+  }
+
+  @Test public void writeTraceparentFormat_64bitTraceId_paddedWithZeros() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16)).build();
+
+    assertThat(writeTraceparentFormat(context))
+      .isEqualTo("00-0000000000000000" + traceId + "-" + spanId + "-00");
+  }
+
+  @Test public void writeTraceparentFormat_sampled() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(Long.parseUnsignedLong(traceIdHigh, 16))
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16))
+      .sampled(true).build();
+
+    assertThat(writeTraceparentFormat(context))
+      .isEqualTo("00-" + traceIdHigh + traceId + "-" + spanId + "-01");
+  }
+
+  @Test public void writeTraceparentFormat_unsampled() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16))
+      .sampled(false).build();
+
+    assertThat(writeTraceparentFormat(context)).endsWith("-00");
+  }
+
+  @Test public void writeTraceparentFormat_debug() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16))
+      .debug(true).build();
+
+    assertThat(writeTraceparentFormat(context)).endsWith("-01");
+  }
+
+  /** The parent ID isn't propagated: the receiver starts a child of our span ID */
+  @Test public void writeTraceparentFormat_parentIdNotWritten() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .parentId(Long.parseUnsignedLong(parentId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16)).build();
+
+    assertThat(writeTraceparentFormat(context)).doesNotContain(parentId);
+  }
+
+  @Test public void parseTraceparentFormat_sampled() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-01"))
+      .isEqualToComparingFieldByField(TraceContext.newBuilder()
+        .traceIdHigh(Long.parseUnsignedLong(traceIdHigh, 16))
+        .traceId(Long.parseUnsignedLong(traceId, 16))
+        .spanId(Long.parseUnsignedLong(spanId, 16))
+        .sampled(true).build()
+      );
+  }
+
+  /** The receiver may still sample when the caller didn't record */
+  @Test public void parseTraceparentFormat_unsampled_defersDecision() {
+    TraceContext context =
+      parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-00");
+
+    assertThat(context.sampled()).isNull();
+    assertThat(context.parentIdAsLong()).isZero();
+  }
+
+  /** Only the sampled flag is defined. Others are ignored. */
+  @Test public void parseTraceparentFormat_unknownFlags() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-ff")
+      .sampled()).isTrue();
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-02")
+      .sampled()).isNull();
+  }
+
+  @Test public void parseTraceparentFormat_64bitTraceId() {
+    assertThat(
+      parseTraceparentFormat("00-0000000000000000" + traceId + "-" + spanId + "-01").traceIdHigh()
+    ).isZero();
+  }
+
+  @Test public void parseTraceparentFormat_roundTrip() {
+    TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(Long.parseUnsignedLong(traceIdHigh, 16))
+      .traceId(Long.parseUnsignedLong(traceId, 16))
+      .spanId(Long.parseUnsignedLong(spanId, 16))
+      .sampled(true).build();
+
+    assertThat(parseTraceparentFormat(writeTraceparentFormat(context)))
+      .isEqualToComparingFieldByField(context);
+  }
+
+  @Test public void parseTraceparentFormat_middleOfString() {
+    String input = "tc=00-" + traceIdHigh + traceId + "-" + spanId + "-01,";
+    assertThat(parseTraceparentFormat(input, 3, input.length() - 1).spanIdString())
+      .isEqualTo(spanId);
+  }
+
+  @Test public void parseTraceparentFormat_laterVersion_ignoresAdditionalFields() {
+    assertThat(
+      parseTraceparentFormat("cc-" + traceIdHigh + traceId + "-" + spanId + "-01-what-the-future")
+    ).isNotNull();
+  }
+
+  @Test public void parseTraceparentFormat_laterVersion_additionalFieldsMustBeDelimited() {
+    assertThat(parseTraceparentFormat("cc-" + traceIdHigh + traceId + "-" + spanId + "-01what"))
+      .isNull();
+
+    verify(platform).log("Invalid input: too long", null);
+  }
+
+  @Test public void parseTraceparentFormat_version00_tooLong() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-01-a"))
+      .isNull();
+
+    verify(platform).log("Invalid input: too long", null);
+  }
+
+  @Test public void parseTraceparentFormat_versionFF_forbidden() {
+    assertThat(parseTraceparentFormat("ff-" + traceIdHigh + traceId + "-" + spanId + "-01"))
+      .isNull();
+
+    verify(platform).log("Invalid input: {0} ff is forbidden", "version", null);
+  }
+
+  @Test public void parseTraceparentFormat_empty() {
+    assertThat(parseTraceparentFormat("")).isNull();
+
+    verify(platform).log("Invalid input: empty", null);
+  }
+
+  @Test public void parseTraceparentFormat_tooShort() {
+    assertThat(parseTraceparentFormat("00-" + traceId + "-" + spanId + "-01")).isNull();
+
+    verify(platform).log("Invalid input: too short", null);
+  }
+
+  @Test public void parseTraceparentFormat_uppercase() {
+    assertThat(parseTraceparentFormat("00-463AC35C9F6413AD48485A3953BB6124-" + spanId + "-01"))
+      .isNull();
+
+    verify(platform)
+      .log("Invalid input: only valid characters are lower-hex for {0}", "trace ID", null);
+  }
+
+  @Test public void parseTraceparentFormat_malformed_parentId() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + "463ac35%Af6413ad-01"))
+      .isNull();
+
+    verify(platform)
+      .log("Invalid input: only valid characters are lower-hex for {0}", "parent ID", null);
+  }
+
+  @Test public void parseTraceparentFormat_malformed_flags() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-" + spanId + "-0x"))
+      .isNull();
+
+    verify(platform)
+      .log("Invalid input: only valid characters are lower-hex for {0}", "trace flags", null);
+  }
+
+  @Test public void parseTraceparentFormat_missingHyphen() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "_" + spanId + "-01"))
+      .isNull();
+
+    verify(platform).log("Invalid input: expected a hyphen after {0}", "trace ID", null);
+  }
+
+  @Test public void parseTraceparentFormat_zeroTraceId() {
+    assertThat(parseTraceparentFormat("00-00000000000000000000000000000000-" + spanId + "-01"))
+      .isNull();
+
+    verify(platform).log("Invalid input: read all zeros {0}", "trace ID", null);
+  }
+
+  @Test public void parseTraceparentFormat_zeroParentId() {
+    assertThat(parseTraceparentFormat("00-" + traceIdHigh + traceId + "-0000000000000000-01"))
+      .isNull();
+
+    verify(platform).log("Invalid input: read all zeros {0}", "parent ID", null);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.baggage.BaggageField;
+import brave.baggage.BaggagePropagation;
+import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import brave.propagation.W3CPropagation.Tracestate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class W3CPropagationTest {
+  static final String TRACEPARENT = "00-67891233abcdef012345678912345678-463ac35c9f6413ad-01";
+
+  Propagation<String> propagation = W3CPropagation.get();
+  TraceContext context = TraceContext.newBuilder()
+    .traceIdHigh(0x67891233abcdef01L)
+    .traceId(0x2345678912345678L)
+    .spanId(0x463ac35c9f6413adL)
+    .sampled(true)
+    .build();
+  Map<String, String> request = new LinkedHashMap<>();
+
+  @Test public void keys() {
+    assertThat(propagation.keys()).containsExactly("traceparent", "tracestate");
+  }
+
+  @Test public void requires128BitTraceId() {
+    assertThat(W3CPropagation.FACTORY.requires128BitTraceId()).isTrue();
+    assertThat(W3CPropagation.FACTORY.supportsJoin()).isFalse();
+  }
+
+  @Test public void inject() {
+    propagation.<Map<String, String>>injector(Map::put).inject(context, request);
+
+    assertThat(request).containsExactly(entry("traceparent", TRACEPARENT));
+  }
+
+  @Test public void inject_tracestate() {
+    context = context.toBuilder().addExtra(new Tracestate("congo=t61rcWkgMzE")).build();
+    propagation.<Map<String, String>>injector(Map::put).inject(context, request);
+
+    assertThat(request).containsExactly(
+      entry("traceparent", TRACEPARENT),
+      entry("tracestate", "congo=t61rcWkgMzE")
+    );
+  }
+
+  @Test public void extract() {
+    request.put("traceparent", TRACEPARENT);
+
+    assertThat(propagation.<Map<String, String>>extractor(Map::get).extract(request))
+      .isEqualTo(TraceContextOrSamplingFlags.create(context));
+  }
+
+  @Test public void extract_tracestate() {
+    request.put("traceparent", TRACEPARENT);
+    request.put("tracestate", "congo=t61rcWkgMzE,rojo=00f067aa0ba902b7");
+
+    TraceContextOrSamplingFlags extracted =
+      propagation.<Map<String, String>>extractor(Map::get).extract(request);
+
+    assertThat(extracted.context()).isEqualTo(context);
+    assertThat(extracted.context().extra())
+      .containsExactly(new Tracestate("congo=t61rcWkgMzE,rojo=00f067aa0ba902b7"));
+  }
+
+  @Test public void extract_tracestate_ignoredWithoutTraceparent() {
+    request.put("tracestate", "congo=t61rcWkgMzE");
+
+    assertThat(propagation.<Map<String, String>>extractor(Map::get).extract(request))
+      .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+
+  @Test public void extract_nothing() {
+    assertThat(propagation.<Map<String, String>>extractor(Map::get).extract(request))
+      .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+
+  @Test public void extract_malformed() {
+    request.put("traceparent", "00-67891233abcdef012345678912345678-463ac35c9f6413ad");
+
+    assertThat(propagation.<Map<String, String>>extractor(Map::get).extract(request))
+      .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+
+  @Test public void injectExtract_tracestateRoundTrips() {
+    request.put("traceparent", TRACEPARENT);
+    request.put("tracestate", "congo=t61rcWkgMzE");
+    TraceContextOrSamplingFlags extracted =
+      propagation.<Map<String, String>>extractor(Map::get).extract(request);
+
+    TraceContext child = extracted.context().toBuilder().spanId(1L).build();
+    Map<String, String> downstream = new LinkedHashMap<>();
+    propagation.<Map<String, String>>injector(Map::put).inject(child, downstream);
+
+    assertThat(downstream).containsEntry("tracestate", "congo=t61rcWkgMzE");
+  }
+
+  @Test public void baggagePropagation() {
+    BaggageField requestId = BaggageField.create("x-vcap-request-id");
+    Propagation<String> withBaggage =
+      BaggagePropagation.newFactoryBuilder(W3CPropagation.FACTORY)
+        .add(SingleBaggageField.remote(requestId))
+        .build().get();
+
+    request.put("traceparent", TRACEPARENT);
+    request.put("x-vcap-request-id", "abcd");
+    TraceContextOrSamplingFlags extracted =
+      withBaggage.<Map<String, String>>extractor(Map::get).extract(request);
+
+    assertThat(extracted.context()).isNotNull();
+    assertThat(requestId.getValue(extracted)).isEqualTo("abcd");
+  }
+
+  static Map.Entry<String, String> entry(String key, String value) {
+    return new java.util.AbstractMap.SimpleEntry<>(key, value);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static brave.sampler.AdaptiveSampler.INTERVAL_NANOS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+import static org.assertj.core.data.Percentage.withPercentage;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+// Added to declutter console: tells power mock not to mess with implicit classes we aren't testing
+@PowerMockIgnore({"org.apache.logging.*", "javax.script.*"})
+@PrepareForTest(AdaptiveSampler.class)
+public class AdaptiveSamplerTest {
+
+  @Test public void samplesAllBeforeFirstEstimate() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    assertThat(countSampled(sampler, 1000)).isEqualTo(1000);
+  }
+
+  @Test public void lowVolume_samplesAll() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    for (int interval = 1; interval <= 20; interval++) {
+      when(System.nanoTime()).thenReturn(INTERVAL_NANOS * interval);
+      // 5/s is under the target of 10/s
+      int requests = interval % 2 == 0 ? 1 : 0;
+      assertThat(countSampled(sampler, requests)).isEqualTo(requests);
+    }
+    assertThat(sampler.probability).isEqualTo(1.0);
+  }
+
+  @Test public void highVolume_targetsRate() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    countSampled(sampler, 1000); // 10K/s
+
+    when(System.nanoTime()).thenReturn(INTERVAL_NANOS);
+    sampler.isSampled(0L);
+    assertThat(sampler.requestsPerSecond).isEqualTo(10_000.0);
+    assertThat(sampler.probability).isEqualTo(0.001);
+
+    // over the next second, decisions follow the probability
+    int sampled = 0;
+    for (int interval = 2; interval <= 11; interval++) {
+      sampled += countSampled(sampler, 999);
+      when(System.nanoTime()).thenReturn(INTERVAL_NANOS * interval);
+      sampled += countSampled(sampler, 1);
+    }
+    assertThat(sampled).isCloseTo(10, offset(6));
+  }
+
+  @Test public void adaptsToChangeInVolume() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    AdaptiveSampler sampler = new AdaptiveSampler(100, new Random(1000));
+
+    // 10K/s for a second
+    for (int interval = 1; interval <= 10; interval++) {
+      countSampled(sampler, 1000);
+      when(System.nanoTime()).thenReturn(INTERVAL_NANOS * interval);
+    }
+    sampler.isSampled(0L);
+    assertThat(sampler.probability).isCloseTo(0.01, withPercentage(1));
+
+    // then 1K/s for 5 seconds, which leaves less than 1% of the weight on the old rate
+    for (int interval = 11; interval <= 60; interval++) {
+      countSampled(sampler, 100);
+      when(System.nanoTime()).thenReturn(INTERVAL_NANOS * interval);
+    }
+    sampler.isSampled(0L);
+    assertThat(sampler.probability).isCloseTo(0.1, withPercentage(10));
+  }
+
+  @Test public void longIdlePeriod_forgetsOldRate() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    countSampled(sampler, 1000);
+    when(System.nanoTime()).thenReturn(INTERVAL_NANOS);
+    sampler.isSampled(0L);
+    assertThat(sampler.probability).isEqualTo(0.001);
+
+    when(System.nanoTime()).thenReturn(INTERVAL_NANOS + TimeUnit.MINUTES.toNanos(1));
+    sampler.isSampled(0L);
+    assertThat(sampler.probability).isEqualTo(1.0);
+  }
+
+  @Test public void worksOnRollover() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(-INTERVAL_NANOS);
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    countSampled(sampler, 1000);
+    when(System.nanoTime()).thenReturn(0L);
+    sampler.isSampled(0L);
+    assertThat(sampler.probability).isEqualTo(0.001);
+  }
+
+  @Test public void nextDouble_inRange() {
+    AdaptiveSampler sampler = new AdaptiveSampler(10, new Random(1000));
+
+    double sum = 0;
+    for (int i = 0; i < 100_000; i++) {
+      double next = sampler.nextDouble();
+      assertThat(next).isGreaterThanOrEqualTo(0.0).isLessThan(1.0);
+      sum += next;
+    }
+    assertThat(sum / 100_000).isCloseTo(0.5, offset(0.01));
+  }
+
+  @Test public void zeroMeansDropAllTraces() {
+    assertThat(AdaptiveSampler.create(0)).isSameAs(Sampler.NEVER_SAMPLE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tracesPerSecond_cantBeNegative() {
+    AdaptiveSampler.create(-1);
+  }
+
+  static int countSampled(Sampler sampler, int attempts) {
+    int result = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (sampler.isSampled(0L)) result++;
+    }
+    return result;
+  }
+}
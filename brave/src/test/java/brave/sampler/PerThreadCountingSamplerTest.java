@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.assertj.core.data.Percentage;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+public class PerThreadCountingSamplerTest extends SamplerTest {
+  @Override Sampler newSampler(float probability) {
+    return CountingSampler.createPerThread(probability);
+  }
+
+  /** Threads in the parallel stream can each leave a partial window of 100 decisions. */
+  @Override Percentage expectedErrorProbability() {
+    return withPercentage(10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void probabilityMinimumOnePercent() {
+    newSampler(0.0001f);
+  }
+
+  @Test public void exactPerWindowOf100() {
+    Sampler sampler = new PerThreadCountingSampler(0.37f, new Random(1000));
+
+    for (int window = 0; window < 10; window++) {
+      assertThat(countSampled(sampler, 100)).isEqualTo(37);
+    }
+  }
+
+  @Test public void exactPerWindowOf100_eachThread() throws Exception {
+    Sampler sampler = new PerThreadCountingSampler(0.37f, new Random(1000));
+
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(service.submit(() -> countSampled(sampler, 1000)));
+      }
+      for (Future<Integer> future : futures) {
+        assertThat(future.get()).isEqualTo(370);
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  static int countSampled(Sampler sampler, int attempts) {
+    int result = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (sampler.isSampled(0L)) result++;
+    }
+    return result;
+  }
+}
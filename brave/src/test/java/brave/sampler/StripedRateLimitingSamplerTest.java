@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.sampler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static brave.sampler.RateLimitingSampler.NANOS_PER_DECISECOND;
+import static brave.sampler.RateLimitingSampler.NANOS_PER_SECOND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+// Added to declutter console: tells power mock not to mess with implicit classes we aren't testing
+@PowerMockIgnore({"org.apache.logging.*", "javax.script.*"})
+@PrepareForTest(StripedRateLimitingSampler.class)
+public class StripedRateLimitingSamplerTest {
+
+  @Test public void createStriped_cellsPerProcessor() {
+    assertThat(RateLimitingSampler.createStriped(1000, 8))
+      .isInstanceOf(StripedRateLimitingSampler.class)
+      .extracting("mask").isEqualTo(7);
+
+    // rounds up to a power of two
+    assertThat(RateLimitingSampler.createStriped(1000, 3))
+      .extracting("mask").isEqualTo(3);
+  }
+
+  @Test public void createStriped_cellsHaveAtLeast10PerSecond() {
+    assertThat(RateLimitingSampler.createStriped(40, 64))
+      .extracting("mask").isEqualTo(3);
+
+    assertThat(RateLimitingSampler.createStriped(19, 64))
+      .isInstanceOf(RateLimitingSampler.class);
+  }
+
+  @Test public void createStriped_singleProcessor() {
+    assertThat(RateLimitingSampler.createStriped(1000, 1))
+      .isInstanceOf(RateLimitingSampler.class);
+  }
+
+  @Test public void createStriped_zeroMeansDropAllTraces() {
+    assertThat(RateLimitingSampler.createStriped(0)).isSameAs(Sampler.NEVER_SAMPLE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void createStriped_tracesPerSecond_cantBeNegative() {
+    RateLimitingSampler.createStriped(-1);
+  }
+
+  @Test public void samplesOnlySpecifiedNumber_acrossCells() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = new StripedRateLimitingSampler(1003, 8);
+
+    // At the end of the second, one thread can drain all cells, including remainders
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND * 2 - 1);
+    assertThat(countSampled(sampler, 2000)).isEqualTo(1003);
+  }
+
+  @Test public void firstDecisecond_toleratesRemainderPerCell() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = new StripedRateLimitingSampler(1000, 8);
+
+    // Each cell has 125/s: 12 per decisecond plus a remainder of 5 up-front
+    assertThat(countSampled(sampler, 2000)).isEqualTo(8 * (12 + 5));
+
+    // Later deciseconds catch up to the same total as RateLimitingSampler
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND + NANOS_PER_DECISECOND * 5);
+    assertThat(countSampled(sampler, 2000)).isEqualTo(8 * 12 * 5);
+  }
+
+  @Test public void resetsAfterASecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = new StripedRateLimitingSampler(100, 2);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND - 1);
+    assertThat(countSampled(sampler, 200)).isEqualTo(100);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    assertThat(countSampled(sampler, 200)).isEqualTo(10);
+  }
+
+  @Test public void resetsAfterALongGap() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = new StripedRateLimitingSampler(100, 2);
+
+    // Try a really long time later. Makes sure extra credit isn't given
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND * 60 * 60 * 24 * 365);
+    assertThat(countSampled(sampler, 200)).isEqualTo(10);
+  }
+
+  @Test public void worksOnRollover() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(-NANOS_PER_SECOND);
+    Sampler sampler = new StripedRateLimitingSampler(100, 2);
+
+    when(System.nanoTime()).thenReturn(-1L);
+    assertThat(countSampled(sampler, 200)).isEqualTo(100);
+
+    when(System.nanoTime()).thenReturn(0L); // reset
+    assertThat(countSampled(sampler, 200)).isEqualTo(10);
+  }
+
+  @Test public void staleSecond_doesntResetCell() {
+    StripedRateLimitingSampler sampler = new StripedRateLimitingSampler(100, 2);
+
+    assertThat(sampler.tryAcquire(0, 1, 1L)).isTrue();
+    // a thread which read the clock before the cell moved to second 1 can't sample
+    assertThat(sampler.tryAcquire(0, 0, 1L)).isFalse();
+    assertThat(sampler.cells.get(0)).isEqualTo((1L << 32) | 1);
+  }
+
+  static int countSampled(Sampler sampler, int attempts) {
+    int result = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (sampler.isSampled(0L)) result++;
+    }
+    return result;
+  }
+}
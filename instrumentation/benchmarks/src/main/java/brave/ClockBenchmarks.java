@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave;
+
+import brave.handler.SpanHandler;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the default per-trace clock, which reads {@link System#nanoTime()}, to {@link
+ * CachedClock} with and without hybrid mode.
+ *
+ * <p>The "accuracy" benchmarks report the summed absolute error in microseconds of each read,
+ * compared to {@link System#nanoTime()}, as the secondary metric "errorMicros". Divide by the
+ * operation count for the average error.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(2)
+@State(Scope.Benchmark)
+public class ClockBenchmarks {
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(2L).sampled(true).build();
+
+  Clock platformClock = Platform.get().clock();
+  CachedClock cachedClock, hybridCachedClock;
+  Tracing tracing, tracingCached, tracingHybrid;
+  Clock tickClock, hybridClock;
+
+  @Setup(Level.Trial) public void init() {
+    cachedClock = CachedClock.newBuilder().build();
+    hybridCachedClock = CachedClock.newBuilder().hybrid(true).build();
+    tracing = newTracing(platformClock);
+    tracingCached = newTracing(cachedClock);
+    tracingHybrid = newTracing(hybridCachedClock);
+    tickClock = tracing.clock(context);
+    hybridClock = tracingHybrid.clock(context);
+  }
+
+  static Tracing newTracing(Clock clock) {
+    return Tracing.newBuilder().clock(clock)
+      .addSpanHandler(new SpanHandler() {
+        // anonymous subtype prevents all recording from being no-op
+      })
+      .build();
+  }
+
+  @TearDown(Level.Trial) public void close() {
+    tracing.close();
+    tracingCached.close();
+    tracingHybrid.close();
+    cachedClock.close();
+    hybridCachedClock.close();
+  }
+
+  @Benchmark public long currentTimeMicroseconds_platform() {
+    return platformClock.currentTimeMicroseconds();
+  }
+
+  @Benchmark public long currentTimeMicroseconds_tick() {
+    return tickClock.currentTimeMicroseconds();
+  }
+
+  @Benchmark public long currentTimeMicroseconds_cached() {
+    return cachedClock.currentTimeMicroseconds();
+  }
+
+  @Benchmark public long currentTimeMicroseconds_hybrid() {
+    return hybridClock.currentTimeMicroseconds();
+  }
+
+  @Benchmark public void startFinishSpan() {
+    tracing.tracer().newTrace().start().finish();
+  }
+
+  @Benchmark public void startFinishSpan_cached() {
+    tracingCached.tracer().newTrace().start().finish();
+  }
+
+  @Benchmark public void startFinishSpan_hybrid() {
+    tracingHybrid.tracer().newTrace().start().finish();
+  }
+
+  @Benchmark @Threads(8) public void startFinishSpan_threads8() {
+    tracing.tracer().newTrace().start().finish();
+  }
+
+  @Benchmark @Threads(8) public void startFinishSpan_cached_threads8() {
+    tracingCached.tracer().newTrace().start().finish();
+  }
+
+  @Benchmark @Threads(8) public void startFinishSpan_hybrid_threads8() {
+    tracingHybrid.tracer().newTrace().start().finish();
+  }
+
+  /** Reads are compared against {@link System#nanoTime()} relative to the same starting point. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Accuracy {
+    public long errorMicros;
+    long baseNanos;
+    long baseCachedMicros, baseHybridMicros;
+
+    @Setup(Level.Iteration) public void init(ClockBenchmarks benchmarks) {
+      errorMicros = 0L;
+      baseNanos = System.nanoTime();
+      baseCachedMicros = benchmarks.cachedClock.currentTimeMicroseconds();
+      baseHybridMicros = benchmarks.hybridClock.currentTimeMicroseconds();
+    }
+  }
+
+  @Benchmark public long accuracy_cached(Accuracy accuracy) {
+    long micros = cachedClock.currentTimeMicroseconds();
+    long expected = accuracy.baseCachedMicros + (System.nanoTime() - accuracy.baseNanos) / 1000;
+    accuracy.errorMicros += Math.abs(expected - micros);
+    return micros;
+  }
+
+  @Benchmark public long accuracy_hybrid(Accuracy accuracy) {
+    long micros = hybridClock.currentTimeMicroseconds();
+    long expected = accuracy.baseHybridMicros + (System.nanoTime() - accuracy.baseNanos) / 1000;
+    accuracy.errorMicros += Math.abs(expected - micros);
+    return micros;
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws Exception {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + ClockBenchmarks.class.getSimpleName())
+      .build();
+
+    new Runner(opt).run();
+  }
+}
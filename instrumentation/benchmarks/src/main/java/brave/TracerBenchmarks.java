@@ -21,6 +21,7 @@ import brave.propagation.CurrentTraceContext;
 import brave.propagation.Propagation;
 import brave.propagation.TraceContext;
 import brave.propagation.TraceContextOrSamplingFlags;
+import brave.sampler.Sampler;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -71,6 +72,8 @@ public class TracerBenchmarks {
 
   Tracer tracer;
   Tracer tracerBaggage;
+  // Unsampled so that only the cost of new trace contexts, notably ID generation, is measured
+  Tracer tracer128, tracer128Random;
 
   @Setup(Level.Trial) public void init() {
     tracer = Tracing.newBuilder()
@@ -83,6 +86,11 @@ public class TracerBenchmarks {
         // anonymous subtype prevents all recording from being no-op
       })
       .build().tracer();
+    tracer128 = Tracing.newBuilder().traceId128Bit(true).sampler(Sampler.NEVER_SAMPLE)
+      .build().tracer();
+    tracer128Random = Tracing.newBuilder().traceId128Bit(true).sampler(Sampler.NEVER_SAMPLE)
+      .idGenerator(IdGenerator.random())
+      .build().tracer();
   }
 
   @TearDown(Level.Trial) public void close() {
@@ -236,6 +244,39 @@ public class TracerBenchmarks {
     }
   }
 
+  @Benchmark @Threads(1) public TraceContext newTrace_128bit_threads1() {
+    return tracer128.newTrace().context();
+  }
+
+  @Benchmark @Threads(8) public TraceContext newTrace_128bit_threads8() {
+    return tracer128.newTrace().context();
+  }
+
+  @Benchmark @Threads(32) public TraceContext newTrace_128bit_threads32() {
+    return tracer128.newTrace().context();
+  }
+
+  @Benchmark @Threads(64) public TraceContext newTrace_128bit_threads64() {
+    return tracer128.newTrace().context();
+  }
+
+  /** Doesn't read the clock for the high bits of the trace ID */
+  @Benchmark @Threads(1) public TraceContext newTrace_128bit_random_threads1() {
+    return tracer128Random.newTrace().context();
+  }
+
+  @Benchmark @Threads(8) public TraceContext newTrace_128bit_random_threads8() {
+    return tracer128Random.newTrace().context();
+  }
+
+  @Benchmark @Threads(32) public TraceContext newTrace_128bit_random_threads32() {
+    return tracer128Random.newTrace().context();
+  }
+
+  @Benchmark @Threads(64) public TraceContext newTrace_128bit_random_threads64() {
+    return tracer128Random.newTrace().context();
+  }
+
   // Convenience main entry-point
   public static void main(String[] args) throws Exception {
     Options opt = new OptionsBuilder()
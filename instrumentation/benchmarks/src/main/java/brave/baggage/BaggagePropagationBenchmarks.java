@@ -14,6 +14,11 @@
 package brave.baggage;
 
 import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import brave.baggage.BaggageField.ValueUpdater;
+import brave.internal.baggage.BaggageCodec;
+import brave.internal.baggage.BaggageFields;
+import brave.internal.baggage.StreamingBaggageCodec;
+import brave.internal.codec.EntrySplitter;
 import brave.internal.codec.HexCodec;
 import brave.propagation.B3Propagation;
 import brave.propagation.Propagation;
@@ -23,6 +28,7 @@ import brave.propagation.TraceContext.Injector;
 import brave.propagation.TraceContextOrSamplingFlags;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -73,6 +79,64 @@ public class BaggagePropagationBenchmarks {
 
   static final Map<String, String> nothingIncoming = Collections.emptyMap();
 
+  // Services often set several fields per request, such as user, tenant and region
+  static final BaggageField[] EIGHT_FIELDS = new BaggageField[8];
+  static final Map<BaggageField, String> eightValues = new LinkedHashMap<>();
+  static final Propagation.Factory eightFieldsFactory;
+
+  static {
+    BaggagePropagation.FactoryBuilder builder =
+      BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY);
+    for (int i = 0; i < EIGHT_FIELDS.length; i++) {
+      EIGHT_FIELDS[i] = BaggageField.create("field-" + i);
+      builder.add(SingleBaggageField.remote(EIGHT_FIELDS[i]));
+      eightValues.put(EIGHT_FIELDS[i], "value-" + i);
+    }
+    eightFieldsFactory = builder.build();
+  }
+
+  static final TraceContext eightFieldsContext = eightFieldsFactory.decorate(context);
+
+  static {
+    BaggageField.updateValues(eightFieldsContext, eightValues);
+  }
+
+  // Compares eight single-field headers with eight entries in one header, encoded via a Map or
+  // streamed directly from the baggage state.
+  static final Injector<Map<String, String>> eightFieldsInjector =
+    eightFieldsFactory.get().injector(Map::put);
+  static final Extractor<Map<String, String>> eightFieldsExtractor =
+    eightFieldsFactory.get().extractor(Map::get);
+  static final Map<String, String> eightFieldsIncoming = new LinkedHashMap<>();
+
+  static final Propagation.Factory mapCodecFactory =
+    newSingleHeaderFactory(new MapSingleHeaderCodec());
+  static final Injector<Map<String, String>> mapCodecInjector =
+    mapCodecFactory.get().injector(Map::put);
+  static final Extractor<Map<String, String>> mapCodecExtractor =
+    mapCodecFactory.get().extractor(Map::get);
+  static final TraceContext mapCodecContext = mapCodecFactory.decorate(context);
+
+  static final Propagation.Factory streamingCodecFactory =
+    newSingleHeaderFactory(new StreamingSingleHeaderCodec());
+  static final Injector<Map<String, String>> streamingCodecInjector =
+    streamingCodecFactory.get().injector(Map::put);
+  static final TraceContext streamingCodecContext = streamingCodecFactory.decorate(context);
+
+  static final Map<String, String> singleHeaderIncoming = new LinkedHashMap<>();
+
+  static {
+    eightFieldsInjector.inject(eightFieldsContext, eightFieldsIncoming);
+    BaggageField.updateValues(mapCodecContext, eightValues);
+    BaggageField.updateValues(streamingCodecContext, eightValues);
+    streamingCodecInjector.inject(streamingCodecContext, singleHeaderIncoming);
+  }
+
+  static Propagation.Factory newSingleHeaderFactory(BaggageCodec codec) {
+    return BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY)
+      .add(new BaggagePropagationConfig(codec, EIGHT_FIELDS.length)).build();
+  }
+
   @Benchmark public void inject() {
     Map<String, String> request = new LinkedHashMap<>();
     injector.inject(context, request);
@@ -90,6 +154,102 @@ public class BaggagePropagationBenchmarks {
     return extractor.extract(incomingNoBaggage);
   }
 
+  /** Each update copies the baggage state. */
+  @Benchmark public TraceContext updateValue_eightFields() {
+    TraceContext context = eightFieldsFactory.decorate(BaggagePropagationBenchmarks.context);
+    for (BaggageField field : EIGHT_FIELDS) field.updateValue(context, "value");
+    return context;
+  }
+
+  /** The baggage state is copied once. */
+  @Benchmark public TraceContext updateValues_eightFields() {
+    TraceContext context = eightFieldsFactory.decorate(BaggagePropagationBenchmarks.context);
+    BaggageField.updateValues(context, eightValues);
+    return context;
+  }
+
+  @Benchmark public String getValue_eightFields() {
+    String result = null;
+    for (BaggageField field : EIGHT_FIELDS) result = field.getValue(eightFieldsContext);
+    return result;
+  }
+
+  @Benchmark public Map<String, String> inject_eightFields_singleFieldCodecs() {
+    Map<String, String> request = new LinkedHashMap<>();
+    eightFieldsInjector.inject(eightFieldsContext, request);
+    return request;
+  }
+
+  @Benchmark public Map<String, String> inject_eightFields_mapCodec() {
+    Map<String, String> request = new LinkedHashMap<>();
+    mapCodecInjector.inject(mapCodecContext, request);
+    return request;
+  }
+
+  @Benchmark public Map<String, String> inject_eightFields_streamingCodec() {
+    Map<String, String> request = new LinkedHashMap<>();
+    streamingCodecInjector.inject(streamingCodecContext, request);
+    return request;
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_eightFields_singleFieldCodecs() {
+    return eightFieldsExtractor.extract(eightFieldsIncoming);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_eightFields_mapCodec() {
+    return mapCodecExtractor.extract(singleHeaderIncoming);
+  }
+
+  /** Encodes all fields into one "baggage" header, like "field-0=value-0,field-1=value-1". */
+  static class MapSingleHeaderCodec implements BaggageCodec, EntrySplitter.Handler<ValueUpdater> {
+    static final EntrySplitter ENTRY_SPLITTER = EntrySplitter.newBuilder().build();
+    final List<String> keyNames = Collections.singletonList("baggage");
+
+    @Override public List<String> extractKeyNames() {
+      return keyNames;
+    }
+
+    @Override public List<String> injectKeyNames() {
+      return keyNames;
+    }
+
+    @Override public boolean decode(ValueUpdater valueUpdater, Object request, String value) {
+      return ENTRY_SPLITTER.parse(this, valueUpdater, value);
+    }
+
+    @Override public boolean onEntry(ValueUpdater target,
+      CharSequence buffer, int beginKey, int endKey, int beginValue, int endValue) {
+      BaggageField field = BaggageField.create(buffer.subSequence(beginKey, endKey).toString());
+      return target.updateValue(field, buffer.subSequence(beginValue, endValue).toString());
+    }
+
+    @Override
+    public String encode(Map<String, String> values, TraceContext context, Object request) {
+      StringBuilder result = new StringBuilder();
+      for (Map.Entry<String, String> entry : values.entrySet()) {
+        if (result.length() > 0) result.append(',');
+        result.append(entry.getKey()).append('=').append(entry.getValue());
+      }
+      return result.length() == 0 ? null : result.toString();
+    }
+  }
+
+  /** Same format as {@link MapSingleHeaderCodec}, except encodes without an intermediate map. */
+  static final class StreamingSingleHeaderCodec extends MapSingleHeaderCodec
+    implements StreamingBaggageCodec, BaggageFields.ValueConsumer<StringBuilder> {
+
+    @Override public String encode(BaggageFields fields, TraceContext context, Object request,
+      StringBuilder buffer) {
+      fields.forEachRemoteValue(this, buffer);
+      return buffer.length() == 0 ? null : buffer.toString();
+    }
+
+    @Override public void accept(StringBuilder target, BaggageField field, String value) {
+      if (target.length() > 0) target.append(',');
+      target.append(field.name()).append('=').append(value);
+    }
+  }
+
   // Convenience main entry-point
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder()
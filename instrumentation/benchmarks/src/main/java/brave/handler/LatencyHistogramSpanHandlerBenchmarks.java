@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Span.Kind;
+import brave.handler.SpanHandler.Cause;
+import brave.propagation.TraceContext;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Recording should cost little more than {@link SpanHandler#NOOP}, and allocate nothing. */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class LatencyHistogramSpanHandlerBenchmarks {
+  static final TraceContext context =
+    TraceContext.newBuilder().traceId(1L).spanId(2L).sampledLocal(true).build();
+  static final LatencyHistogramSpanHandler handler =
+    LatencyHistogramSpanHandler.newBuilder().build();
+  static final LatencyHistogramSpanHandler handlerWithManyKeys =
+    LatencyHistogramSpanHandler.newBuilder().maxKeys(1000).build();
+
+  static final MutableSpan[] spans = new MutableSpan[64];
+
+  static {
+    for (int i = 0; i < spans.length; i++) {
+      MutableSpan span = new MutableSpan();
+      span.localServiceName("frontend");
+      span.kind(i % 2 == 0 ? Kind.SERVER : Kind.CLIENT);
+      span.name("get /api/" + i);
+      span.startTimestamp(1_000_000L);
+      span.finishTimestamp(1_000_000L + (i + 1) * 1357L);
+      spans[i] = span;
+      handler.end(context, span, Cause.FINISHED); // pre-create the histograms
+      handlerWithManyKeys.end(context, span, Cause.FINISHED);
+    }
+    // make lookups for the benchmarked spans traverse a larger map
+    for (int i = 0; i < 900; i++) {
+      MutableSpan span = new MutableSpan();
+      span.localServiceName("service" + (i % 10));
+      span.name("other" + i);
+      span.startTimestamp(1L);
+      span.finishTimestamp(2L);
+      handlerWithManyKeys.end(context, span, Cause.FINISHED);
+    }
+  }
+
+  int index;
+
+  MutableSpan nextSpan() {
+    return spans[index++ & (spans.length - 1)];
+  }
+
+  @Benchmark public boolean end_noop() {
+    return SpanHandler.NOOP.end(context, nextSpan(), Cause.FINISHED);
+  }
+
+  @Benchmark public boolean end() {
+    return handler.end(context, nextSpan(), Cause.FINISHED);
+  }
+
+  @Benchmark public boolean end_manyKeys() {
+    return handlerWithManyKeys.end(context, nextSpan(), Cause.FINISHED);
+  }
+
+  /** Threads record into the same counters, which is the worst case for contention. */
+  @Benchmark @Threads(8) public boolean end_threads8() {
+    return handler.end(context, nextSpan(), Cause.FINISHED);
+  }
+
+  @Benchmark public List<LatencyHistogramSpanHandler.Snapshot> snapshotAndReset() {
+    return handler.snapshotAndReset();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + LatencyHistogramSpanHandlerBenchmarks.class.getSimpleName())
+      .build();
+
+    new Runner(opt).run();
+  }
+}
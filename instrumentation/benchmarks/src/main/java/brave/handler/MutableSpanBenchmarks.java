@@ -14,6 +14,8 @@
 package brave.handler;
 
 import brave.Span;
+import brave.Tags;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -38,11 +40,38 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 @State(Scope.Thread)
 @Threads(1)
 public class MutableSpanBenchmarks {
+  static final MutableSpanBytesEncoder JSON_ENCODER = MutableSpanBytesEncoder.zipkinJsonV2(
+    Tags.ERROR);
+
+  final MutableSpan serverSpan = newServerMutableSpan();
+  final ByteBuffer directBuffer = ByteBuffer.allocateDirect(4096);
 
   @Benchmark public MutableSpan makeServerSpan() {
     return newServerMutableSpan();
   }
 
+  /** Compare with {@code -prof gc}: tag storage is allocated once and encoding doesn't box. */
+  @Benchmark public byte[] makeAndEncodeServerSpan() {
+    return JSON_ENCODER.encode(newServerMutableSpan());
+  }
+
+  @Benchmark public byte[] encodeServerSpan() {
+    return JSON_ENCODER.encode(serverSpan);
+  }
+
+  /** Unlike {@link #encodeServerSpan()}, this neither computes the size nor allocates. */
+  @Benchmark public boolean encodeServerSpan_directBuffer() {
+    directBuffer.clear();
+    return JSON_ENCODER.encode(serverSpan, directBuffer);
+  }
+
+  @Benchmark public MutableSpan makeAnnotatedServerSpan() {
+    MutableSpan span = newServerMutableSpan();
+    span.annotate(1533706251750100L, "wr");
+    span.annotate(1533706251935200L, "ws");
+    return span;
+  }
+
   public static MutableSpan newServerMutableSpan() {
     MutableSpan span = new MutableSpan();
     span.name("get /");
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.handler;
+
+import brave.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static brave.handler.MutableSpanBenchmarks.newBigClientMutableSpan;
+import static brave.handler.MutableSpanBenchmarks.newServerMutableSpan;
+
+/**
+ * Compares the size and throughput of built-in encoders. Run main to print sizes.
+ *
+ * <p>The list benchmarks compare the single-pass {@link MutableSpanBytesEncoder#encodeList(List)}
+ * with sizing the list first, then encoding into an array of that size, for batches of {@value
+ * #BATCH_SIZE} spans.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Threads(1)
+public class MutableSpanBytesEncoderBenchmarks {
+  static final MutableSpanBytesEncoder JSON = MutableSpanBytesEncoder.zipkinJsonV2(Tags.ERROR);
+  static final MutableSpanBytesEncoder PROTO3 = MutableSpanBytesEncoder.zipkinProto3(Tags.ERROR);
+
+  final MutableSpan serverSpan = withIds(newServerMutableSpan());
+  final MutableSpan bigClientSpan = withIds(newBigClientMutableSpan());
+
+  static final int BATCH_SIZE = 500;
+
+  final List<MutableSpan> tagHeavySpans = new ArrayList<>(), unicodeHeavySpans = new ArrayList<>();
+
+  public MutableSpanBytesEncoderBenchmarks() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      MutableSpan tagHeavy = withIds(newBigClientMutableSpan());
+      for (int j = 0; j < 20; j++) {
+        tagHeavy.tag("custom.tag" + j, "some value which is neither short nor long " + j);
+      }
+      tagHeavySpans.add(tagHeavy);
+
+      MutableSpan unicodeHeavy = withIds(newServerMutableSpan());
+      unicodeHeavy.name("get /api/\u0444\u0430\u0439\u043b\u044b");
+      unicodeHeavy.tag("http.path", "/api/\u0444\u0430\u0439\u043b\u044b/\u6587\u4ef6");
+      unicodeHeavy.tag("error", "\u041e\u0448\u0438\u0431\u043a\u0430: \"quoted\"\n\u2028");
+      unicodeHeavy.annotate(1533706251750100L, "\uD83D\uDE00 received");
+      unicodeHeavySpans.add(unicodeHeavy);
+    }
+  }
+
+  @Benchmark public byte[] tagHeavySpans_json() {
+    return JSON.encodeList(tagHeavySpans);
+  }
+
+  @Benchmark public byte[] tagHeavySpans_json_sizeFirst() {
+    return encodeListSizeFirst(tagHeavySpans);
+  }
+
+  @Benchmark public byte[] unicodeHeavySpans_json() {
+    return JSON.encodeList(unicodeHeavySpans);
+  }
+
+  @Benchmark public byte[] unicodeHeavySpans_json_sizeFirst() {
+    return encodeListSizeFirst(unicodeHeavySpans);
+  }
+
+  @Benchmark public byte[] tagHeavySpans_proto3() {
+    return PROTO3.encodeList(tagHeavySpans);
+  }
+
+  /** This is how lists were encoded before, walking each span twice. */
+  static byte[] encodeListSizeFirst(List<MutableSpan> spans) {
+    int sizeInBytes = 1 + spans.size(); // [ , ]
+    for (int i = 0, length = spans.size(); i < length; i++) {
+      sizeInBytes += JSON.sizeInBytes(spans.get(i));
+    }
+    byte[] result = new byte[sizeInBytes];
+    JSON.encodeList(spans, result, 0);
+    return result;
+  }
+
+  static MutableSpan withIds(MutableSpan span) {
+    span.traceId("86154a4ba6e91385");
+    span.parentId("86154a4ba6e91385");
+    span.id("4d1e00c0db9010db");
+    return span;
+  }
+
+  @Benchmark public byte[] serverSpan_json() {
+    return JSON.encode(serverSpan);
+  }
+
+  @Benchmark public byte[] serverSpan_proto3() {
+    return PROTO3.encode(serverSpan);
+  }
+
+  @Benchmark public byte[] bigClientSpan_json() {
+    return JSON.encode(bigClientSpan);
+  }
+
+  @Benchmark public byte[] bigClientSpan_proto3() {
+    return PROTO3.encode(bigClientSpan);
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + MutableSpanBytesEncoderBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
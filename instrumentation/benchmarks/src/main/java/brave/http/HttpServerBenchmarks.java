@@ -139,7 +139,7 @@ public abstract class HttpServerBenchmarks {
       .execute().body().close();
   }
 
-  void get(String path) throws IOException {
+  protected void get(String path) throws IOException {
     client.newCall(new Request.Builder().url(baseUrl() + path).build()).execute().body().close();
   }
 }
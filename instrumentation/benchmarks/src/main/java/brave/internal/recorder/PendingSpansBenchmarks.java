@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.internal.recorder;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the default weak map with the striped table used when {@link
+ * brave.Tracing.Builder#orphanTimeout} is set. Each operation creates and finishes a child span of
+ * a long-lived local root, which is the typical access pattern.
+ *
+ * <p>The "recycling" variants add {@link brave.Tracing.Builder#recycleSpans()} to the striped
+ * table. Compare allocation with the other variants using the gc profiler.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PendingSpansBenchmarks {
+  final MutableSpan defaultSpan = new MutableSpan();
+  final PendingSpans weak = new PendingSpans(defaultSpan, () -> 1L, SpanHandler.NOOP,
+    new AtomicBoolean());
+  final PendingSpans striped = new PendingSpans(defaultSpan, () -> 1L, SpanHandler.NOOP,
+    new AtomicBoolean(), TimeUnit.MINUTES.toNanos(1));
+  final PendingSpans recycling = new PendingSpans(defaultSpan, () -> 1L, SpanHandler.NOOP,
+    new AtomicBoolean(), TimeUnit.MINUTES.toNanos(1), true);
+  final TraceContext root = TraceContext.newBuilder().traceId(1L).spanId(1L).sampled(true).build();
+
+  public PendingSpansBenchmarks() {
+    weak.getOrCreate(null, root, true);
+    striped.getOrCreate(null, root, true);
+    recycling.getOrCreate(null, root, true);
+  }
+
+  @TearDown public void close() {
+    striped.close();
+    recycling.close();
+  }
+
+  @Benchmark @Threads(1) public void childSpan_weak() {
+    childSpan(weak);
+  }
+
+  @Benchmark @Threads(1) public void childSpan_striped() {
+    childSpan(striped);
+  }
+
+  @Benchmark @Threads(1) public void childSpan_recycling() {
+    childSpan(recycling);
+  }
+
+  @Benchmark @Threads(8) public void childSpan_weak_8threads() {
+    childSpan(weak);
+  }
+
+  @Benchmark @Threads(8) public void childSpan_striped_8threads() {
+    childSpan(striped);
+  }
+
+  @Benchmark @Threads(8) public void childSpan_recycling_8threads() {
+    childSpan(recycling);
+  }
+
+  @Benchmark @Threads(32) public void childSpan_weak_32threads() {
+    childSpan(weak);
+  }
+
+  @Benchmark @Threads(32) public void childSpan_striped_32threads() {
+    childSpan(striped);
+  }
+
+  void childSpan(PendingSpans pendingSpans) {
+    TraceContext child = root.toBuilder()
+      .parentId(root.spanId())
+      .spanId(ThreadLocalRandom.current().nextLong())
+      .build();
+    pendingSpans.getOrCreate(root, child, true);
+    pendingSpans.finish(child, 0L);
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + PendingSpansBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
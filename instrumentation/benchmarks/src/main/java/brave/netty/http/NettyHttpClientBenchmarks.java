@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.http.HttpClientBenchmarks;
+import brave.http.HttpTracing;
+import brave.internal.Nullable;
+import brave.propagation.CurrentTraceContext;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class NettyHttpClientBenchmarks
+  extends HttpClientBenchmarks<NettyHttpClientBenchmarks.Client> {
+
+  /** Pools keep-alive connections, so that each benchmark thread has one request in flight. */
+  static final class Client {
+    final EventLoopGroup group = new NioEventLoopGroup(1);
+    final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+    final Bootstrap bootstrap;
+    @Nullable final CurrentTraceContext currentTraceContext;
+    final String host;
+    final int port;
+
+    Client(String baseUrl, @Nullable HttpTracing httpTracing) {
+      URI uri = URI.create(baseUrl);
+      host = uri.getHost();
+      port = uri.getPort();
+      currentTraceContext =
+        httpTracing != null ? httpTracing.tracing().currentTraceContext() : null;
+      ChannelHandler tracingHandler =
+        httpTracing != null ? NettyHttpTracing.create(httpTracing).clientHandler() : null;
+      bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+        .handler(new ChannelInitializer<Channel>() {
+          @Override protected void initChannel(Channel ch) {
+            ChannelPipeline p = ch.pipeline();
+            p.addLast(new HttpClientCodec());
+            if (tracingHandler != null) p.addLast(tracingHandler); // shared by all connections
+            p.addLast(new HttpObjectAggregator(1024 * 1024));
+          }
+        });
+    }
+
+    void get() throws Exception {
+      Connection connection = idle.poll();
+      if (connection == null) connection = new Connection(bootstrap.connect(host, port).sync());
+      FullHttpRequest request =
+        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+      request.headers().set(HttpHeaderNames.HOST, host + ":" + port);
+
+      CompletableFuture<FullHttpResponse> response = new CompletableFuture<>();
+      connection.response = response;
+      Channel channel = connection.channel;
+      Runnable write = () -> channel.writeAndFlush(request);
+      // The write happens on the event loop, so carry over the caller's context for the parent.
+      if (currentTraceContext != null) write = currentTraceContext.wrap(write);
+      channel.eventLoop().execute(write);
+
+      response.get().release();
+      idle.add(connection);
+    }
+
+    void close() {
+      group.shutdownGracefully().syncUninterruptibly();
+    }
+  }
+
+  static final class Connection extends SimpleChannelInboundHandler<FullHttpResponse> {
+    final Channel channel;
+    volatile CompletableFuture<FullHttpResponse> response;
+
+    Connection(ChannelFuture connect) {
+      channel = connect.channel();
+      channel.pipeline().addLast(this);
+    }
+
+    @Override protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) {
+      response.complete(msg.retain());
+    }
+
+    @Override public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      response.completeExceptionally(cause);
+    }
+  }
+
+  @Override protected Client newClient(HttpTracing httpTracing) {
+    return new Client(baseUrl(), httpTracing);
+  }
+
+  @Override protected Client newClient() {
+    return new Client(baseUrl(), null);
+  }
+
+  @Override protected void get(Client client) throws Exception {
+    client.get();
+  }
+
+  @Override protected void close(Client client) {
+    client.close();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(".*" + NettyHttpClientBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
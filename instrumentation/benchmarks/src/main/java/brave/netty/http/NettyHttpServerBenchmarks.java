@@ -30,12 +30,21 @@ import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.util.AttributeKey;
 import io.undertow.servlet.api.DeploymentInfo;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
@@ -48,6 +57,8 @@ import static brave.EndToEndBenchmarks.REQUEST_ID;
 import static brave.EndToEndBenchmarks.USER_ID;
 
 public class NettyHttpServerBenchmarks extends HttpServerBenchmarks {
+  static final HttpRequest REQUEST = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+    "/api/v1/users/42?fields=name,email&limit=10");
 
   EventLoopGroup bossGroup;
   EventLoopGroup workerGroup;
@@ -86,6 +97,8 @@ public class NettyHttpServerBenchmarks extends HttpServerBenchmarks {
         return;
       }
       String uri = ((HttpRequest) msg).uri();
+      int query = uri.indexOf('?');
+      if (query != -1) uri = uri.substring(0, query);
       if ("/unsampled".equals(uri)) {
         ctx.channel().attr(URI_ATTRIBUTE).set(uri);
         unsampled.channelRead(ctx, msg);
@@ -115,6 +128,8 @@ public class NettyHttpServerBenchmarks extends HttpServerBenchmarks {
         unsampled.write(ctx, msg, prm);
       } else if ("/traced".equals(uri)) {
         traced.write(ctx, msg, prm);
+      } else if ("/tracedBaggage".equals(uri)) {
+        tracedBaggage.write(ctx, msg, prm);
       } else if ("/traced128".equals(uri)) {
         traced128.write(ctx, msg, prm);
       } else {
@@ -145,6 +160,21 @@ public class NettyHttpServerBenchmarks extends HttpServerBenchmarks {
     return ((InetSocketAddress) ch.localAddress()).getPort();
   }
 
+  @Benchmark public void tracedServer_get_query() throws Exception {
+    get("/traced?fields=name,email&limit=10");
+  }
+
+  /** The path parsing used before, which allocates a {@link URI} with all components. */
+  @Benchmark @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public String parsePath_uri() {
+    return URI.create(REQUEST.uri()).getPath();
+  }
+
+  @Benchmark @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public String parsePath() {
+    return new TracingHttpServerHandler.HttpRequestWrapper(REQUEST, null).path();
+  }
+
   @TearDown(Level.Trial) public void closeNetty() {
     if (bossGroup != null) bossGroup.shutdownGracefully();
     if (workerGroup != null) workerGroup.shutdownGracefully();
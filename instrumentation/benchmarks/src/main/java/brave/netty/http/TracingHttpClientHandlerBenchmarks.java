@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Tracing;
+import brave.handler.SpanHandler;
+import brave.http.HttpTracing;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link TracingHttpClientHandler} without sockets, so that its overhead isn't lost in
+ * network noise. {@code inFlight} requests are written to the same channel before their responses
+ * are read, as happens when many requests are pipelined on one connection.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TracingHttpClientHandlerBenchmarks {
+  static final HttpResponse RESPONSE =
+    new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+
+  @Param({"1", "1000"}) int inFlight;
+
+  Tracing tracing;
+  EmbeddedChannel untraced, traced;
+
+  @Setup(Level.Trial) public void init() {
+    tracing = Tracing.newBuilder()
+      .addSpanHandler(new SpanHandler() {
+        // anonymous subtype prevents all recording from being no-op
+      })
+      .build();
+    untraced = new EmbeddedChannel();
+    traced =
+      new EmbeddedChannel(NettyHttpTracing.create(HttpTracing.create(tracing)).clientHandler());
+  }
+
+  @TearDown(Level.Trial) public void close() {
+    untraced.finishAndReleaseAll();
+    traced.finishAndReleaseAll();
+    tracing.close();
+  }
+
+  @Benchmark public void client_get() {
+    exchange(untraced);
+  }
+
+  @Benchmark public void tracedClient_get() {
+    exchange(traced);
+  }
+
+  void exchange(EmbeddedChannel channel) {
+    for (int i = 0; i < inFlight; i++) {
+      channel.writeOutbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"));
+    }
+    for (int i = 0; i < inFlight; i++) channel.writeInbound(RESPONSE);
+    // drain the channel's queues, so they don't grow across invocations
+    while (channel.readOutbound() != null) ;
+    while (channel.readInbound() != null) ;
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(".*" + TracingHttpClientHandlerBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -32,6 +32,8 @@ import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @Measurement(iterations = 5, time = 1)
 @Warmup(iterations = 10, time = 1)
 @Fork(3)
@@ -61,6 +63,17 @@ public class B3PropagationBenchmarks {
     }
   };
 
+  static final Map<String, String> incomingNotSampledWithIds =
+    new LinkedHashMap<String, String>() {
+      {
+        b3Injector.inject(context.toBuilder().sampled(false).build(), this);
+      }
+    };
+
+  static final Extractor<Map<String, String>> b3SkipSpanIdsExtractor =
+    B3Propagation.newFactoryBuilder().skipSpanIdsWhenNotSampled(true).build().get()
+      .extractor(Map::get);
+
   static final Map<String, String> incomingMalformed = new LinkedHashMap<String, String>() {
     {
       put("x-amzn-trace-id", "Sampled=-;Parent=463ac35%Af6413ad;Root=1-??-abc!#%0123456789123456");
@@ -72,6 +85,50 @@ public class B3PropagationBenchmarks {
 
   static final Map<String, String> nothingIncoming = Collections.emptyMap();
 
+  static final Map<String, String> incomingSingle = new LinkedHashMap<String, String>() {
+    {
+      put("b3", B3SingleFormat.writeB3SingleFormat(context));
+    }
+  };
+
+  static final ExtractionCache extractionCache = ExtractionCache.create(256);
+  static final Extractor<Map<String, String>> b3CachingExtractor = B3Propagation.newFactoryBuilder()
+    .extractionCache(extractionCache).build().get().extractor(Map::get);
+
+  /** Like a Kafka getter, which would otherwise decode a string from each header value */
+  static final class BytesMapGetter
+    implements Propagation.Getter<Map<String, byte[]>, String>,
+    Propagation.BytesGetter<Map<String, byte[]>> {
+    @Override public String get(Map<String, byte[]> request, String key) {
+      byte[] value = request.get(key);
+      return value != null ? new String(value, UTF_8) : null;
+    }
+
+    @Override public byte[] getBytes(Map<String, byte[]> request, String key) {
+      return request.get(key);
+    }
+  }
+
+  static final Extractor<Map<String, byte[]>> b3BytesExtractor =
+    b3.extractor(new BytesMapGetter());
+  static final Extractor<Map<String, byte[]>> b3StringFromBytesExtractor =
+    b3.extractor((request, key) -> {
+      byte[] value = request.get(key);
+      return value != null ? new String(value, UTF_8) : null;
+    });
+
+  static final Map<String, byte[]> incomingBytes = new LinkedHashMap<String, byte[]>() {
+    {
+      incoming.forEach((k, v) -> put(k, v.getBytes(UTF_8)));
+    }
+  };
+
+  static final Map<String, byte[]> incomingSingleBytes = new LinkedHashMap<String, byte[]>() {
+    {
+      put("b3", B3SingleFormat.writeB3SingleFormatAsBytes(context));
+    }
+  };
+
   @Benchmark public void inject() {
     Map<String, String> request = new LinkedHashMap<>();
     b3Injector.inject(context, request);
@@ -81,6 +138,32 @@ public class B3PropagationBenchmarks {
     return b3Extractor.extract(incoming);
   }
 
+  @Benchmark public TraceContextOrSamplingFlags extract_single() {
+    return b3Extractor.extract(incomingSingle);
+  }
+
+  /** Simulates the same upstream header arriving on many requests. */
+  @Benchmark public TraceContextOrSamplingFlags extract_single_cached() {
+    return b3CachingExtractor.extract(incomingSingle);
+  }
+
+  /** Decodes each header value into a string before parsing, as done prior to BytesGetter. */
+  @Benchmark public TraceContextOrSamplingFlags extract_bytes_viaString() {
+    return b3StringFromBytesExtractor.extract(incomingBytes);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_bytes() {
+    return b3BytesExtractor.extract(incomingBytes);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_single_bytes_viaString() {
+    return b3StringFromBytesExtractor.extract(incomingSingleBytes);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_single_bytes() {
+    return b3BytesExtractor.extract(incomingSingleBytes);
+  }
+
   @Benchmark public TraceContextOrSamplingFlags extract_nothing() {
     return b3Extractor.extract(nothingIncoming);
   }
@@ -89,6 +172,15 @@ public class B3PropagationBenchmarks {
     return b3Extractor.extract(incomingNotSampled);
   }
 
+  @Benchmark public TraceContextOrSamplingFlags extract_unsampled_withIds() {
+    return b3Extractor.extract(incomingNotSampledWithIds);
+  }
+
+  /** Only the trace ID is parsed, and no trace context is created. */
+  @Benchmark public TraceContextOrSamplingFlags extract_unsampled_withIds_skipSpanIds() {
+    return b3SkipSpanIdsExtractor.extract(incomingNotSampledWithIds);
+  }
+
   @Benchmark public TraceContextOrSamplingFlags extract_malformed() {
     return b3Extractor.extract(incomingMalformed);
   }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.propagation;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.context.log4j2.ThreadContextScopeDecorator;
+import brave.handler.SpanHandler;
+import brave.propagation.CurrentTraceContext.Scope;
+import brave.propagation.TraceContext.Injector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Shows the cost of encoding IDs as hex. The scope-heavy workload encodes the same IDs for log
+ * correlation, B3 injection and span data, which is where memoized and inherited strings matter.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+public class TraceContextBenchmarks {
+  static final TraceContext context = TraceContext.newBuilder()
+    .traceIdHigh(333L).traceId(444L).parentId(2L).spanId(3L).sampled(true).build();
+  static final Injector<Map<String, String>> b3Injector = B3Propagation.get().injector(Map::put);
+
+  final char[] chars = new char[32];
+  final byte[] bytes = new byte[32];
+  Tracing tracing;
+  Tracer tracer;
+
+  @Setup(Level.Trial) public void init() {
+    tracing = Tracing.newBuilder()
+      .currentTraceContext(ThreadLocalCurrentTraceContext.newBuilder()
+        .addScopeDecorator(ThreadContextScopeDecorator.get())
+        .build())
+      .addSpanHandler(new SpanHandler() {
+        // anonymous subtype prevents all recording from being no-op
+      })
+      .build();
+    tracer = tracing.tracer();
+  }
+
+  @TearDown(Level.Trial) public void close() {
+    tracing.close();
+  }
+
+  /** Encodes the trace ID once, as it is memoized */
+  @Benchmark public String traceIdString() {
+    return context.traceIdString();
+  }
+
+  /** A copy, such as when adding extra fields, inherits strings of the same IDs */
+  @Benchmark public String traceIdString_toBuilder() {
+    return context.toBuilder().sampledLocal(true).build().traceIdString();
+  }
+
+  @Benchmark public byte[] traceIdString_getBytes() {
+    return context.traceIdString().getBytes(UTF_8);
+  }
+
+  @Benchmark public int writeTraceIdString_chars() {
+    return context.writeTraceIdString(chars, 0);
+  }
+
+  @Benchmark public int writeTraceIdString_bytes() {
+    return context.writeTraceIdString(bytes, 0);
+  }
+
+  /** A parent with two levels of children, each in log4j2 scope and injected into headers */
+  @Benchmark public void scopedChildren_log4j2_b3() {
+    Span parent = tracer.newTrace().name("parent").start();
+    try (Scope ws = tracing.currentTraceContext().newScope(parent.context())) {
+      for (int i = 0; i < 2; i++) {
+        Span child = tracer.newChild(parent.context()).name("child").start();
+        try (Scope cs = tracing.currentTraceContext().newScope(child.context())) {
+          Map<String, String> headers = new LinkedHashMap<>();
+          b3Injector.inject(child.context(), headers);
+        } finally {
+          child.finish();
+        }
+      }
+    } finally {
+      parent.finish();
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + TraceContextBenchmarks.class.getSimpleName())
+      .build();
+
+    new Runner(opt).run();
+  }
+}
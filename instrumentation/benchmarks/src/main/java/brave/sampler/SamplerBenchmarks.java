@@ -83,6 +83,9 @@ public class SamplerBenchmarks {
    */
   static final int SAMPLE_RATE = 1;
 
+  /** A rate that approaches the decisions per second a single thread can make. */
+  static final int SAMPLE_RATE_HIGH = 1000000;
+
   @State(Scope.Benchmark)
   public static class Args {
 
@@ -107,6 +110,41 @@ public class SamplerBenchmarks {
   // Use fixed-seed Random so performance of runs can be compared.
   static final Sampler SAMPLER_RATE = new CountingSampler(SAMPLE_PROBABILITY, new Random(1000));
 
+  @Benchmark @Threads(1) public boolean sampler_counting_threads1(Args args) {
+    return SAMPLER_RATE.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_counting_threads8(Args args) {
+    return SAMPLER_RATE.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(32) public boolean sampler_counting_threads32(Args args) {
+    return SAMPLER_RATE.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(64) public boolean sampler_counting_threads64(Args args) {
+    return SAMPLER_RATE.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(1) public boolean sampler_countingPerThread_threads1(Args args) {
+    return SAMPLER_RATE_PER_THREAD.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_countingPerThread_threads8(Args args) {
+    return SAMPLER_RATE_PER_THREAD.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(32) public boolean sampler_countingPerThread_threads32(Args args) {
+    return SAMPLER_RATE_PER_THREAD.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(64) public boolean sampler_countingPerThread_threads64(Args args) {
+    return SAMPLER_RATE_PER_THREAD.isSampled(args.traceId);
+  }
+
+  static final Sampler SAMPLER_RATE_PER_THREAD =
+    new PerThreadCountingSampler(SAMPLE_PROBABILITY, new Random(1000));
+
   @Benchmark public boolean sampler_rateLimited_1(Args args) {
     return SAMPLER_RATE_LIMITED.isSampled(args.traceId);
   }
@@ -119,6 +157,53 @@ public class SamplerBenchmarks {
 
   static final Sampler SAMPLER_RATE_LIMITED_100 = RateLimitingSampler.create(100);
 
+  /**
+   * The following use a rate high enough that most decisions pass, so that threads compete to
+   * update the reservoir, as opposed to only reading it.
+   */
+  @Benchmark @Threads(1) public boolean sampler_rateLimited_1M_threads1(Args args) {
+    return SAMPLER_RATE_LIMITED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_rateLimited_1M_threads8(Args args) {
+    return SAMPLER_RATE_LIMITED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(32) public boolean sampler_rateLimited_1M_threads32(Args args) {
+    return SAMPLER_RATE_LIMITED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(64) public boolean sampler_rateLimited_1M_threads64(Args args) {
+    return SAMPLER_RATE_LIMITED_1M.isSampled(args.traceId);
+  }
+
+  static final Sampler SAMPLER_RATE_LIMITED_1M = RateLimitingSampler.create(SAMPLE_RATE_HIGH);
+
+  @Benchmark @Threads(1) public boolean sampler_rateLimitedStriped_1M_threads1(Args args) {
+    return SAMPLER_RATE_LIMITED_STRIPED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_rateLimitedStriped_1M_threads8(Args args) {
+    return SAMPLER_RATE_LIMITED_STRIPED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(32) public boolean sampler_rateLimitedStriped_1M_threads32(Args args) {
+    return SAMPLER_RATE_LIMITED_STRIPED_1M.isSampled(args.traceId);
+  }
+
+  @Benchmark @Threads(64) public boolean sampler_rateLimitedStriped_1M_threads64(Args args) {
+    return SAMPLER_RATE_LIMITED_STRIPED_1M.isSampled(args.traceId);
+  }
+
+  static final Sampler SAMPLER_RATE_LIMITED_STRIPED_1M =
+    RateLimitingSampler.createStriped(SAMPLE_RATE_HIGH);
+
+  @Benchmark public boolean sampler_adaptive_100(Args args) {
+    return SAMPLER_ADAPTIVE_100.isSampled(args.traceId);
+  }
+
+  static final Sampler SAMPLER_ADAPTIVE_100 = new AdaptiveSampler(100, new Random(1000));
+
   @Benchmark public boolean sampler_rateLimited_1_xray(Args args) {
     return RESERVOIR_RATE_LIMITED.take();
   }
@@ -16,43 +16,59 @@ package brave.kafka.clients;
 import brave.Span.Kind;
 import brave.internal.Nullable;
 import brave.messaging.ConsumerRequest;
+import brave.propagation.Propagation.BytesGetter;
+import brave.propagation.Propagation.BytesSetter;
 import brave.propagation.Propagation.RemoteGetter;
 import brave.propagation.Propagation.RemoteSetter;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
+import static brave.kafka.clients.KafkaHeaders.lastHeaderValue;
 import static brave.kafka.clients.KafkaHeaders.lastStringHeader;
 
 // intentionally not yet public until we add tag parsing functionality
 final class KafkaConsumerRequest extends ConsumerRequest {
-  static final RemoteGetter<KafkaConsumerRequest> GETTER =
-      new RemoteGetter<KafkaConsumerRequest>() {
-        @Override public Kind spanKind() {
-          return Kind.CONSUMER;
-        }
-
-        @Override public String get(KafkaConsumerRequest request, String name) {
-          return lastStringHeader(request.delegate.headers(), name);
-        }
-
-        @Override public String toString() {
-          return "Headers::lastHeader";
-        }
-      };
-
-  static final RemoteSetter<KafkaConsumerRequest> SETTER =
-      new RemoteSetter<KafkaConsumerRequest>() {
-        @Override public Kind spanKind() {
-          return Kind.CONSUMER;
-        }
-
-        @Override public void put(KafkaConsumerRequest request, String name, String value) {
-          KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
-        }
-
-        @Override public String toString() {
-          return "Headers::replace";
-        }
-      };
+  static final RemoteGetter<KafkaConsumerRequest> GETTER = new HeadersGetter();
+  static final RemoteSetter<KafkaConsumerRequest> SETTER = new HeadersSetter();
+
+  /** Implements {@link BytesGetter} so that B3 is parsed without decoding header strings. */
+  static final class HeadersGetter
+      implements RemoteGetter<KafkaConsumerRequest>, BytesGetter<KafkaConsumerRequest> {
+    @Override public Kind spanKind() {
+      return Kind.CONSUMER;
+    }
+
+    @Override public String get(KafkaConsumerRequest request, String name) {
+      return lastStringHeader(request.delegate.headers(), name);
+    }
+
+    @Override public byte[] getBytes(KafkaConsumerRequest request, String name) {
+      return lastHeaderValue(request.delegate.headers(), name);
+    }
+
+    @Override public String toString() {
+      return "Headers::lastHeader";
+    }
+  }
+
+  /** Implements {@link BytesSetter} so that B3 is written without encoding header strings. */
+  static final class HeadersSetter
+      implements RemoteSetter<KafkaConsumerRequest>, BytesSetter<KafkaConsumerRequest> {
+    @Override public Kind spanKind() {
+      return Kind.CONSUMER;
+    }
+
+    @Override public void put(KafkaConsumerRequest request, String name, String value) {
+      KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
+    }
+
+    @Override public void putBytes(KafkaConsumerRequest request, String name, byte[] value) {
+      KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
+    }
+
+    @Override public String toString() {
+      return "Headers::replace";
+    }
+  }
 
   final ConsumerRecord<?, ?> delegate;
 
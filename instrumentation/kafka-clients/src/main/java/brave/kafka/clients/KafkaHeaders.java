@@ -22,18 +22,27 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 final class KafkaHeaders {
   static void replaceHeader(Headers headers, String key, String value) {
+    replaceHeader(headers, key, value.getBytes(UTF_8));
+  }
+
+  static void replaceHeader(Headers headers, String key, byte[] value) {
     try {
       headers.remove(key);
-      headers.add(key, value.getBytes(UTF_8));
+      headers.add(key, value);
     } catch (IllegalStateException e) {
       log(e, "error setting header {0} in headers {1}", key, headers);
     }
   }
 
   @Nullable static String lastStringHeader(Headers headers, String key) {
+    byte[] value = lastHeaderValue(headers, key);
+    if (value == null) return null;
+    return new String(value, UTF_8);
+  }
+
+  @Nullable static byte[] lastHeaderValue(Headers headers, String key) {
     Header header = headers.lastHeader(key);
-    if (header == null || header.value() == null) return null;
-    return new String(header.value(), UTF_8);
+    return header != null ? header.value() : null;
   }
 
   KafkaHeaders() {
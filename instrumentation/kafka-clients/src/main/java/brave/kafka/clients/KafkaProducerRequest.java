@@ -16,43 +16,59 @@ package brave.kafka.clients;
 import brave.Span.Kind;
 import brave.internal.Nullable;
 import brave.messaging.ProducerRequest;
+import brave.propagation.Propagation.BytesGetter;
+import brave.propagation.Propagation.BytesSetter;
 import brave.propagation.Propagation.RemoteGetter;
 import brave.propagation.Propagation.RemoteSetter;
 import org.apache.kafka.clients.producer.ProducerRecord;
 
+import static brave.kafka.clients.KafkaHeaders.lastHeaderValue;
 import static brave.kafka.clients.KafkaHeaders.lastStringHeader;
 
 // intentionally not yet public until we add tag parsing functionality
 final class KafkaProducerRequest extends ProducerRequest {
-  static final RemoteGetter<KafkaProducerRequest> GETTER =
-      new RemoteGetter<KafkaProducerRequest>() {
-        @Override public Kind spanKind() {
-          return Kind.PRODUCER;
-        }
-
-        @Override public String get(KafkaProducerRequest request, String name) {
-          return lastStringHeader(request.delegate.headers(), name);
-        }
-
-        @Override public String toString() {
-          return "Headers::lastHeader";
-        }
-      };
-
-  static final RemoteSetter<KafkaProducerRequest> SETTER =
-      new RemoteSetter<KafkaProducerRequest>() {
-        @Override public Kind spanKind() {
-          return Kind.PRODUCER;
-        }
-
-        @Override public void put(KafkaProducerRequest request, String name, String value) {
-          KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
-        }
-
-        @Override public String toString() {
-          return "Headers::replace";
-        }
-      };
+  static final RemoteGetter<KafkaProducerRequest> GETTER = new HeadersGetter();
+  static final RemoteSetter<KafkaProducerRequest> SETTER = new HeadersSetter();
+
+  /** Implements {@link BytesGetter} so that B3 is parsed without decoding header strings. */
+  static final class HeadersGetter
+      implements RemoteGetter<KafkaProducerRequest>, BytesGetter<KafkaProducerRequest> {
+    @Override public Kind spanKind() {
+      return Kind.PRODUCER;
+    }
+
+    @Override public String get(KafkaProducerRequest request, String name) {
+      return lastStringHeader(request.delegate.headers(), name);
+    }
+
+    @Override public byte[] getBytes(KafkaProducerRequest request, String name) {
+      return lastHeaderValue(request.delegate.headers(), name);
+    }
+
+    @Override public String toString() {
+      return "Headers::lastHeader";
+    }
+  }
+
+  /** Implements {@link BytesSetter} so that B3 is written without encoding header strings. */
+  static final class HeadersSetter
+      implements RemoteSetter<KafkaProducerRequest>, BytesSetter<KafkaProducerRequest> {
+    @Override public Kind spanKind() {
+      return Kind.PRODUCER;
+    }
+
+    @Override public void put(KafkaProducerRequest request, String name, String value) {
+      KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
+    }
+
+    @Override public void putBytes(KafkaProducerRequest request, String name, byte[] value) {
+      KafkaHeaders.replaceHeader(request.delegate.headers(), name, value);
+    }
+
+    @Override public String toString() {
+      return "Headers::replace";
+    }
+  }
 
   final ProducerRecord<?, ?> delegate;
 
@@ -22,6 +22,7 @@ import brave.messaging.MessagingRequest;
 import brave.messaging.MessagingTracing;
 import brave.propagation.B3Propagation;
 import brave.propagation.Propagation;
+import brave.propagation.Propagation.BytesGetter;
 import brave.propagation.Propagation.Getter;
 import brave.propagation.TraceContext.Extractor;
 import brave.propagation.TraceContext.Injector;
@@ -40,20 +41,29 @@ import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.Headers;
 
+import static brave.kafka.clients.KafkaHeaders.lastHeaderValue;
 import static brave.kafka.clients.KafkaHeaders.lastStringHeader;
 
 /** Use this class to decorate your Kafka consumer / producer and enable Tracing. */
 public final class KafkaTracing {
   /** Used for local message processors in {@link KafkaTracing#nextSpan(ConsumerRecord)}. */
-  static final Getter<Headers, String> GETTER = new Getter<Headers, String>() {
+  static final Getter<Headers, String> GETTER = new HeadersGetter();
+
+  /** Implements {@link BytesGetter} so that B3 is parsed without decoding header strings. */
+  static final class HeadersGetter implements Getter<Headers, String>, BytesGetter<Headers> {
     @Override public String get(Headers request, String key) {
       return lastStringHeader(request, key);
     }
 
+    @Override public byte[] getBytes(Headers request, String key) {
+      return lastHeaderValue(request, key);
+    }
+
     @Override public String toString() {
       return "Headers::lastHeader";
     }
-  };
+  }
+
   // Use nested class to ensure logger isn't initialized unless it is accessed once.
   private static final class LoggerHolder {
     static final Logger LOG = Logger.getLogger(KafkaTracing.class.getName());
@@ -13,6 +13,8 @@
  */
 package brave.kafka.streams;
 
+import brave.propagation.Propagation.BytesGetter;
+import brave.propagation.Propagation.BytesSetter;
 import brave.propagation.Propagation.Getter;
 import brave.propagation.Propagation.Setter;
 import org.apache.kafka.common.header.Headers;
@@ -23,26 +25,40 @@ final class KafkaStreamsPropagation {
    * Used by {@link KafkaStreamsTracing#nextSpan(ProcessorContext)} to extract a trace context from
    * a prior stage.
    */
-  static final Getter<Headers, String> GETTER = new Getter<Headers, String>() {
+  static final Getter<Headers, String> GETTER = new HeadersGetter();
+
+  /** Used to inject the trace context between stages. */
+  static final Setter<Headers, String> SETTER = new HeadersSetter();
+
+  /** Implements {@link BytesGetter} so that B3 is parsed without decoding header strings. */
+  static final class HeadersGetter implements Getter<Headers, String>, BytesGetter<Headers> {
     @Override public String get(Headers headers, String key) {
       return KafkaHeaders.lastStringHeader(headers, key);
     }
 
+    @Override public byte[] getBytes(Headers headers, String key) {
+      return KafkaHeaders.lastHeaderValue(headers, key);
+    }
+
     @Override public String toString() {
       return "Headers::lastHeader";
     }
-  };
+  }
 
-  /** Used to inject the trace context between stages. */
-  static final Setter<Headers, String> SETTER = new Setter<Headers, String>() {
+  /** Implements {@link BytesSetter} so that B3 is written without encoding header strings. */
+  static final class HeadersSetter implements Setter<Headers, String>, BytesSetter<Headers> {
     @Override public void put(Headers headers, String key, String value) {
       KafkaHeaders.replaceHeader(headers, key, value);
     }
 
+    @Override public void putBytes(Headers headers, String key, byte[] value) {
+      KafkaHeaders.replaceHeader(headers, key, value);
+    }
+
     @Override public String toString() {
       return "Headers::replaceHeader";
     }
-  };
+  }
 
   KafkaStreamsPropagation() {
   }
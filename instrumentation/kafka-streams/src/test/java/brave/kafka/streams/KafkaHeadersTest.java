@@ -32,6 +32,26 @@ public class KafkaHeadersTest {
     assertThat(KafkaHeaders.lastStringHeader(record.headers(), "b3")).isNull();
   }
 
+  @Test public void lastHeaderValue() {
+    record.headers().add("b3", new byte[] {'0'});
+    record.headers().add("b3", new byte[] {'1'});
+
+    assertThat(KafkaHeaders.lastHeaderValue(record.headers(), "b3"))
+        .containsExactly('1');
+  }
+
+  @Test public void lastHeaderValue_null() {
+    assertThat(KafkaHeaders.lastHeaderValue(record.headers(), "b3")).isNull();
+  }
+
+  @Test public void replaceHeader_bytes() {
+    byte[] value = {'1'};
+    KafkaHeaders.replaceHeader(record.headers(), "b3", value);
+
+    assertThat(record.headers().lastHeader("b3").value())
+        .isSameAs(value);
+  }
+
   @Test public void replaceHeader() {
     KafkaHeaders.replaceHeader(record.headers(), "b3", "1");
 
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Span;
+import brave.http.HttpServerRequest;
+import brave.http.HttpServerResponse;
+import brave.internal.Nullable;
+import brave.internal.Platform;
+import io.netty.handler.codec.http2.Http2FrameStream;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+import static brave.netty.http.PendingRequests.NO_STREAM_ID;
+
+/**
+ * Traces frames read and written by {@code Http2FrameCodec}, when there is no {@code
+ * Http2MultiplexHandler} converting streams into child channels.
+ *
+ * <p>netty-codec-http2 is an optional dependency, so only use this when {@link #PRESENT}.
+ */
+final class Http2Frames {
+  static final boolean PRESENT;
+
+  static {
+    boolean present = false;
+    try {
+      Class.forName("io.netty.handler.codec.http2.Http2HeadersFrame");
+      present = true;
+    } catch (ClassNotFoundException e) {
+    }
+    PRESENT = present;
+  }
+
+  /** Returns a request when the message is headers which start an HTTP/2 stream. */
+  @Nullable static HttpServerRequest request(Object msg,
+    @Nullable InetSocketAddress remoteAddress) {
+    if (!(msg instanceof Http2HeadersFrame)) return null;
+    Http2HeadersFrame frame = (Http2HeadersFrame) msg;
+    if (frame.headers().method() == null) return null; // trailers
+    return new Http2RequestWrapper(frame, remoteAddress);
+  }
+
+  /** Returns true when the message is final response headers, or resets the stream. */
+  static boolean endsStream(Object msg) {
+    if (msg instanceof Http2ResetFrame) return true;
+    if (!(msg instanceof Http2HeadersFrame)) return false;
+    CharSequence status = ((Http2HeadersFrame) msg).headers().status();
+    return status != null && status.length() > 0 && status.charAt(0) != '1'; // not 1xx
+  }
+
+  static boolean isReset(Object msg) {
+    return msg instanceof Http2ResetFrame;
+  }
+
+  static int streamId(Object msg) {
+    Http2FrameStream stream = ((Http2StreamFrame) msg).stream();
+    return stream != null ? stream.id() : NO_STREAM_ID;
+  }
+
+  /** @param msg response headers or a reset frame */
+  static HttpServerResponse response(HttpServerRequest request, Object msg,
+    @Nullable Throwable error) {
+    return new Http2ResponseWrapper(request, (Http2StreamFrame) msg, error);
+  }
+
+  static final class Http2RequestWrapper extends HttpServerRequest {
+    final Http2HeadersFrame frame;
+    final Http2Headers headers;
+    @Nullable final InetSocketAddress remoteAddress;
+    String path; // cached as it is read for both the span name and the "http.path" tag
+
+    Http2RequestWrapper(Http2HeadersFrame frame, @Nullable InetSocketAddress remoteAddress) {
+      this.frame = frame;
+      this.headers = frame.headers();
+      this.remoteAddress = remoteAddress;
+    }
+
+    @Override public Http2HeadersFrame unwrap() {
+      return frame;
+    }
+
+    @Override public boolean parseClientIpAndPort(Span span) {
+      if (parseClientIpFromXForwardedFor(span)) return true;
+      if (remoteAddress == null || remoteAddress.getAddress() == null) return false;
+      return span.remoteIpAndPort(
+        Platform.get().getHostString(remoteAddress),
+        remoteAddress.getPort()
+      );
+    }
+
+    @Override public String method() {
+      return headers.method().toString();
+    }
+
+    @Override public String path() {
+      String result = path;
+      if (result == null) {
+        CharSequence rawPath = headers.path();
+        if (rawPath == null) return null; // CONNECT
+        result = path = TracingHttpServerHandler.HttpRequestWrapper.parsePath(rawPath.toString());
+      }
+      return result;
+    }
+
+    @Override public String url() {
+      CharSequence scheme = headers.scheme(), authority = headers.authority();
+      CharSequence rawPath = headers.path();
+      if (scheme == null || authority == null || rawPath == null) return null;
+      return new StringBuilder(scheme.length() + 3 + authority.length() + rawPath.length())
+        .append(scheme).append("://").append(authority).append(rawPath).toString();
+    }
+
+    /** HTTP/2 header names are lowercase, but propagation formats may use mixed case. */
+    @Override public String header(String name) {
+      CharSequence result = headers.get(name);
+      if (result == null && hasUpperCase(name)) result = headers.get(name.toLowerCase(Locale.ROOT));
+      return result != null ? result.toString() : null;
+    }
+  }
+
+  static final class Http2ResponseWrapper extends HttpServerResponse {
+    final HttpServerRequest request;
+    final Http2StreamFrame frame;
+    @Nullable final Throwable error;
+
+    Http2ResponseWrapper(HttpServerRequest request, Http2StreamFrame frame,
+      @Nullable Throwable error) {
+      this.request = request;
+      this.frame = frame;
+      this.error = error;
+    }
+
+    @Override public Http2StreamFrame unwrap() {
+      return frame;
+    }
+
+    @Override public HttpServerRequest request() {
+      return request;
+    }
+
+    @Override public Throwable error() {
+      return error;
+    }
+
+    /** Returns zero when the stream was reset before response headers were written. */
+    @Override public int statusCode() {
+      if (!(frame instanceof Http2HeadersFrame)) return 0;
+      return parseStatusCode(((Http2HeadersFrame) frame).headers().status());
+    }
+  }
+
+  /** Parses the ":status" pseudo-header, returning zero if absent or invalid. */
+  static int parseStatusCode(@Nullable CharSequence status) {
+    if (status == null || status.length() != 3) return 0;
+    int result = 0;
+    for (int i = 0; i < 3; i++) {
+      char c = status.charAt(i);
+      if (c < '0' || c > '9') return 0;
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  static boolean hasUpperCase(String name) {
+    for (int i = 0, length = name.length(); i < length; i++) {
+      char c = name.charAt(i);
+      if (c >= 'A' && c <= 'Z') return true;
+    }
+    return false;
+  }
+}
@@ -13,17 +13,16 @@
  */
 package brave.netty.http;
 
-import brave.Span;
 import brave.Tracing;
-import brave.http.HttpServerRequest;
 import brave.http.HttpTracing;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.util.AttributeKey;
 
 public final class NettyHttpTracing {
-  static final AttributeKey<HttpServerRequest> REQUEST_ATTRIBUTE =
-    AttributeKey.valueOf(HttpServerRequest.class.getName());
-  static final AttributeKey<Span> SPAN_ATTRIBUTE = AttributeKey.valueOf(Span.class.getName());
+  static final AttributeKey<PendingRequests> SERVER_REQUESTS =
+    AttributeKey.valueOf(PendingRequests.class.getName() + ".server");
+  static final AttributeKey<PendingRequests> CLIENT_REQUESTS =
+    AttributeKey.valueOf(PendingRequests.class.getName() + ".client");
 
   public static NettyHttpTracing create(Tracing tracing) {
     return new NettyHttpTracing(HttpTracing.create(tracing));
@@ -33,16 +32,45 @@ public final class NettyHttpTracing {
     return new NettyHttpTracing(httpTracing);
   }
 
-  final ChannelDuplexHandler serverHandler;
+  final ChannelDuplexHandler serverHandler, clientHandler;
 
   NettyHttpTracing(HttpTracing httpTracing) { // intentionally hidden constructor
     serverHandler = new TracingHttpServerHandler(httpTracing);
+    clientHandler = new TracingHttpClientHandler(httpTracing);
   }
 
   /**
    * Returns a duplex handler that traces {@link io.netty.handler.codec.http.HttpRequest} messages.
+   *
+   * <p>Pipelined HTTP/1.1 requests are matched to responses in order. HTTP/2 is supported when
+   * either {@code Http2MultiplexHandler} converts streams to child channels of HTTP messages, or
+   * this is placed after {@code Http2FrameCodec}, in which case headers frames are traced by
+   * stream ID. Messages converted by {@code InboundHttp2ToHttpAdapter} are matched by their
+   * "x-http2-stream-id" header.
    */
   public ChannelDuplexHandler serverHandler() {
     return serverHandler;
   }
+
+  /**
+   * Returns a duplex handler that traces {@link io.netty.handler.codec.http.HttpRequest} messages
+   * written by a client, finishing each span when its response is read. Place this after {@code
+   * HttpClientCodec}.
+   *
+   * <p>Spans are tracked on the channel, so many requests can be in flight on one event loop.
+   * Pipelined requests are matched to responses in order. Spans of requests which are pending when
+   * the channel closes are finished with an error.
+   *
+   * <p>The parent of each client span is the {@linkplain brave.propagation.CurrentTraceContext
+   * current span} when the request is written. Writes from outside the event loop are performed
+   * later on it, so wrap them to carry the caller's context:
+   * <pre>{@code
+   * channel.eventLoop().execute(currentTraceContext.wrap(() -> channel.writeAndFlush(request)));
+   * }</pre>
+   *
+   * @since 5.14
+   */
+  public ChannelDuplexHandler clientHandler() {
+    return clientHandler;
+  }
 }
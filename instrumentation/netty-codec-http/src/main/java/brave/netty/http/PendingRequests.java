@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Span;
+import brave.http.HttpRequest;
+import brave.internal.Nullable;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.IntObjectHashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requests on a channel which are waiting for their response.
+ *
+ * <p>Responses to pipelined HTTP/1.1 requests are written in request order, so these are queued.
+ * HTTP/2 streams complete in any order, so these are keyed by stream ID. This is only accessed on
+ * the channel's event loop, so isn't synchronized.
+ */
+final class PendingRequests {
+  /** Used for requests which complete in order, as opposed to by HTTP/2 stream ID. */
+  static final int NO_STREAM_ID = -1;
+
+  static final class Entry {
+    final HttpRequest request; // HttpServerRequest or HttpClientRequest, depending on the handler
+    final Span span;
+
+    Entry(HttpRequest request, Span span) {
+      this.request = request;
+      this.span = span;
+    }
+  }
+
+  static PendingRequests get(Channel channel, AttributeKey<PendingRequests> key) {
+    Attribute<PendingRequests> attribute = channel.attr(key);
+    PendingRequests result = attribute.get();
+    if (result == null) attribute.set(result = new PendingRequests());
+    return result;
+  }
+
+  final ArrayDeque<Entry> pipelined = new ArrayDeque<>();
+  IntObjectHashMap<Entry> streams; // lazy, as most connections are HTTP/1.1
+
+  void add(int streamId, Entry entry) {
+    if (streamId == NO_STREAM_ID) {
+      pipelined.add(entry);
+      return;
+    }
+    if (streams == null) streams = new IntObjectHashMap<>();
+    streams.put(streamId, entry);
+  }
+
+  /** Returns the oldest request when there's no stream ID, or the request on the stream. */
+  @Nullable Entry remove(int streamId) {
+    if (streamId == NO_STREAM_ID) return pipelined.poll();
+    return streams != null ? streams.remove(streamId) : null;
+  }
+
+  /**
+   * Removes a request which failed before its response, returning false if it was already
+   * removed.
+   */
+  boolean remove(int streamId, Entry entry) {
+    if (streamId == NO_STREAM_ID) {
+      return pipelined.removeLastOccurrence(entry); // usually the last
+    } else if (streams != null && streams.get(streamId) == entry) {
+      streams.remove(streamId);
+      return true;
+    }
+    return false;
+  }
+
+  /** Removes all requests, oldest pipelined first, such as when the channel is closed. */
+  List<Entry> removeAll() {
+    int size = pipelined.size() + (streams != null ? streams.size() : 0);
+    List<Entry> result = new ArrayList<>(size);
+    result.addAll(pipelined);
+    pipelined.clear();
+    if (streams != null) {
+      result.addAll(streams.values());
+      streams.clear();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Span;
+import brave.http.HttpClientHandler;
+import brave.http.HttpClientRequest;
+import brave.http.HttpClientResponse;
+import brave.http.HttpTracing;
+import brave.internal.Nullable;
+import brave.internal.Platform;
+import brave.netty.http.PendingRequests.Entry;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.ssl.SslHandler;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+
+import static brave.netty.http.NettyHttpTracing.CLIENT_REQUESTS;
+import static brave.netty.http.PendingRequests.NO_STREAM_ID;
+import static brave.netty.http.TracingHttpServerHandler.isInterim;
+import static brave.netty.http.TracingHttpServerHandler.remoteAddress;
+
+/**
+ * Unlike the server handler, this doesn't place spans in scope, as there's no user code between
+ * writing the request and reading the response. This means the only thread-local access is to
+ * read the parent when the request is written.
+ *
+ * <p>State is kept on the channel, so one instance can be shared by a pool of connections.
+ */
+@Sharable final class TracingHttpClientHandler extends ChannelDuplexHandler {
+  final HttpClientHandler<HttpClientRequest, HttpClientResponse> handler;
+
+  TracingHttpClientHandler(HttpTracing httpTracing) {
+    handler = HttpClientHandler.create(httpTracing);
+  }
+
+  @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
+    if (!(msg instanceof HttpRequest)) {
+      ctx.write(msg, prm);
+      return;
+    }
+
+    String scheme = ctx.pipeline().get(SslHandler.class) != null ? "https" : "http";
+    HttpRequestWrapper request = new HttpRequestWrapper((HttpRequest) msg, scheme);
+    Span span = handler.handleSend(request); // injects headers before they are encoded
+    if (!span.isNoop()) {
+      InetSocketAddress remoteAddress = remoteAddress(ctx);
+      if (remoteAddress != null && remoteAddress.getAddress() != null) {
+        span.remoteIpAndPort(
+          Platform.get().getHostString(remoteAddress), remoteAddress.getPort());
+      }
+    }
+
+    Entry entry = new Entry(request, span);
+    PendingRequests pendingRequests = PendingRequests.get(ctx.channel(), CLIENT_REQUESTS);
+    pendingRequests.add(NO_STREAM_ID, entry);
+
+    // A failed write won't get a response, so it must not stay ahead of others in the queue.
+    ChannelPromise promise = prm.unvoid();
+    promise.addListener(new WriteListener(pendingRequests, entry));
+
+    Throwable error = null;
+    try {
+      ctx.write(msg, promise);
+    } catch (Throwable e) {
+      error = e;
+      throw e;
+    } finally {
+      if (error != null) finishWithError(pendingRequests, entry, error);
+    }
+  }
+
+  void finishWithError(PendingRequests pendingRequests, Entry entry, Throwable error) {
+    if (!pendingRequests.remove(NO_STREAM_ID, entry)) return; // already finished
+    HttpRequestWrapper request = (HttpRequestWrapper) entry.request;
+    handler.handleReceive(new HttpResponseWrapper(request, null, error), entry.span);
+  }
+
+  /** Listeners run on the event loop, so this doesn't race with reading the response. */
+  final class WriteListener implements ChannelFutureListener {
+    final PendingRequests pendingRequests;
+    final Entry entry;
+
+    WriteListener(PendingRequests pendingRequests, Entry entry) {
+      this.pendingRequests = pendingRequests;
+      this.entry = entry;
+    }
+
+    @Override public void operationComplete(ChannelFuture future) {
+      // cause is a CancellationException when the write was cancelled
+      if (!future.isSuccess()) finishWithError(pendingRequests, entry, future.cause());
+    }
+  }
+
+  @Override public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    if (!(msg instanceof HttpResponse) || isInterim(((HttpResponse) msg).status())) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+
+    PendingRequests pendingRequests = ctx.channel().attr(CLIENT_REQUESTS).get();
+    Entry entry = pendingRequests != null ? pendingRequests.remove(NO_STREAM_ID) : null;
+    if (entry != null) {
+      HttpRequestWrapper request = (HttpRequestWrapper) entry.request;
+      handler.handleReceive(new HttpResponseWrapper(request, (HttpResponse) msg, null), entry.span);
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  /** Finishes spans of requests which will never receive a response. */
+  @Override public void channelInactive(ChannelHandlerContext ctx) {
+    PendingRequests pendingRequests = ctx.channel().attr(CLIENT_REQUESTS).get();
+    if (pendingRequests != null) {
+      Entry entry;
+      ClosedChannelException error = null;
+      while ((entry = pendingRequests.remove(NO_STREAM_ID)) != null) {
+        if (error == null) error = new ClosedChannelException();
+        HttpRequestWrapper request = (HttpRequestWrapper) entry.request;
+        handler.handleReceive(new HttpResponseWrapper(request, null, error), entry.span);
+      }
+    }
+    ctx.fireChannelInactive();
+  }
+
+  static final class HttpRequestWrapper extends HttpClientRequest {
+    final HttpRequest request;
+    final String scheme; // used when the request URI isn't absolute
+
+    HttpRequestWrapper(HttpRequest request, String scheme) {
+      this.request = request;
+      this.scheme = scheme;
+    }
+
+    @Override public HttpRequest unwrap() {
+      return request;
+    }
+
+    @Override public String method() {
+      return request.method().name();
+    }
+
+    @Override public String path() {
+      return TracingHttpServerHandler.HttpRequestWrapper.parsePath(request.uri());
+    }
+
+    @Override public String url() {
+      return TracingHttpServerHandler.url(scheme, request);
+    }
+
+    @Override public String header(String name) {
+      return request.headers().get(name);
+    }
+
+    @Override public void header(String name, String value) {
+      request.headers().set(name, value);
+    }
+  }
+
+  static final class HttpResponseWrapper extends HttpClientResponse {
+    final HttpRequestWrapper request;
+    @Nullable final HttpResponse response;
+    @Nullable final Throwable error;
+
+    HttpResponseWrapper(HttpRequestWrapper request, @Nullable HttpResponse response,
+      @Nullable Throwable error) {
+      this.request = request;
+      this.response = response;
+      this.error = error;
+    }
+
+    @Override public Object unwrap() {
+      return response;
+    }
+
+    @Override public HttpRequestWrapper request() {
+      return request;
+    }
+
+    @Override public Throwable error() {
+      return error;
+    }
+
+    @Override public int statusCode() {
+      if (response == null) return 0;
+      HttpResponseStatus status = response.status();
+      return status != null ? status.code() : 0;
+    }
+  }
+}
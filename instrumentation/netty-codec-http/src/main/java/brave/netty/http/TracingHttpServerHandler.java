@@ -20,6 +20,7 @@ import brave.http.HttpServerResponse;
 import brave.http.HttpTracing;
 import brave.internal.Nullable;
 import brave.internal.Platform;
+import brave.netty.http.PendingRequests.Entry;
 import brave.propagation.CurrentTraceContext;
 import brave.propagation.CurrentTraceContext.Scope;
 import io.netty.channel.ChannelDuplexHandler;
@@ -28,11 +29,20 @@ import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.util.Attribute;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.util.CharsetUtil;
 import java.net.InetSocketAddress;
-import java.net.URI;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.List;
+
+import static brave.netty.http.NettyHttpTracing.SERVER_REQUESTS;
+import static brave.netty.http.PendingRequests.NO_STREAM_ID;
 
 final class TracingHttpServerHandler extends ChannelDuplexHandler {
+  /** Added by {@code InboundHttp2ToHttpAdapter} to requests, and expected on their responses. */
+  static final String STREAM_ID = "x-http2-stream-id";
+
   final CurrentTraceContext currentTraceContext;
   final HttpServerHandler<HttpServerRequest, HttpServerResponse> handler;
 
@@ -42,17 +52,32 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
   }
 
   @Override public void channelRead(ChannelHandlerContext ctx, Object msg) {
-    if (!(msg instanceof HttpRequest)) {
+    HttpServerRequest request;
+    int streamId;
+    if (msg instanceof HttpRequest) {
+      HttpRequest httpRequest = (HttpRequest) msg;
+      request = new HttpRequestWrapper(httpRequest, remoteAddress(ctx));
+      streamId = httpRequest.headers().getInt(STREAM_ID, NO_STREAM_ID);
+    } else if (Http2Frames.PRESENT
+      && (request = Http2Frames.request(msg, remoteAddress(ctx))) != null) {
+      streamId = Http2Frames.streamId(msg);
+    } else {
+      if (Http2Frames.PRESENT && Http2Frames.isReset(msg)) { // the client cancelled the stream
+        Entry entry = PendingRequests.get(ctx.channel(), SERVER_REQUESTS)
+          .remove(Http2Frames.streamId(msg));
+        if (entry != null) {
+          handler.handleSend(
+            Http2Frames.response((HttpServerRequest) entry.request, msg, null), entry.span);
+        }
+      }
       ctx.fireChannelRead(msg); // superclass does not throw
       return;
     }
 
-    HttpRequestWrapper request =
-      new HttpRequestWrapper((HttpRequest) msg, (InetSocketAddress) ctx.channel().remoteAddress());
-
-    ctx.channel().attr(NettyHttpTracing.REQUEST_ATTRIBUTE).set(request);
     Span span = handler.handleReceive(request);
-    ctx.channel().attr(NettyHttpTracing.SPAN_ATTRIBUTE).set(span);
+    Entry entry = new Entry(request, span);
+    PendingRequests pendingRequests = PendingRequests.get(ctx.channel(), SERVER_REQUESTS);
+    pendingRequests.add(streamId, entry);
     Scope scope = currentTraceContext.newScope(span.context());
 
     // Place the span in scope so that downstream code can read trace IDs
@@ -63,23 +88,38 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
       error = e;
       throw e;
     } finally {
-      if (error != null) span.error(error).finish();
+      if (error != null) {
+        pendingRequests.remove(streamId, entry);
+        span.error(error).finish();
+      }
       scope.close();
     }
   }
 
   @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
-    Attribute<Span> spanAttr = ctx.channel().attr(NettyHttpTracing.SPAN_ATTRIBUTE);
-    Span span = spanAttr.get();
-    spanAttr.compareAndSet(span, null);
-    if (span == null || !(msg instanceof HttpResponse)) {
+    int streamId;
+    if (msg instanceof HttpResponse) {
+      HttpResponse response = (HttpResponse) msg;
+      if (isInterim(response.status())) {
+        ctx.write(msg, prm);
+        return;
+      }
+      streamId = response.headers().getInt(STREAM_ID, NO_STREAM_ID);
+    } else if (Http2Frames.PRESENT && Http2Frames.endsStream(msg)) {
+      streamId = Http2Frames.streamId(msg);
+    } else {
       ctx.write(msg, prm);
       return;
     }
 
-    HttpResponse response = (HttpResponse) msg;
+    PendingRequests pendingRequests = ctx.channel().attr(SERVER_REQUESTS).get();
+    Entry entry = pendingRequests != null ? pendingRequests.remove(streamId) : null;
+    if (entry == null) {
+      ctx.write(msg, prm);
+      return;
+    }
 
-    Scope scope = currentTraceContext.maybeScope(span.context());
+    Scope scope = currentTraceContext.maybeScope(entry.span.context());
     Throwable error = null;
     try {
       ctx.write(msg, prm);
@@ -87,15 +127,66 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
       error = t;
       throw t;
     } finally {
-      HttpServerRequest request = ctx.channel().attr(NettyHttpTracing.REQUEST_ATTRIBUTE).get();
-      handler.handleSend(new HttpResponseWrapper(request, response, error), span);
+      HttpServerRequest request = (HttpServerRequest) entry.request;
+      HttpServerResponse response = msg instanceof HttpResponse
+        ? new HttpResponseWrapper(request, (HttpResponse) msg, error)
+        : Http2Frames.response(request, msg, error);
+      handler.handleSend(response, entry.span);
       scope.close();
     }
   }
 
+  /**
+   * Finishes spans of requests which will never be responded to. This includes HTTP/2 streams
+   * still open, and requests whose responses couldn't be matched, such as those missing the
+   * {@link #STREAM_ID} header.
+   */
+  @Override public void channelInactive(ChannelHandlerContext ctx) {
+    PendingRequests pendingRequests = ctx.channel().attr(SERVER_REQUESTS).get();
+    if (pendingRequests != null) {
+      List<Entry> entries = pendingRequests.removeAll();
+      ClosedChannelException error = entries.isEmpty() ? null : new ClosedChannelException();
+      for (int i = 0, length = entries.size(); i < length; i++) {
+        Entry entry = entries.get(i);
+        HttpServerRequest request = (HttpServerRequest) entry.request;
+        handler.handleSend(new HttpResponseWrapper(request, null, error), entry.span);
+      }
+    }
+    ctx.fireChannelInactive();
+  }
+
+  /** Returns null on non-IP channels, such as {@code LocalChannel}. */
+  @Nullable static InetSocketAddress remoteAddress(ChannelHandlerContext ctx) {
+    SocketAddress remoteAddress = ctx.channel().remoteAddress();
+    return remoteAddress instanceof InetSocketAddress ? (InetSocketAddress) remoteAddress : null;
+  }
+
+  /**
+   * Returns the request URI when in absolute-form, or a URL built from the scheme, "Host" header
+   * and origin-form URI. Returns null when there is no "Host" header to build with.
+   */
+  @Nullable static String url(String scheme, HttpRequest request) {
+    String uri = request.uri();
+    if (!uri.startsWith("/") && uri.indexOf("://") != -1) return uri; // absolute-form
+    String host = request.headers().get("Host");
+    if (host == null) return null;
+    return new StringBuilder(scheme.length() + 3 + host.length() + uri.length())
+      .append(scheme).append("://").append(host).append(uri).toString();
+  }
+
+  /**
+   * 1xx responses precede the final response, except "101 Switching Protocols", which ends the
+   * HTTP/1.1 exchange.
+   */
+  static boolean isInterim(HttpResponseStatus status) {
+    return status != null && status.codeClass() == HttpStatusClass.INFORMATIONAL
+      && status.code() != HttpResponseStatus.SWITCHING_PROTOCOLS.code();
+  }
+
   static final class HttpRequestWrapper extends HttpServerRequest {
     final HttpRequest request;
     @Nullable final InetSocketAddress remoteAddress;
+    String path; // cached as it is read for both the span name and the "http.path" tag
 
     HttpRequestWrapper(HttpRequest request, InetSocketAddress remoteAddress) {
       this.request = request;
@@ -120,29 +211,94 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
     }
 
     @Override public String path() {
-      return URI.create(request.uri()).getPath(); // TODO benchmark
+      String result = path;
+      if (result == null) result = path = parsePath(request.uri());
+      return result;
     }
 
     @Override public String url() {
-      String host = header("Host");
-      if (host == null) return null;
       // TODO: we don't know if this is really http or https!
-      return "http://" + host + request.uri();
+      return TracingHttpServerHandler.url("http", request);
     }
 
     @Override public String header(String name) {
       return request.headers().get(name);
     }
+
+    /**
+     * Returns the decoded path of the request URI, like {@link java.net.URI#getPath()}, without
+     * allocating a {@link java.net.URI}. The common case of a path with no query or escapes is
+     * returned as-is.
+     */
+    static String parsePath(String uri) {
+      int length = uri.length(), begin = 0;
+      if (length > 0 && uri.charAt(0) != '/') { // possibly absolute-form: skip the authority
+        int scheme = uri.indexOf("://");
+        if (scheme != -1) {
+          begin = length;
+          for (int i = scheme + 3; i < length; i++) {
+            char c = uri.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+              begin = i;
+              break;
+            }
+          }
+        }
+      }
+
+      int end = length;
+      boolean escaped = false;
+      for (int i = begin; i < length; i++) {
+        char c = uri.charAt(i);
+        if (c == '?' || c == '#') {
+          end = i;
+          break;
+        }
+        if (c == '%') escaped = true;
+      }
+
+      String path = begin == 0 && end == length ? uri : uri.substring(begin, end);
+      return escaped ? decodePath(path) : path;
+    }
+
+    /** Returns the input when escapes are malformed, as opposed to raising an exception. */
+    static String decodePath(String path) {
+      int length = path.length();
+      StringBuilder result = new StringBuilder(length);
+      byte[] bytes = null;
+      for (int i = 0; i < length; ) {
+        char c = path.charAt(i);
+        if (c != '%') {
+          result.append(c);
+          i++;
+          continue;
+        }
+
+        // Decode consecutive escapes together, as a character can be multiple UTF-8 bytes.
+        if (bytes == null) bytes = new byte[(length - i) / 3];
+        int count = 0;
+        while (i + 2 < length && path.charAt(i) == '%') {
+          int hi = Character.digit(path.charAt(i + 1), 16);
+          int lo = Character.digit(path.charAt(i + 2), 16);
+          if (hi == -1 || lo == -1) return path;
+          bytes[count++] = (byte) (hi << 4 | lo);
+          i += 3;
+        }
+        if (count == 0) return path; // truncated escape
+        result.append(new String(bytes, 0, count, CharsetUtil.UTF_8));
+      }
+      return result.toString();
+    }
   }
 
   static final class HttpResponseWrapper extends HttpServerResponse {
     @Nullable final HttpServerRequest request;
-    final HttpResponse delegate;
+    @Nullable final HttpResponse delegate;
     @Nullable final Throwable error;
 
     HttpResponseWrapper(
       @Nullable HttpServerRequest request,
-      HttpResponse response,
+      @Nullable HttpResponse response,
       @Nullable Throwable error
     ) {
       this.request = request;
@@ -150,7 +306,7 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
       this.error = error;
     }
 
-    @Override public HttpResponse unwrap() {
+    @Override @Nullable public HttpResponse unwrap() {
       return delegate;
     }
 
@@ -162,7 +318,9 @@ final class TracingHttpServerHandler extends ChannelDuplexHandler {
       return error;
     }
 
+    /** Returns zero when the channel closed before a response was written. */
     @Override public int statusCode() {
+      if (delegate == null) return 0;
       HttpResponseStatus status = delegate.status();
       return status != null ? status.code() : 0;
     }
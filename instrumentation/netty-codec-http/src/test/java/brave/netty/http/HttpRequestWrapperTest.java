@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.netty.http.TracingHttpServerHandler.HttpRequestWrapper;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import java.net.URI;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HttpRequestWrapperTest {
+  static HttpRequestWrapper wrapper(String uri) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    request.headers().set("Host", "localhost:8080");
+    return new HttpRequestWrapper(request, null);
+  }
+
+  @Test public void path_sameAsUri() {
+    for (String uri : new String[] {
+      "/", "/foo", "/foo?bar=baz", "/foo?", "/foo#frag", "/foo?bar#frag", "/foo/%20bar",
+      "/caf%C3%A9?q=%20", "/%E2%82%AC%2F/x", "/a%2", "*", "", "?q", "http://host",
+      "http://host/", "http://host:8080/foo?bar", "http://host?bar", "https://user@host/%41"
+    }) {
+      String expected;
+      try {
+        expected = URI.create(uri).getPath();
+      } catch (IllegalArgumentException e) {
+        continue; // not a valid URI, tested separately
+      }
+      assertThat(wrapper(uri).path()).as(uri).isEqualTo(expected);
+    }
+  }
+
+  @Test public void path_returnsUriWhenPathOnly() {
+    String uri = "/foo/bar";
+
+    assertThat(wrapper(uri).path()).isSameAs(uri);
+  }
+
+  @Test public void path_cached() {
+    HttpRequestWrapper wrapper = wrapper("/foo?bar");
+
+    assertThat(wrapper.path()).isSameAs(wrapper.path());
+  }
+
+  @Test public void path_malformedEscapesReturnedAsIs() {
+    assertThat(wrapper("/a%zzb").path()).isEqualTo("/a%zzb");
+    assertThat(wrapper("/a%4").path()).isEqualTo("/a%4");
+    assertThat(wrapper("/a%41%4?q").path()).isEqualTo("/a%41%4");
+  }
+
+  @Test public void url() {
+    assertThat(wrapper("/foo?bar").url()).isEqualTo("http://localhost:8080/foo?bar");
+  }
+
+  @Test public void url_absoluteForm() {
+    assertThat(wrapper("https://host/foo?bar").url()).isEqualTo("https://host/foo?bar");
+  }
+
+  @Test public void url_nullWithoutHost() {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/foo");
+
+    assertThat(new HttpRequestWrapper(request, null).url()).isNull();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.propagation.CurrentTraceContext.Scope;
+import brave.propagation.TraceContext;
+import brave.test.http.ITHttpAsyncClient;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import org.junit.Ignore;
+
+import static io.netty.util.CharsetUtil.UTF_8;
+
+public class ITNettyHttpClientTracing extends ITHttpAsyncClient<ITNettyHttpClientTracing.Client> {
+  /** Connects per request, writing on the event loop in the context of the caller. */
+  final class Client {
+    final EventLoopGroup group = new NioEventLoopGroup(1);
+    final Bootstrap bootstrap;
+    final int port;
+
+    Client(int port) {
+      this.port = port;
+      bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+        .handler(new ChannelInitializer<Channel>() {
+          @Override protected void initChannel(Channel ch) {
+            ch.pipeline().addLast(new HttpClientCodec());
+            ch.pipeline().addLast(NettyHttpTracing.create(httpTracing).clientHandler());
+            ch.pipeline().addLast(new HttpObjectAggregator(1024 * 1024));
+          }
+        });
+    }
+
+    void execute(FullHttpRequest request, BiConsumer<Integer, Throwable> callback) {
+      if (request.uri().isEmpty()) request.setUri("/"); // RFC 7230 Section 2.7.3
+      TraceContext invocationContext = currentTraceContext.get();
+      AtomicBoolean completed = new AtomicBoolean();
+      BiConsumer<Integer, Throwable> callbackInContext = (status, error) -> {
+        if (!completed.compareAndSet(false, true)) return;
+        try (Scope scope = currentTraceContext.maybeScope(invocationContext)) {
+          callback.accept(status, error);
+        }
+      };
+      request.headers().set(HttpHeaderNames.HOST, "127.0.0.1:" + port);
+      bootstrap.connect("127.0.0.1", port).addListener((ChannelFuture connect) -> {
+        if (!connect.isSuccess()) {
+          callbackInContext.accept(null, connect.cause());
+          return;
+        }
+        Channel channel = connect.channel();
+        channel.pipeline().addLast(new SimpleChannelInboundHandler<FullHttpResponse>() {
+          @Override
+          protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+            callbackInContext.accept(response.status().code(), null);
+            ctx.close();
+          }
+
+          @Override public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            callbackInContext.accept(null, cause);
+            ctx.close();
+          }
+
+          @Override public void channelInactive(ChannelHandlerContext ctx) {
+            callbackInContext.accept(null, new ClosedChannelException());
+          }
+        });
+        // This listener runs on the event loop, so restore the caller's context for the write.
+        try (Scope scope = currentTraceContext.maybeScope(invocationContext)) {
+          channel.writeAndFlush(request)
+            .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        }
+      });
+    }
+
+    void close() {
+      group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+  }
+
+  @Override protected Client newClient(int port) {
+    return new Client(port);
+  }
+
+  @Override protected void closeClient(Client client) {
+    client.close();
+  }
+
+  @Override protected void options(Client client, String path) throws IOException {
+    invoke(client, new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.OPTIONS, path));
+  }
+
+  @Override protected void get(Client client, String pathIncludingQuery) throws IOException {
+    invoke(client,
+      new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, pathIncludingQuery));
+  }
+
+  @Override protected void post(Client client, String pathIncludingQuery, String body)
+    throws IOException {
+    FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST,
+      pathIncludingQuery, Unpooled.copiedBuffer(body, UTF_8));
+    request.headers().set(HttpHeaderNames.CONTENT_LENGTH, request.content().readableBytes());
+    invoke(client, request);
+  }
+
+  @Override
+  protected void get(Client client, String path, BiConsumer<Integer, Throwable> callback) {
+    client.execute(
+      new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, path), callback);
+  }
+
+  static void invoke(Client client, FullHttpRequest request) throws IOException {
+    CompletableFuture<Integer> future = new CompletableFuture<>();
+    client.execute(request, (status, error) -> {
+      if (error != null) {
+        future.completeExceptionally(error);
+      } else {
+        future.complete(status);
+      }
+    });
+    try {
+      future.get(3, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError(e);
+    } catch (ExecutionException e) {
+      Throwable er = e.getCause();
+      if (er instanceof RuntimeException) throw (RuntimeException) er;
+      if (er instanceof IOException) throw (IOException) er;
+      throw new AssertionError(e);
+    } catch (TimeoutException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override @Ignore("Netty's codec doesn't follow redirects")
+  public void redirect() {
+  }
+}
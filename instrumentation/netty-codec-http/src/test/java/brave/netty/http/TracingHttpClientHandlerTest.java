@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.http.HttpTracing;
+import brave.test.TestSpanHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TracingHttpClientHandlerTest {
+  TestSpanHandler spans = new TestSpanHandler();
+  Tracing tracing = Tracing.newBuilder().addSpanHandler(spans).build();
+  EmbeddedChannel channel =
+    new EmbeddedChannel(NettyHttpTracing.create(HttpTracing.create(tracing)).clientHandler());
+
+  @After public void close() {
+    channel.finishAndReleaseAll();
+    tracing.close();
+  }
+
+  @Test public void injectsHeaders() {
+    HttpRequest request = request("/a");
+    channel.writeOutbound(request);
+    channel.writeInbound(response(HttpResponseStatus.OK));
+
+    assertThat(request.headers().get("X-B3-SpanId")).isEqualTo(spans.get(0).id());
+  }
+
+  @Test public void pipelinedRequestsMatchResponsesInOrder() {
+    channel.writeOutbound(request("/a"), request("/b"));
+    assertThat(spans).isEmpty();
+
+    channel.writeInbound(response(HttpResponseStatus.OK), response(HttpResponseStatus.NOT_FOUND));
+
+    assertThat(paths()).containsExactly("/a", "/b");
+    assertThat(spans.get(0).tag("http.status_code")).isNull();
+    assertThat(spans.get(1).tag("http.status_code")).isEqualTo("404");
+  }
+
+  @Test public void interimResponseDoesntFinish() {
+    channel.writeOutbound(request("/a"));
+
+    channel.writeInbound(response(HttpResponseStatus.CONTINUE));
+    assertThat(spans).isEmpty();
+
+    channel.writeInbound(response(HttpResponseStatus.OK));
+    assertThat(paths()).containsExactly("/a");
+  }
+
+  @Test public void closeFinishesPendingWithError() {
+    channel.writeOutbound(request("/a"), request("/b"));
+
+    channel.close();
+
+    assertThat(paths()).containsExactly("/a", "/b");
+    for (MutableSpan span : spans) {
+      assertThat(span.error()).isInstanceOf(ClosedChannelException.class);
+    }
+  }
+
+  @Test public void writeFailureFinishesWithError() {
+    IOException error = new IOException("write failed");
+    EmbeddedChannel failing = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+      @Override public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
+        if (((HttpRequest) msg).uri().equals("/a")) {
+          prm.setFailure(error);
+        } else {
+          ctx.write(msg, prm);
+        }
+      }
+    }, channel.pipeline().first());
+
+    failing.writeAndFlush(request("/a"));
+    assertThat(failing.isOpen()).isTrue();
+    assertThat(paths()).containsExactly("/a");
+    assertThat(spans.get(0).error()).isSameAs(error);
+
+    // The failed request doesn't consume the response of the next.
+    failing.writeOutbound(request("/b"));
+    failing.writeInbound(response(HttpResponseStatus.NOT_FOUND));
+    assertThat(paths()).containsExactly("/a", "/b");
+    assertThat(spans.get(1).tag("http.status_code")).isEqualTo("404");
+    failing.finishAndReleaseAll();
+  }
+
+  @Test public void url_usesScheme() {
+    HttpRequest request = request("/a?b");
+    request.headers().set("Host", "localhost:8443");
+
+    assertThat(new TracingHttpClientHandler.HttpRequestWrapper(request, "https").url())
+      .isEqualTo("https://localhost:8443/a?b");
+  }
+
+  @Test public void url_absoluteForm() {
+    HttpRequest request = request("http://localhost:8080/a?b");
+
+    assertThat(new TracingHttpClientHandler.HttpRequestWrapper(request, "https").url())
+      .isEqualTo("http://localhost:8080/a?b");
+  }
+
+  @Test public void sharable() {
+    EmbeddedChannel other = new EmbeddedChannel(channel.pipeline().first());
+    other.writeOutbound(request("/a"));
+    channel.writeOutbound(request("/b"));
+
+    other.writeInbound(response(HttpResponseStatus.OK));
+    assertThat(paths()).containsExactly("/a");
+    other.finishAndReleaseAll();
+  }
+
+  List<String> paths() {
+    List<String> result = new ArrayList<>();
+    for (MutableSpan span : spans) result.add(span.tag("http.path"));
+    return result;
+  }
+
+  static HttpRequest request(String uri) {
+    return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+  }
+
+  static HttpResponse response(HttpResponseStatus status) {
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.netty.http;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.http.HttpTracing;
+import brave.test.TestSpanHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameStream;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Stream;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+import static brave.netty.http.TracingHttpServerHandler.STREAM_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TracingHttpServerHandlerTest {
+  TestSpanHandler spans = new TestSpanHandler();
+  Tracing tracing = Tracing.newBuilder().addSpanHandler(spans).build();
+  EmbeddedChannel channel =
+    new EmbeddedChannel(NettyHttpTracing.create(HttpTracing.create(tracing)).serverHandler());
+
+  @After public void close() {
+    channel.finishAndReleaseAll();
+    tracing.close();
+  }
+
+  @Test public void http1_pipelinedRequestsMatchResponsesInOrder() {
+    channel.writeInbound(request("/a"), request("/b"));
+    assertThat(spans).isEmpty();
+
+    channel.writeOutbound(response(HttpResponseStatus.OK), response(HttpResponseStatus.NOT_FOUND));
+
+    assertThat(paths()).containsExactly("/a", "/b");
+    assertThat(spans.get(0).tag("http.status_code")).isNull();
+    assertThat(spans.get(1).tag("http.status_code")).isEqualTo("404");
+  }
+
+  @Test public void http1_interimResponseDoesntFinish() {
+    channel.writeInbound(request("/a"));
+
+    channel.writeOutbound(response(HttpResponseStatus.CONTINUE));
+    assertThat(spans).isEmpty();
+
+    channel.writeOutbound(response(HttpResponseStatus.OK));
+    assertThat(paths()).containsExactly("/a");
+  }
+
+  @Test public void http1_streamIdHeader_matchesOutOfOrder() {
+    HttpRequest a = request("/a"), b = request("/b");
+    a.headers().set(STREAM_ID, 3);
+    b.headers().set(STREAM_ID, 5);
+    channel.writeInbound(a, b);
+
+    HttpResponse responseB = response(HttpResponseStatus.OK);
+    responseB.headers().set(STREAM_ID, 5);
+    HttpResponse responseA = response(HttpResponseStatus.BAD_REQUEST);
+    responseA.headers().set(STREAM_ID, 3);
+    channel.writeOutbound(responseB, responseA);
+
+    assertThat(paths()).containsExactly("/b", "/a");
+    assertThat(spans.get(1).tag("http.status_code")).isEqualTo("400");
+  }
+
+  @Test public void http2_streamsMatchOutOfOrder() {
+    channel.writeInbound(requestFrame(3, "/a"), requestFrame(5, "/b"));
+    assertThat(spans).isEmpty();
+
+    channel.writeOutbound(responseFrame(5, "200"), responseFrame(3, "503"));
+
+    assertThat(paths()).containsExactly("/b", "/a");
+    assertThat(spans.get(1).tag("http.status_code")).isEqualTo("503");
+  }
+
+  @Test public void http2_interimAndTrailersIgnored() {
+    channel.writeInbound(requestFrame(3, "/a"));
+    channel.writeInbound(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers(), true)
+      .stream(stream(3))); // request trailers
+
+    channel.writeOutbound(responseFrame(3, "100"));
+    assertThat(spans).isEmpty();
+
+    channel.writeOutbound(responseFrame(3, "200"));
+    assertThat(paths()).containsExactly("/a");
+  }
+
+  @Test public void http2_resetByClientFinishes() {
+    channel.writeInbound(requestFrame(3, "/a"));
+
+    channel.writeInbound(new DefaultHttp2ResetFrame(Http2Error.CANCEL).stream(stream(3)));
+
+    assertThat(paths()).containsExactly("/a");
+    assertThat(channel.attr(NettyHttpTracing.SERVER_REQUESTS).get().streams)
+      .isEmpty();
+  }
+
+  @Test public void http2_resetByServerFinishes() {
+    channel.writeInbound(requestFrame(3, "/a"));
+
+    channel.writeOutbound(new DefaultHttp2ResetFrame(Http2Error.INTERNAL_ERROR).stream(stream(3)));
+
+    assertThat(paths()).containsExactly("/a");
+  }
+
+  @Test public void closeFinishesPendingWithError() {
+    HttpRequest missingStreamId = request("/c");
+    missingStreamId.headers().set(STREAM_ID, 7);
+    channel.writeInbound(request("/a"), requestFrame(3, "/b"), missingStreamId);
+    // InboundHttp2ToHttpAdapter doesn't always copy the stream ID to the response
+    channel.writeOutbound(response(HttpResponseStatus.OK));
+
+    channel.close();
+
+    assertThat(paths()).containsExactlyInAnyOrder("/a", "/b", "/c");
+    assertThat(spans.get(0).error()).isNull();
+    for (MutableSpan span : spans.spans().subList(1, 3)) {
+      assertThat(span.error()).isInstanceOf(ClosedChannelException.class);
+    }
+    assertThat(channel.attr(NettyHttpTracing.SERVER_REQUESTS).get().streams).isEmpty();
+  }
+
+  @Test public void http2_extractsMixedCaseHeaderNames() {
+    Http2HeadersFrame frame = requestFrame(3, "/a");
+    frame.headers().set("x-b3-traceid", "463ac35c9f6413ad");
+    frame.headers().set("x-b3-spanid", "a2fb4a1d1a96d312");
+    channel.writeInbound(frame);
+
+    channel.writeOutbound(responseFrame(3, "200"));
+
+    MutableSpan span = spans.get(0);
+    assertThat(span.traceId()).isEqualTo("463ac35c9f6413ad");
+    assertThat(span.id()).isEqualTo("a2fb4a1d1a96d312");
+  }
+
+  @Test public void statusCode_parsesPseudoHeader() {
+    assertThat(Http2Frames.parseStatusCode("204")).isEqualTo(204);
+    assertThat(Http2Frames.parseStatusCode(null)).isZero();
+    assertThat(Http2Frames.parseStatusCode("2x4")).isZero();
+    assertThat(Http2Frames.parseStatusCode("2000")).isZero();
+  }
+
+  List<String> paths() {
+    List<String> result = new ArrayList<>();
+    for (MutableSpan span : spans) result.add(span.tag("http.path"));
+    return result;
+  }
+
+  static HttpRequest request(String uri) {
+    return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+  }
+
+  static HttpResponse response(HttpResponseStatus status) {
+    return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+  }
+
+  static Http2HeadersFrame requestFrame(int streamId, String path) {
+    Http2Headers headers = new DefaultHttp2Headers()
+      .method("GET").scheme("https").authority("localhost").path(path);
+    return new DefaultHttp2HeadersFrame(headers, true).stream(stream(streamId));
+  }
+
+  static Http2HeadersFrame responseFrame(int streamId, String status) {
+    return new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().status(status))
+      .stream(stream(streamId));
+  }
+
+  static Http2FrameStream stream(final int id) {
+    return new Http2FrameStream() {
+      @Override public int id() {
+        return id;
+      }
+
+      @Override public Http2Stream.State state() {
+        return Http2Stream.State.OPEN;
+      }
+    };
+  }
+}
@@ -14,19 +14,25 @@
 package brave.spring.rabbit;
 
 import brave.internal.Nullable;
+import java.nio.charset.Charset;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
 
 class MessageHeaders {
+  // Not brave.internal.codec, as brave.internal isn't imported at runtime (see bnd.bnd)
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
   /**
    * If {@link MessageProperties} exist, this returns {@link MessageProperties#getHeader(String)} if
-   * it is a string.
+   * it is a string or UTF-8 bytes. The latter is the case when the producer used a binary
+   * transport, such as a Kafka bridge.
    */
   @Nullable static String getHeaderIfString(Message message, String name) {
     MessageProperties properties = message.getMessageProperties();
     if (properties == null) return null;
     Object o = properties.getHeader(name);
     if (o instanceof String) return o.toString();
+    if (o instanceof byte[]) return new String((byte[]) o, UTF_8);
     return null;
   }
 
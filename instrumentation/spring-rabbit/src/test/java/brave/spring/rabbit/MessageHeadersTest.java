@@ -36,6 +36,13 @@ public class MessageHeadersTest {
       .isEqualTo("1");
   }
 
+  @Test public void getHeaderIfString_bytes() {
+    message.getMessageProperties().setHeader("b3", new byte[] {'1'});
+
+    assertThat(MessageHeaders.getHeaderIfString(message, "b3"))
+      .isEqualTo("1");
+  }
+
   @Test public void getHeaderIfString_notString() {
     message.getMessageProperties().setHeader("b3", (byte) 0);
 